@@ -0,0 +1,92 @@
+package com.devicehive.websockets.converters;
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
+import kafka.utils.VerifiableProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares JSON and binary kafka message formats: encoding and decoding of typical notification and command.
+ * Run with {@code mvn -Pundertow,benchmarks test}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceMessageConverterBenchmark {
+
+    @Param({AbstractBinaryConverter.JSON_FORMAT, AbstractBinaryConverter.BINARY_FORMAT})
+    public String format;
+
+    private DeviceNotificationConverter notificationConverter;
+    private DeviceCommandConverter commandConverter;
+    private DeviceNotification notification;
+    private DeviceCommand command;
+    private byte[] notificationBytes;
+    private byte[] commandBytes;
+
+    @Setup
+    public void setUp() {
+        Properties properties = new Properties();
+        properties.put(AbstractBinaryConverter.FORMAT_PROPERTY, format);
+        notificationConverter = new DeviceNotificationConverter(new VerifiableProperties(properties));
+        commandConverter = new DeviceCommandConverter(new VerifiableProperties(properties));
+
+        notification = new DeviceNotification();
+        notification.setId(1234567890123L);
+        notification.setNotification("temperature");
+        notification.setDeviceGuid("E50D6085-2ABA-48E9-B1C3-73C673E414BE");
+        notification.setTimestamp(new Date());
+        notification.setParameters(new JsonStringWrapper("{\"value\":36.6,\"unit\":\"°C\"}"));
+        notificationBytes = notificationConverter.toBytes(notification);
+
+        command = new DeviceCommand();
+        command.setId(1234567890124L);
+        command.setCommand("setTemperature");
+        command.setDeviceGuid("E50D6085-2ABA-48E9-B1C3-73C673E414BE");
+        command.setTimestamp(new Date());
+        command.setUserId(42L);
+        command.setLifetime(60);
+        command.setStatus("Pending");
+        command.setParameters(new JsonStringWrapper("{\"value\":21.5,\"unit\":\"°C\"}"));
+        command.setIsUpdated(false);
+        commandBytes = commandConverter.toBytes(command);
+    }
+
+    @Benchmark
+    public byte[] encodeNotification() {
+        return notificationConverter.toBytes(notification);
+    }
+
+    @Benchmark
+    public DeviceNotification decodeNotification() {
+        return notificationConverter.fromBytes(notificationBytes);
+    }
+
+    @Benchmark
+    public byte[] encodeCommand() {
+        return commandConverter.toBytes(command);
+    }
+
+    @Benchmark
+    public DeviceCommand decodeCommand() {
+        return commandConverter.fromBytes(commandBytes);
+    }
+}
@@ -31,6 +31,7 @@ import java.util.concurrent.Executors;
 public class DeviceHiveApplication extends SpringBootServletInitializer {
 
     public static final String MESSAGE_EXECUTOR = "DeviceHiveMessageService";
+    public static final String WEBSOCKET_WRITER_EXECUTOR = "DeviceHiveWebsocketWriter";
 
     public static void main(String ... args) {
         SpringApplication.run(DeviceHiveApplication.class);
@@ -52,6 +53,15 @@ public class DeviceHiveApplication extends SpringBootServletInitializer {
         return Executors.newFixedThreadPool(executorSize);
     }
 
+    /**
+     * Pool writing queued messages to websocket sessions, by default sized to number of cores
+     */
+    @Lazy(false)
+    @Bean(name = WEBSOCKET_WRITER_EXECUTOR)
+    public ExecutorService websocketWriterExecutorService(@Value("${websocket.writer.threads:0}") Integer threads) {
+        return Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    }
+
     @Bean
     @Lazy(false)
     public BeanConfig swaggerConfig(@Value("${server.context-path}") String contextPath, @Value("${build.version}") String buildVersion) {
@@ -6,6 +6,7 @@ import org.glassfish.jersey.filter.LoggingFilter;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.server.ServerProperties;
 import org.glassfish.jersey.server.spring.scope.RequestContextFilter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
 import javax.ws.rs.ApplicationPath;
@@ -14,6 +15,10 @@ import javax.ws.rs.ApplicationPath;
 @ApplicationPath(JerseyConfig.REST_PATH)
 public class JerseyConfig extends ResourceConfig {
     public static final String REST_PATH = "/rest";
+    /**
+     * Boolean property enabling pretty printing of json responses
+     */
+    public static final String JSON_PRETTY_PRINT = "devicehive.json.prettyPrint";
 
     public JerseyConfig() {
         packages("com.devicehive.resource.converters", "com.devicehive.resource.exceptions", "com.devicehive.resource.filter");
@@ -48,4 +53,9 @@ public class JerseyConfig extends ResourceConfig {
         register(io.swagger.jaxrs.listing.SwaggerSerializers.class);
     }
 
+    @Value("${rest.json.pretty:false}")
+    public void setJsonPrettyPrint(boolean prettyPrint) {
+        property(JSON_PRETTY_PRINT, prettyPrint);
+    }
+
 }
@@ -1,5 +1,6 @@
 package com.devicehive.application.hazelcast;
 
+import com.devicehive.service.AbstractHazelcastEntityService;
 import com.hazelcast.config.*;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
@@ -53,10 +54,14 @@ public class HazelcastConfiguration {
     }
 
     @Bean
-    public Config config(NetworkConfig networkConfig) {
+    public Config config(NetworkConfig networkConfig,
+                         @Value("${history.device.retention.sec:3600}") int historyRetentionSeconds) {
         final Config config = new XmlConfigBuilder().build();
         config.setNetworkConfig(networkConfig);
         config.getGroupConfig().setName(env.getProperty("hazelcast.group.name"));
+        // every append renews the ttl, so only histories of devices silent for the whole retention period expire
+        config.getMapConfig(AbstractHazelcastEntityService.NOTIFICATIONS_HISTORY_MAP).setTimeToLiveSeconds(historyRetentionSeconds);
+        config.getMapConfig(AbstractHazelcastEntityService.COMMANDS_HISTORY_MAP).setTimeToLiveSeconds(historyRetentionSeconds);
 
         return config;
     }
@@ -7,6 +7,7 @@ import com.devicehive.messages.kafka.CommandUpdateConsumer;
 import com.devicehive.messages.kafka.NotificationConsumer;
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.websockets.converters.AbstractBinaryConverter;
 import com.devicehive.websockets.converters.DeviceCommandConverter;
 import com.devicehive.websockets.converters.DeviceNotificationConverter;
 import kafka.consumer.Consumer;
@@ -51,6 +52,15 @@ public class KafkaConfig {
     @Value("${metadata.broker.list}")
     private String brokerList;
 
+    @Value("${kafka.producer.compression.codec:snappy}")
+    private String compressionCodec;
+
+    @Value("${kafka.producer.acks:1}")
+    private String requiredAcks;
+
+    @Value("${kafka.message.format:" + AbstractBinaryConverter.JSON_FORMAT + "}")
+    private String messageFormat;
+
     @Bean
     @Scope("prototype")
     public NotificationConsumer notificationConsumer() {
@@ -78,6 +88,9 @@ public class KafkaConfig {
         properties.put("key.serializer.class", "kafka.serializer.StringEncoder");
         properties.put("serializer.class", env.getProperty("notification.serializer.class"));
         properties.put("partitioner.class", "kafka.producer.DefaultPartitioner");
+        properties.put("compression.codec", compressionCodec);
+        properties.put("request.required.acks", requiredAcks);
+        properties.put(AbstractBinaryConverter.FORMAT_PROPERTY, messageFormat);
         logger.info("Creating kafka producer {} for broker list {}", NOTIFICATION_PRODUCER, brokerList);
         return new Producer<>(new ProducerConfig(properties));
     }
@@ -91,6 +104,9 @@ public class KafkaConfig {
         properties.put("key.serializer.class", "kafka.serializer.StringEncoder");
         properties.put("serializer.class", env.getProperty("command.serializer.class"));
         properties.put("partitioner.class", "kafka.producer.DefaultPartitioner");
+        properties.put("compression.codec", compressionCodec);
+        properties.put("request.required.acks", requiredAcks);
+        properties.put(AbstractBinaryConverter.FORMAT_PROPERTY, messageFormat);
         logger.info("Creating kafka producer {} for broker list {}", COMMAND_PRODUCER, brokerList);
         return new Producer<>(new ProducerConfig(properties));
     }
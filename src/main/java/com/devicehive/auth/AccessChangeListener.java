@@ -0,0 +1,10 @@
+package com.devicehive.auth;
+
+/**
+ * Implemented by beans which keep access decisions and have to drop them once users, networks, access keys or
+ * devices are changed on any cluster node.
+ */
+public interface AccessChangeListener {
+
+    void onAccessChange(String reason);
+}
@@ -0,0 +1,56 @@
+package com.devicehive.auth;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Broadcasts permission changes to all cluster nodes through hazelcast topic. If called inside of transaction,
+ * the change is published after commit, so listeners never resolve access against not yet committed data.
+ */
+@Component
+public class AccessChangeNotifier {
+    private static final Logger logger = LoggerFactory.getLogger(AccessChangeNotifier.class);
+    private static final String ACCESS_CHANGE_TOPIC = "ACCESS-CHANGE-TOPIC";
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired(required = false)
+    private List<AccessChangeListener> listeners = Collections.emptyList();
+
+    private ITopic<String> topic;
+
+    @PostConstruct
+    public void init() {
+        topic = hazelcastInstance.getTopic(ACCESS_CHANGE_TOPIC);
+        topic.addMessageListener(message -> {
+            logger.debug("Access change received: {}", message.getMessageObject());
+            for (AccessChangeListener listener : listeners) {
+                listener.onAccessChange(message.getMessageObject());
+            }
+        });
+    }
+
+    public void accessChanged(String reason) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    topic.publish(reason);
+                }
+            });
+        } else {
+            topic.publish(reason);
+        }
+    }
+}
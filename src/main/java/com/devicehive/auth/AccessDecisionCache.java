@@ -0,0 +1,187 @@
+package com.devicehive.auth;
+
+import com.devicehive.model.AccessKey;
+import com.devicehive.model.AccessKeyPermission;
+import com.devicehive.model.User;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IAtomicLong;
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.AbstractEntryProcessor;
+import com.hazelcast.monitor.NearCacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cluster-wide cache of "principal has access to device" decisions, backed by near-cached hazelcast map keyed by
+ * device guid. Cache is cleared on every node on any permissions change (see {@link AccessChangeNotifier}).
+ * Registration of a device only evicts decisions about that device. Every invalidation increments cluster-wide
+ * generation; decision stored while the generation changed is removed again, so stale decision resolved on any
+ * node can't survive the invalidation.
+ */
+@Component
+public class AccessDecisionCache implements AccessChangeListener, PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(AccessDecisionCache.class);
+    private static final String ACCESS_DECISIONS_MAP = "ACCESS-DECISIONS-MAP";
+    private static final String ACCESS_DECISIONS_GENERATION = "ACCESS-DECISIONS-GENERATION";
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    // device guid to decisions of principals about the device
+    private IMap<String, HashMap<String, Boolean>> decisions;
+
+    private IAtomicLong generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        decisions = hazelcastInstance.getMap(ACCESS_DECISIONS_MAP);
+        generation = hazelcastInstance.getAtomicLong(ACCESS_DECISIONS_GENERATION);
+    }
+
+    /**
+     * Returns cached decision or resolves it with {@code resolver} and caches the result. Decisions for principals
+     * which are not backed by persisted user or access key are not cached.
+     */
+    public boolean hasAccess(HivePrincipal principal, String deviceGuid, Supplier<Boolean> resolver) {
+        String key = key(principal);
+        if (key == null || deviceGuid == null) {
+            return resolver.get();
+        }
+        Map<String, Boolean> deviceDecisions = decisions.get(deviceGuid);
+        Boolean decision = deviceDecisions != null ? deviceDecisions.get(key) : null;
+        if (decision != null) {
+            hits.incrementAndGet();
+            return decision;
+        }
+        misses.incrementAndGet();
+        long resolvedGeneration = generation.get();
+        decision = resolver.get();
+        decisions.executeOnKey(deviceGuid, new DecisionProcessor(key, decision));
+        // invalidation on any node, which could have missed the stored decision
+        if (resolvedGeneration != generation.get()) {
+            decisions.executeOnKey(deviceGuid, new DecisionProcessor(key, null));
+        }
+        return decision;
+    }
+
+    /**
+     * Evicts decisions about the device, e.g. access denied before the device was registered. If called inside of
+     * transaction, decisions are evicted after commit.
+     */
+    public void evictDevice(String deviceGuid) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    doEvictDevice(deviceGuid);
+                }
+            });
+        } else {
+            doEvictDevice(deviceGuid);
+        }
+    }
+
+    private void doEvictDevice(String deviceGuid) {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        // removal from the map invalidates near caches of all nodes
+        decisions.delete(deviceGuid);
+        logger.debug("Access decisions evicted for device {}", deviceGuid);
+    }
+
+    @Override
+    public void onAccessChange(String reason) {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        decisions.clear();
+        logger.debug("Access decisions cache cleared: {}", reason);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("accessDecisions.hits", hitCount));
+        metrics.add(new Metric<>("accessDecisions.misses", total - hitCount));
+        metrics.add(new Metric<>("accessDecisions.hitRatio", total == 0 ? 0.0 : (double) hitCount / total));
+        metrics.add(new Metric<>("accessDecisions.invalidations", invalidations.get()));
+        NearCacheStats nearCacheStats = decisions.getLocalMapStats().getNearCacheStats();
+        if (nearCacheStats != null) {
+            metrics.add(new Metric<>("accessDecisions.nearCache.hits", nearCacheStats.getHits()));
+            metrics.add(new Metric<>("accessDecisions.nearCache.misses", nearCacheStats.getMisses()));
+            metrics.add(new Metric<>("accessDecisions.nearCache.entries", nearCacheStats.getOwnedEntryCount()));
+        }
+        return metrics;
+    }
+
+    private static String key(HivePrincipal principal) {
+        User user = principal.getUser();
+        if (user != null && user.getId() != null) {
+            return "U" + user.getId();
+        }
+        AccessKey key = principal.getKey();
+        if (key != null && key.getId() != null && key.getPermissions() != null) {
+            // permissions of the key are already filtered by action, client address and origin of the request,
+            // so the decision is cached per remaining permission set
+            List<Long> permissionIds = new ArrayList<>(key.getPermissions().size());
+            for (AccessKeyPermission permission : key.getPermissions()) {
+                if (permission.getId() == null) {
+                    return null;
+                }
+                permissionIds.add(permission.getId());
+            }
+            Collections.sort(permissionIds);
+            return "K" + key.getId() + permissionIds;
+        }
+        return null;
+    }
+
+    /**
+     * Stores decision of the principal about the device, or removes it if decision is null
+     */
+    static class DecisionProcessor extends AbstractEntryProcessor<String, HashMap<String, Boolean>> {
+        private static final long serialVersionUID = 6048263390537271064L;
+
+        private final String principalKey;
+        private final Boolean decision;
+
+        DecisionProcessor(String principalKey, Boolean decision) {
+            this.principalKey = principalKey;
+            this.decision = decision;
+        }
+
+        @Override
+        public Object process(Map.Entry<String, HashMap<String, Boolean>> entry) {
+            HashMap<String, Boolean> deviceDecisions = entry.getValue();
+            if (decision != null) {
+                deviceDecisions = deviceDecisions != null ? deviceDecisions : new HashMap<>();
+                deviceDecisions.put(principalKey, decision);
+                entry.setValue(deviceDecisions);
+            } else if (deviceDecisions != null && deviceDecisions.remove(principalKey) != null) {
+                entry.setValue(deviceDecisions.isEmpty() ? null : deviceDecisions);
+            }
+            return null;
+        }
+    }
+}
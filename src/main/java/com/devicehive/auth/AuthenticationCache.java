@@ -0,0 +1,197 @@
+package com.devicehive.auth;
+
+import com.devicehive.application.DeviceHiveApplication;
+import com.devicehive.configuration.ConfigurationService;
+import com.devicehive.configuration.Constants;
+import com.devicehive.model.AccessKey;
+import com.devicehive.model.enums.AccessKeyType;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Short living cache of successful authentications by access key or login and password, so that clients polling
+ * the server do not hit the database on every request. Entries are stored by SHA-256 of the credentials, live for
+ * {@code auth.cache.ttl.sec}, are never returned after the access key expiration date and are dropped on every node
+ * on any permissions change (see {@link AccessChangeNotifier}). Every request gets its own copy of the cached
+ * principal, since permission checks narrow down permissions of the request's access key.
+ * Session access keys close to expiration are prolonged in background, the request is served from the cache.
+ */
+@Component
+public class AuthenticationCache implements AccessChangeListener, PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(AuthenticationCache.class);
+
+    @Autowired
+    private ConfigurationService configurationService;
+
+    @Autowired
+    @Qualifier(DeviceHiveApplication.MESSAGE_EXECUTOR)
+    private ExecutorService executorService;
+
+    @Value("${auth.cache.ttl.sec:30}")
+    private long ttlSeconds;
+
+    @Value("${auth.cache.max.size:100000}")
+    private long maxSize;
+
+    private Cache<String, Entry> cache;
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * Returns authentication for given credentials from the cache or authenticates them with {@code authenticator}.
+     * Failed authentications are not cached.
+     */
+    public HiveAuthentication authenticate(String credentials, Supplier<HiveAuthentication> authenticator) {
+        if (ttlSeconds <= 0) {
+            return authenticator.get();
+        }
+        String cacheKey = Hashing.sha256().hashString(credentials, StandardCharsets.UTF_8).toString();
+        Entry entry = cache.getIfPresent(cacheKey);
+        long now = System.currentTimeMillis();
+        if (entry != null && entry.expiresAt > now) {
+            hits.incrementAndGet();
+            if (entry.refreshAt <= now && entry.refreshing.compareAndSet(false, true)) {
+                refresh(cacheKey, authenticator);
+            }
+            return entry.createAuthentication();
+        }
+        if (entry != null) {
+            cache.invalidate(cacheKey);
+        }
+        misses.incrementAndGet();
+        return load(cacheKey, authenticator);
+    }
+
+    @Override
+    public void onAccessChange(String reason) {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+        logger.debug("Authentication cache cleared: {}", reason);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("authCache.size", cache.size()));
+        metrics.add(new Metric<>("authCache.hits", hits.get()));
+        metrics.add(new Metric<>("authCache.misses", misses.get()));
+        metrics.add(new Metric<>("authCache.refreshes", refreshes.get()));
+        return metrics;
+    }
+
+    private HiveAuthentication load(String cacheKey, Supplier<HiveAuthentication> authenticator) {
+        long currentGeneration = generation.get();
+        HiveAuthentication authentication = authenticator.get();
+        // entry is not stored if permissions were changed while authenticating
+        if (currentGeneration == generation.get()) {
+            cache.put(cacheKey, new Entry(authentication, sessionRefreshAt(authentication)));
+        }
+        return authentication;
+    }
+
+    private void refresh(String cacheKey, Supplier<HiveAuthentication> authenticator) {
+        try {
+            executorService.execute(() -> {
+                try {
+                    refreshes.incrementAndGet();
+                    load(cacheKey, authenticator);
+                } catch (Exception e) {
+                    logger.warn("Unable to refresh authentication, removing it from cache", e);
+                    cache.invalidate(cacheKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            cache.invalidate(cacheKey);
+        }
+    }
+
+    /**
+     * Session keys are prolonged by authentication when less than half of session timeout is left
+     */
+    private long sessionRefreshAt(HiveAuthentication authentication) {
+        AccessKey key = ((HivePrincipal) authentication.getPrincipal()).getKey();
+        if (key == null || key.getType() != AccessKeyType.SESSION || key.getExpirationDate() == null) {
+            return Long.MAX_VALUE;
+        }
+        long timeout = configurationService.getLong(Constants.SESSION_TIMEOUT, Constants.DEFAULT_SESSION_TIMEOUT);
+        return key.getExpirationDate().getTime() - timeout / 2;
+    }
+
+    private static class Entry {
+        private final HivePrincipal principal;
+        private final Collection<GrantedAuthority> authorities;
+        private final long expiresAt;
+        private final long refreshAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(HiveAuthentication authentication, long refreshAt) {
+            HivePrincipal principal = (HivePrincipal) authentication.getPrincipal();
+            AccessKey key = principal.getKey();
+            this.principal = copyOf(principal);
+            this.authorities = new ArrayList<>(authentication.getAuthorities());
+            this.expiresAt = key != null && key.getExpirationDate() != null
+                    ? key.getExpirationDate().getTime()
+                    : Long.MAX_VALUE;
+            this.refreshAt = refreshAt;
+        }
+
+        private HiveAuthentication createAuthentication() {
+            return new HiveAuthentication(copyOf(principal), authorities);
+        }
+
+        private static HivePrincipal copyOf(HivePrincipal principal) {
+            if (principal.getKey() != null) {
+                return new HivePrincipal(copyOf(principal.getKey()));
+            } else if (principal.getUser() != null) {
+                return new HivePrincipal(principal.getUser());
+            } else if (principal.getoAuthClient() != null) {
+                return new HivePrincipal(principal.getoAuthClient());
+            }
+            return principal;
+        }
+
+        private static AccessKey copyOf(AccessKey key) {
+            AccessKey copy = new AccessKey();
+            copy.setId(key.getId());
+            copy.setLabel(key.getLabel());
+            copy.setKey(key.getKey());
+            copy.setUser(key.getUser());
+            copy.setExpirationDate(key.getExpirationDate());
+            copy.setType(key.getType());
+            copy.setPermissions(key.getPermissions() == null ? null : new HashSet<>(key.getPermissions()));
+            copy.setEntityVersion(key.getEntityVersion());
+            return copy;
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package com.devicehive.auth.rest.providers;
 
+import com.devicehive.auth.AuthenticationCache;
 import com.devicehive.auth.HiveAuthentication;
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.auth.HiveRoles;
+import com.devicehive.configuration.Constants;
 import com.devicehive.model.AccessKey;
 import com.devicehive.model.enums.UserStatus;
 import com.devicehive.service.AccessKeyService;
@@ -24,10 +26,16 @@ public class AccessTokenAuthenticationProvider implements AuthenticationProvider
     @Autowired
     private AccessKeyService accessKeyService;
 
+    @Autowired
+    private AuthenticationCache authenticationCache;
+
     @Override
     public Authentication authenticate(Authentication authentication) throws AuthenticationException {
         String token = (String) authentication.getPrincipal();
+        return authenticationCache.authenticate(Constants.OAUTH_AUTH_SCEME + token, () -> authenticateKey(token));
+    }
 
+    private HiveAuthentication authenticateKey(String token) {
         AccessKey accessKey = accessKeyService.authenticate(token);
         if (accessKey == null
                 || accessKey.getUser() == null || !accessKey.getUser().getStatus().equals(UserStatus.ACTIVE)
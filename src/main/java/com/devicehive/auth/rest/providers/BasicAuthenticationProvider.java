@@ -1,8 +1,11 @@
 package com.devicehive.auth.rest.providers;
 
+import com.devicehive.auth.AuthenticationCache;
 import com.devicehive.auth.HiveAuthentication;
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.auth.HiveRoles;
+import com.devicehive.configuration.Constants;
+import com.devicehive.exceptions.ActionNotAllowedException;
 import com.devicehive.exceptions.HiveException;
 import com.devicehive.model.OAuthClient;
 import com.devicehive.model.User;
@@ -31,17 +34,27 @@ public class BasicAuthenticationProvider implements AuthenticationProvider {
     @Autowired
     private OAuthClientService clientService;
 
-    @SuppressWarnings("unchecked")
+    @Autowired
+    private AuthenticationCache authenticationCache;
+
     @Override
     public Authentication authenticate(Authentication authentication) throws AuthenticationException {
         String key = (String) authentication.getPrincipal();
         String pass = (String) authentication.getCredentials();
         logger.debug("Basic authentication requested for username {}", key);
+        // login can't contain ':', so the pair is unambiguous
+        return authenticationCache.authenticate(Constants.BASIC_AUTH_SCHEME + key + ":" + pass,
+                () -> authenticateUserOrClient(key, pass));
+    }
+
+    @SuppressWarnings("unchecked")
+    private HiveAuthentication authenticateUserOrClient(String key, String pass) {
 
         User user = null;
         try {
             user = userService.authenticate(key, pass);
-        } catch (HiveException e) {
+        } catch (HiveException | ActionNotAllowedException e) {
+            // wrong password ends in 401 as an unknown login does, not in 500
             logger.error("User auth failed", e);
         }
         if (user != null && user.getStatus() == UserStatus.ACTIVE) {
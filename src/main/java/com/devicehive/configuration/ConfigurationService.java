@@ -3,24 +3,58 @@ package com.devicehive.configuration;
 import com.devicehive.dao.CacheConfig;
 import com.devicehive.dao.GenericDAO;
 import com.devicehive.model.Configuration;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
 import javax.transaction.Transactional;
 import javax.validation.constraints.NotNull;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
+/**
+ * Configuration properties are read from in-memory snapshot, loaded on startup. Snapshot is replaced as a whole on
+ * change, so reads are plain volatile lookups. Changes are published to all cluster nodes through hazelcast topic
+ * after commit; every node reloads changed property from the database, so the last committed value wins.
+ */
 @Component
 @Lazy(false)
 public class ConfigurationService {
     private static final Logger logger = LoggerFactory.getLogger(ConfigurationService.class);
+    private static final String CONFIGURATION_CHANGE_TOPIC = "CONFIGURATION-CHANGE-TOPIC";
 
     @Autowired
     private GenericDAO genericDAO;
 
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    private ITopic<String> topic;
+
+    private volatile Map<String, String> snapshot = Collections.emptyMap();
+
+    @PostConstruct
+    public void init() {
+        topic = hazelcastInstance.getTopic(CONFIGURATION_CHANGE_TOPIC);
+        topic.addMessageListener(message -> reload(message.getMessageObject()));
+        Map<String, String> loaded = new HashMap<>();
+        for (Configuration configuration : genericDAO.createNamedQuery(Configuration.class, "Configuration.getAll",
+                Optional.<CacheConfig>empty()).getResultList()) {
+            loaded.put(configuration.getName(), configuration.getValue());
+        }
+        snapshot = Collections.unmodifiableMap(loaded);
+        logger.info("Loaded {} configuration properties", loaded.size());
+    }
+
     @Transactional
     public <T> void save(@NotNull String name, T value) {
         String str = value != null ? value.toString() : null;
@@ -35,6 +69,10 @@ public class ConfigurationService {
             configuration.setValue(str);
             genericDAO.persist(configuration);
         }
+        afterCommit(() -> {
+            update(name, str, false);
+            topic.publish(name);
+        });
     }
 
     private Optional<Configuration> findByName(String name) {
@@ -45,12 +83,11 @@ public class ConfigurationService {
     }
 
     public String get(@NotNull String name) {
-        return findByName(name)
-                .map(Configuration::getValue)
-                .orElseGet(() -> {
-                    logger.warn(String.format(Messages.CONFIG_NOT_FOUND, name));
-                    return null;
-                });
+        String value = snapshot.get(name);
+        if (value == null && logger.isDebugEnabled()) {
+            logger.debug(String.format(Messages.CONFIG_NOT_FOUND, name));
+        }
+        return value;
     }
 
     public long getLong(@NotNull String name, long defaultValue) {
@@ -74,6 +111,39 @@ public class ConfigurationService {
                 .setParameter("name", name)
                 .executeUpdate();
         logger.info("Deleted {} configuration entries by name {}", result, name);
+        afterCommit(() -> {
+            update(name, null, true);
+            topic.publish(name);
+        });
+    }
+
+    private void reload(String name) {
+        Optional<Configuration> configuration = findByName(name);
+        update(name, configuration.map(Configuration::getValue).orElse(null), !configuration.isPresent());
+        logger.debug("Configuration property {} reloaded", name);
+    }
+
+    private synchronized void update(String name, String value, boolean removed) {
+        Map<String, String> updated = new HashMap<>(snapshot);
+        if (removed) {
+            updated.remove(name);
+        } else {
+            updated.put(name, value);
+        }
+        snapshot = Collections.unmodifiableMap(updated);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
     }
 
 }
@@ -25,13 +25,16 @@ public class Constants {
     public static final int WEBSOCKET_MAX_BUFFER_SIZE = 10 * 1024;
     public static final Integer DEFAULT_TAKE = 100;
     public static final String DEFAULT_TAKE_STR = "100";
+    public static final int MAX_NOTIFICATION_BATCH_SIZE = 1000;
     public static final String CURRENT_USER = "current";
     public static final String BASIC_AUTH_SCHEME = "Basic";
     public static final String OAUTH_AUTH_SCEME = "Bearer";
     public static final String AUTH_DEVICE_ID_HEADER = "Auth-DeviceID";
     public static final String AUTH_DEVICE_KEY_HEADER = "Auth-DeviceKey";
+    public static final String NEXT_CURSOR_HEADER = "Next-Cursor";
     public static final ByteBuffer PING = ByteBuffer.wrap("devicehive-ping".getBytes(Charset.forName(UTF8)));
     public static final String DEVICE_OFFLINE_STATUS = "Offline";
+    public static final String COMMAND_EXPIRED_STATUS = "Expired";
     //API constants
     public static final String DEVICE_ID = "deviceId";
     public static final String DEVICE_GUID = "deviceGuid";
@@ -41,6 +44,7 @@ public class Constants {
     public static final String TIMESTAMP = "timestamp";
     public static final String COMMAND_ID = "commandId";
     public static final String NOTIFICATION = "notification";
+    public static final String NOTIFICATIONS = "notifications";
     public static final String COMMAND = "command";
     public static final String SUBSCRIPTION_ID = "subscriptionId";
     public static final String ID = "id";
@@ -65,6 +65,12 @@ public class Messages {
     public static final String EMPTY_DEVICE_CLASS = BidBundle.get("EMPTY_DEVICE_CLASS");
     public static final String EMPTY_COMMAND = BidBundle.get("EMPTY_COMMAND");
     public static final String NOTIFICATION_REQUIRED = BidBundle.get("NOTIFICATION_REQUIRED");
+    public static final String MESSAGE_QUEUE_IS_FULL = BidBundle.get("MESSAGE_QUEUE_IS_FULL");
+    public static final String INVALID_NOTIFICATION_BATCH_SIZE = BidBundle.get("INVALID_NOTIFICATION_BATCH_SIZE");
+    public static final String INVALID_GRID_AGGREGATE = BidBundle.get("INVALID_GRID_AGGREGATE");
+    public static final String GRID_PARAMETER_REQUIRED = BidBundle.get("GRID_PARAMETER_REQUIRED");
+    public static final String INVALID_CURSOR = BidBundle.get("INVALID_CURSOR");
+    public static final String CURSOR_NOT_SUPPORTED = BidBundle.get("CURSOR_NOT_SUPPORTED");
     public static final String DUPLICATE_OAUTH_ID = BidBundle.get("DUPLICATE_OAUTH_ID");
     public static final String CLIENT_IS_NULL = BidBundle.get("CLIENT_IS_NULL");
     public static final String INVALID_AUTH_CODE = BidBundle.get("INVALID_AUTH_CODE");
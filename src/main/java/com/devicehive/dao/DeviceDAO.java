@@ -6,16 +6,17 @@ import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
 
 import javax.sql.DataSource;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 @Repository
 public class DeviceDAO {
-    private static final String GET_DEVICES_GUIDS_AND_OFFLINE_TIMEOUT = "SELECT d.guid, dc.offline_timeout FROM device d " +
-                                                                        "LEFT JOIN device_class dc " +
-                                                                        "ON dc.id = d.device_class_id " +
-                                                                        "WHERE d.guid IN (:guids)";
+    private static final String GET_DEVICES_GUIDS_AND_DEVICE_CLASSES = "SELECT d.guid, d.device_class_id FROM device d " +
+                                                                       "WHERE d.guid IN (:guids)";
+    private static final String GET_DEVICE_CLASSES_OFFLINE_TIMEOUT = "SELECT dc.id, dc.offline_timeout FROM device_class dc " +
+                                                                     "WHERE dc.id IN (:ids)";
     private static final String UPDATE_DEVICES_STATUSES = "UPDATE device SET status =:status WHERE guid IN (:guids)";
 
     private NamedParameterJdbcTemplate jdbcTemplate;
@@ -40,18 +41,35 @@ public class DeviceDAO {
 
     /**
      * Method return a Map where KEY is a device guid from guids list and
-     * VALUE is OfflineTimeout from deviceClass for device with current guid.
+     * VALUE is id of the device class of device with current guid.
      *
      * @param guids list of guids
      */
-    public Map<String, Integer> getOfflineTimeForDevices(List<String> guids) {
-        final Map<String, Integer> deviceInfo = new HashMap<>();
+    public Map<String, Long> getDeviceClassesForDevices(Collection<String> guids) {
+        final Map<String, Long> deviceInfo = new HashMap<>();
         MapSqlParameterSource parameters = new MapSqlParameterSource();
         parameters.addValue("guids", guids);
-        List<Map<String, Object>> results = jdbcTemplate.queryForList(GET_DEVICES_GUIDS_AND_OFFLINE_TIMEOUT, parameters);
-        results.stream().forEach(map -> deviceInfo.put((String) map.get("guid"), (Integer) map.get("offline_timeout")));
+        List<Map<String, Object>> results = jdbcTemplate.queryForList(GET_DEVICES_GUIDS_AND_DEVICE_CLASSES, parameters);
+        results.stream().forEach(map -> deviceInfo.put(String.valueOf(map.get("guid")),
+                ((Number) map.get("device_class_id")).longValue()));
         return deviceInfo;
     }
 
+    /**
+     * Method return a Map where KEY is a device class id from ids list and
+     * VALUE is OfflineTimeout of device class with current id.
+     *
+     * @param ids list of device class ids
+     */
+    public Map<Long, Integer> getOfflineTimeForDeviceClasses(Collection<Long> ids) {
+        final Map<Long, Integer> deviceClassInfo = new HashMap<>();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("ids", ids);
+        List<Map<String, Object>> results = jdbcTemplate.queryForList(GET_DEVICE_CLASSES_OFFLINE_TIMEOUT, parameters);
+        results.stream().forEach(map -> deviceClassInfo.put(((Number) map.get("id")).longValue(),
+                map.get("offline_timeout") == null ? null : ((Number) map.get("offline_timeout")).intValue()));
+        return deviceClassInfo;
+    }
+
 
 }
@@ -0,0 +1,428 @@
+package com.devicehive.dao;
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.model.response.HistoryGridPoint;
+import com.devicehive.service.history.GridAggregate;
+import com.devicehive.service.history.HistoryCursor;
+import com.devicehive.service.history.HistoryFilter;
+import com.devicehive.service.history.HistoryGrid;
+import com.devicehive.service.history.HistoryStore;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.io.StringReader;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link HistoryStore} in PostgreSQL. Rows are kept in day partitions of {@code notification_history} and
+ * {@code command_history} tables, new rows are written to the partition of their day with COPY. Command updates are
+ * applied with batched UPDATE; an update of a command which is not stored yet inserts it, so a command can be stored
+ * twice. The original row of such a command is skipped in SQL, before LIMIT, so pages are never cut short by it.
+ * On other databases (HSQLDB in tests) rows are written to the parent tables with batched INSERT.
+ */
+@Repository
+@ConditionalOnProperty(name = "history.store.enabled", havingValue = "true")
+public class PostgresHistoryStore implements HistoryStore {
+    private static final Logger logger = LoggerFactory.getLogger(PostgresHistoryStore.class);
+
+    private static final String NOTIFICATION_TABLE = "notification_history";
+    private static final String COMMAND_TABLE = "command_history";
+    private static final String NOTIFICATION_COLUMNS = "id, device_guid, notification, timestamp, parameters";
+    private static final String COMMAND_COLUMNS = "id, device_guid, command, timestamp, parameters, user_id, lifetime, " +
+                                                  "status, result, is_updated";
+    private static final String INSERT_NOTIFICATION = "INSERT INTO notification_history (" + NOTIFICATION_COLUMNS + ") " +
+                                                      "VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_COMMAND = "INSERT INTO command_history (" + COMMAND_COLUMNS + ") " +
+                                                 "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_COMMAND = "UPDATE command_history SET command = ?, parameters = ?, lifetime = ?, " +
+                                                 "status = ?, result = ?, is_updated = ? WHERE id = ? AND device_guid = ? " +
+                                                 "AND timestamp = ?";
+    // original row of a command is skipped once its updated row is stored
+    private static final String NOT_REPLACED = "(c.is_updated OR NOT EXISTS (SELECT 1 FROM command_history u " +
+                                               "WHERE u.device_guid = c.device_guid AND u.timestamp = c.timestamp " +
+                                               "AND u.id = c.id AND u.is_updated))";
+    // index of the grid interval of a row, intervals are aligned to epoch
+    private static final String BUCKET = "CAST(round(extract(EPOCH FROM timestamp) * 1000) AS BIGINT) / :interval";
+    private static final String CREATE_PARTITION = "SELECT create_history_partition(?, CAST(? AS DATE))";
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private JdbcTemplate jdbcTemplate;
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+    private boolean postgres;
+    private final Set<String> partitions = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public void setDataSource(DataSource dataSource) {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    @PostConstruct
+    public void init() {
+        postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) con ->
+                "PostgreSQL".equals(con.getMetaData().getDatabaseProductName()));
+        logger.info("History store initialized, {}", postgres ? "day partitions and COPY are used" : "plain inserts are used");
+    }
+
+    /**
+     * New entities are written first, grouped by table and day, command updates are applied after them
+     */
+    @Override
+    public void storeAll(List<HazelcastEntity> entities) {
+        Map<String, List<HazelcastEntity>> notificationsByDay = new TreeMap<>();
+        Map<String, List<HazelcastEntity>> commandsByDay = new TreeMap<>();
+        // the latest update of a command wins, so a batch never inserts two updated rows of one command
+        Map<Long, DeviceCommand> updates = new LinkedHashMap<>();
+        for (HazelcastEntity entity : entities) {
+            if (entity instanceof DeviceNotification) {
+                notificationsByDay.computeIfAbsent(day(entity.getTimestamp()), k -> new ArrayList<>()).add(entity);
+            } else if (Boolean.TRUE.equals(((DeviceCommand) entity).getIsUpdated())) {
+                updates.put(entity.getId(), (DeviceCommand) entity);
+            } else {
+                commandsByDay.computeIfAbsent(day(entity.getTimestamp()), k -> new ArrayList<>()).add(entity);
+            }
+        }
+        notificationsByDay.forEach((day, rows) -> insert(NOTIFICATION_TABLE, NOTIFICATION_COLUMNS, INSERT_NOTIFICATION, day, rows));
+        commandsByDay.forEach((day, rows) -> insert(COMMAND_TABLE, COMMAND_COLUMNS, INSERT_COMMAND, day, rows));
+        if (!updates.isEmpty()) {
+            update(new ArrayList<>(updates.values()));
+        }
+    }
+
+    @Override
+    public <T extends HazelcastEntity> List<T> find(Collection<String> devices, HistoryFilter filter,
+                                                    Map<String, HistoryCursor> bounds, HistoryCursor otherBound,
+                                                    int take, Class<T> entityClass) {
+        final boolean commands = DeviceCommand.class.equals(entityClass);
+        final StringBuilder sql = new StringBuilder("SELECT ")
+                .append(commands ? COMMAND_COLUMNS : NOTIFICATION_COLUMNS)
+                .append(" FROM ").append(commands ? COMMAND_TABLE : NOTIFICATION_TABLE)
+                .append(commands ? " c WHERE " + NOT_REPLACED : " WHERE 1 = 1");
+        final MapSqlParameterSource parameters = new MapSqlParameterSource();
+        if (devices != null && !devices.isEmpty()) {
+            sql.append(" AND device_guid IN (:devices)");
+            parameters.addValue("devices", devices);
+        }
+        appendBounds(sql, parameters, bounds, otherBound);
+        appendFilter(sql, parameters, filter, commands);
+        sql.append(" ORDER BY timestamp DESC, id DESC");
+        if (take > 0) {
+            sql.append(" LIMIT ").append(take);
+        }
+        final List<T> result = new ArrayList<>();
+        for (HazelcastEntity entity : namedJdbcTemplate.query(sql.toString(), parameters, mapper(commands))) {
+            result.add(entityClass.cast(entity));
+        }
+        return result;
+    }
+
+    /**
+     * On PostgreSQL intervals are reduced in SQL: first and last entities are selected with DISTINCT ON, numeric
+     * aggregates are grouped by interval. On other databases entities are read oldest first into {@link HistoryGrid}.
+     */
+    @Override
+    public <T extends HazelcastEntity> List<Object> aggregate(String device, HistoryFilter filter, long until,
+                                                              long interval, GridAggregate aggregate,
+                                                              String parameterPath, Class<T> entityClass) {
+        final boolean commands = DeviceCommand.class.equals(entityClass);
+        final StringBuilder where = new StringBuilder(commands ? " c WHERE " + NOT_REPLACED : " WHERE 1 = 1")
+                .append(" AND device_guid = :device AND timestamp <= :until");
+        final MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("device", device)
+                .addValue("until", new Timestamp(until))
+                .addValue("interval", interval);
+        appendFilter(where, parameters, filter, commands);
+        final String table = commands ? COMMAND_TABLE : NOTIFICATION_TABLE;
+        final String columns = commands ? COMMAND_COLUMNS : NOTIFICATION_COLUMNS;
+        if (!postgres) {
+            final HistoryGrid grid = new HistoryGrid(interval, aggregate, parameterPath);
+            final RowMapper<? extends HazelcastEntity> mapper = mapper(commands);
+            namedJdbcTemplate.query("SELECT " + columns + " FROM " + table + where + " ORDER BY timestamp, id",
+                    parameters, (RowCallbackHandler) rs -> grid.accept(mapper.mapRow(rs, 0)));
+            return grid.getResult();
+        }
+        if (!aggregate.isNumeric()) {
+            final String order = aggregate == GridAggregate.FIRST ? "" : " DESC";
+            final String sql = "SELECT DISTINCT ON (bucket) * FROM (SELECT " + columns + ", " + BUCKET + " AS bucket " +
+                               "FROM " + table + where + ") s ORDER BY bucket, timestamp" + order + ", id" + order;
+            return new ArrayList<>(namedJdbcTemplate.query(sql, parameters, mapper(commands)));
+        }
+        final String value;
+        if (parameterPath == null || parameterPath.isEmpty()) {
+            // count of all entities, other aggregates have nothing to reduce
+            value = aggregate == GridAggregate.COUNT ? "1.0" : "CAST(NULL AS DOUBLE PRECISION)";
+        } else {
+            value = "CASE WHEN jsonb_typeof(CAST(parameters AS JSONB) #> CAST(:path AS TEXT[])) = 'number' " +
+                    "THEN CAST(CAST(parameters AS JSONB) #>> CAST(:path AS TEXT[]) AS DOUBLE PRECISION) END";
+            parameters.addValue("path", textArray(parameterPath.split("\\.")));
+        }
+        final String sql = "SELECT bucket, count(value) AS count, min(value) AS min, max(value) AS max, " +
+                           "avg(value) AS avg FROM (SELECT " + BUCKET + " AS bucket, " + value + " AS value " +
+                           "FROM " + table + where + ") s GROUP BY bucket HAVING count(value) > 0 ORDER BY bucket";
+        return namedJdbcTemplate.query(sql, parameters, (rs, rowNum) -> {
+            Double result;
+            switch (aggregate) {
+                case MIN:
+                    result = rs.getDouble("min");
+                    break;
+                case MAX:
+                    result = rs.getDouble("max");
+                    break;
+                case AVG:
+                    result = rs.getDouble("avg");
+                    break;
+                default:
+                    result = null;
+            }
+            return new HistoryGridPoint(new Date(rs.getLong("bucket") * interval), rs.getLong("count"), result);
+        });
+    }
+
+    private static void appendFilter(StringBuilder sql, MapSqlParameterSource parameters, HistoryFilter filter,
+                                     boolean commands) {
+        if (filter.getTimestamp() != null) {
+            sql.append(" AND timestamp > :since");
+            parameters.addValue("since", new Timestamp(filter.getTimestamp().getTime()));
+        }
+        if (filter.getCursor() != null) {
+            sql.append(" AND ").append(precedes(parameters, "cursor", filter.getCursor()));
+        }
+        if (filter.getId() != null) {
+            sql.append(" AND id = :id");
+            parameters.addValue("id", filter.getId());
+        }
+        if (filter.getNames() != null) {
+            sql.append(commands ? " AND command IN (:names)" : " AND notification IN (:names)");
+            parameters.addValue("names", filter.getNames());
+        }
+        if (commands && filter.getStatus() != null) {
+            sql.append(" AND status = :status");
+            parameters.addValue("status", filter.getStatus());
+        }
+        if (commands && filter.getHasResponse() != null) {
+            sql.append(" AND is_updated = :isUpdated");
+            parameters.addValue("isUpdated", filter.getHasResponse());
+        }
+    }
+
+    /**
+     * Every device with history in memory gets its own keyset bound, other devices share one bound
+     */
+    private static void appendBounds(StringBuilder sql, MapSqlParameterSource parameters,
+                                     Map<String, HistoryCursor> bounds, HistoryCursor otherBound) {
+        if (bounds.isEmpty()) {
+            if (otherBound != null) {
+                sql.append(" AND ").append(precedes(parameters, "otherBound", otherBound));
+            }
+            return;
+        }
+        final List<String> conditions = new ArrayList<>();
+        int i = 0;
+        for (Map.Entry<String, HistoryCursor> bound : bounds.entrySet()) {
+            conditions.add("device_guid = :boundDevice" + i + " AND " + precedes(parameters, "bound" + i, bound.getValue()));
+            parameters.addValue("boundDevice" + i, bound.getKey());
+            i++;
+        }
+        parameters.addValue("boundDevices", bounds.keySet());
+        conditions.add(otherBound != null
+                ? "device_guid NOT IN (:boundDevices) AND " + precedes(parameters, "otherBound", otherBound)
+                : "device_guid NOT IN (:boundDevices)");
+        sql.append(" AND (").append(String.join(" OR ", conditions)).append(")");
+    }
+
+    private static String precedes(MapSqlParameterSource parameters, String name, HistoryCursor cursor) {
+        parameters.addValue(name + "Timestamp", new Timestamp(cursor.getTimestamp()));
+        parameters.addValue(name + "Id", cursor.getId());
+        return "(timestamp < :" + name + "Timestamp OR timestamp = :" + name + "Timestamp AND id < :" + name + "Id)";
+    }
+
+    private void insert(String table, String columns, String insertSql, String day, List<HazelcastEntity> rows) {
+        if (!postgres) {
+            jdbcTemplate.batchUpdate(insertSql, rows, rows.size(), (ps, entity) -> {
+                Object[] values = values(entity);
+                for (int i = 0; i < values.length; i++) {
+                    ps.setObject(i + 1, values[i]);
+                }
+            });
+            return;
+        }
+        final String partition = table + "_" + day;
+        if (!partitions.contains(partition)) {
+            jdbcTemplate.queryForList(CREATE_PARTITION, table, day);
+            partitions.add(partition);
+        }
+        final StringBuilder copy = new StringBuilder();
+        for (HazelcastEntity entity : rows) {
+            appendCopyRow(copy, values(entity));
+        }
+        final long copied = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            try {
+                return con.unwrap(PGConnection.class).getCopyAPI()
+                        .copyIn("COPY " + partition + " (" + columns + ") FROM STDIN", new StringReader(copy.toString()));
+            } catch (java.io.IOException e) {
+                throw new SQLException("Unable to copy rows to " + partition, e);
+            }
+        });
+        logger.debug("Copied {} rows to {}", copied, partition);
+    }
+
+    private void update(List<DeviceCommand> commands) {
+        int[] updated = jdbcTemplate.batchUpdate(UPDATE_COMMAND, commands, commands.size(), (ps, command) -> {
+            ps.setString(1, command.getCommand());
+            ps.setString(2, json(command.getParameters()));
+            ps.setObject(3, command.getLifetime());
+            ps.setString(4, command.getStatus());
+            ps.setString(5, json(command.getResult()));
+            ps.setBoolean(6, true);
+            ps.setLong(7, command.getId());
+            ps.setString(8, command.getDeviceGuid());
+            // constraint exclusion limits the update to the day partition of the command
+            ps.setTimestamp(9, new Timestamp(command.getTimestamp().getTime()));
+        })[0];
+        Map<String, List<HazelcastEntity>> missingByDay = new TreeMap<>();
+        for (int i = 0; i < commands.size(); i++) {
+            // SUCCESS_NO_INFO count is taken as updated
+            if (updated[i] == 0) {
+                DeviceCommand command = commands.get(i);
+                missingByDay.computeIfAbsent(day(command.getTimestamp()), k -> new ArrayList<>()).add(command);
+            }
+        }
+        missingByDay.forEach((day, rows) -> insert(COMMAND_TABLE, COMMAND_COLUMNS, INSERT_COMMAND, day, rows));
+    }
+
+    private static Object[] values(HazelcastEntity entity) {
+        if (entity instanceof DeviceNotification) {
+            DeviceNotification notification = (DeviceNotification) entity;
+            return new Object[]{notification.getId(), notification.getDeviceGuid(), notification.getNotification(),
+                    new Timestamp(notification.getTimestamp().getTime()), json(notification.getParameters())};
+        }
+        DeviceCommand command = (DeviceCommand) entity;
+        return new Object[]{command.getId(), command.getDeviceGuid(), command.getCommand(),
+                new Timestamp(command.getTimestamp().getTime()), json(command.getParameters()), command.getUserId(),
+                command.getLifetime(), command.getStatus(), json(command.getResult()),
+                Boolean.TRUE.equals(command.getIsUpdated())};
+    }
+
+    /**
+     * Appends row in COPY text format: tab separated values, \N for null, backslash escapes for special characters
+     */
+    static void appendCopyRow(StringBuilder copy, Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                copy.append('\t');
+            }
+            Object value = values[i];
+            if (value == null) {
+                copy.append("\\N");
+                continue;
+            }
+            String text = value instanceof Date ? timestampFormat().format((Date) value) : value.toString();
+            for (int j = 0; j < text.length(); j++) {
+                char c = text.charAt(j);
+                switch (c) {
+                    case '\\':
+                        copy.append("\\\\");
+                        break;
+                    case '\t':
+                        copy.append("\\t");
+                        break;
+                    case '\n':
+                        copy.append("\\n");
+                        break;
+                    case '\r':
+                        copy.append("\\r");
+                        break;
+                    default:
+                        copy.append(c);
+                }
+            }
+        }
+        copy.append('\n');
+    }
+
+    private static DeviceNotification mapNotification(ResultSet rs, int rowNum) throws SQLException {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(rs.getLong("id"));
+        notification.setDeviceGuid(rs.getString("device_guid"));
+        notification.setNotification(rs.getString("notification"));
+        notification.setTimestamp(new Date(rs.getTimestamp("timestamp").getTime()));
+        notification.setParameters(wrapper(rs.getString("parameters")));
+        return notification;
+    }
+
+    private static DeviceCommand mapCommand(ResultSet rs, int rowNum) throws SQLException {
+        DeviceCommand command = new DeviceCommand();
+        command.setId(rs.getLong("id"));
+        command.setDeviceGuid(rs.getString("device_guid"));
+        command.setCommand(rs.getString("command"));
+        command.setTimestamp(new Date(rs.getTimestamp("timestamp").getTime()));
+        command.setParameters(wrapper(rs.getString("parameters")));
+        long userId = rs.getLong("user_id");
+        command.setUserId(rs.wasNull() ? null : userId);
+        int lifetime = rs.getInt("lifetime");
+        command.setLifetime(rs.wasNull() ? null : lifetime);
+        command.setStatus(rs.getString("status"));
+        command.setResult(wrapper(rs.getString("result")));
+        command.setIsUpdated(rs.getBoolean("is_updated"));
+        return command;
+    }
+
+    private static RowMapper<? extends HazelcastEntity> mapper(boolean commands) {
+        return commands ? PostgresHistoryStore::mapCommand : PostgresHistoryStore::mapNotification;
+    }
+
+    /**
+     * @return PostgreSQL array literal of quoted elements, so path names may contain any characters
+     */
+    private static String textArray(String[] elements) {
+        final StringBuilder array = new StringBuilder("{");
+        for (int i = 0; i < elements.length; i++) {
+            if (i > 0) {
+                array.append(',');
+            }
+            array.append('"').append(elements[i].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return array.append('}').toString();
+    }
+
+    private static String json(JsonStringWrapper wrapper) {
+        return wrapper != null ? wrapper.getJsonString() : null;
+    }
+
+    private static JsonStringWrapper wrapper(String json) {
+        return json != null ? new JsonStringWrapper(json) : null;
+    }
+
+    private static String day(Date timestamp) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+        format.setTimeZone(UTC);
+        return format.format(timestamp);
+    }
+
+    private static SimpleDateFormat timestampFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS'+00'");
+        format.setTimeZone(UTC);
+        return format;
+    }
+}
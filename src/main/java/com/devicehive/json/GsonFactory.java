@@ -13,33 +13,51 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy;
 
+/**
+ * Provides Gson instances configured for DeviceHive entities. Instances returned by {@code createGson} pretty print
+ * their output; {@code createCompactGson} instances write json without indentation and are used for websocket
+ * messages and, unless pretty printing is enabled, for REST responses.
+ */
 public class GsonFactory {
 
     private static Map<Policy, Gson> cache = new ConcurrentHashMap<>();
-    private static Gson gson = createGsonBuilder().create();
+    private static Map<Policy, Gson> compactCache = new ConcurrentHashMap<>();
+    private static Gson gson = createGsonBuilder().setPrettyPrinting().create();
+    private static Gson compactGson = createGsonBuilder().create();
 
     public static Gson createGson() {
         return gson;
     }
 
     public static Gson createGson(Policy policy) {
-        Gson gson = cache.get(policy);
-        if (gson != null) {
-            return gson;
-        }
-        gson = createGsonBuilder()
-            .addDeserializationExclusionStrategy(new AnnotatedStrategy(policy))
-            .addSerializationExclusionStrategy(new AnnotatedStrategy(policy))
-            .create();
-        cache.put(policy, gson);
-        return gson;
+        return cache.computeIfAbsent(policy, p -> createPolicyGsonBuilder(p).setPrettyPrinting().create());
+    }
+
+    public static Gson createCompactGson() {
+        return compactGson;
+    }
+
+    public static Gson createCompactGson(Policy policy) {
+        return compactCache.computeIfAbsent(policy, p -> createPolicyGsonBuilder(p).create());
     }
 
+    public static Gson createGson(boolean pretty) {
+        return pretty ? createGson() : createCompactGson();
+    }
+
+    public static Gson createGson(Policy policy, boolean pretty) {
+        return pretty ? createGson(policy) : createCompactGson(policy);
+    }
+
+    private static GsonBuilder createPolicyGsonBuilder(Policy policy) {
+        return createGsonBuilder()
+            .addDeserializationExclusionStrategy(new AnnotatedStrategy(policy))
+            .addSerializationExclusionStrategy(new AnnotatedStrategy(policy));
+    }
 
     private static GsonBuilder createGsonBuilder() {
         return new GsonBuilder()
             .disableHtmlEscaping()
-            .setPrettyPrinting()
             .serializeNulls()
             .registerTypeAdapterFactory(new OptionalAdapterFactory())
             .registerTypeAdapterFactory(new JsonStringWrapperAdapterFactory())
@@ -3,17 +3,27 @@ package com.devicehive.json.adapters;
 
 import com.devicehive.model.JsonStringWrapper;
 import com.google.gson.Gson;
-import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
 import com.google.gson.TypeAdapter;
 import com.google.gson.TypeAdapterFactory;
-import com.google.gson.internal.Streams;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 
+/**
+ * Json parameters are opaque for the server. They are validated and converted to compact form once, when read, by
+ * copying tokens from the input, no json tree is built. When written, tokens of the string are copied to the output;
+ * wrappers created from strings, e.g. loaded from the database, are validated first and marked valid after that.
+ */
 public class JsonStringWrapperAdapterFactory implements TypeAdapterFactory {
+    private static final Logger logger = LoggerFactory.getLogger(JsonStringWrapperAdapterFactory.class);
 
     @Override
     public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
@@ -30,20 +40,139 @@ public class JsonStringWrapperAdapterFactory implements TypeAdapterFactory {
 
     private static class JsonStringWrapperAdapter extends TypeAdapter<JsonStringWrapper> {
 
-
         @Override
         public void write(JsonWriter out, JsonStringWrapper value) throws IOException {
-            if (value == null) {
+            if (value == null || value.getJsonString() == null || value.getJsonString().isEmpty()) {
                 out.nullValue();
-            } else {
-                Streams.write(new JsonParser().parse(value.getJsonString()), out);
+                return;
             }
-
+            if (!value.isValidJson()) {
+                if (!isValid(value.getJsonString())) {
+                    // keep the output valid, malformed json is returned as a string
+                    logger.warn("Malformed json parameters {}", value.getJsonString());
+                    out.value(value.getJsonString());
+                    return;
+                }
+                value.setValidJson(true);
+            }
+            copy(reader(value.getJsonString()), out);
         }
 
         @Override
         public JsonStringWrapper read(JsonReader in) throws IOException {
-            return new JsonStringWrapper(Streams.parse(in).toString());
+            StringWriter json = new StringWriter();
+            JsonWriter writer = new JsonWriter(json);
+            writer.setLenient(true);
+            copy(in, writer);
+            writer.flush();
+            return new JsonStringWrapper(json.toString(), true);
+        }
+
+        private static boolean isValid(String json) {
+            JsonReader reader = reader(json);
+            try {
+                reader.skipValue();
+                return reader.peek() == JsonToken.END_DOCUMENT;
+            } catch (IOException | IllegalStateException e) {
+                return false;
+            }
+        }
+
+        private static JsonReader reader(String json) {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            reader.setLenient(true);
+            return reader;
+        }
+
+        /**
+         * Copies one json value token by token, numbers are copied as they are written in the input
+         */
+        private static void copy(JsonReader in, JsonWriter out) throws IOException {
+            int depth = 0;
+            do {
+                switch (in.peek()) {
+                    case BEGIN_ARRAY:
+                        in.beginArray();
+                        out.beginArray();
+                        depth++;
+                        break;
+                    case END_ARRAY:
+                        in.endArray();
+                        out.endArray();
+                        depth--;
+                        break;
+                    case BEGIN_OBJECT:
+                        in.beginObject();
+                        out.beginObject();
+                        depth++;
+                        break;
+                    case END_OBJECT:
+                        in.endObject();
+                        out.endObject();
+                        depth--;
+                        break;
+                    case NAME:
+                        out.name(in.nextName());
+                        break;
+                    case STRING:
+                        out.value(in.nextString());
+                        break;
+                    case NUMBER:
+                        out.value(new NumberLiteral(in.nextString()));
+                        break;
+                    case BOOLEAN:
+                        out.value(in.nextBoolean());
+                        break;
+                    case NULL:
+                        in.nextNull();
+                        out.nullValue();
+                        break;
+                    default:
+                        throw new JsonSyntaxException("Unexpected end of json parameters");
+                }
+            } while (depth > 0);
+        }
+    }
+
+    /**
+     * Number read from json, written back exactly as it was read, e.g. {@code 2.50} stays {@code 2.50}
+     */
+    private static class NumberLiteral extends Number {
+        private static final long serialVersionUID = -6182307262137442937L;
+
+        private final String literal;
+
+        private NumberLiteral(String literal) {
+            this.literal = literal;
+        }
+
+        @Override
+        public int intValue() {
+            return (int) longValue();
+        }
+
+        @Override
+        public long longValue() {
+            try {
+                return Long.parseLong(literal);
+            } catch (NumberFormatException e) {
+                return (long) doubleValue();
+            }
+        }
+
+        @Override
+        public float floatValue() {
+            return (float) doubleValue();
+        }
+
+        @Override
+        public double doubleValue() {
+            return Double.parseDouble(literal);
+        }
+
+        @Override
+        public String toString() {
+            return literal;
         }
     }
 }
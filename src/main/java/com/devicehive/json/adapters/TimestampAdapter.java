@@ -21,12 +21,16 @@ public class TimestampAdapter extends TypeAdapter<Date> {
         return objectMapper.convertValue(input, Date.class);
     }
 
+    public static String formatTimestamp(Date timestamp) {
+        return FORMATTER.print(timestamp.getTime());
+    }
+
     @Override
     public void write(JsonWriter out, Date timestamp) throws IOException {
         if (timestamp == null) {
             out.nullValue();
         } else {
-            out.value(FORMATTER.print(timestamp.getTime()));
+            out.value(formatTimestamp(timestamp));
         }
     }
 
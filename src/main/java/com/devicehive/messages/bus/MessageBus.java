@@ -10,6 +10,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Created by tmatvienko on 12/30/14.
  */
@@ -38,4 +41,21 @@ public class MessageBus {
         }
     }
 
+    /**
+     * Publishes notifications with one batched send, other entities are published one by one
+     */
+    public <T extends HazelcastEntity> void publishAll(List<T> hzEntities) {
+        List<DeviceNotification> notifications = new ArrayList<>(hzEntities.size());
+        for (T hzEntity : hzEntities) {
+            if (hzEntity instanceof DeviceNotification) {
+                notifications.add((DeviceNotification) hzEntity);
+            } else {
+                publish(hzEntity);
+            }
+        }
+        if (!notifications.isEmpty()) {
+            kafkaProducer.produceDeviceNotificationMsgs(notifications, Constants.NOTIFICATION_TOPIC_NAME);
+        }
+    }
+
 }
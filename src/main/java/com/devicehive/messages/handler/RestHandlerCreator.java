@@ -11,7 +11,6 @@ import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.core.Response;
 import java.util.Collections;
 import java.util.UUID;
-import java.util.concurrent.FutureTask;
 
 public abstract class RestHandlerCreator<T> implements HandlerCreator<T> {
     private static final Logger logger = LoggerFactory.getLogger(RestHandlerCreator.class);
@@ -22,23 +21,21 @@ public abstract class RestHandlerCreator<T> implements HandlerCreator<T> {
         this.asyncResponse = asyncResponse;
     }
 
-    public static RestHandlerCreator<DeviceNotification> createNotificationInsert(final AsyncResponse asyncResponse, final boolean isMany, final FutureTask<Void> waitTask) {
+    public static RestHandlerCreator<DeviceNotification> createNotificationInsert(final AsyncResponse asyncResponse, final boolean isMany) {
         return new RestHandlerCreator<DeviceNotification>(asyncResponse) {
             @Override
             protected Response createResponse(DeviceNotification message) {
                 logger.debug("NotificationInsert created for message: {}", message);
-                waitTask.cancel(false);
                 return ResponseFactory.response(Response.Status.OK, Collections.singletonList(message), JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT);
             }
         };
     }
 
-    public static RestHandlerCreator<DeviceCommand> createCommandInsert(final AsyncResponse asyncResponse, final boolean isMany, final FutureTask<Void> waitTask) {
+    public static RestHandlerCreator<DeviceCommand> createCommandInsert(final AsyncResponse asyncResponse, final boolean isMany) {
         return new RestHandlerCreator<DeviceCommand>(asyncResponse) {
             @Override
             protected Response createResponse(DeviceCommand message) {
                 logger.debug("CommandInsert created for message: {}", message);
-                waitTask.cancel(false);
                 return ResponseFactory.response(Response.Status.OK, Collections.singletonList(message), JsonPolicyDef.Policy.COMMAND_LISTED);
             }
         };
@@ -2,20 +2,25 @@ package com.devicehive.messages.handler;
 
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.SpecialNotifications;
 import com.devicehive.util.ApplicationContextHolder;
-import com.devicehive.util.ServerResponsesFactory;
 import com.devicehive.websockets.HiveWebsocketSessionState;
 import com.devicehive.websockets.util.AsyncMessageSupplier;
-import com.google.gson.JsonObject;
+import com.devicehive.websockets.util.FanOutMessageSerializer;
+import com.devicehive.websockets.util.OutgoingMessage;
+import com.google.common.collect.ImmutableSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.socket.WebSocketSession;
 
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.locks.Lock;
 
 public abstract class WebsocketHandlerCreator<T> implements HandlerCreator<T> {
     private static final Logger logger = LoggerFactory.getLogger(WebsocketHandlerCreator.class);
+    private static final Set<String> STATUS_NOTIFICATIONS = ImmutableSet.of(SpecialNotifications.DEVICE_STATUS,
+                                                                            SpecialNotifications.DEVICE_UPDATE);
 
     private final WebSocketSession session;
     private final Lock lock;
@@ -31,8 +36,8 @@ public abstract class WebsocketHandlerCreator<T> implements HandlerCreator<T> {
                                                           HiveWebsocketSessionState.get(session)
                                                               .getCommandSubscriptionsLock()) {
             @Override
-            protected JsonObject createJsonObject(DeviceCommand message, UUID subId) {
-                return ServerResponsesFactory.createCommandInsertMessage(message, subId);
+            protected String createPayload(DeviceCommand message, UUID subId) {
+                return FanOutMessageSerializer.commandInsert(message, subId);
             }
         };
     }
@@ -42,8 +47,8 @@ public abstract class WebsocketHandlerCreator<T> implements HandlerCreator<T> {
                                                           HiveWebsocketSessionState.get(session)
                                                               .getCommandUpdateSubscriptionsLock()) {
             @Override
-            protected JsonObject createJsonObject(DeviceCommand message, UUID subId) {
-                return ServerResponsesFactory.createCommandUpdateMessage(message);
+            protected String createPayload(DeviceCommand message, UUID subId) {
+                return FanOutMessageSerializer.commandUpdate(message);
             }
         };
     }
@@ -53,13 +58,27 @@ public abstract class WebsocketHandlerCreator<T> implements HandlerCreator<T> {
                                                                HiveWebsocketSessionState.get(session)
                                                                    .getNotificationSubscriptionsLock()) {
             @Override
-            protected JsonObject createJsonObject(DeviceNotification message, UUID subId) {
-                return ServerResponsesFactory.createNotificationInsertMessage(message, subId);
+            protected String createPayload(DeviceNotification message, UUID subId) {
+                return FanOutMessageSerializer.notificationInsert(message, subId);
+            }
+
+            @Override
+            protected String getCoalesceKey(DeviceNotification message, UUID subId) {
+                return STATUS_NOTIFICATIONS.contains(message.getNotification())
+                        ? subId + ":" + message.getDeviceGuid() + ":" + message.getNotification()
+                        : null;
             }
         };
     }
 
-    protected abstract JsonObject createJsonObject(T message, UUID subId);
+    protected abstract String createPayload(T message, UUID subId);
+
+    /**
+     * Status-like messages of the same device may be coalesced in session queue, see {@link OutgoingMessage}
+     */
+    protected String getCoalesceKey(T message, UUID subId) {
+        return null;
+    }
 
     @Override
     public Runnable getHandler(final T message, final UUID subId) {
@@ -69,11 +88,11 @@ public abstract class WebsocketHandlerCreator<T> implements HandlerCreator<T> {
             if (!session.isOpen()) {
                 return;
             }
-            JsonObject json = createJsonObject(message, subId);
+            OutgoingMessage outgoingMessage = OutgoingMessage.of(createPayload(message, subId), getCoalesceKey(message, subId));
             try {
                 lock.lock();
                 logger.debug("Add messages to queue process for session " + session.getId());
-                HiveWebsocketSessionState.get(session).getQueue().add(json);
+                HiveWebsocketSessionState.get(session).getQueue().offer(outgoingMessage);
             } finally {
                 lock.unlock();
             }
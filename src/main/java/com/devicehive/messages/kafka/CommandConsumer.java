@@ -1,7 +1,6 @@
 package com.devicehive.messages.kafka;
 
 import com.devicehive.application.DeviceHiveApplication;
-import com.devicehive.configuration.Constants;
 import com.devicehive.messages.subscriptions.CommandSubscription;
 import com.devicehive.messages.subscriptions.SubscriptionManager;
 import com.devicehive.model.DeviceCommand;
@@ -11,9 +10,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
-import java.util.HashSet;
-import java.util.Set;
-import java.util.UUID;
+import java.util.Collection;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -34,38 +31,13 @@ public class CommandConsumer extends AbstractConsumer<DeviceCommand> {
     public void submitMessage(final DeviceCommand message) {
         logger.debug("Device command was submitted: {}", message);
 
-        Set<UUID> subscribersIds = new HashSet<>();
-        Set<CommandSubscription> subs = subscriptionManager.getCommandSubscriptionStorage()
-                .getByDeviceGuid(message.getDeviceGuid());
+        Collection<CommandSubscription> subs = subscriptionManager.getCommandSubscriptionStorage()
+                .getMatching(message.getDeviceGuid(), message.getCommand());
         for (CommandSubscription subscription : subs) {
-            if (subscription.getCommandNames() != null &&
-                    !subscription.getCommandNames().contains(message.getCommand())) {
-                logger.debug("Skipping subscriber {}, Command name {} is not in subscription list {}",
-                        subscription.getPrincipal().getName(), message.getCommand(), subscription.getCommandNames());
-                continue;
-            }
-            boolean hasAccess = deviceService.hasAccessTo(subscription.getPrincipal(), message.getDeviceGuid());
-            if (hasAccess) {
+            if (subscription.hasAccessTo(message.getDeviceGuid(), deviceService::hasAccessTo)) {
                 logger.debug("Sending command {} to user {}..", message, subscription.getPrincipal().getName());
                 mes.submit(subscription.getHandlerCreator().getHandler(message, subscription.getSubscriptionId()));
             }
-            subscribersIds.add(subscription.getSubscriptionId());
-        }
-
-        Set<CommandSubscription> subsForAll = (subscriptionManager.getCommandSubscriptionStorage()
-                .getByDeviceGuid(Constants.NULL_SUBSTITUTE));
-
-        for (CommandSubscription subscription : subsForAll) {
-            if (subscription.getCommandNames() != null &&
-                    !subscription.getCommandNames().contains(message.getCommand())) {
-                continue;
-            }
-            if (!subscribersIds.contains(subscription.getSubscriptionId())) {
-                boolean hasAccess = deviceService.hasAccessTo(subscription.getPrincipal(), message.getDeviceGuid());
-                if (hasAccess) {
-                    mes.submit(subscription.getHandlerCreator().getHandler(message, subscription.getSubscriptionId()));
-                }
-            }
         }
     }
 }
@@ -7,15 +7,25 @@ import kafka.javaapi.producer.Producer;
 import kafka.producer.KeyedMessage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Created by tmatvienko on 12/24/14.
  */
 @Profile("!test")
 @Component
-public class DefaultKafkaProducer implements KafkaProducer {
+public class DefaultKafkaProducer implements KafkaProducer, PublicMetrics {
 
     @Autowired
     @Qualifier(KafkaConfig.NOTIFICATION_PRODUCER)
@@ -25,19 +35,112 @@ public class DefaultKafkaProducer implements KafkaProducer {
     @Qualifier(KafkaConfig.COMMAND_PRODUCER)
     private Producer<String, DeviceCommand> commandProducer;
 
+    @Value("${kafka.producer.async:true}")
+    private boolean async;
+
+    @Value("${kafka.producer.queue.capacity:65536}")
+    private int queueCapacity;
+
+    @Value("${kafka.producer.batch.size:500}")
+    private int batchSize;
+
+    @Value("${kafka.producer.linger.ms:5}")
+    private long lingerMs;
+
+    @Value("${kafka.producer.enqueue.timeout.ms:100}")
+    private long enqueueTimeoutMs;
+
+    @Value("${kafka.producer.acks:1}")
+    private int requiredAcks;
+
+    @Value("${kafka.producer.retries:3}")
+    private int retries;
+
+    @Value("${kafka.producer.retry.backoff.ms:100}")
+    private long retryBackoffMs;
+
+    private KafkaPublishPipeline<DeviceNotification> notificationPipeline;
+    private KafkaPublishPipeline<DeviceCommand> commandPipeline;
+
+    @PostConstruct
+    public void init() {
+        if (async) {
+            // fire-and-forget sends are not retried
+            final int maxRetries = requiredAcks != 0 ? retries : 0;
+            notificationPipeline = new KafkaPublishPipeline<>(KafkaConfig.NOTIFICATION_PRODUCER, notificationProducer,
+                    queueCapacity, batchSize, lingerMs, enqueueTimeoutMs, maxRetries, retryBackoffMs);
+            commandPipeline = new KafkaPublishPipeline<>(KafkaConfig.COMMAND_PRODUCER, commandProducer,
+                    queueCapacity, batchSize, lingerMs, enqueueTimeoutMs, maxRetries, retryBackoffMs);
+            notificationPipeline.start();
+            commandPipeline.start();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (async) {
+            notificationPipeline.stop();
+            commandPipeline.stop();
+        }
+    }
+
     @Override
     public void produceDeviceNotificationMsg(DeviceNotification message, String deviceNotificationTopicName) {
-        notificationProducer.send(new KeyedMessage<>(deviceNotificationTopicName, message.getDeviceGuid(), message));
+        if (async) {
+            notificationPipeline.publish(deviceNotificationTopicName, message.getDeviceGuid(), message);
+        } else {
+            notificationProducer.send(new KeyedMessage<>(deviceNotificationTopicName, message.getDeviceGuid(), message));
+        }
+    }
+
+    @Override
+    public void produceDeviceNotificationMsgs(List<DeviceNotification> messages, String deviceNotificationTopicName) {
+        List<KeyedMessage<String, DeviceNotification>> keyedMessages = new ArrayList<>(messages.size());
+        for (DeviceNotification message : messages) {
+            keyedMessages.add(new KeyedMessage<>(deviceNotificationTopicName, message.getDeviceGuid(), message));
+        }
+        if (async) {
+            notificationPipeline.publishAll(keyedMessages);
+        } else {
+            notificationProducer.send(keyedMessages);
+        }
     }
 
     @Override
     public void produceDeviceCommandMsg(DeviceCommand message, String deviceCommandTopicName) {
-        commandProducer.send(new KeyedMessage<>(deviceCommandTopicName, message.getDeviceGuid(), message));
+        if (async) {
+            commandPipeline.publish(deviceCommandTopicName, message.getDeviceGuid(), message);
+        } else {
+            commandProducer.send(new KeyedMessage<>(deviceCommandTopicName, message.getDeviceGuid(), message));
+        }
     }
 
     @Override
     public void produceDeviceCommandUpdateMsg(DeviceCommand message, String deviceCommandTopicName) {
-        commandProducer.send(new KeyedMessage<>(deviceCommandTopicName, message.getDeviceGuid(), message));
+        produceDeviceCommandMsg(message, deviceCommandTopicName);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        if (!async) {
+            return Collections.emptyList();
+        }
+        List<Metric<?>> metrics = new ArrayList<>();
+        addMetrics(metrics, notificationPipeline);
+        addMetrics(metrics, commandPipeline);
+        return metrics;
+    }
+
+    private static void addMetrics(List<Metric<?>> metrics, KafkaPublishPipeline<?> pipeline) {
+        String prefix = "kafka." + pipeline.getName() + ".";
+        metrics.add(new Metric<>(prefix + "queueDepth", pipeline.getQueueDepth()));
+        metrics.add(new Metric<>(prefix + "published", pipeline.getPublished()));
+        metrics.add(new Metric<>(prefix + "failed", pipeline.getFailed()));
+        metrics.add(new Metric<>(prefix + "retried", pipeline.getRetried()));
+        metrics.add(new Metric<>(prefix + "rejected", pipeline.getRejected()));
+        metrics.add(new Metric<>(prefix + "batches", pipeline.getBatches()));
+        metrics.add(new Metric<>(prefix + "latency.avg", pipeline.getAverageLatencyMs()));
+        metrics.add(new Metric<>(prefix + "latency.max", pipeline.getMaxLatencyMs()));
     }
 
 }
@@ -3,10 +3,14 @@ package com.devicehive.messages.kafka;
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.DeviceNotification;
 
+import java.util.List;
+
 public interface KafkaProducer {
 
     void produceDeviceNotificationMsg(DeviceNotification message, String topicName);
 
+    void produceDeviceNotificationMsgs(List<DeviceNotification> messages, String topicName);
+
     void produceDeviceCommandMsg(DeviceCommand message, String topicName);
 
     void produceDeviceCommandUpdateMsg(DeviceCommand message, String topicName);
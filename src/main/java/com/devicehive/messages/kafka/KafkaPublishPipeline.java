@@ -0,0 +1,261 @@
+package com.devicehive.messages.kafka;
+
+import com.devicehive.configuration.Messages;
+import com.devicehive.exceptions.HiveException;
+import kafka.javaapi.producer.Producer;
+import kafka.producer.KeyedMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+
+/**
+ * Asynchronous publishing pipeline in front of kafka producer. Messages are put into bounded queue and sent by
+ * dedicated thread in batches of up to {@code batchSize} messages, waiting at most {@code lingerMs} for the batch
+ * to fill up, so request threads never wait for broker round trip. Capacity is taken by messages until they are
+ * sent; a list of messages is accepted only as a whole. If there is no room for the messages for
+ * {@code enqueueTimeoutMs}, publishing fails with 503 so that clients back off. A batch which failed to send is
+ * retried up to {@code maxRetries} times with exponential backoff starting at {@code retryBackoffMs} before it is
+ * dropped.
+ */
+public class KafkaPublishPipeline<V> {
+    private static final Logger logger = LoggerFactory.getLogger(KafkaPublishPipeline.class);
+
+    private final String name;
+    private final Producer<String, V> producer;
+    private final BlockingQueue<Entry<V>> queue = new LinkedBlockingQueue<>();
+    // free capacity, fair, so a large list is not starved by single messages
+    private final Semaphore slots;
+    private final int batchSize;
+    private final long lingerMs;
+    private final long enqueueTimeoutMs;
+    private final int maxRetries;
+    private final long retryBackoffMs;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread sender;
+
+    public KafkaPublishPipeline(String name, Producer<String, V> producer, int capacity, int batchSize,
+                                long lingerMs, long enqueueTimeoutMs) {
+        this(name, producer, capacity, batchSize, lingerMs, enqueueTimeoutMs, 0, 0);
+    }
+
+    public KafkaPublishPipeline(String name, Producer<String, V> producer, int capacity, int batchSize,
+                                long lingerMs, long enqueueTimeoutMs, int maxRetries, long retryBackoffMs) {
+        this.name = name;
+        this.producer = producer;
+        this.slots = new Semaphore(capacity, true);
+        this.batchSize = batchSize;
+        this.lingerMs = lingerMs;
+        this.enqueueTimeoutMs = enqueueTimeoutMs;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMs = retryBackoffMs;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        sender = new Thread(this::sendLoop, name + "-publisher");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Stops accepting new messages and waits until already queued messages are sent
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            sender.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            logger.warn("{} messages were not published by {} on shutdown", queue.size(), name);
+        }
+    }
+
+    public void publish(String topic, String key, V message) {
+        publishAll(Collections.singletonList(new KeyedMessage<>(topic, key, message)));
+    }
+
+    /**
+     * Enqueues all messages or none of them
+     *
+     * @throws HiveException with 503 status if there is no room for all messages
+     */
+    public void publishAll(List<KeyedMessage<String, V>> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        boolean accepted;
+        try {
+            accepted = running && slots.tryAcquire(messages.size(), enqueueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+        if (!accepted) {
+            rejected.addAndGet(messages.size());
+            logger.warn("Publishing queue {} is full, {} messages to topic {} rejected", name, messages.size(),
+                    messages.get(0).topic());
+            throw new HiveException(Messages.MESSAGE_QUEUE_IS_FULL, SC_SERVICE_UNAVAILABLE);
+        }
+        long now = System.nanoTime();
+        List<Entry<V>> entries = new ArrayList<>(messages.size());
+        for (KeyedMessage<String, V> message : messages) {
+            entries.add(new Entry<>(message, now));
+        }
+        queue.addAll(entries);
+    }
+
+    private void sendLoop() {
+        List<Entry<V>> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry<V> first = queue.poll(lingerMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Entry<V> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                send(batch);
+            } catch (InterruptedException e) {
+                logger.warn("Publisher {} interrupted", name);
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                slots.release(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    private void send(List<Entry<V>> batch) {
+        List<KeyedMessage<String, V>> messages = new ArrayList<>(batch.size());
+        for (Entry<V> entry : batch) {
+            messages.add(entry.message);
+        }
+        long backoff = retryBackoffMs;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                producer.send(messages);
+                published.addAndGet(batch.size());
+                break;
+            } catch (Exception e) {
+                if (attempt >= maxRetries) {
+                    failed.addAndGet(batch.size());
+                    logger.error("Failed to publish batch of {} messages by {}", batch.size(), name, e);
+                    break;
+                }
+                logger.warn("Failed to publish batch of {} messages by {}, retrying in {} ms", batch.size(), name,
+                        backoff, e);
+            }
+            retried.incrementAndGet();
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                failed.addAndGet(batch.size());
+                logger.error("Publisher {} interrupted, batch of {} messages dropped", name, batch.size());
+                // the send loop stops on the next poll
+                Thread.currentThread().interrupt();
+                break;
+            }
+            backoff *= 2;
+        }
+        batches.incrementAndGet();
+        long now = System.nanoTime();
+        for (Entry<V> entry : batch) {
+            long latency = now - entry.enqueuedAt;
+            totalLatencyNanos.addAndGet(latency);
+            long max = maxLatencyNanos.get();
+            while (latency > max && !maxLatencyNanos.compareAndSet(max, latency)) {
+                max = maxLatencyNanos.get();
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getRetried() {
+        return retried.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * @return average time between enqueueing and completion of send, in milliseconds
+     */
+    public double getAverageLatencyMs() {
+        long count = published.get() + failed.get();
+        return count == 0 ? 0.0 : totalLatencyNanos.get() / (count * 1e6);
+    }
+
+    public double getMaxLatencyMs() {
+        return maxLatencyNanos.get() / 1e6;
+    }
+
+    private static class Entry<V> {
+        private final KeyedMessage<String, V> message;
+        private final long enqueuedAt;
+
+        private Entry(KeyedMessage<String, V> message, long enqueuedAt) {
+            this.message = message;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
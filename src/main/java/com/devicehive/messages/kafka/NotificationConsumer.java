@@ -1,7 +1,6 @@
 package com.devicehive.messages.kafka;
 
 import com.devicehive.application.DeviceHiveApplication;
-import com.devicehive.configuration.Constants;
 import com.devicehive.messages.subscriptions.NotificationSubscription;
 import com.devicehive.messages.subscriptions.SubscriptionManager;
 import com.devicehive.model.DeviceNotification;
@@ -11,9 +10,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
-import java.util.HashSet;
-import java.util.Set;
-import java.util.UUID;
+import java.util.Collection;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -34,39 +31,11 @@ public class NotificationConsumer extends AbstractConsumer<DeviceNotification>{
 
     @Override
     public void submitMessage(final DeviceNotification message) {
-        Set<UUID> subscribersIds = new HashSet<>();
-        Set<NotificationSubscription> subs =
-                subscriptionManager.getNotificationSubscriptionStorage().getByDeviceGuid(
-                        message.getDeviceGuid());
+        Collection<NotificationSubscription> subs = subscriptionManager.getNotificationSubscriptionStorage()
+                .getMatching(message.getDeviceGuid(), message.getNotification());
         for (NotificationSubscription subscription : subs) {
-            if (subscription.getNotificationNames() != null
-                    && !subscription.getNotificationNames().contains(message.getNotification())) {
-                continue;
-            }
-            boolean hasAccess = deviceService.hasAccessTo(subscription.getPrincipal(), message.getDeviceGuid());
-            if (hasAccess) {
-                mes.submit(
-                        subscription.getHandlerCreator().getHandler(message, subscription.getSubscriptionId()));
-            }
-            subscribersIds.add(subscription.getSubscriptionId());
-        }
-
-        Set<NotificationSubscription> subsForAll = (subscriptionManager.getNotificationSubscriptionStorage()
-                .getByDeviceGuid(Constants.NULL_SUBSTITUTE));
-
-        for (NotificationSubscription subscription : subsForAll) {
-            if (subscription.getNotificationNames() != null
-                    && !subscription.getNotificationNames().contains(message.getNotification())) {
-                continue;
-            }
-            if (!subscribersIds.contains(subscription.getSubscriptionId())) {
-                boolean
-                        hasAccess =
-                        deviceService.hasAccessTo(subscription.getPrincipal(), message.getDeviceGuid());
-                if (hasAccess) {
-                    mes.submit(subscription.getHandlerCreator()
-                            .getHandler(message, subscription.getSubscriptionId()));
-                }
+            if (subscription.hasAccessTo(message.getDeviceGuid(), deviceService::hasAccessTo)) {
+                mes.submit(subscription.getHandlerCreator().getHandler(message, subscription.getSubscriptionId()));
             }
         }
     }
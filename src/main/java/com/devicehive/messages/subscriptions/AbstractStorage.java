@@ -39,6 +39,7 @@ public class AbstractStorage<E, T extends Subscription<E, ?>> {
         set.add(subscription);
 
         byPair.put(ImmutablePair.of(subscription.getEventSource(), subscription.getSubscriptionId()), subscription);
+        onInsert(subscription);
         return true;
     }
 
@@ -85,10 +86,27 @@ public class AbstractStorage<E, T extends Subscription<E, ?>> {
         if (subs.isEmpty()) {
             bySubscriptionId.remove(sub.getSubscriptionId());
         }
+        onRemove(sub);
+    }
+
+    public Collection<T> getAll() {
+        return Collections.unmodifiableCollection(byPair.values());
+    }
+
+    /**
+     * Hook for additional indexes, called under storage lock after subscription is inserted
+     */
+    protected void onInsert(T subscription) {
+    }
+
+    /**
+     * Hook for additional indexes, called under storage lock after subscription is removed
+     */
+    protected void onRemove(T subscription) {
     }
 
     protected synchronized void removeByEventSource(E eventSource) {
-        Set<T> subs = byEventSource.remove(eventSource);
+        Set<T> subs = byEventSource.get(eventSource);
         if (subs == null) {
             return;
         }
@@ -7,37 +7,23 @@ import com.devicehive.model.DeviceCommand;
 
 import java.util.UUID;
 
-public class CommandSubscription extends Subscription<String, DeviceCommand> {
-
-    private final HivePrincipal principal;
-    private final String commandNames;
+public class CommandSubscription extends DeviceSubscription<DeviceCommand> {
 
     public CommandSubscription(HivePrincipal principal, String guid, UUID subscriptionId,
                                String commandNames,
                                HandlerCreator<DeviceCommand> handlerCreator) {
-        super(guid, subscriptionId, handlerCreator);
-        this.principal = principal;
-        this.commandNames = commandNames;
-    }
-
-    public String getDeviceGuid() {
-        return getEventSource();
-    }
-
-    public HivePrincipal getPrincipal() {
-        return principal;
+        super(principal, guid, subscriptionId, commandNames, handlerCreator);
     }
 
     public String getCommandNames() {
-        return commandNames;
+        return getNames();
     }
 
     @Override
     public String toString() {
         return "CommandSubscription{" +
-                "principal=" + principal +
-                ", commandNames='" + commandNames + '\'' +
+                "principal=" + getPrincipal() +
+                ", commandNames='" + getCommandNames() + '\'' +
                 "} " + super.toString();
     }
 }
-
@@ -0,0 +1,92 @@
+package com.devicehive.messages.subscriptions;
+
+
+import com.devicehive.auth.HivePrincipal;
+import com.devicehive.configuration.Constants;
+import com.devicehive.messages.handler.HandlerCreator;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiPredicate;
+
+/**
+ * Subscription to messages of device (or of all devices, if device guid is {@link Constants#NULL_SUBSTITUTE})
+ * filtered by message names. Names are parsed once and access decisions are memoized per device,
+ * so routing of a message does not require any parsing or database access.
+ */
+public abstract class DeviceSubscription<T> extends Subscription<String, T> {
+
+    private final HivePrincipal principal;
+    private final String names;
+    private final Set<String> nameSet;
+    private final ConcurrentMap<String, Boolean> accessDecisions = new ConcurrentHashMap<>();
+
+    public DeviceSubscription(HivePrincipal principal, String deviceGuid, UUID subscriptionId, String names,
+                              HandlerCreator<T> handlerCreator) {
+        super(deviceGuid, subscriptionId, handlerCreator);
+        this.principal = principal;
+        this.names = names;
+        this.nameSet = parseNames(names);
+        grantSubscribedDevice();
+    }
+
+    public String getDeviceGuid() {
+        return getEventSource();
+    }
+
+    public HivePrincipal getPrincipal() {
+        return principal;
+    }
+
+    /**
+     * @return names to filter messages by, or null if subscription accepts messages with any name
+     */
+    public Set<String> getNameSet() {
+        return nameSet;
+    }
+
+    String getNames() {
+        return names;
+    }
+
+    /**
+     * Checks whether subscription principal has access to the device. The decision is resolved with
+     * {@code resolver} once and memoized until {@link #invalidateAccessDecisions()} is called.
+     */
+    public boolean hasAccessTo(String deviceGuid, BiPredicate<HivePrincipal, String> resolver) {
+        if (principal != null && principal.getUser() != null && principal.getUser().isAdmin()) {
+            return true;
+        }
+        return accessDecisions.computeIfAbsent(deviceGuid, guid -> resolver.test(principal, guid));
+    }
+
+    public void invalidateAccessDecisions() {
+        accessDecisions.clear();
+    }
+
+    /**
+     * Subscriptions to the particular device are created only after permissions check,
+     * so there is no need to resolve access to it again until permissions are changed
+     */
+    private void grantSubscribedDevice() {
+        if (!Constants.NULL_SUBSTITUTE.equals(getDeviceGuid())) {
+            accessDecisions.put(getDeviceGuid(), Boolean.TRUE);
+        }
+    }
+
+    private static Set<String> parseNames(String names) {
+        if (names == null) {
+            return null;
+        }
+        Set<String> result = new HashSet<>();
+        for (String name : StringUtils.split(names, ',')) {
+            result.add(name.trim());
+        }
+        return Collections.unmodifiableSet(result);
+    }
+}
@@ -0,0 +1,87 @@
+package com.devicehive.messages.subscriptions;
+
+import com.devicehive.configuration.Constants;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Storage of device subscriptions with additional index by (device guid, message name). Subscriptions without
+ * names are stored in the name wildcard bucket (null name), subscriptions for all devices - in the device wildcard
+ * bucket ({@link Constants#NULL_SUBSTITUTE} guid), so message routing touches matching subscriptions only.
+ */
+public class DeviceSubscriptionStorage<T extends DeviceSubscription<?>> extends AbstractStorage<String, T> {
+
+    private final ConcurrentMap<Pair<String, String>, Set<T>> byDeviceAndName = new ConcurrentHashMap<>();
+
+    public Set<T> getByDeviceGuid(String guid) {
+        return get(guid);
+    }
+
+    /**
+     * Returns subscriptions matching message of device with given name, at most one per subscription id
+     */
+    public Collection<T> getMatching(String deviceGuid, String name) {
+        Map<UUID, T> result = new HashMap<>();
+        collect(result, deviceGuid, name);
+        collect(result, deviceGuid, null);
+        collect(result, Constants.NULL_SUBSTITUTE, name);
+        collect(result, Constants.NULL_SUBSTITUTE, null);
+        return result.values();
+    }
+
+    private void collect(Map<UUID, T> result, String deviceGuid, String name) {
+        Set<T> subs = byDeviceAndName.get(ImmutablePair.of(deviceGuid, name));
+        if (subs != null) {
+            for (T sub : subs) {
+                result.putIfAbsent(sub.getSubscriptionId(), sub);
+            }
+        }
+    }
+
+    @Override
+    protected void onInsert(T subscription) {
+        for (Pair<String, String> key : indexKeys(subscription)) {
+            Set<T> set = byDeviceAndName.get(key);
+            if (set == null) {
+                set = Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+                byDeviceAndName.put(key, set);
+            }
+            set.add(subscription);
+        }
+    }
+
+    @Override
+    protected void onRemove(T subscription) {
+        for (Pair<String, String> key : indexKeys(subscription)) {
+            Set<T> set = byDeviceAndName.get(key);
+            if (set != null) {
+                set.remove(subscription);
+                if (set.isEmpty()) {
+                    byDeviceAndName.remove(key);
+                }
+            }
+        }
+    }
+
+    public void invalidateAccessDecisions() {
+        for (T subscription : getAll()) {
+            subscription.invalidateAccessDecisions();
+        }
+    }
+
+    private List<Pair<String, String>> indexKeys(T subscription) {
+        Set<String> names = subscription.getNameSet();
+        if (names == null) {
+            return Collections.singletonList(ImmutablePair.of(subscription.getDeviceGuid(), (String) null));
+        }
+        List<Pair<String, String>> keys = new ArrayList<>(names.size());
+        for (String name : names) {
+            keys.add(ImmutablePair.of(subscription.getDeviceGuid(), name));
+        }
+        return keys;
+    }
+}
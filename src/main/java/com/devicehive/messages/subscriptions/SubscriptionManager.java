@@ -1,10 +1,11 @@
 package com.devicehive.messages.subscriptions;
 
 
+import com.devicehive.auth.AccessChangeListener;
 import org.springframework.stereotype.Component;
 
 @Component
-public class SubscriptionManager {
+public class SubscriptionManager implements AccessChangeListener {
 
     private final CommandSubscriptionStorage commandSubscriptionStorage = new CommandSubscriptionStorage();
     private final CommandUpdateSubscriptionStorage commandUpdateSubscriptionStorage = new CommandUpdateSubscriptionStorage();
@@ -21,4 +22,10 @@ public class SubscriptionManager {
     public NotificationSubscriptionStorage getNotificationSubscriptionStorage() {
         return notificationSubscriptionStorage;
     }
+
+    @Override
+    public void onAccessChange(String reason) {
+        commandSubscriptionStorage.invalidateAccessDecisions();
+        notificationSubscriptionStorage.invalidateAccessDecisions();
+    }
 }
@@ -1,16 +1,13 @@
 package com.devicehive.model;
 
-import com.devicehive.exceptions.HiveException;
 import com.devicehive.json.GsonFactory;
 import com.devicehive.json.strategies.JsonPolicyDef;
-import com.google.gson.*;
+import com.google.gson.Gson;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
-import javax.servlet.http.HttpServletResponse;
 import javax.validation.constraints.NotNull;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Set;
 
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.*;
@@ -65,6 +62,7 @@ public class AccessKeyPermission implements HiveEntity {
     @Version
     @Column(name = "entity_version")
     private long entityVersion;
+    private transient volatile CompiledAccessKeyPermission compiled;
 
     public long getEntityVersion() {
         return entityVersion;
@@ -98,87 +96,44 @@ public class AccessKeyPermission implements HiveEntity {
     public void setDomainArray(String... domains) {
         Gson gson = GsonFactory.createGson();
         this.domains = new JsonStringWrapper(gson.toJsonTree(domains).toString());
+        this.compiled = null;
     }
 
     public void setDomains(JsonStringWrapper domains) {
         this.domains = domains;
+        this.compiled = null;
     }
 
     public Set<String> getDomainsAsSet() {
-        return getJsonAsSet(domains);
+        return getCompiled().getDomains();
     }
 
     public Set<Subnet> getSubnetsAsSet() {
-        if (subnets == null) {
-            return null;
-        }
-        JsonParser parser = new JsonParser();
-        JsonElement elem = parser.parse(subnets.getJsonString());
-        if (elem instanceof JsonNull) {
-            return null;
-        }
-        if (elem instanceof JsonArray) {
-            JsonArray json = (JsonArray) elem;
-            Set<Subnet> result = new HashSet<>(json.size());
-            for (JsonElement current : json) {
-                if (!current.isJsonNull()) {
-                    result.add(new Subnet(current.getAsString()));
-                } else {
-                    result.add(null);
-                }
-            }
-            return result;
-        }
-        throw new HiveException("JSON array expected!", HttpServletResponse.SC_BAD_REQUEST);
+        return getCompiled().getSubnets();
     }
 
     public Set<String> getActionsAsSet() {
-        return getJsonAsSet(actions);
+        return getCompiled().getActions();
     }
 
     public Set<String> getDeviceGuidsAsSet() {
-        return getJsonAsSet(deviceGuids);
+        return getCompiled().getDeviceGuids();
     }
 
     public Set<Long> getNetworkIdsAsSet() {
-        if (networkIds == null) {
-            return null;
-        }
-        JsonParser parser = new JsonParser();
-        JsonElement elem = parser.parse(networkIds.getJsonString());
-        if (elem instanceof JsonNull) {
-            return null;
-        }
-        if (elem instanceof JsonArray) {
-            JsonArray json = (JsonArray) elem;
-            Set<Long> result = new HashSet<>(json.size());
-            for (JsonElement current : json) {
-                result.add(current.getAsLong());
-            }
-            return result;
-        }
-        throw new HiveException("JSON array expected!", HttpServletResponse.SC_BAD_REQUEST);
+        return getCompiled().getNetworkIds();
     }
 
-    private Set<String> getJsonAsSet(JsonStringWrapper wrapper) {
-        if (wrapper == null) {
-            return null;
-        }
-        JsonParser parser = new JsonParser();
-        JsonElement elem = parser.parse(wrapper.getJsonString());
-        if (elem instanceof JsonNull) {
-            return null;
-        }
-
-        if (elem instanceof JsonArray) {
-            JsonArray json = (JsonArray) elem;
-            Set<String> result = new HashSet<>(json.size());
-            for (JsonElement current : json) {
-                result.add(current.getAsString());
-            }
-            return result;
+    /**
+     * @return parsed permission, built on first use and reset whenever any of restrictions is changed
+     */
+    public CompiledAccessKeyPermission getCompiled() {
+        CompiledAccessKeyPermission result = compiled;
+        if (result == null) {
+            result = CompiledAccessKeyPermission.compile(this);
+            compiled = result;
         }
-        throw new HiveException("JSON array expected!", HttpServletResponse.SC_BAD_REQUEST);
+        return result;
     }
 
     public JsonStringWrapper getSubnets() {
@@ -187,11 +142,13 @@ public class AccessKeyPermission implements HiveEntity {
 
     public void setSubnets(JsonStringWrapper subnets) {
         this.subnets = subnets;
+        this.compiled = null;
     }
 
     public void setSubnetsArray(String... subnets) {
         Gson gson = GsonFactory.createGson();
         this.subnets = new JsonStringWrapper(gson.toJsonTree(subnets).toString());
+        this.compiled = null;
     }
 
     public JsonStringWrapper getActions() {
@@ -200,11 +157,13 @@ public class AccessKeyPermission implements HiveEntity {
 
     public void setActions(JsonStringWrapper actions) {
         this.actions = actions;
+        this.compiled = null;
     }
 
     public void setActionsArray(String... actions) {
         Gson gson = GsonFactory.createGson();
         this.actions = new JsonStringWrapper(gson.toJsonTree(actions).toString());
+        this.compiled = null;
     }
 
     public JsonStringWrapper getNetworkIds() {
@@ -213,11 +172,13 @@ public class AccessKeyPermission implements HiveEntity {
 
     public void setNetworkIds(JsonStringWrapper networkIds) {
         this.networkIds = networkIds;
+        this.compiled = null;
     }
 
     public void setNetworkIdsCollection(Collection<Long> actions) {
         Gson gson = GsonFactory.createGson();
         this.networkIds = new JsonStringWrapper(gson.toJsonTree(actions).toString());
+        this.compiled = null;
     }
 
     public JsonStringWrapper getDeviceGuids() {
@@ -226,10 +187,12 @@ public class AccessKeyPermission implements HiveEntity {
 
     public void setDeviceGuids(JsonStringWrapper deviceGuids) {
         this.deviceGuids = deviceGuids;
+        this.compiled = null;
     }
 
     public void setDeviceGuidsCollection(Collection<String> deviceGuids) {
         Gson gson = GsonFactory.createGson();
         this.deviceGuids = new JsonStringWrapper(gson.toJsonTree(deviceGuids).toString());
+        this.compiled = null;
     }
 }
@@ -0,0 +1,149 @@
+package com.devicehive.model;
+
+import com.devicehive.auth.AccessKeyAction;
+import com.devicehive.exceptions.HiveException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParser;
+
+import javax.servlet.http.HttpServletResponse;
+import java.net.InetAddress;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Immutable parsed form of {@link AccessKeyPermission}. Json arrays stored in the permission are parsed once,
+ * checks against the compiled permission do not parse or allocate anything. Null restriction means the permission
+ * is not restricted by the corresponding property.
+ */
+public final class CompiledAccessKeyPermission {
+
+    private static final Set<AccessKeyAction> ADMIN_ACTIONS = EnumSet.noneOf(AccessKeyAction.class);
+
+    static {
+        for (AccessKeyAction action : AccessKeyAction.values()) {
+            if (action.getValue() != null && AvailableActions.getAdminActions().contains(action.getValue())) {
+                ADMIN_ACTIONS.add(action);
+            }
+        }
+    }
+
+    private final Set<String> domains;
+    private final String[] domainArray;
+    private final Set<Subnet> subnets;
+    private final Subnet[] subnetArray;
+    private final Set<String> actions;
+    private final Set<AccessKeyAction> allowedActions;
+    private final Set<Long> networkIds;
+    private final Set<String> deviceGuids;
+
+    private CompiledAccessKeyPermission(AccessKeyPermission permission) {
+        this.domains = parse(permission.getDomains(), JsonElement::getAsString);
+        this.domainArray = domains == null ? null : domains.toArray(new String[domains.size()]);
+        this.subnets = parse(permission.getSubnets(), e -> e.isJsonNull() ? null : new Subnet(e.getAsString()));
+        this.subnetArray = subnets == null ? null : subnets.stream().filter(Objects::nonNull).toArray(Subnet[]::new);
+        this.actions = parse(permission.getActions(), JsonElement::getAsString);
+        this.networkIds = parse(permission.getNetworkIds(), JsonElement::getAsLong);
+        this.deviceGuids = parse(permission.getDeviceGuids(), JsonElement::getAsString);
+
+        Set<AccessKeyAction> allowed = EnumSet.noneOf(AccessKeyAction.class);
+        if (actions != null) {
+            for (AccessKeyAction action : AccessKeyAction.values()) {
+                for (String value : actions) {
+                    if (value != null && value.equalsIgnoreCase(action.getValue())) {
+                        allowed.add(action);
+                    }
+                }
+            }
+        }
+        this.allowedActions = Collections.unmodifiableSet(allowed);
+    }
+
+    public static CompiledAccessKeyPermission compile(AccessKeyPermission permission) {
+        return new CompiledAccessKeyPermission(permission);
+    }
+
+    /**
+     * Admin actions are allowed for keys of admin users only, even if the permission lists them or does not restrict
+     * actions at all
+     */
+    public boolean isActionAllowed(AccessKeyAction action, boolean admin) {
+        if (!admin && ADMIN_ACTIONS.contains(action)) {
+            return false;
+        }
+        return actions == null || allowedActions.contains(action);
+    }
+
+    public boolean isAddressAllowed(InetAddress address) {
+        if (subnetArray == null) {
+            return true;
+        }
+        for (Subnet subnet : subnetArray) {
+            if (subnet.isAddressFromSubnet(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isDomainAllowed(String domain) {
+        if (domainArray == null || domain == null) {
+            return true;
+        }
+        for (String allowed : domainArray) {
+            if (domain.endsWith(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isDeviceAllowed(Long networkId, String deviceGuid) {
+        return (networkIds == null || networkIds.contains(networkId))
+                && (deviceGuids == null || deviceGuids.contains(deviceGuid));
+    }
+
+    public Set<String> getDomains() {
+        return domains;
+    }
+
+    public Set<Subnet> getSubnets() {
+        return subnets;
+    }
+
+    public Set<String> getActions() {
+        return actions;
+    }
+
+    public Set<AccessKeyAction> getAllowedActions() {
+        return allowedActions;
+    }
+
+    public Set<Long> getNetworkIds() {
+        return networkIds;
+    }
+
+    public Set<String> getDeviceGuids() {
+        return deviceGuids;
+    }
+
+    private static <T> Set<T> parse(JsonStringWrapper wrapper, Function<JsonElement, T> converter) {
+        if (wrapper == null || wrapper.getJsonString() == null) {
+            return null;
+        }
+        JsonElement elem = new JsonParser().parse(wrapper.getJsonString());
+        if (elem instanceof JsonNull) {
+            return null;
+        }
+        if (elem instanceof JsonArray) {
+            JsonArray json = (JsonArray) elem;
+            Set<T> result = new HashSet<>(json.size());
+            for (JsonElement current : json) {
+                result.add(converter.apply(current));
+            }
+            return Collections.unmodifiableSet(result);
+        }
+        throw new HiveException("JSON array expected!", HttpServletResponse.SC_BAD_REQUEST);
+    }
+}
@@ -199,7 +199,7 @@ public class DeviceCommand implements HiveEntity, HazelcastEntity  {
     }
 
     @Override
-    public String getHazelcastKey() {
-        return id+"-"+deviceGuid+"-"+timestamp;
+    public HazelcastEntityKey getHazelcastKey() {
+        return new HazelcastEntityKey(id, deviceGuid);
     }
 }
\ No newline at end of file
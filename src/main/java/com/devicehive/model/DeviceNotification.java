@@ -113,7 +113,7 @@ public class DeviceNotification implements HiveEntity, HazelcastEntity {
     }
 
     @Override
-    public String getHazelcastKey() {
-        return id+"-"+deviceGuid+"-"+timestamp;
+    public HazelcastEntityKey getHazelcastKey() {
+        return new HazelcastEntityKey(id, deviceGuid);
     }
 }
@@ -3,6 +3,8 @@ package com.devicehive.model;
 import java.util.Date;
 
 public interface HazelcastEntity {
-    String getHazelcastKey();
+    Long getId();
+    String getDeviceGuid();
+    HazelcastEntityKey getHazelcastKey();
     Date getTimestamp();
 }
@@ -0,0 +1,70 @@
+package com.devicehive.model;
+
+import com.hazelcast.core.PartitionAware;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Key of notification or command in hazelcast maps. Keys are routed by device guid, so entities of one device are
+ * stored in the same partition as the device history, and any entity can be fetched by id and device guid directly.
+ */
+public class HazelcastEntityKey implements PartitionAware<String>, DataSerializable {
+
+    private Long id;
+    private String deviceGuid;
+
+    public HazelcastEntityKey() {
+    }
+
+    public HazelcastEntityKey(Long id, String deviceGuid) {
+        this.id = id;
+        this.deviceGuid = deviceGuid;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getDeviceGuid() {
+        return deviceGuid;
+    }
+
+    @Override
+    public String getPartitionKey() {
+        return deviceGuid;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeLong(id);
+        out.writeUTF(deviceGuid);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        id = in.readLong();
+        deviceGuid = in.readUTF();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        HazelcastEntityKey that = (HazelcastEntityKey) o;
+        return Objects.equals(id, that.id) && Objects.equals(deviceGuid, that.deviceGuid);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, deviceGuid);
+    }
+
+    @Override
+    public String toString() {
+        return id + "-" + deviceGuid;
+    }
+}
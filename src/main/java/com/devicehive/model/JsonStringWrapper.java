@@ -1,6 +1,7 @@
 package com.devicehive.model;
 
 import javax.persistence.Embeddable;
+import javax.persistence.Transient;
 import java.util.Objects;
 
 @Embeddable
@@ -9,6 +10,12 @@ public class JsonStringWrapper implements HiveEntity {
     private static final long serialVersionUID = -152849186108390497L;
     private String jsonString;
 
+    /**
+     * Set when the wrapper is read from json or written once, so the string is not validated again when written
+     */
+    @Transient
+    private transient boolean validJson;
+
     public JsonStringWrapper() {
     }
 
@@ -16,12 +23,29 @@ public class JsonStringWrapper implements HiveEntity {
         this.jsonString = jsonString;
     }
 
+    public JsonStringWrapper(String jsonString, boolean validJson) {
+        this.jsonString = jsonString;
+        this.validJson = validJson;
+    }
+
     public String getJsonString() {
         return jsonString;
     }
 
     public void setJsonString(String jsonString) {
         this.jsonString = jsonString;
+        this.validJson = false;
+    }
+
+    /**
+     * @return true if json string is known to be valid compact json
+     */
+    public boolean isValidJson() {
+        return validJson;
+    }
+
+    public void setValidJson(boolean validJson) {
+        this.validJson = validJson;
     }
 
     @Override
@@ -16,7 +16,7 @@ public final class SpecialNotifications {
      */
     public static final String EQUIPMENT = "equipment";
     /**
-     * Device originated notification about device status change
+     * Notification about device status change, sent by device or by server when device goes offline
      */
     public static final String DEVICE_STATUS = "device-status";
 }
@@ -2,21 +2,25 @@ package com.devicehive.model;
 
 
 import com.devicehive.exceptions.HiveException;
-import org.apache.commons.net.util.SubnetUtils;
 
 import javax.ws.rs.core.Response;
 import java.net.Inet4Address;
-import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 
+/**
+ * IPv4 or IPv6 subnet in CIDR notation. Network address and mask are computed once, so checking an address is
+ * a few bitwise operations.
+ */
 public class Subnet {
 
-    //        private static final int IPv6_MASK_MAX_VALUE = 64;
     private static final int IPv4_MASK_MAX_VALUE = 32;
+    private static final int IPv6_MASK_MAX_VALUE = 128;
     private InetAddress inetAddress;
     private int mask;
     private String subnet;
+    private byte[] networkBytes;
+    private byte[] maskBytes;
 
     public Subnet() {
     }
@@ -26,33 +30,47 @@ public class Subnet {
         try {
 
             this.inetAddress = InetAddress.getByName(parts[0]);
+            int maxMask = inetAddress instanceof Inet4Address ? IPv4_MASK_MAX_VALUE : IPv6_MASK_MAX_VALUE;
             if (parts.length == 1) {
-                mask = IPv4_MASK_MAX_VALUE;
-                this.subnet = subnet + "/32";
+                mask = maxMask;
+                this.subnet = subnet + "/" + maxMask;
             } else {
                 this.mask = Integer.parseInt(parts[1]);
                 this.subnet = subnet;
             }
-            if (inetAddress instanceof Inet4Address && mask > IPv4_MASK_MAX_VALUE) {
+            if (mask < 0 || mask > maxMask) {
                 throw new IllegalArgumentException("Invalid mask value : " + mask);
             }
         } catch (UnknownHostException e) {
             throw new HiveException("Unable to resolve subnet", Response.Status.BAD_REQUEST.getStatusCode());
         }
+        byte[] address = inetAddress.getAddress();
+        this.maskBytes = new byte[address.length];
+        this.networkBytes = new byte[address.length];
+        for (int i = 0; i < address.length; i++) {
+            int bits = Math.min(8, Math.max(0, mask - i * 8));
+            maskBytes[i] = (byte) (0xFF << (8 - bits));
+            networkBytes[i] = (byte) (address[i] & maskBytes[i]);
+        }
     }
 
+    /**
+     * @return true if address belongs to this subnet. IPv4 addresses never belong to IPv6 subnets and vice versa.
+     */
     public boolean isAddressFromSubnet(InetAddress ip) {
-        if (ip instanceof Inet6Address) {
+        if (networkBytes == null || ip == null) {
             return false;
         }
-        if (inetAddress.getHostAddress().equalsIgnoreCase(ip.getHostAddress()) && mask == 32) {
-            return true;
+        byte[] address = ip.getAddress();
+        if (address.length != networkBytes.length) {
+            return false;
         }
-        if (mask == 0) {
-            return true;
+        for (int i = 0; i < address.length; i++) {
+            if ((address[i] & maskBytes[i]) != networkBytes[i]) {
+                return false;
+            }
         }
-        SubnetUtils utils = new SubnetUtils(subnet);
-        return utils.getInfo().isInRange(ip.getHostAddress());
+        return true;
     }
 
     public InetAddress getInetAddress() {
@@ -0,0 +1,49 @@
+package com.devicehive.model.response;
+
+import com.devicehive.json.strategies.JsonPolicyDef;
+import com.devicehive.model.HiveEntity;
+import com.google.gson.annotations.SerializedName;
+import org.apache.commons.lang3.ObjectUtils;
+
+import java.util.Date;
+
+import static com.devicehive.json.strategies.JsonPolicyDef.Policy.COMMAND_LISTED;
+import static com.devicehive.json.strategies.JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT;
+
+/**
+ * Numeric aggregate of one grid interval: interval start, number of aggregated entities and aggregated value.
+ * Value is not set for {@link com.devicehive.service.history.GridAggregate#COUNT}.
+ */
+public class HistoryGridPoint implements HiveEntity {
+    private static final long serialVersionUID = 5311938617412296183L;
+
+    @SerializedName("timestamp")
+    @JsonPolicyDef({NOTIFICATION_TO_CLIENT, COMMAND_LISTED})
+    private Date timestamp;
+
+    @SerializedName("count")
+    @JsonPolicyDef({NOTIFICATION_TO_CLIENT, COMMAND_LISTED})
+    private long count;
+
+    @SerializedName("value")
+    @JsonPolicyDef({NOTIFICATION_TO_CLIENT, COMMAND_LISTED})
+    private Double value;
+
+    public HistoryGridPoint(Date timestamp, long count, Double value) {
+        this.timestamp = timestamp;
+        this.count = count;
+        this.value = value;
+    }
+
+    public Date getTimestamp() {
+        return ObjectUtils.cloneIfPossible(timestamp);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Double getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,82 @@
+package com.devicehive.model.response;
+
+import com.devicehive.json.strategies.JsonPolicyDef;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HiveEntity;
+import com.google.gson.annotations.SerializedName;
+import org.apache.commons.lang3.ObjectUtils;
+
+import java.util.Date;
+
+import static com.devicehive.json.strategies.JsonPolicyDef.Policy.NOTIFICATION_TO_DEVICE;
+
+/**
+ * Result of insertion of single notification of the batch: either id and timestamp of created notification or
+ * error code and message.
+ */
+public class NotificationInsertResult implements HiveEntity {
+
+    private static final long serialVersionUID = -2786351239034462416L;
+
+    @SerializedName("id")
+    @JsonPolicyDef(NOTIFICATION_TO_DEVICE)
+    private Long id;
+
+    @SerializedName("timestamp")
+    @JsonPolicyDef(NOTIFICATION_TO_DEVICE)
+    private Date timestamp;
+
+    @SerializedName("error")
+    @JsonPolicyDef(NOTIFICATION_TO_DEVICE)
+    private Integer error;
+
+    @SerializedName("message")
+    @JsonPolicyDef(NOTIFICATION_TO_DEVICE)
+    private String message;
+
+    public static NotificationInsertResult created(DeviceNotification notification) {
+        NotificationInsertResult result = new NotificationInsertResult();
+        result.setId(notification.getId());
+        result.setTimestamp(notification.getTimestamp());
+        return result;
+    }
+
+    public static NotificationInsertResult failed(Integer error, String message) {
+        NotificationInsertResult result = new NotificationInsertResult();
+        result.setError(error);
+        result.setMessage(message);
+        return result;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Date getTimestamp() {
+        return ObjectUtils.cloneIfPossible(timestamp);
+    }
+
+    public void setTimestamp(Date timestamp) {
+        this.timestamp = ObjectUtils.cloneIfPossible(timestamp);
+    }
+
+    public Integer getError() {
+        return error;
+    }
+
+    public void setError(Integer error) {
+        this.error = error;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -151,9 +151,52 @@ public interface DeviceCommandResource {
             @ApiParam(name = "skip", value = "Skip param")
             @QueryParam("skip")
             Integer skip,
-            @ApiParam(name = "gridInterval", value = "Grid interval")
+            @ApiParam(name = "gridInterval", value = "Grid interval in seconds")
             @QueryParam("gridInterval")
-            Integer gridInterval);
+            Integer gridInterval,
+            @ApiParam(name = "gridAggregate", value = "Grid aggregate: last (default), first, count, min, max or avg")
+            @QueryParam("gridAggregate")
+            @DefaultValue("last")
+            String gridAggregate,
+            @ApiParam(name = "gridParameter", value = "Dot separated path of numeric parameter to aggregate")
+            @QueryParam("gridParameter")
+            String gridParameter,
+            @ApiParam(name = "cursor", value = "Cursor of the next page, returned in Next-Cursor header")
+            @QueryParam("cursor")
+            String cursor);
+
+    /**
+     * Exports commands of the device as newline delimited JSON, newest first. Commands are written as they are read,
+     * page by page, so export of any size is not collected in memory.
+     *
+     * @param guid    String with Device GUID like "550e8400-e29b-41d4-a716-446655440000"
+     * @param startTs start timestamp, exclusive
+     * @param endTs   end timestamp, inclusive
+     * @param command command name
+     * @param status  command status
+     */
+    @GET
+    @Path("/{deviceGuid}/command/export")
+    @PreAuthorize("hasAnyRole('CLIENT', 'ADMIN', 'KEY') and hasPermission(null, 'GET_DEVICE_COMMAND')")
+    @ApiOperation(value = "Export commands.",
+            notes = "Streams commands received in specified time range as newline delimited JSON (application/x-ndjson).",
+            response = DeviceCommand.class)
+    Response export(
+            @ApiParam(name = "deviceGuid", value = "Device GUID", required = true)
+            @PathParam("deviceGuid")
+            String guid,
+            @ApiParam(name = "start", value = "Start timestamp")
+            @QueryParam("start")
+            String startTs,
+            @ApiParam(name = "end", value = "End timestamp")
+            @QueryParam("end")
+            String endTs,
+            @ApiParam(name = "command", value = "Command name")
+            @QueryParam("command")
+            String command,
+            @ApiParam(name = "status", value = "Command status")
+            @QueryParam("status")
+            String status);
 
     /**
      * Response contains following output: <p/> <code> { "id":    1 "timestamp":     "1970-01-01 00:00:00.0" "userId": 1
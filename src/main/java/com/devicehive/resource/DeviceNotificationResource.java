@@ -3,6 +3,7 @@ package com.devicehive.resource;
 import com.devicehive.configuration.Constants;
 import com.devicehive.json.strategies.JsonPolicyDef;
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.response.NotificationInsertResult;
 import com.devicehive.model.wrappers.DeviceNotificationWrapper;
 import io.swagger.annotations.*;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -14,6 +15,7 @@ import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.util.List;
 
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.NOTIFICATION_FROM_DEVICE;
 
@@ -40,6 +42,14 @@ public interface DeviceNotificationResource {
      * @param sortOrderSt  Result list sort order. Available values are ASC and DESC.
      * @param take         Number of records to take from the result list (default is 1000).
      * @param skip         Number of records to skip from the result list.
+     * @param gridInterval  Length of time grid interval in seconds. If set, notifications of every interval are
+     *                      reduced to one result with gridAggregate. Intervals older than in-memory history are
+     *                      aggregated by history store, if it is enabled.
+     * @param gridAggregate Grid aggregate: last (default) or first notification of the interval, or count, min, max
+     *                      or avg of numeric gridParameter.
+     * @param gridParameter Dot separated path of numeric notification parameter, e.g. sensor.temperature.
+     * @param cursor        Cursor of the next page. Pages are read newest first; if the page is full, cursor of the
+     *                      next page is returned in Next-Cursor header.
      * @return If successful, this method returns array of <a href="http://www.devicehive
      * .com/restful#Reference/DeviceNotification">DeviceNotification</a> resources in the response body. <table>
      * <tr> <td>Property Name</td> <td>Type</td> <td>Description</td> </tr> <tr> <td>id</td> <td>integer</td>
@@ -80,9 +90,50 @@ public interface DeviceNotificationResource {
             @ApiParam(name = "skip", value = "Skip param")
             @QueryParam("skip")
             Integer skip,
-            @ApiParam(name = "gridInterval", value = "Grid interval")
+            @ApiParam(name = "gridInterval", value = "Grid interval in seconds")
             @QueryParam("gridInterval")
-            Integer gridInterval);
+            Integer gridInterval,
+            @ApiParam(name = "gridAggregate", value = "Grid aggregate: last (default), first, count, min, max or avg")
+            @QueryParam("gridAggregate")
+            @DefaultValue("last")
+            String gridAggregate,
+            @ApiParam(name = "gridParameter", value = "Dot separated path of numeric parameter to aggregate")
+            @QueryParam("gridParameter")
+            String gridParameter,
+            @ApiParam(name = "cursor", value = "Cursor of the next page, returned in Next-Cursor header")
+            @QueryParam("cursor")
+            String cursor);
+
+    /**
+     * Exports device notifications as newline delimited JSON, newest first. Notifications are written as they are
+     * read, page by page, so export of any size is not collected in memory.
+     *
+     * @param guid         Device unique identifier.
+     * @param startTs      Filter by notification start timestamp (UTC), exclusive.
+     * @param endTs        Filter by notification end timestamp (UTC), inclusive.
+     * @param notification Filter by notification name.
+     * @return Stream of <a href="http://www.devicehive.com/restful#Reference/DeviceNotification">DeviceNotification</a>
+     * resources, one JSON object per line.
+     */
+    @GET
+    @Path("/{deviceGuid}/notification/export")
+    @PreAuthorize("hasAnyRole('CLIENT', 'ADMIN', 'KEY') and hasPermission(null, 'GET_DEVICE_NOTIFICATION')")
+    @ApiOperation(value = "Export notifications",
+            notes = "Streams notifications by provided parameters as newline delimited JSON (application/x-ndjson)",
+            response = DeviceNotification.class)
+    Response export(
+            @ApiParam(name = "deviceGuid", value = "Device GUID", required = true)
+            @PathParam("deviceGuid")
+            String guid,
+            @ApiParam(name = "start", value = "Start timestamp")
+            @QueryParam("start")
+            String startTs,
+            @ApiParam(name = "end", value = "End timestamp")
+            @QueryParam("end")
+            String endTs,
+            @ApiParam(name = "notification", value = "Notification name")
+            @QueryParam("notification")
+            String notification);
 
     /**
      * Implementation of <a href="http://www.devicehive.com/restful#Reference/DeviceNotification/get">DeviceHive RESTful
@@ -224,4 +275,35 @@ public interface DeviceNotificationResource {
             @ApiParam(value = "Notification body", required = true, defaultValue = "{}")
             @JsonPolicyDef(NOTIFICATION_FROM_DEVICE)
             DeviceNotificationWrapper notificationSubmit);
+
+    /**
+     * Creates several notifications of the device with single request. Device and permissions are resolved once for
+     * the whole batch.
+     *
+     * @param guid                Device unique identifier.
+     * @param notificationSubmits In the request body, supply an array of DeviceNotification resources (see {@link
+     *                            #insert(String, DeviceNotificationWrapper)}).
+     * @return If successful, this method returns an array with one item per submitted notification, in the same
+     * order. Item contains <i>id</i> and <i>timestamp</i> of created notification, or <i>error</i> and
+     * <i>message</i> if notification was rejected.
+     */
+    @POST
+    @Path("/{deviceGuid}/notification/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @PreAuthorize("hasAnyRole('CLIENT', 'ADMIN', 'KEY') and hasPermission(null, 'CREATE_DEVICE_NOTIFICATION')")
+    @ApiOperation(value = "Create notifications", notes = "Creates several notifications of the device")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "notifications processed", response = NotificationInsertResult.class,
+                    responseContainer = "List"),
+            @ApiResponse(code = 404, message = "If device not found"),
+            @ApiResponse(code = 400, message = "If request is malformed"),
+            @ApiResponse(code = 403, message = "If device is not connected to network")
+    })
+    Response insertBatch(
+            @ApiParam(name = "deviceGuid", value = "Device GUID", required = true)
+            @PathParam("deviceGuid")
+            String guid,
+            @ApiParam(value = "Notifications", required = true, defaultValue = "[]")
+            @JsonPolicyDef(NOTIFICATION_FROM_DEVICE)
+            List<DeviceNotificationWrapper> notificationSubmits);
 }
@@ -1,14 +1,17 @@
 package com.devicehive.resource.converters;
 
 
+import com.devicehive.application.JerseyConfig;
 import com.devicehive.configuration.Messages;
 import com.devicehive.json.GsonFactory;
 import com.devicehive.json.strategies.JsonPolicyApply;
 import com.devicehive.json.strategies.JsonPolicyDef;
 import com.google.gson.Gson;
-import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyReader;
@@ -22,6 +25,9 @@ import static com.devicehive.configuration.Constants.UTF8;
 
 public abstract class JsonPolicyProvider<T> implements MessageBodyWriter<T>, MessageBodyReader<T> {
 
+    @Context
+    private Configuration configuration;
+
     @Override
     public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
         return MediaType.APPLICATION_JSON_TYPE.getType().equals(mediaType.getType()) && MediaType
@@ -37,12 +43,16 @@ public abstract class JsonPolicyProvider<T> implements MessageBodyWriter<T>, Mes
     public void writeTo(T entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
                         MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
         throws IOException, WebApplicationException {
-        Gson gson = createGson(annotations);
-        JsonElement jsonElement = gson.toJsonTree(entity);
+        Gson gson = createGson(annotations, isPrettyPrint(configuration));
         Writer writer = null;
         try {
             writer = new OutputStreamWriter(entityStream, Charset.forName(UTF8));
-            gson.toJson(jsonElement, writer);
+            // entity is written directly to the stream, without building intermediate json tree
+            if (entity == null) {
+                gson.toJson(JsonNull.INSTANCE, writer);
+            } else {
+                gson.toJson(entity, entity.getClass(), writer);
+            }
         } finally {
             if (writer != null) {
                 writer.flush();
@@ -60,12 +70,16 @@ public abstract class JsonPolicyProvider<T> implements MessageBodyWriter<T>, Mes
     public T readFrom(Class<T> type, Type genericType, Annotation[] annotations, MediaType mediaType,
                       MultivaluedMap<String, String> httpHeaders, InputStream entityStream)
         throws IOException, WebApplicationException {
-        Gson gson = createGson(annotations);
+        Gson gson = createGson(annotations, false);
         Reader reader = new InputStreamReader(entityStream, Charset.forName(UTF8));
         return gson.fromJson(reader, genericType);
     }
 
-    private Gson createGson(Annotation[] annotations) {
+    static boolean isPrettyPrint(Configuration configuration) {
+        return configuration != null && Boolean.TRUE.equals(configuration.getProperty(JerseyConfig.JSON_PRETTY_PRINT));
+    }
+
+    private Gson createGson(Annotation[] annotations, boolean pretty) {
         int count = 0;
         JsonPolicyDef.Policy policy = null;
         for (Annotation annotation : annotations) {
@@ -77,6 +91,6 @@ public abstract class JsonPolicyProvider<T> implements MessageBodyWriter<T>, Mes
                 }
             }
         }
-        return policy != null ? GsonFactory.createGson(policy) : GsonFactory.createGson();
+        return policy != null ? GsonFactory.createGson(policy, pretty) : GsonFactory.createGson(pretty);
     }
 }
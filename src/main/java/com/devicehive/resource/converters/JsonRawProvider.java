@@ -9,6 +9,8 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyReader;
@@ -25,6 +27,9 @@ import static com.devicehive.configuration.Constants.UTF8;
 @Provider
 public class JsonRawProvider implements MessageBodyWriter<JsonObject>, MessageBodyReader<JsonObject> {
 
+    @Context
+    private Configuration configuration;
+
 
     @Override
     public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
@@ -59,7 +64,7 @@ public class JsonRawProvider implements MessageBodyWriter<JsonObject>, MessageBo
     public void writeTo(JsonObject jsonObject, Class<?> type, Type genericType, Annotation[] annotations,
                         MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
         throws IOException, WebApplicationException {
-        Gson gson = GsonFactory.createGson();
+        Gson gson = GsonFactory.createGson(JsonPolicyProvider.isPrettyPrint(configuration));
         Writer writer = null;
         try {
             writer = new OutputStreamWriter(entityStream, Charset.forName(UTF8));
@@ -4,6 +4,7 @@ import com.devicehive.application.DeviceHiveApplication;
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.configuration.Constants;
 import com.devicehive.configuration.Messages;
+import com.devicehive.json.GsonFactory;
 import com.devicehive.json.strategies.JsonPolicyDef;
 import com.devicehive.json.strategies.JsonPolicyDef.Policy;
 import com.devicehive.messages.handler.RestHandlerCreator;
@@ -13,26 +14,30 @@ import com.devicehive.model.wrappers.DeviceCommandWrapper;
 import com.devicehive.resource.DeviceCommandResource;
 import com.devicehive.resource.converters.TimestampQueryParamParser;
 import com.devicehive.resource.util.CommandResponseFilterAndSort;
+import com.devicehive.resource.util.HistoryStreamingOutput;
+import com.devicehive.resource.util.LongPollingEngine;
 import com.devicehive.resource.util.ResponseFactory;
-import com.devicehive.resource.util.SimpleWaiter;
 import com.devicehive.service.DeviceCommandService;
 import com.devicehive.service.DeviceService;
+import com.devicehive.service.history.GridAggregate;
+import com.devicehive.service.history.HistoryCursor;
 import com.devicehive.util.ParseUtil;
-import com.google.common.util.concurrent.Runnables;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.CompletionCallback;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static javax.ws.rs.core.Response.Status.*;
@@ -52,8 +57,12 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
     @Autowired
     private SubscriptionManager subscriptionManager;
     @Autowired
+    private LongPollingEngine longPollingEngine;
+    @Autowired
     @Qualifier(DeviceHiveApplication.MESSAGE_EXECUTOR)
     private ExecutorService mes;
+    @Value("${history.export.page.size:1000}")
+    private int exportPageSize;
 
     /**
      * {@inheritDoc}
@@ -95,10 +104,6 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
         LOGGER.debug("Device command pollMany requested for : {}, {}, {}, {}.  Timeout = {}", devices, names, timestamp,
                 timeout);
 
-        if (timeout < 0) {
-            submitEmptyResponse(asyncResponse);
-        }
-
         final List<String> availableDevices = (StringUtils.isNotEmpty(devices))
                 ? deviceService.findGuidsWithPermissionsCheck(ParseUtil.getList(devices), principal)
                 : new ArrayList<>();
@@ -117,20 +122,18 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
             CommandSubscriptionStorage storage = subscriptionManager.getCommandSubscriptionStorage();
             UUID reqId = UUID.randomUUID();
             Set<CommandSubscription> subscriptionSet = new HashSet<>();
-            FutureTask<Void> simpleWaitTask = new FutureTask<Void>(Runnables.doNothing(), null);
 
             if (!availableDevices.isEmpty()) {
                 List<CommandSubscription> commandSubscriptions = availableDevices.stream()
-                        .map(guid -> getInsertSubscription(principal, guid, reqId, names, asyncResponse, isMany, simpleWaitTask))
+                        .map(guid -> getInsertSubscription(principal, guid, reqId, names, asyncResponse, isMany))
                         .collect(Collectors.toList());
                 subscriptionSet.addAll(commandSubscriptions);
             } else {
                 subscriptionSet.add(getInsertSubscription(principal, Constants.NULL_SUBSTITUTE, reqId, names,
-                        asyncResponse, isMany, simpleWaitTask));
-            }
-            if (!SimpleWaiter.subscribeAndWait(storage, subscriptionSet, simpleWaitTask, timeout)) {
-                submitEmptyResponse(asyncResponse);
+                        asyncResponse, isMany));
             }
+            longPollingEngine.subscribe(storage, subscriptionSet, asyncResponse, timeout,
+                    () -> submitEmptyResponse(asyncResponse));
         }
     }
 
@@ -165,9 +168,6 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
     private void waitAction(String deviceGuid, String commandId, long timeout, AsyncResponse asyncResponse,
                             HivePrincipal principal) {
         LOGGER.debug("DeviceCommand wait requested, deviceId = {},  commandId = {}", deviceGuid, commandId);
-        if (timeout < 0) {
-            asyncResponse.resume(ResponseFactory.response(Response.Status.NO_CONTENT));
-        }
         if (deviceGuid == null || commandId == null) {
             LOGGER.warn("DeviceCommand wait request failed. BAD REQUEST: deviceGuid and commandId required", deviceGuid);
             Response response = ResponseFactory.response(Response.Status.BAD_REQUEST);
@@ -208,9 +208,9 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
             CommandUpdateSubscription commandSubscription =
                     new CommandUpdateSubscription(Long.valueOf(commandId), reqId, RestHandlerCreator.createCommandUpdate(asyncResponse));
 
-            if (!SimpleWaiter.subscribeAndWait(storage, commandSubscription, new FutureTask<Void>(Runnables.doNothing(), null), timeout)) {
-                asyncResponse.resume(ResponseFactory.response(Response.Status.NO_CONTENT));
-            }
+            longPollingEngine.subscribe(storage, commandSubscription, asyncResponse, timeout,
+                    () -> asyncResponse.resume(ResponseFactory.response(Response.Status.NO_CONTENT)));
+            return;
         }
 
         Response result = ResponseFactory.response(Response.Status.OK, command, Policy.COMMAND_TO_DEVICE);
@@ -220,7 +220,8 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
 
     @Override
     public Response query(String guid, String startTs, String endTs, String command, String status, String sortField,
-                          String sortOrderSt, Integer take, Integer skip, Integer gridInterval) {
+                          String sortOrderSt, Integer take, Integer skip, Integer gridInterval, String gridAggregate,
+                          String gridParameter, String cursor) {
         LOGGER.debug("Device command query requested for device {}", guid);
 
         final HivePrincipal principal = (HivePrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
@@ -230,11 +231,60 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
 
         List<String> searchCommands = StringUtils.isNoneEmpty(command) ? Collections.singletonList(command) : null;
 
-        final Collection<DeviceCommand> commandList = commandService.find(Collections.singletonList(guid),
-                searchCommands, timestamp, status, 0, null, principal);
-
         final Comparator<DeviceCommand> comparator = CommandResponseFilterAndSort.buildDeviceCommandComparator(sortField);
         final Boolean reverse = sortOrderSt == null ? null : "desc".equalsIgnoreCase(sortOrderSt);
+        final boolean gridQuery = gridInterval != null && gridInterval > 0;
+        final boolean keyset = !gridQuery && "timestamp".equalsIgnoreCase(sortField) && !Boolean.FALSE.equals(reverse)
+                && (skip == null || skip == 0);
+
+        if (cursor != null && !keyset) {
+            return ResponseFactory.response(BAD_REQUEST, new ErrorResponse(BAD_REQUEST.getStatusCode(),
+                    Messages.CURSOR_NOT_SUPPORTED));
+        }
+
+        if (gridQuery) {
+            final GridAggregate aggregate = GridAggregate.forName(gridAggregate);
+            if (aggregate == null) {
+                return ResponseFactory.response(BAD_REQUEST, new ErrorResponse(BAD_REQUEST.getStatusCode(),
+                        String.format(Messages.INVALID_GRID_AGGREGATE, gridAggregate)));
+            }
+            if (aggregate.isNumeric() && aggregate != GridAggregate.COUNT && StringUtils.isEmpty(gridParameter)) {
+                return ResponseFactory.response(BAD_REQUEST, new ErrorResponse(BAD_REQUEST.getStatusCode(),
+                        String.format(Messages.GRID_PARAMETER_REQUIRED, gridAggregate)));
+            }
+            final List<Object> grid = new ArrayList<>(commandService.aggregate(guid, searchCommands, timestamp,
+                    TimestampQueryParamParser.parse(endTs), status, TimeUnit.SECONDS.toMillis(gridInterval),
+                    aggregate, gridParameter));
+            // newest first, like raw commands
+            Collections.reverse(grid);
+            final List<?> result = aggregate.isNumeric()
+                    ? CommandResponseFilterAndSort.orderAndLimit(grid, null, reverse, skip, take)
+                    : CommandResponseFilterAndSort.orderAndLimit(grid.stream().map(DeviceCommand.class::cast)
+                    .collect(Collectors.toList()), comparator, reverse, skip, take);
+            LOGGER.debug("Device command grid query request proceed successfully for device {}", guid);
+            return ResponseFactory.response(Response.Status.OK, result, Policy.COMMAND_LISTED);
+        }
+
+        if (keyset) {
+            final HistoryCursor historyCursor;
+            try {
+                historyCursor = cursor != null ? HistoryCursor.fromToken(cursor) : null;
+            } catch (IllegalArgumentException e) {
+                return ResponseFactory.response(BAD_REQUEST, new ErrorResponse(BAD_REQUEST.getStatusCode(),
+                        String.format(Messages.INVALID_CURSOR, cursor)));
+            }
+            final List<DeviceCommand> page = new ArrayList<>(commandService.findPage(Collections.singletonList(guid),
+                    searchCommands, timestamp, status, take, historyCursor, principal));
+            // a full page may be followed by another one
+            final Map<String, Object> headers = take != null && take > 0 && page.size() == take
+                    ? Collections.singletonMap(Constants.NEXT_CURSOR_HEADER, HistoryCursor.after(page.get(take - 1)).toToken())
+                    : Collections.emptyMap();
+            LOGGER.debug("Device command query request proceed successfully for device {}", guid);
+            return ResponseFactory.response(Response.Status.OK, page, Policy.COMMAND_LISTED, headers);
+        }
+
+        final Collection<DeviceCommand> commandList = commandService.find(Collections.singletonList(guid),
+                searchCommands, timestamp, status, 0, null, principal);
 
         final List<DeviceCommand> sortedDeviceCommands = CommandResponseFilterAndSort.orderAndLimit(new ArrayList<>(commandList),
                 comparator, reverse, skip, take);
@@ -242,6 +292,28 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
         return ResponseFactory.response(Response.Status.OK, sortedDeviceCommands, Policy.COMMAND_LISTED);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Response export(String guid, String startTs, String endTs, String command, String status) {
+        LOGGER.debug("Device command export requested for device {}", guid);
+
+        final HivePrincipal principal = (HivePrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        final Date timestamp = TimestampQueryParamParser.parse(startTs);
+        final Date end = TimestampQueryParamParser.parse(endTs);
+
+        deviceService.getDeviceWithNetworkAndDeviceClass(guid, principal);
+
+        final List<String> searchCommands = StringUtils.isNoneEmpty(command) ? Collections.singletonList(command) : null;
+
+        final StreamingOutput output = new HistoryStreamingOutput<>(end,
+                cursor -> commandService.findPage(Collections.singletonList(guid), searchCommands, timestamp, status,
+                        exportPageSize, cursor, principal),
+                exportPageSize, GsonFactory.createCompactGson(Policy.COMMAND_LISTED));
+        return Response.ok(output, HistoryStreamingOutput.NDJSON).build();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -315,14 +387,12 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
             return ResponseFactory.response(NOT_FOUND, new ErrorResponse(NOT_FOUND.getStatusCode(),
                             String.format(Messages.DEVICE_NOT_FOUND, guid)));
         }
-        DeviceCommand savedCommand = commandService.find(commandId, guid);
-        if (savedCommand == null) {
-            LOGGER.warn("Device command get failed. No command with id = {} found for device with guid = {}", commandId, guid);
+        DeviceCommand updatedCommand = commandService.update(commandId, device.getGuid(), command);
+        if (updatedCommand == null) {
+            LOGGER.warn("Device command update failed. No command with id = {} found for device with guid = {}", commandId, guid);
             return ResponseFactory.response(NOT_FOUND, new ErrorResponse(NOT_FOUND.getStatusCode(),
                             String.format(Messages.COMMAND_NOT_FOUND, commandId)));
         }
-
-        commandService.update(commandId, device.getGuid(), command);
         LOGGER.debug("Device command update proceed successfully deviceId = {} commandId = {}", guid, commandId);
 
         return ResponseFactory.response(NO_CONTENT);
@@ -333,8 +403,8 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
     }
 
     private CommandSubscription getInsertSubscription(HivePrincipal principal, String guid, UUID reqId, String names,
-                                                      AsyncResponse asyncResponse, boolean isMany, FutureTask<Void> waitTask){
-        return new CommandSubscription(principal, guid, reqId, names, RestHandlerCreator.createCommandInsert(asyncResponse, isMany, waitTask));
+                                                      AsyncResponse asyncResponse, boolean isMany){
+        return new CommandSubscription(principal, guid, reqId, names, RestHandlerCreator.createCommandInsert(asyncResponse, isMany));
     }
 
 }
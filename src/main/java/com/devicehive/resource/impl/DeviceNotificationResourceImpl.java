@@ -4,6 +4,7 @@ import com.devicehive.application.DeviceHiveApplication;
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.configuration.Constants;
 import com.devicehive.configuration.Messages;
+import com.devicehive.json.GsonFactory;
 import com.devicehive.json.strategies.JsonPolicyDef;
 import com.devicehive.messages.handler.RestHandlerCreator;
 import com.devicehive.messages.subscriptions.NotificationSubscription;
@@ -12,29 +13,34 @@ import com.devicehive.messages.subscriptions.SubscriptionManager;
 import com.devicehive.model.Device;
 import com.devicehive.model.DeviceNotification;
 import com.devicehive.model.ErrorResponse;
+import com.devicehive.model.response.NotificationInsertResult;
 import com.devicehive.model.wrappers.DeviceNotificationWrapper;
 import com.devicehive.resource.DeviceNotificationResource;
 import com.devicehive.resource.converters.TimestampQueryParamParser;
 import com.devicehive.resource.util.CommandResponseFilterAndSort;
+import com.devicehive.resource.util.HistoryStreamingOutput;
+import com.devicehive.resource.util.LongPollingEngine;
 import com.devicehive.resource.util.ResponseFactory;
-import com.devicehive.resource.util.SimpleWaiter;
 import com.devicehive.service.DeviceNotificationService;
 import com.devicehive.service.DeviceService;
+import com.devicehive.service.history.GridAggregate;
+import com.devicehive.service.history.HistoryCursor;
 import com.devicehive.util.ParseUtil;
-import com.google.common.util.concurrent.Runnables;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.devicehive.configuration.Constants.DEFAULT_TAKE;
@@ -55,15 +61,21 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
     @Autowired
     private DeviceService deviceService;
     @Autowired
+    private LongPollingEngine longPollingEngine;
+    @Autowired
     @Qualifier(DeviceHiveApplication.MESSAGE_EXECUTOR)
     private ExecutorService mes;
 
+    @Value("${history.export.page.size:1000}")
+    private int exportPageSize;
+
     /**
      * {@inheritDoc}
      */
     @Override
     public Response query(String guid, String startTs, String endTs, String notification, String sortField,
-                          String sortOrderSt, Integer take, Integer skip, Integer gridInterval) {
+                          String sortOrderSt, Integer take, Integer skip, Integer gridInterval, String gridAggregate,
+                          String gridParameter, String cursor) {
         logger.debug("Device notification query requested for device {}", guid);
         Date timestamp = TimestampQueryParamParser.parse(startTs);
 
@@ -72,11 +84,60 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
 
         List<String> notificationNames = StringUtils.isNoneEmpty(notification) ? Collections.singletonList(notification) : null;
 
-        final Collection<DeviceNotification> notificationList = notificationService.find(null, null, Arrays.asList(device.getGuid()),
-                notificationNames, timestamp, take, principal);
-
         final Comparator<DeviceNotification> comparator = CommandResponseFilterAndSort.buildDeviceNotificationComparator(sortField);
         final Boolean reverse = sortOrderSt == null ? null : "desc".equalsIgnoreCase(sortOrderSt);
+        final boolean gridQuery = gridInterval != null && gridInterval > 0;
+        final boolean keyset = !gridQuery && "timestamp".equalsIgnoreCase(sortField) && !Boolean.FALSE.equals(reverse)
+                && (skip == null || skip == 0);
+
+        if (cursor != null && !keyset) {
+            return ResponseFactory.response(BAD_REQUEST, new ErrorResponse(BAD_REQUEST.getStatusCode(),
+                    Messages.CURSOR_NOT_SUPPORTED));
+        }
+
+        if (gridQuery) {
+            final GridAggregate aggregate = GridAggregate.forName(gridAggregate);
+            if (aggregate == null) {
+                return ResponseFactory.response(BAD_REQUEST, new ErrorResponse(BAD_REQUEST.getStatusCode(),
+                        String.format(Messages.INVALID_GRID_AGGREGATE, gridAggregate)));
+            }
+            if (aggregate.isNumeric() && aggregate != GridAggregate.COUNT && StringUtils.isEmpty(gridParameter)) {
+                return ResponseFactory.response(BAD_REQUEST, new ErrorResponse(BAD_REQUEST.getStatusCode(),
+                        String.format(Messages.GRID_PARAMETER_REQUIRED, gridAggregate)));
+            }
+            final List<Object> grid = new ArrayList<>(notificationService.aggregate(device.getGuid(), notificationNames,
+                    timestamp, TimestampQueryParamParser.parse(endTs), TimeUnit.SECONDS.toMillis(gridInterval),
+                    aggregate, gridParameter));
+            // newest first, like raw notifications
+            Collections.reverse(grid);
+            final List<?> result = aggregate.isNumeric()
+                    ? CommandResponseFilterAndSort.orderAndLimit(grid, null, reverse, skip, take)
+                    : CommandResponseFilterAndSort.orderAndLimit(grid.stream().map(DeviceNotification.class::cast)
+                    .collect(Collectors.toList()), comparator, reverse, skip, take);
+            logger.debug("Device notification grid query request proceed successfully for device {}", guid);
+            return ResponseFactory.response(Response.Status.OK, result, JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT);
+        }
+
+        if (keyset) {
+            final HistoryCursor historyCursor;
+            try {
+                historyCursor = cursor != null ? HistoryCursor.fromToken(cursor) : null;
+            } catch (IllegalArgumentException e) {
+                return ResponseFactory.response(BAD_REQUEST, new ErrorResponse(BAD_REQUEST.getStatusCode(),
+                        String.format(Messages.INVALID_CURSOR, cursor)));
+            }
+            final List<DeviceNotification> page = new ArrayList<>(notificationService.findPage(device.getGuid(),
+                    notificationNames, timestamp, take, historyCursor, principal));
+            // a full page may be followed by another one
+            final Map<String, Object> headers = take != null && take > 0 && page.size() == take
+                    ? Collections.singletonMap(Constants.NEXT_CURSOR_HEADER, HistoryCursor.after(page.get(take - 1)).toToken())
+                    : Collections.emptyMap();
+            logger.debug("Device notification query request proceed successfully for device {}", guid);
+            return ResponseFactory.response(Response.Status.OK, page, JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT, headers);
+        }
+
+        final Collection<DeviceNotification> notificationList = notificationService.find(null, null, Arrays.asList(device.getGuid()),
+                notificationNames, timestamp, take, principal);
 
         final List<DeviceNotification> sortedDeviceNotifications = CommandResponseFilterAndSort.orderAndLimit(new ArrayList<>(notificationList),
                 comparator, reverse, skip, take);
@@ -85,6 +146,27 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
         return ResponseFactory.response(Response.Status.OK, sortedDeviceNotifications, JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Response export(String guid, String startTs, String endTs, String notification) {
+        logger.debug("Device notification export requested for device {}", guid);
+        final Date timestamp = TimestampQueryParamParser.parse(startTs);
+        final Date end = TimestampQueryParamParser.parse(endTs);
+
+        final HivePrincipal principal = (HivePrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        final Device device = deviceService.getDeviceWithNetworkAndDeviceClass(guid, principal);
+
+        final List<String> notificationNames = StringUtils.isNoneEmpty(notification) ? Collections.singletonList(notification) : null;
+
+        final StreamingOutput output = new HistoryStreamingOutput<>(end,
+                cursor -> notificationService.findPage(device.getGuid(), notificationNames, timestamp, exportPageSize,
+                        cursor, principal),
+                exportPageSize, GsonFactory.createCompactGson(JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT));
+        return Response.ok(output, HistoryStreamingOutput.NDJSON).build();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -161,10 +243,6 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
                                                                final String names, final Date timestamp, long timeout,
                                                                final AsyncResponse asyncResponse, final boolean isMany) {
         logger.debug("Device notification pollMany requested for : {}, {}, {}.  Timeout = {}", devices, names, timestamp, timeout);
-        if (timeout < 0) {
-            submitEmptyResponse(asyncResponse);
-        }
-
         final List<String> availableDevices = (StringUtils.isNotEmpty(devices))
                 ? deviceService.findGuidsWithPermissionsCheck(ParseUtil.getList(devices), principal)
                 : new ArrayList<>();
@@ -183,20 +261,18 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
             final UUID reqId = UUID.randomUUID();
             NotificationSubscriptionStorage storage = subscriptionManager.getNotificationSubscriptionStorage();
             Set<NotificationSubscription> subscriptionSet = new HashSet<>();
-            FutureTask<Void> simpleWaitTask = new FutureTask<Void>(Runnables.doNothing(), null);
 
             if (!availableDevices.isEmpty()) {
                 subscriptionSet.addAll(availableDevices.stream().map(guid ->
-                        getNotificationInsertSubscription(principal, guid, reqId, names, asyncResponse, isMany, simpleWaitTask))
+                        getNotificationInsertSubscription(principal, guid, reqId, names, asyncResponse, isMany))
                         .collect(Collectors.toList()));
             } else {
                 subscriptionSet.add(getNotificationInsertSubscription(principal, Constants.NULL_SUBSTITUTE, reqId, names,
-                        asyncResponse, isMany, simpleWaitTask));
+                        asyncResponse, isMany));
             }
 
-            if (!SimpleWaiter.subscribeAndWait(storage, subscriptionSet, new FutureTask<Void>(Runnables.doNothing(), null), timeout)) {
-                submitEmptyResponse(asyncResponse);
-            }
+            longPollingEngine.subscribe(storage, subscriptionSet, asyncResponse, timeout,
+                    () -> submitEmptyResponse(asyncResponse));
         }
 
     }
@@ -233,14 +309,45 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
         return ResponseFactory.response(CREATED, message, NOTIFICATION_TO_DEVICE);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Response insertBatch(String guid, List<DeviceNotificationWrapper> notificationSubmits) {
+        logger.debug("DeviceNotification batch insert requested for device {}", guid);
+
+        HivePrincipal principal = (HivePrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        if (notificationSubmits == null || notificationSubmits.isEmpty()
+                || notificationSubmits.size() > Constants.MAX_NOTIFICATION_BATCH_SIZE) {
+            logger.warn("DeviceNotification batch insert proceed with error. BAD REQUEST: invalid batch size.");
+            return ResponseFactory.response(BAD_REQUEST, new ErrorResponse(BAD_REQUEST.getStatusCode(),
+                    String.format(Messages.INVALID_NOTIFICATION_BATCH_SIZE, Constants.MAX_NOTIFICATION_BATCH_SIZE)));
+        }
+        Device device = deviceService.findByGuidWithPermissionsCheck(guid, principal);
+        if (device == null) {
+            logger.warn("DeviceNotification batch insert proceed with error. NOT FOUND: device {} not found.", guid);
+            return ResponseFactory.response(NOT_FOUND, new ErrorResponse(NOT_FOUND.getStatusCode(),
+                                                              String.format(Messages.DEVICE_NOT_FOUND, guid)));
+        }
+        if (device.getNetwork() == null) {
+            logger.warn("DeviceNotification batch insert proceed with error. FORBIDDEN: Device {} is not connected to network.", guid);
+            return ResponseFactory.response(FORBIDDEN, new ErrorResponse(FORBIDDEN.getStatusCode(),
+                                                              String.format(Messages.DEVICE_IS_NOT_CONNECTED_TO_NETWORK, guid)));
+        }
+        List<NotificationInsertResult> results = notificationService.submitDeviceNotifications(notificationSubmits, device);
+
+        logger.debug("DeviceNotification batch insert proceed successfully");
+        return ResponseFactory.response(OK, results, NOTIFICATION_TO_DEVICE);
+    }
+
     private void submitEmptyResponse(final AsyncResponse asyncResponse) {
         asyncResponse.resume(ResponseFactory.response(Response.Status.OK, Collections.emptyList(),
                 JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT));
     }
 
     private NotificationSubscription getNotificationInsertSubscription(HivePrincipal principal, String guid, UUID reqId, String names,
-                          AsyncResponse asyncResponse, boolean isMany, FutureTask<Void> waitTask){
+                          AsyncResponse asyncResponse, boolean isMany){
         return new NotificationSubscription(principal, guid, reqId, names,
-                RestHandlerCreator.createNotificationInsert(asyncResponse, isMany, waitTask));
+                RestHandlerCreator.createNotificationInsert(asyncResponse, isMany));
     }
 }
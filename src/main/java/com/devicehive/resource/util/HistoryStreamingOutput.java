@@ -0,0 +1,69 @@
+package com.devicehive.resource.util;
+
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.service.history.HistoryCursor;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Writes history of a device as newline delimited JSON, one entity per line, newest first. History is read page by
+ * page after a {@link HistoryCursor} and every page is flushed to the client before the next one is read, so only
+ * one page is held in memory whatever the size of the export.
+ */
+public class HistoryStreamingOutput<T extends HazelcastEntity> implements StreamingOutput {
+    public static final String NDJSON = "application/x-ndjson";
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryStreamingOutput.class);
+
+    private final HistoryCursor start;
+    private final Function<HistoryCursor, Collection<T>> pages;
+    private final int pageSize;
+    private final Gson gson;
+
+    /**
+     * @param end      timestamp of the newest exported entity inclusive, or null to export from the newest one
+     * @param pages    reads up to {@code pageSize} entities after the cursor, newest first
+     * @param pageSize number of entities read at once
+     * @param gson     gson of the output policy, should be compact
+     */
+    public HistoryStreamingOutput(Date end, Function<HistoryCursor, Collection<T>> pages, int pageSize, Gson gson) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.start = end != null ? new HistoryCursor(end.getTime(), Long.MAX_VALUE) : null;
+        this.pages = pages;
+        this.pageSize = pageSize;
+        this.gson = gson;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        HistoryCursor cursor = start;
+        long count = 0;
+        while (true) {
+            List<T> page = new ArrayList<>(pages.apply(cursor));
+            for (T entity : page) {
+                gson.toJson(entity, writer);
+                writer.write('\n');
+            }
+            writer.flush();
+            count += page.size();
+            if (page.size() < pageSize) {
+                break;
+            }
+            cursor = HistoryCursor.after(page.get(page.size() - 1));
+        }
+        logger.debug("Exported {} entities", count);
+    }
+}
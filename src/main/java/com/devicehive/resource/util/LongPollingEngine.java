@@ -0,0 +1,106 @@
+package com.devicehive.resource.util;
+
+import com.devicehive.application.DeviceHiveApplication;
+import com.devicehive.messages.subscriptions.AbstractStorage;
+import com.devicehive.messages.subscriptions.Subscription;
+import com.devicehive.util.HashedWheelTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking replacement of thread-parking waiting for REST long polling (poll, pollMany, wait).
+ * Subscriptions are registered in the storage and the {@link AsyncResponse} gets a timeout in the timer wheel,
+ * calling thread is released immediately. Subscriptions are removed once response is resumed by subscription
+ * handler, by timeout or by container, so the number of concurrent pollers is limited by memory only.
+ */
+@Component
+public class LongPollingEngine {
+    private static final Logger logger = LoggerFactory.getLogger(LongPollingEngine.class);
+
+    @Autowired
+    @Qualifier(DeviceHiveApplication.MESSAGE_EXECUTOR)
+    private ExecutorService mes;
+
+    @Value("${longpolling.timer.tick.ms:100}")
+    private long tickMillis;
+
+    @Value("${longpolling.timer.wheel.size:1024}")
+    private int wheelSize;
+
+    private HashedWheelTimer timer;
+
+    @PostConstruct
+    public void init() {
+        timer = new HashedWheelTimer("long-polling-timer", tickMillis, TimeUnit.MILLISECONDS, wheelSize);
+        timer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.stop();
+    }
+
+    public <E, T, S extends Subscription<E, T>> void subscribe(AbstractStorage<E, S> storage,
+                                                               S sub,
+                                                               AsyncResponse asyncResponse,
+                                                               long seconds,
+                                                               Runnable onTimeout) {
+        subscribe(storage, Collections.singleton(sub), asyncResponse, seconds, onTimeout);
+    }
+
+    /**
+     * Registers subscriptions and returns immediately. If no subscription resumes the response within
+     * the specified timeout, {@code onTimeout} is submitted to the message executor; it is expected to resume
+     * response with empty result.
+     */
+    public <E, T, S extends Subscription<E, T>> void subscribe(AbstractStorage<E, S> storage,
+                                                               Collection<S> subs,
+                                                               AsyncResponse asyncResponse,
+                                                               long seconds,
+                                                               Runnable onTimeout) {
+        if (seconds <= 0) {
+            onTimeout.run();
+            return;
+        }
+        // subscriptions are removed exactly once, by timeout or by completion of response, whichever comes first
+        final AtomicBoolean registered = new AtomicBoolean(true);
+        final Runnable release = () -> {
+            if (registered.compareAndSet(true, false)) {
+                storage.removeAll(subs);
+                logger.debug("{} subs removed", subs.size());
+            }
+        };
+        storage.insertAll(subs);
+        final HashedWheelTimer.Timeout timeout = timer.newTimeout(() -> {
+            release.run();
+            if (asyncResponse.isSuspended()) {
+                logger.debug("Waiting timeout");
+                mes.submit(onTimeout);
+            }
+        }, seconds, TimeUnit.SECONDS);
+
+        asyncResponse.register((CompletionCallback) throwable -> {
+            timeout.cancel();
+            release.run();
+        });
+        if (!asyncResponse.isSuspended()) {
+            // response was resumed or cancelled before completion callback was registered
+            timeout.cancel();
+            release.run();
+        }
+    }
+}
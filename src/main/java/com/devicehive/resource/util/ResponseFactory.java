@@ -6,12 +6,20 @@ import com.devicehive.json.strategies.JsonPolicyDef;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.lang.annotation.Annotation;
+import java.util.Collections;
+import java.util.Map;
 
 public class ResponseFactory {
 
     public static Response response(Response.Status status, Object entity, JsonPolicyDef.Policy policy) {
+        return response(status, entity, policy, Collections.emptyMap());
+    }
+
+    public static Response response(Response.Status status, Object entity, JsonPolicyDef.Policy policy,
+                                    Map<String, Object> headers) {
 
         Response.ResponseBuilder responseBuilder = Response.status(status);
+        headers.forEach(responseBuilder::header);
 
         if (policy == null && entity != null) {
             responseBuilder.entity(entity);
@@ -1,101 +1,381 @@
 package com.devicehive.service;
 
 import com.devicehive.auth.HivePrincipal;
+import com.devicehive.configuration.Constants;
+import com.devicehive.exceptions.HiveException;
 import com.devicehive.messages.bus.MessageBus;
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.DeviceNotification;
 import com.devicehive.model.HazelcastEntity;
-import com.devicehive.service.helpers.HazelcastEntityComparator;
-import com.devicehive.service.helpers.HazelcastHelper;
+import com.devicehive.model.HazelcastEntityKey;
+import com.devicehive.service.history.AggregateHistoryProcessor;
+import com.devicehive.service.history.AppendHistoryProcessor;
+import com.devicehive.service.history.DeviceHistory;
+import com.devicehive.service.history.GridAggregate;
+import com.devicehive.service.history.HistoryCursor;
+import com.devicehive.service.history.HistoryFilter;
+import com.devicehive.service.history.HistoryGrid;
+import com.devicehive.service.history.HistoryGridResult;
+import com.devicehive.service.history.HistoryQueryResult;
+import com.devicehive.service.history.HistoryStore;
+import com.devicehive.service.history.HistoryStoreWriter;
+import com.devicehive.service.history.QueryHistoryProcessor;
+import com.devicehive.service.history.QueryLocalHistoriesTask;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IAtomicLong;
 import com.hazelcast.core.IMap;
-import com.hazelcast.query.PagingPredicate;
-import com.hazelcast.query.Predicate;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import javax.annotation.PostConstruct;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-
+/**
+ * Notifications and commands are stored in two ways: in flat maps keyed by {@link HazelcastEntityKey}, and in per
+ * device histories ({@link DeviceHistory}) keyed by device guid. Both are routed by device guid, so all entities of
+ * a device live in one partition.
+ * Queries read histories of requested devices on their owning members and never scan the flat maps.
+ */
 @Repository
 public abstract class AbstractHazelcastEntityService {
     private static final Logger logger = LoggerFactory.getLogger(AbstractHazelcastEntityService.class);
 
     public static final String NOTIFICATIONS_MAP = "NOTIFICATIONS-MAP";
     public static final String COMMANDS_MAP = "COMMANDS-MAP";
+    public static final String NOTIFICATIONS_HISTORY_MAP = "NOTIFICATIONS-HISTORY-MAP";
+    public static final String COMMANDS_HISTORY_MAP = "COMMANDS-HISTORY-MAP";
+    private static final String HISTORY_SINCE = "HISTORY-SINCE";
+    private static final String HISTORY_QUERY_EXECUTOR = "HISTORY-QUERY-EXECUTOR";
+    // every device bound takes three parameters of the store query
+    private static final int MAX_DEVICE_BOUNDS = 1000;
+    private static final Comparator<HazelcastEntity> NEWEST_FIRST =
+            Comparator.comparing(HazelcastEntity::getTimestamp).thenComparing(HazelcastEntity::getId).reversed();
 
     @Autowired
     protected HazelcastInstance hazelcastInstance;
 
-    @Autowired
-    protected HazelcastHelper hazelcastHelper;
-
     @Autowired
     protected MessageBus messageBus;
 
     @Autowired
     private DeviceService deviceService;
 
-    private Map<Class, IMap<String, Object>> mapsHolder;
+    @Autowired(required = false)
+    private HistoryStore historyStore;
+
+    @Autowired
+    private HistoryStoreWriter historyStoreWriter;
+
+    @Value("${notification.expire.sec:600}")
+    private long notificationExpireSeconds;
+
+    @Value("${command.expire.sec:600}")
+    private long commandExpireSeconds;
+
+    @Value("${history.device.max.size:1000}")
+    private int historySize;
+
+    @Value("${history.device.retention.sec:3600}")
+    private long historyRetentionSeconds;
+
+    private Map<Class, IMap<HazelcastEntityKey, Object>> mapsHolder;
+
+    private Map<Class, IMap<String, DeviceHistory>> historyHolder;
+
+    private long memorySince;
 
     @PostConstruct
     protected void init() {
-        final IMap<String, Object> notificationsMap = hazelcastInstance.getMap("NOTIFICATIONS-MAP");
-        notificationsMap.addIndex("timestamp", true);
-        final IMap<String, Object> commandsMap = hazelcastInstance.getMap("COMMANDS-MAP");
-        commandsMap.addIndex("timestamp", true);
+        // the first member of the cluster sets the time since which in-memory histories are complete
+        final IAtomicLong historySince = hazelcastInstance.getAtomicLong(HISTORY_SINCE);
+        historySince.compareAndSet(0, System.currentTimeMillis());
+        memorySince = historySince.get();
+
+        final IMap<HazelcastEntityKey, Object> notificationsMap = hazelcastInstance.getMap(NOTIFICATIONS_MAP);
+        final IMap<HazelcastEntityKey, Object> commandsMap = hazelcastInstance.getMap(COMMANDS_MAP);
 
         mapsHolder = new HashMap<>(2);
         mapsHolder.put(DeviceNotification.class, notificationsMap);
         mapsHolder.put(DeviceCommand.class, commandsMap);
+
+        historyHolder = new HashMap<>(2);
+        historyHolder.put(DeviceNotification.class, hazelcastInstance.getMap(NOTIFICATIONS_HISTORY_MAP));
+        historyHolder.put(DeviceCommand.class, hazelcastInstance.getMap(COMMANDS_HISTORY_MAP));
     }
 
 
+    /**
+     * Fetches entity by its key from the member owning the device. Entity which has expired from the flat map is
+     * looked up in the history of the device, in memory and then in {@link HistoryStore}. Without id the latest
+     * entity of the device is returned.
+     */
     protected  <T extends HazelcastEntity> T find(Long id, String guid, Class<T> entityClass) {
-        final Predicate filters = hazelcastHelper.prepareFilters(id, guid);
-        final List<T> entities = new ArrayList<>(retrieve(filters, 1, entityClass));
-
-        return entities.isEmpty() ? null : entities.get(0);
+        if (StringUtils.isEmpty(guid)) {
+            return null;
+        }
+        if (id == null) {
+            final HistoryFilter filter = new HistoryFilter(null, null, null, null, null);
+            return retrieveHistory(Collections.singletonList(guid), filter, 1, entityClass).stream().findFirst().orElse(null);
+        }
+        final T entity = entityClass.cast(mapsHolder.get(entityClass).get(new HazelcastEntityKey(id, guid)));
+        if (entity != null) {
+            return entity;
+        }
+        final HistoryFilter filter = new HistoryFilter(id, null, null, null, null);
+        return retrieveHistory(Collections.singletonList(guid), filter, 1, entityClass).stream().findFirst().orElse(null);
     }
 
     protected  <T extends HazelcastEntity> Collection<T> find(Collection<String> devices,
                               Collection<String> names,
                               Date timestamp, String status,
-                              Integer take, Boolean hasResponse,
+                              Integer take, Boolean hasResponse, HistoryCursor cursor,
                               HivePrincipal principal, Class<T> entityClass) {
         List<String> availableDevicesGUIDs = getAvailableDevices(devices, principal);
-        final Predicate filters = hazelcastHelper.prepareFilters(availableDevicesGUIDs, names, timestamp, status, hasResponse);
-        return retrieve(filters, take, entityClass);
+        final HistoryFilter filter = new HistoryFilter(null, names, timestamp, status, hasResponse, cursor);
+        return retrieveHistory(availableDevicesGUIDs, filter, take, entityClass);
     }
 
     protected  <T extends HazelcastEntity> Collection<T> find(Long id, String guid, Collection<String> devices,
-                              Collection<String> names, Date timestamp, Integer take,
+                              Collection<String> names, Date timestamp, Integer take, HistoryCursor cursor,
                               HivePrincipal principal, Class<T> entityClass) {
         List<String> availableDevicesGUIDs = getAvailableDevices(devices, principal);
-        final Predicate filters = hazelcastHelper.prepareFilters(id, guid, availableDevicesGUIDs, names,
-                timestamp);
-        return retrieve(filters, take, entityClass);
+        if (StringUtils.isNotEmpty(guid)) {
+            if (!availableDevicesGUIDs.isEmpty() && !availableDevicesGUIDs.contains(guid)) {
+                return Collections.emptyList();
+            }
+            availableDevicesGUIDs = Collections.singletonList(guid);
+        }
+        final HistoryFilter filter = new HistoryFilter(id, names, timestamp, null, null, cursor);
+        return retrieveHistory(availableDevicesGUIDs, filter, take, entityClass);
+    }
+
+    /**
+     * Aggregates history of the device into time grid with given interval. Aggregation runs on the member owning
+     * the device, only one entity or {@link com.devicehive.model.response.HistoryGridPoint} per interval is returned,
+     * oldest first. If {@link HistoryStore} is enabled and the range starts before the time since which memory keeps
+     * all entities, intervals up to the first one complete in memory are aggregated by the store.
+     */
+    protected  <T extends HazelcastEntity> List<Object> aggregate(String guid, Collection<String> names,
+                                                                 Date timestamp, Date end, String status,
+                                                                 long intervalMillis, GridAggregate aggregate,
+                                                                 String parameterPath, Class<T> entityClass) {
+        final HistoryFilter filter = new HistoryFilter(null, names, timestamp, status, null);
+        final long retainSince = retainSince();
+        final AggregateHistoryProcessor processor = new AggregateHistoryProcessor(filter,
+                end != null ? end.getTime() : Long.MAX_VALUE, retainSince, intervalMillis, aggregate, parameterPath);
+        final HistoryGridResult result = (HistoryGridResult) historyHolder.get(entityClass).executeOnKey(guid, processor);
+        final List<Object> points = result != null ? result.getPoints() : Collections.emptyList();
+        if (historyStore == null) {
+            return points;
+        }
+        final long completeSince = Math.max(Math.max(retainSince, memorySince),
+                result != null ? result.getCompleteSince() : Long.MIN_VALUE);
+        if (timestamp != null && timestamp.getTime() >= completeSince) {
+            return points;
+        }
+        // memory is trusted from the first interval starting after completeSince, earlier intervals come from the store
+        final long storeUntil = Math.floorDiv(completeSince, intervalMillis) * intervalMillis + intervalMillis;
+        final List<Object> grid = new ArrayList<>(historyStore.aggregate(guid, filter,
+                Math.min(storeUntil - 1, end != null ? end.getTime() : Long.MAX_VALUE), intervalMillis, aggregate,
+                parameterPath, entityClass));
+        for (Object point : points) {
+            if (HistoryGrid.intervalStart(point, intervalMillis) >= storeUntil) {
+                grid.add(point);
+            }
+        }
+        return grid;
     }
 
     protected  <T extends HazelcastEntity> void store(final T hzEntity, final Class<T> tClass) {
         logger.debug("Saving entity into hazelcast. [Entity: {}]", hzEntity);
-        mapsHolder.get(tClass).set(hzEntity.getHazelcastKey(), hzEntity);
+        final long timeToLive = timeToLive(hzEntity);
+        // entity which has expired already, e.g. expired command, is only kept in history
+        if (timeToLive >= 0) {
+            mapsHolder.get(tClass).set(hzEntity.getHazelcastKey(), hzEntity, timeToLive, TimeUnit.MILLISECONDS);
+        }
+        appendHistory(hzEntity.getDeviceGuid(), Collections.singletonList(hzEntity), tClass);
+        historyStoreWriter.enqueue(Collections.singletonList(hzEntity));
         messageBus.publish(hzEntity);
     }
 
+    protected  <T extends HazelcastEntity> void storeAll(final List<T> hzEntities, final Class<T> tClass) {
+        if (hzEntities.isEmpty()) {
+            return;
+        }
+        logger.debug("Saving {} entities into hazelcast", hzEntities.size());
+        final IMap<HazelcastEntityKey, Object> map = mapsHolder.get(tClass);
+        final List<Future<Object>> puts = new ArrayList<>(hzEntities.size());
+        final Map<String, List<HazelcastEntity>> entitiesByDevice = new HashMap<>();
+        for (T hzEntity : hzEntities) {
+            // putAll does not take ttl, entries are put asynchronously and awaited together
+            final long timeToLive = timeToLive(hzEntity);
+            if (timeToLive >= 0) {
+                puts.add(map.putAsync(hzEntity.getHazelcastKey(), hzEntity, timeToLive, TimeUnit.MILLISECONDS));
+            }
+            entitiesByDevice.computeIfAbsent(hzEntity.getDeviceGuid(), k -> new ArrayList<>()).add(hzEntity);
+        }
+        for (Future<Object> put : puts) {
+            try {
+                put.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new HiveException("Interrupted while saving entities", e);
+            } catch (ExecutionException e) {
+                throw new HiveException("Unable to save entities", e.getCause());
+            }
+        }
+        entitiesByDevice.forEach((deviceGuid, deviceEntities) -> appendHistory(deviceGuid, deviceEntities, tClass));
+        historyStoreWriter.enqueue(hzEntities);
+        messageBus.publishAll(hzEntities);
+    }
+
+    private <T extends HazelcastEntity> void appendHistory(String deviceGuid, List<? extends HazelcastEntity> hzEntities,
+                                                           Class<T> tClass) {
+        historyHolder.get(tClass).executeOnKey(deviceGuid,
+                new AppendHistoryProcessor(new ArrayList<>(hzEntities), Math.max(1, historySize), retainSince()));
+    }
+
+    /**
+     * Reads histories of given devices or of all devices, if no devices are given. Every history is filtered on
+     * the member owning it, results are merged newest first; histories of all devices are reduced to one page on
+     * every member before they are merged. Memory keeps all entities of a device from its oldest kept entity on,
+     * but not older than the start of in-memory history of the cluster or the retention window. If a device has
+     * not filled the page from memory and the requested range reaches past that bound, entities preceding the
+     * bound are read from {@link HistoryStore}; devices without history in memory are read from the store entirely.
+     * Queries of all devices or of many devices pass the newest bound to the store as one shared bound instead of
+     * a bound per device; entities the store returns from memory range are dropped by id.
+     */
     @SuppressWarnings("unchecked")
-    private  <T extends HazelcastEntity> Collection<T> retrieve(Predicate andPredicate, int pageSize, Class<T> tClass) {
-        if (pageSize <= 0) {
-            final Collection collection = mapsHolder.get(tClass).values(andPredicate);
-            return ((Collection<T>) collection);
+    private <T extends HazelcastEntity> Collection<T> retrieveHistory(Collection<String> devices, HistoryFilter filter,
+                                                                      int take, Class<T> tClass) {
+        final long retainSince = retainSince();
+        final QueryHistoryProcessor processor = new QueryHistoryProcessor(filter, take, retainSince);
+        final HistoryCursor memoryBound = new HistoryCursor(Math.max(retainSince, memorySince), Long.MIN_VALUE);
+        final List<T> result = new ArrayList<>();
+        final Set<Long> inMemory = new HashSet<>();
+        final Map<String, HistoryCursor> bounds = new HashMap<>();
+        HistoryCursor sharedBound = memoryBound;
+        boolean readStore;
+        if (devices.isEmpty()) {
+            for (HistoryQueryResult memberResult : queryAllHistories(processor, take, tClass)) {
+                for (HazelcastEntity entity : memberResult.getEntities()) {
+                    // a history is read by two members while its partition migrates
+                    if (inMemory.add(entity.getId())) {
+                        result.add((T) entity);
+                    }
+                }
+                sharedBound = newer(memberResult.getOldest(), sharedBound);
+            }
+            // device bounds are never older than the memory bound, other devices are read from the store
+            readStore = reaches(filter, memoryBound);
         } else {
-            final PagingPredicate pagingPredicate = new PagingPredicate(andPredicate, new HazelcastEntityComparator(), pageSize);
-            final Collection collection = mapsHolder.get(tClass).values(pagingPredicate);
-            return ((Collection<T>) collection);
+            final Map<String, Object> found = historyHolder.get(tClass).executeOnKeys(new HashSet<>(devices), processor);
+            readStore = false;
+            for (Map.Entry<String, Object> entry : found.entrySet()) {
+                if (entry.getValue() != null) {
+                    final HistoryQueryResult deviceResult = (HistoryQueryResult) entry.getValue();
+                    final HistoryCursor bound = newer(deviceResult.getOldest(), memoryBound);
+                    result.addAll((List<T>) deviceResult.getEntities());
+                    bounds.put(entry.getKey(), bound);
+                    sharedBound = newer(bound, sharedBound);
+                    // older entities of a device, which filled the page from memory, can't get into the page
+                    readStore |= (take <= 0 || deviceResult.getEntities().size() < take) && reaches(filter, bound);
+                }
+            }
+            result.forEach(entity -> inMemory.add(entity.getId()));
+            readStore |= bounds.size() < devices.size() && reaches(filter, memoryBound);
+        }
+        readStore &= historyStore != null;
+        if (readStore) {
+            // unlimited queries read at most one default page from the store
+            final int storeTake = take > 0 ? take : Constants.DEFAULT_TAKE;
+            final List<T> stored = devices.isEmpty() || bounds.size() > MAX_DEVICE_BOUNDS
+                    ? historyStore.find(devices, filter, Collections.emptyMap(), sharedBound, storeTake, tClass)
+                    : historyStore.find(devices, filter, bounds, memoryBound, storeTake, tClass);
+            for (T entity : stored) {
+                // memory keeps the latest version of an updated command
+                if (!inMemory.contains(entity.getId())) {
+                    result.add(entity);
+                }
+            }
+        }
+        if (devices.size() != 1 || readStore) {
+            result.sort(NEWEST_FIRST);
+        }
+        if (take > 0 && result.size() > take) {
+            return new ArrayList<>(result.subList(0, take));
+        }
+        return result;
+    }
+
+    /**
+     * @return one page of every member
+     */
+    private <T extends HazelcastEntity> List<HistoryQueryResult> queryAllHistories(QueryHistoryProcessor processor,
+                                                                                   int take, Class<T> tClass) {
+        final QueryLocalHistoriesTask task = new QueryLocalHistoriesTask(historyHolder.get(tClass).getName(),
+                processor, take);
+        final List<HistoryQueryResult> results = new ArrayList<>();
+        for (Future<HistoryQueryResult> memberResult : hazelcastInstance.getExecutorService(HISTORY_QUERY_EXECUTOR)
+                .submitToAllMembers(task).values()) {
+            try {
+                results.add(memberResult.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new HiveException("Interrupted while reading history", e);
+            } catch (ExecutionException e) {
+                throw new HiveException("Unable to read history", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return true if entities preceding the bound can match the filter
+     */
+    private static boolean reaches(HistoryFilter filter, HistoryCursor bound) {
+        return filter.getTimestamp() == null || filter.getTimestamp().getTime() < bound.getTimestamp();
+    }
+
+    private static HistoryCursor newer(HistoryCursor cursor, HistoryCursor other) {
+        if (cursor == null || cursor.getTimestamp() < other.getTimestamp()
+                || cursor.getTimestamp() == other.getTimestamp() && cursor.getId() < other.getId()) {
+            return other;
         }
+        return cursor;
+    }
+
+    /**
+     * Entities expire {@code notification.expire.sec} or {@code command.expire.sec} after their timestamp; commands
+     * with lifetime expire when their lifetime ends. Updates do not prolong the life of an entity.
+     *
+     * @return time to live in milliseconds, 0 if the entity does not expire, negative if it has expired already
+     */
+    private long timeToLive(HazelcastEntity hzEntity) {
+        long seconds = notificationExpireSeconds;
+        if (hzEntity instanceof DeviceCommand) {
+            final Integer lifetime = ((DeviceCommand) hzEntity).getLifetime();
+            seconds = lifetime != null && lifetime > 0 ? lifetime : commandExpireSeconds;
+        }
+        if (seconds <= 0) {
+            return 0;
+        }
+        final long expiresAt = hzEntity.getTimestamp().getTime() + TimeUnit.SECONDS.toMillis(seconds);
+        final long timeToLive = expiresAt - System.currentTimeMillis();
+        return timeToLive > 0 ? timeToLive : -1;
+    }
+
+    private long retainSince() {
+        return historyRetentionSeconds > 0
+                ? System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(historyRetentionSeconds)
+                : Long.MIN_VALUE;
     }
 
     private List<String> getAvailableDevices(Collection<String> devices, HivePrincipal principal){
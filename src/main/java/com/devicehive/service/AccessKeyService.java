@@ -1,5 +1,6 @@
 package com.devicehive.service;
 
+import com.devicehive.auth.AccessChangeNotifier;
 import com.devicehive.configuration.ConfigurationService;
 import com.devicehive.configuration.Constants;
 import com.devicehive.configuration.Messages;
@@ -62,6 +63,8 @@ public class AccessKeyService {
 
     @Autowired
     private GenericDAO genericDAO;
+    @Autowired
+    private AccessChangeNotifier accessChangeNotifier;
 
     @PersistenceContext(unitName = Constants.PERSISTENCE_UNIT)
     private EntityManager em;
@@ -132,6 +135,7 @@ public class AccessKeyService {
                 genericDAO.persist(permission);
             }
         }
+        accessChangeNotifier.accessChanged("access key " + keyId + " updated");
         return true;
     }
 
@@ -351,6 +355,9 @@ public class AccessKeyService {
                 .orElseGet(() -> genericDAO.createNamedQuery("AccessKey.deleteById", Optional.<CacheConfig>empty())
                         .setParameter("accessKeyId", keyId)
                         .executeUpdate());
+        if (removed > 0) {
+            accessChangeNotifier.accessChanged("access key " + keyId + " deleted");
+        }
         return removed > 0;
     }
 
@@ -1,22 +1,39 @@
 package com.devicehive.service;
 
 import com.devicehive.dao.DeviceDAO;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.service.activity.DeviceActivityTable;
+import com.devicehive.service.activity.LastSeenProcessor;
+import com.devicehive.service.activity.MergeLastSeenProcessor;
+import com.devicehive.service.activity.RemoveIdleDeviceProcessor;
+import com.devicehive.service.id.IdGenerator;
+import com.devicehive.service.time.TimestampService;
+import com.devicehive.util.ServerResponsesFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IMap;
+import com.hazelcast.core.PartitionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static com.devicehive.configuration.Constants.DEVICE_OFFLINE_STATUS;
 
+/**
+ * Tracks last activity of devices. Activity is recorded in node local {@link DeviceActivityTable} and merged to
+ * the cluster wide activity map in batches, so device pings do not result in hazelcast operations. Devices which
+ * were not seen for longer than offline timeout of their device class are removed from the map, marked offline and
+ * reported to subscribers with {@link com.devicehive.model.SpecialNotifications#DEVICE_STATUS} notification.
+ */
 @Component
 @Lazy(false)
 public class DeviceActivityService {
@@ -30,57 +47,158 @@ public class DeviceActivityService {
     @Autowired
     private HazelcastInstance hzInstance;
 
+    // resolved on first use, DeviceNotificationService depends on this service through DeviceService
+    @Autowired
+    @Lazy
+    private DeviceNotificationService deviceNotificationService;
+
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Autowired
+    private TimestampService timestampService;
+
+    @Value("${device.class.offline.timeout.cache.sec:60}")
+    private long offlineTimeoutCacheSeconds;
+
     private IMap<String, Long> deviceActivityMap;
 
+    private Cache<Long, Optional<Integer>> offlineTimeouts;
+
+    private final DeviceActivityTable activityTable = new DeviceActivityTable();
+
 
     @PostConstruct
     public void postConstruct() {
         deviceActivityMap = hzInstance.getMap(DEVICE_ACTIVITY_MAP);
+        offlineTimeouts = CacheBuilder.newBuilder()
+                .expireAfterWrite(offlineTimeoutCacheSeconds, TimeUnit.SECONDS)
+                .build();
     }
 
     public void update(String deviceGuid) {
-        deviceActivityMap.set(deviceGuid, System.currentTimeMillis());
+        activityTable.touch(deviceGuid, System.currentTimeMillis());
     }
 
+    /**
+     * Merges activity recorded since the previous flush to the cluster with one operation per partition, which
+     * carries only last seen times of its devices. Entries are only moved forward, devices seen by several nodes
+     * keep the latest time.
+     */
+    @Scheduled(fixedDelayString = "${device.activity.flush.ms:5000}")
+    public synchronized void flush() {
+        Map<String, Long> changes = activityTable.drainChanges();
+        if (changes.isEmpty()) {
+            return;
+        }
+        PartitionService partitionService = hzInstance.getPartitionService();
+        Map<Integer, Map<String, Long>> changesByPartition = new HashMap<>();
+        changes.forEach((deviceGuid, lastSeen) -> changesByPartition.computeIfAbsent(
+                partitionService.getPartition(deviceGuid).getPartitionId(), k -> new HashMap<>()).put(deviceGuid, lastSeen));
+        for (Map<String, Long> partitionChanges : changesByPartition.values()) {
+            try {
+                deviceActivityMap.executeOnKeys(partitionChanges.keySet(), new MergeLastSeenProcessor(partitionChanges));
+            } catch (RuntimeException e) {
+                logger.warn("Unable to flush activity of {} devices", partitionChanges.size(), e);
+            }
+        }
+        logger.debug("Flushed activity of {} devices", changes.size());
+    }
+
+    /**
+     * Every member checks only activity entries it owns, partition by partition. Devices of one batch are marked
+     * offline with one update and a status notification is stored for each of them.
+     */
     @Scheduled(cron = "0 * * * * *")//executing at start of every minute
     public void processOfflineDevices() {
         logger.debug("Checking lost offline devices");
+        flush();
         long now = System.currentTimeMillis();
-        List<String> activityKeys = new ArrayList<>(deviceActivityMap.keySet());
-        int indexFrom = 0;
-        int indexTo = Math.min(activityKeys.size(), indexFrom + PROCESS_DEVICES_BUFFER_SIZE);
-        while (indexFrom < indexTo) {
-            List<String> guids = activityKeys.subList(indexFrom, indexTo);
-            Map<String, Integer> devicesGuidsAndOfflineTime = deviceDAO.getOfflineTimeForDevices(guids);
-            doProcess(deviceActivityMap, guids, devicesGuidsAndOfflineTime, now);
-            indexFrom = indexTo;
-            indexTo = Math.min(activityKeys.size(), indexFrom + PROCESS_DEVICES_BUFFER_SIZE);
+        PartitionService partitionService = hzInstance.getPartitionService();
+        Map<Integer, List<String>> keysByPartition = new HashMap<>();
+        for (String deviceGuid : deviceActivityMap.localKeySet()) {
+            keysByPartition.computeIfAbsent(partitionService.getPartition(deviceGuid).getPartitionId(),
+                    k -> new ArrayList<>()).add(deviceGuid);
+        }
+        for (List<String> partitionKeys : keysByPartition.values()) {
+            for (int indexFrom = 0; indexFrom < partitionKeys.size(); indexFrom += PROCESS_DEVICES_BUFFER_SIZE) {
+                int indexTo = Math.min(partitionKeys.size(), indexFrom + PROCESS_DEVICES_BUFFER_SIZE);
+                doProcess(partitionKeys.subList(indexFrom, indexTo), now);
+            }
         }
         logger.debug("Checking lost offline devices complete");
     }
 
-    private void doProcess(IMap<String, Long> fullDeviceActivityMap, List<String> guids, Map<String, Integer> devicesGuidsAndOfflineTime, Long now) {
-        List<String> toUpdateStatus = new ArrayList<>();
+    private void doProcess(List<String> guids, long now) {
+        Map<String, Long> deviceClasses = deviceDAO.getDeviceClassesForDevices(guids);
+        Map<Long, Optional<Integer>> timeouts = getOfflineTimeouts(deviceClasses.values());
+        Map<String, Object> lastSeen = deviceActivityMap.executeOnKeys(new HashSet<>(guids), new LastSeenProcessor());
+        Map<Integer, Set<String>> idleByOfflineTimeout = new HashMap<>();
         for (final String deviceGuid : guids) {
-            if (!devicesGuidsAndOfflineTime.containsKey(deviceGuid)) {
+            if (!deviceClasses.containsKey(deviceGuid)) {
                 logger.warn("Device with guid {} does not exists", deviceGuid);
-                fullDeviceActivityMap.remove(deviceGuid);
+                deviceActivityMap.remove(deviceGuid);
             } else {
                 logger.debug("Checking device {} ", deviceGuid);
-                Integer offlineTimeout = devicesGuidsAndOfflineTime.get(deviceGuid);
-                if (offlineTimeout != null) {
-                    Long time = fullDeviceActivityMap.get(deviceGuid);
-                    if (now - time > offlineTimeout * 1000) {
-                        if (fullDeviceActivityMap.remove(deviceGuid, time)) {
-                            toUpdateStatus.add(deviceGuid);
-                        }
-                    }
+                Integer offlineTimeout = timeouts.get(deviceClasses.get(deviceGuid)).orElse(null);
+                Long time = (Long) lastSeen.get(deviceGuid);
+                if (offlineTimeout != null && time != null && now - time > offlineTimeout * 1000L) {
+                    idleByOfflineTimeout.computeIfAbsent(offlineTimeout, k -> new HashSet<>()).add(deviceGuid);
                 }
             }
         }
+        // devices could be seen again since activity was read, entries are removed only if they are still idle
+        Set<String> removed = new HashSet<>();
+        for (Map.Entry<Integer, Set<String>> entry : idleByOfflineTimeout.entrySet()) {
+            RemoveIdleDeviceProcessor processor = new RemoveIdleDeviceProcessor(now - entry.getKey() * 1000L);
+            deviceActivityMap.executeOnKeys(entry.getValue(), processor).forEach((guid, result) -> {
+                if (Boolean.TRUE.equals(result)) {
+                    removed.add(guid);
+                }
+            });
+        }
+        List<String> toUpdateStatus = new ArrayList<>();
+        List<DeviceNotification> notifications = new ArrayList<>();
+        for (String deviceGuid : guids) {
+            if (removed.contains(deviceGuid)) {
+                toUpdateStatus.add(deviceGuid);
+                DeviceNotification notification =
+                        ServerResponsesFactory.createDeviceStatusNotification(deviceGuid, DEVICE_OFFLINE_STATUS);
+                notification.setId(idGenerator.nextId());
+                notification.setTimestamp(timestampService.getTimestamp());
+                notifications.add(notification);
+            }
+        }
         if (!toUpdateStatus.isEmpty()) {
             deviceDAO.changeStatusForDevices(DEVICE_OFFLINE_STATUS, toUpdateStatus);
+            deviceNotificationService.submitServerNotifications(notifications);
+        }
+    }
+
+    /**
+     * Offline timeouts of device classes are cached for {@code device.class.offline.timeout.cache.sec}, only timeouts
+     * missing in the cache are read from the database
+     */
+    private Map<Long, Optional<Integer>> getOfflineTimeouts(Collection<Long> deviceClassIds) {
+        Map<Long, Optional<Integer>> result = new HashMap<>();
+        Set<Long> missing = new HashSet<>();
+        for (Long id : deviceClassIds) {
+            Optional<Integer> timeout = offlineTimeouts.getIfPresent(id);
+            if (timeout != null) {
+                result.put(id, timeout);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<Long, Integer> loaded = deviceDAO.getOfflineTimeForDeviceClasses(missing);
+            for (Long id : missing) {
+                Optional<Integer> timeout = Optional.ofNullable(loaded.get(id));
+                offlineTimeouts.put(id, timeout);
+                result.put(id, timeout);
+            }
         }
+        return result;
     }
 
 }
@@ -1,27 +1,60 @@
 package com.devicehive.service;
 
 import com.devicehive.auth.HivePrincipal;
+import com.devicehive.configuration.Constants;
 import com.devicehive.model.Device;
 import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.HazelcastEntityKey;
 import com.devicehive.model.User;
 import com.devicehive.model.wrappers.DeviceCommandWrapper;
+import com.devicehive.service.history.GridAggregate;
+import com.devicehive.service.history.HistoryCursor;
+import com.devicehive.service.id.IdGenerator;
 import com.devicehive.service.time.TimestampService;
 import com.devicehive.util.HiveValidator;
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import java.util.Collection;
 import java.util.Date;
-import java.util.Random;
+import java.util.List;
 
 
 @Service
 public class DeviceCommandService extends AbstractHazelcastEntityService {
+    private static final Logger logger = LoggerFactory.getLogger(DeviceCommandService.class);
+
     @Autowired
     private TimestampService timestampService;
     @Autowired
+    private IdGenerator idGenerator;
+    @Autowired
     private HiveValidator hiveValidator;
 
+    /**
+     * Commands expire on the member owning them. Command which was not answered before expiration is reported to
+     * waiters as an update with {@link Constants#COMMAND_EXPIRED_STATUS} status.
+     */
+    @PostConstruct
+    protected void listenExpiration() {
+        final IMap<HazelcastEntityKey, DeviceCommand> commandsMap = hazelcastInstance.getMap(COMMANDS_MAP);
+        commandsMap.addLocalEntryListener((EntryEvictedListener<HazelcastEntityKey, DeviceCommand>) event -> {
+            final DeviceCommand command = event.getOldValue();
+            if (command != null && !Boolean.TRUE.equals(command.getIsUpdated())) {
+                logger.debug("Command {} of device {} expired", command.getId(), command.getDeviceGuid());
+                command.setIsUpdated(true);
+                command.setStatus(Constants.COMMAND_EXPIRED_STATUS);
+                // replaces the command in history and in the history store
+                store(command, DeviceCommand.class);
+            }
+        });
+    }
+
     public DeviceCommand find(Long id, String guid) {
         return find(id, guid, DeviceCommand.class);
     }
@@ -29,12 +62,27 @@ public class DeviceCommandService extends AbstractHazelcastEntityService {
     public Collection<DeviceCommand> find(Collection<String> devices, Collection<String> names,
                                           Date timestamp, String status, Integer take,
                                           Boolean hasResponse, HivePrincipal principal) {
-        return find(devices, names, timestamp, status, take, hasResponse, principal, DeviceCommand.class);
+        return find(devices, names, timestamp, status, take, hasResponse, null, principal, DeviceCommand.class);
+    }
+
+    /**
+     * Reads page of commands after the cursor, newest first
+     */
+    public Collection<DeviceCommand> findPage(Collection<String> devices, Collection<String> names, Date timestamp,
+                                              String status, Integer take, HistoryCursor cursor,
+                                              HivePrincipal principal) {
+        return find(devices, names, timestamp, status, take, null, cursor, principal, DeviceCommand.class);
+    }
+
+    public List<Object> aggregate(String guid, Collection<String> names, Date timestamp, Date end, String status,
+                                  long intervalMillis, GridAggregate aggregate, String parameterPath) {
+        return aggregate(guid, names, timestamp, end, status, intervalMillis, aggregate, parameterPath,
+                DeviceCommand.class);
     }
 
     public DeviceCommand insert(DeviceCommandWrapper commandWrapper, Device device, User user) {
         DeviceCommand command = new DeviceCommand();
-        command.setId(Math.abs(new Random().nextInt()));
+        command.setId(idGenerator.nextId());
         command.setDeviceGuid(device.getGuid());
         command.setIsUpdated(false);
         command.setTimestamp(timestampService.getTimestamp());
@@ -63,8 +111,16 @@ public class DeviceCommandService extends AbstractHazelcastEntityService {
         return command;
     }
 
-    public void update(Long commandId, String deviceGuid, DeviceCommandWrapper commandWrapper){
+    /**
+     * Applies update to the command with one keyed fetch
+     *
+     * @return updated command or null if there is no command with given id for the device
+     */
+    public DeviceCommand update(Long commandId, String deviceGuid, DeviceCommandWrapper commandWrapper){
         DeviceCommand command = find(commandId, deviceGuid);
+        if (command == null) {
+            return null;
+        }
         command.setIsUpdated(true);
 
         if (commandWrapper.getCommand() != null) {
@@ -85,6 +141,7 @@ public class DeviceCommandService extends AbstractHazelcastEntityService {
 
         hiveValidator.validate(command);
         store(command);
+        return command;
     }
 
     public void store(DeviceCommand command) {
@@ -1,26 +1,40 @@
 package com.devicehive.service;
 
 import com.devicehive.auth.HivePrincipal;
+import com.devicehive.configuration.Messages;
 import com.devicehive.dao.CacheConfig;
 import com.devicehive.dao.GenericDAO;
+import com.devicehive.exceptions.HiveException;
 import com.devicehive.model.Device;
 import com.devicehive.model.DeviceNotification;
 import com.devicehive.model.SpecialNotifications;
+import com.devicehive.model.response.NotificationInsertResult;
 import com.devicehive.model.wrappers.DeviceNotificationWrapper;
+import com.devicehive.service.history.GridAggregate;
+import com.devicehive.service.history.HistoryCursor;
+import com.devicehive.service.id.IdGenerator;
 import com.devicehive.service.time.TimestampService;
 import com.devicehive.util.ServerResponsesFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
 
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+
 @Service
 public class DeviceNotificationService extends AbstractHazelcastEntityService {
+    private static final Logger logger = LoggerFactory.getLogger(DeviceNotificationService.class);
+
     @Autowired
     private DeviceEquipmentService deviceEquipmentService;
     @Autowired
     private TimestampService timestampService;
     @Autowired
+    private IdGenerator idGenerator;
+    @Autowired
     private GenericDAO genericDAO;
 
     public DeviceNotification find(Long id, String guid) {
@@ -31,7 +45,21 @@ public class DeviceNotificationService extends AbstractHazelcastEntityService {
                                                Collection<String> names,
                                                Date timestamp, Integer take, HivePrincipal principal) {
 
-        return find(id, guid, devices, names, timestamp, take, principal, DeviceNotification.class);
+        return find(id, guid, devices, names, timestamp, take, null, principal, DeviceNotification.class);
+    }
+
+    /**
+     * Reads page of notifications after the cursor, newest first
+     */
+    public Collection<DeviceNotification> findPage(String guid, Collection<String> names, Date timestamp, Integer take,
+                                                   HistoryCursor cursor, HivePrincipal principal) {
+        return find(null, guid, null, names, timestamp, take, cursor, principal, DeviceNotification.class);
+    }
+
+    public List<Object> aggregate(String guid, Collection<String> names, Date timestamp, Date end,
+                                  long intervalMillis, GridAggregate aggregate, String parameterPath) {
+        return aggregate(guid, names, timestamp, end, null, intervalMillis, aggregate, parameterPath,
+                DeviceNotification.class);
     }
 
     public void submitDeviceNotification(final DeviceNotification notification, final Device device) {
@@ -43,14 +71,50 @@ public class DeviceNotificationService extends AbstractHazelcastEntityService {
 
     public void submitDeviceNotification(final DeviceNotification notification, final String deviceGuid) {
         notification.setTimestamp(timestampService.getTimestamp());
-        notification.setId(Math.abs(new Random().nextInt()));
+        notification.setId(idGenerator.nextId());
         notification.setDeviceGuid(deviceGuid);
         store(notification, DeviceNotification.class);
     }
 
+    /**
+     * Stores notifications created by the server itself, like device status changes, so they reach history and
+     * subscribers as device notifications do. Notifications must have id and timestamp set.
+     */
+    public void submitServerNotifications(final List<DeviceNotification> notifications) {
+        storeAll(notifications, DeviceNotification.class);
+    }
+
+    /**
+     * Inserts notifications of single device: all notifications are written with one hazelcast putAll and published
+     * with one batched send. Notifications which can't be processed are skipped and reported in the result, which
+     * contains one item per submitted notification in the same order.
+     */
+    public List<NotificationInsertResult> submitDeviceNotifications(final List<DeviceNotificationWrapper> notificationSubmits,
+                                                                    final Device device) {
+        List<NotificationInsertResult> results = new ArrayList<>(notificationSubmits.size());
+        List<DeviceNotification> notificationsToStore = new ArrayList<>(notificationSubmits.size());
+        for (DeviceNotificationWrapper notificationSubmit : notificationSubmits) {
+            if (notificationSubmit == null || notificationSubmit.getNotification() == null) {
+                results.add(NotificationInsertResult.failed(BAD_REQUEST.getStatusCode(), Messages.NOTIFICATION_REQUIRED));
+                continue;
+            }
+            DeviceNotification message = convertToMessage(notificationSubmit, device);
+            try {
+                notificationsToStore.addAll(processDeviceNotification(message, device));
+                results.add(NotificationInsertResult.created(message));
+            } catch (HiveException e) {
+                logger.warn("Notification {} of device {} is not processed: {}", message.getNotification(),
+                        device.getGuid(), e.getMessage());
+                results.add(NotificationInsertResult.failed(e.getCode(), e.getMessage()));
+            }
+        }
+        storeAll(notificationsToStore, DeviceNotification.class);
+        return results;
+    }
+
     public DeviceNotification convertToMessage(DeviceNotificationWrapper notificationSubmit, Device device) {
         DeviceNotification message = new DeviceNotification();
-        message.setId(Math.abs(new Random().nextInt()));
+        message.setId(idGenerator.nextId());
         message.setDeviceGuid(device.getGuid());
         message.setTimestamp(timestampService.getTimestamp());
         message.setNotification(notificationSubmit.getNotification());
@@ -1,5 +1,7 @@
 package com.devicehive.service;
 
+import com.devicehive.auth.AccessChangeNotifier;
+import com.devicehive.auth.AccessDecisionCache;
 import com.devicehive.auth.CheckPermissionsHelper;
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.auth.HiveRoles;
@@ -50,6 +52,10 @@ public class DeviceService {
     private AccessKeyService accessKeyService;
     @Autowired
     private HiveValidator hiveValidator;
+    @Autowired
+    private AccessChangeNotifier accessChangeNotifier;
+    @Autowired
+    private AccessDecisionCache accessDecisionCache;
 
     @Transactional(propagation = Propagation.REQUIRED)
     public void deviceSaveAndNotify(DeviceUpdate device, Set<Equipment> equipmentSet,
@@ -99,6 +105,7 @@ public class DeviceService {
                 device.setBlocked(false);
             }
             genericDAO.persist(device);
+            accessDecisionCache.evictDevice(device.getGuid());
             return ServerResponsesFactory.createNotificationForDevice(device, SpecialNotifications.DEVICE_ADD);
         } else {
             if (!userService.hasAccessToDevice(user, existingDevice.getGuid())) {
@@ -115,7 +122,7 @@ public class DeviceService {
                 existingDevice.setData(deviceUpdate.getData().orElse(null));
             }
             if (deviceUpdate.getNetwork() != null) {
-                existingDevice.setNetwork(network);
+                changeNetwork(existingDevice, network);
             }
             if (deviceUpdate.getName() != null) {
                 existingDevice.setName(deviceUpdate.getName().orElse(null));
@@ -147,6 +154,7 @@ public class DeviceService {
             device.setDeviceClass(deviceClass);
             device.setNetwork(network);
             genericDAO.persist(device);
+            accessDecisionCache.evictDevice(device.getGuid());
             return ServerResponsesFactory.createNotificationForDevice(device, SpecialNotifications.DEVICE_ADD);
         } else {
             if (!accessKeyService.hasAccessToDevice(key, deviceUpdate.getGuid().orElse(null))) {
@@ -163,7 +171,7 @@ public class DeviceService {
                 existingDevice.setData(deviceUpdate.getData().orElse(null));
             }
             if (deviceUpdate.getNetwork() != null) {
-                existingDevice.setNetwork(network);
+                changeNetwork(existingDevice, network);
             }
             if (deviceUpdate.getName() != null) {
                 existingDevice.setName(deviceUpdate.getName().orElse(null));
@@ -199,7 +207,7 @@ public class DeviceService {
         }
         if (deviceUpdate.getNetwork() != null) {
             Network network = networkService.createOrVerifyNetwork(deviceUpdate.getNetwork());
-            existingDevice.setNetwork(network);
+            changeNetwork(existingDevice, network);
         }
         if (deviceUpdate.getStatus() != null) {
             existingDevice.setStatus(deviceUpdate.getStatus().orElse(null));
@@ -237,6 +245,7 @@ public class DeviceService {
                 device.setNetwork(network);
             }
             genericDAO.persist(device);
+            accessDecisionCache.evictDevice(device.getGuid());
             return ServerResponsesFactory.createNotificationForDevice(device, SpecialNotifications.DEVICE_ADD);
         } else {
             if (deviceUpdate.getDeviceClass() != null) {
@@ -249,7 +258,7 @@ public class DeviceService {
                 existingDevice.setData(deviceUpdate.getData().orElse(null));
             }
             if (deviceUpdate.getNetwork() != null) {
-                existingDevice.setNetwork(network);
+                changeNetwork(existingDevice, network);
             }
             if (deviceUpdate.getBlocked() != null) {
                 existingDevice.setBlocked(Boolean.TRUE.equals(deviceUpdate.getBlocked().orElse(null)));
@@ -324,9 +333,16 @@ public class DeviceService {
     @Transactional
     public boolean deleteDevice(@NotNull String guid, HivePrincipal principal) {
         List<Device> existing = getDeviceList(Arrays.asList(guid), principal);
-        return existing.isEmpty() || genericDAO.createNamedQuery("Device.deleteByUUID", Optional.<CacheConfig>empty())
+        if (existing.isEmpty()) {
+            return true;
+        }
+        boolean deleted = genericDAO.createNamedQuery("Device.deleteByUUID", Optional.<CacheConfig>empty())
                 .setParameter("guid", guid)
                 .executeUpdate() != 0;
+        if (deleted) {
+            accessChangeNotifier.accessChanged("device " + guid + " deleted");
+        }
+        return deleted;
     }
 
     @Transactional(readOnly = true)
@@ -378,6 +394,10 @@ public class DeviceService {
         if (filtered.getDevice() != null) {
             return filtered.getDevice().getGuid().equals(deviceGuid);
         }
+        return accessDecisionCache.hasAccess(filtered, deviceGuid, () -> resolveAccess(filtered, deviceGuid));
+    }
+
+    private boolean resolveAccess(HivePrincipal filtered, String deviceGuid) {
         if (filtered.getUser() != null) {
             return userService.hasAccessToDevice(filtered.getUser(), deviceGuid);
         }
@@ -406,6 +426,15 @@ public class DeviceService {
     }
 
 
+    private void changeNetwork(Device existingDevice, Network network) {
+        Long oldNetworkId = existingDevice.getNetwork() != null ? existingDevice.getNetwork().getId() : null;
+        Long newNetworkId = network != null ? network.getId() : null;
+        existingDevice.setNetwork(network);
+        if (!Objects.equals(oldNetworkId, newNetworkId)) {
+            accessChangeNotifier.accessChanged("device " + existingDevice.getGuid() + " network changed");
+        }
+    }
+
     private Network findNetworkForAuth(Network network) {
         if (network == null) {
             HivePrincipal principal = (HivePrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
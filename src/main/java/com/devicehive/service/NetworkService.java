@@ -1,5 +1,6 @@
 package com.devicehive.service;
 
+import com.devicehive.auth.AccessChangeNotifier;
 import com.devicehive.auth.AccessKeyAction;
 import com.devicehive.auth.CheckPermissionsHelper;
 import com.devicehive.auth.HiveAuthentication;
@@ -50,6 +51,8 @@ public class NetworkService {
     private HiveValidator hiveValidator;
     @Autowired
     private GenericDAO genericDAO;
+    @Autowired
+    private AccessChangeNotifier accessChangeNotifier;
 
     @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Network getWithDevicesAndDeviceClasses(@NotNull Long networkId, @NotNull HiveAuthentication hiveAuthentication) {
@@ -128,6 +131,9 @@ public class NetworkService {
                 .setParameter("id", id)
                 .executeUpdate();
         logger.debug("Deleted {} rows from Network table", result);
+        if (result > 0) {
+            accessChangeNotifier.accessChanged("network " + id + " deleted");
+        }
         return result > 0;
     }
 
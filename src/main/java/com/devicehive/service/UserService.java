@@ -1,5 +1,6 @@
 package com.devicehive.service;
 
+import com.devicehive.auth.AccessChangeNotifier;
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.configuration.ConfigurationService;
 import com.devicehive.configuration.Constants;
@@ -59,6 +60,8 @@ public class UserService {
     private ConfigurationService configurationService;
     @Autowired
     private HiveValidator hiveValidator;
+    @Autowired
+    private AccessChangeNotifier accessChangeNotifier;
 
 
     /**
@@ -213,6 +216,10 @@ public class UserService {
             existing.setData(userToUpdate.getData().orElse(null));
         }
         hiveValidator.validate(existing);
+        // cached authentications of the user must not outlive the old password
+        if (userToUpdate.getStatus() != null || userToUpdate.getRole() != null || userToUpdate.getPassword() != null) {
+            accessChangeNotifier.accessChanged("user " + id + " updated");
+        }
         return genericDAO.merge(existing);
     }
 
@@ -238,6 +245,7 @@ public class UserService {
         usersSet.add(existingUser);
         existingNetwork.setUsers(usersSet);
         genericDAO.merge(existingNetwork);
+        accessChangeNotifier.accessChanged("network " + networkId + " assigned to user " + userId);
     }
 
     /**
@@ -260,6 +268,7 @@ public class UserService {
                 .ifPresent(existingNetwork -> {
                     existingNetwork.getUsers().remove(existingUser);
                     genericDAO.merge(existingNetwork);
+                    accessChangeNotifier.accessChanged("network " + networkId + " unassigned from user " + userId);
                 });
     }
 
@@ -363,6 +372,9 @@ public class UserService {
         int result = genericDAO.createNamedQuery("User.deleteById", of(CacheConfig.bypass()))
                 .setParameter("id", id)
                 .executeUpdate();
+        if (result > 0) {
+            accessChangeNotifier.accessChanged("user " + id + " deleted");
+        }
         return result > 0;
     }
 
@@ -0,0 +1,92 @@
+package com.devicehive.service.activity;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Node local table of device last activity times. Every device gets a slot once, last seen times are stored in
+ * primitive long arrays, so an update is a lookup in the index and an atomic store, without any allocation or
+ * cluster operation. Slots are never released: the table grows with the number of distinct devices seen by the node
+ * since it started, including devices which went offline and were removed from the cluster activity map, at about
+ * 200 bytes per device.
+ */
+public class DeviceActivityTable {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final ConcurrentHashMap<String, Integer> index = new ConcurrentHashMap<>();
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile int size;
+
+    /**
+     * Records activity of the device. Older timestamps never override newer ones.
+     */
+    public void touch(String deviceGuid, long timestamp) {
+        Integer slot = index.get(deviceGuid);
+        if (slot == null) {
+            slot = index.computeIfAbsent(deviceGuid, this::allocate);
+        }
+        AtomicLongArray lastSeen = chunks[slot >>> CHUNK_BITS].lastSeen;
+        int i = slot & CHUNK_MASK;
+        long current;
+        do {
+            current = lastSeen.get(i);
+        } while (current < timestamp && !lastSeen.compareAndSet(i, current, timestamp));
+    }
+
+    /**
+     * @return last seen time of the device or 0, if device was not seen by this node
+     */
+    public long getLastSeen(String deviceGuid) {
+        Integer slot = index.get(deviceGuid);
+        return slot == null ? 0 : chunks[slot >>> CHUNK_BITS].lastSeen.get(slot & CHUNK_MASK);
+    }
+
+    /**
+     * Collects devices seen since the previous call. Must not be called concurrently.
+     *
+     * @return device guid to last seen time
+     */
+    public Map<String, Long> drainChanges() {
+        Map<String, Long> changes = new HashMap<>();
+        int count = size;
+        Chunk[] current = chunks;
+        for (int slot = 0; slot < count; slot++) {
+            Chunk chunk = current[slot >>> CHUNK_BITS];
+            int i = slot & CHUNK_MASK;
+            long lastSeen = chunk.lastSeen.get(i);
+            if (lastSeen > chunk.flushed[i]) {
+                chunk.flushed[i] = lastSeen;
+                changes.put(chunk.guids[i], lastSeen);
+            }
+        }
+        return changes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private synchronized Integer allocate(String deviceGuid) {
+        int slot = size;
+        if ((slot >>> CHUNK_BITS) == chunks.length) {
+            Chunk[] grown = new Chunk[chunks.length + 1];
+            System.arraycopy(chunks, 0, grown, 0, chunks.length);
+            grown[chunks.length] = new Chunk();
+            chunks = grown;
+        }
+        chunks[slot >>> CHUNK_BITS].guids[slot & CHUNK_MASK] = deviceGuid;
+        // volatile write publishes the guid to the flushing thread
+        size = slot + 1;
+        return slot;
+    }
+
+    private static class Chunk {
+        private final AtomicLongArray lastSeen = new AtomicLongArray(CHUNK_SIZE);
+        private final long[] flushed = new long[CHUNK_SIZE];
+        private final String[] guids = new String[CHUNK_SIZE];
+    }
+}
@@ -0,0 +1,24 @@
+package com.devicehive.service.activity;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Reads last seen times of devices on the members owning them, partition by partition. Does not modify entries.
+ */
+public class LastSeenProcessor implements EntryProcessor<String, Long>, Serializable {
+    private static final long serialVersionUID = -3410577318727407296L;
+
+    @Override
+    public Object process(Map.Entry<String, Long> entry) {
+        return entry.getValue();
+    }
+
+    @Override
+    public EntryBackupProcessor<String, Long> getBackupProcessor() {
+        return null;
+    }
+}
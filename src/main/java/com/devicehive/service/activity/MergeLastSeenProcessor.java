@@ -0,0 +1,33 @@
+package com.devicehive.service.activity;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Merges last seen times flushed by a node into activity entries. An entry is only moved forward, so a batch flushed
+ * late by one node never overrides newer activity merged by another one. Applied to backups as well, so the
+ * processor of a partition should carry only last seen times of devices of that partition.
+ */
+public class MergeLastSeenProcessor extends AbstractEntryProcessor<String, Long> {
+    private static final long serialVersionUID = -2877011426375846214L;
+
+    private final Map<String, Long> lastSeen;
+
+    /**
+     * @param lastSeen device guid to last seen time, must be serializable
+     */
+    public MergeLastSeenProcessor(Map<String, Long> lastSeen) {
+        this.lastSeen = lastSeen;
+    }
+
+    @Override
+    public Object process(Map.Entry<String, Long> entry) {
+        Long seen = lastSeen.get(entry.getKey());
+        Long current = entry.getValue();
+        if (seen != null && (current == null || current < seen)) {
+            entry.setValue(seen);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,31 @@
+package com.devicehive.service.activity;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Removes activity entry of the device if the device was not seen since given time. Check and removal are atomic on
+ * the owning member, so device activity merged by any node in between is never lost.
+ *
+ * @return true if entry was removed
+ */
+public class RemoveIdleDeviceProcessor extends AbstractEntryProcessor<String, Long> {
+    private static final long serialVersionUID = 6150227939722617043L;
+
+    private final long seenBefore;
+
+    public RemoveIdleDeviceProcessor(long seenBefore) {
+        this.seenBefore = seenBefore;
+    }
+
+    @Override
+    public Object process(Map.Entry<String, Long> entry) {
+        Long lastSeen = entry.getValue();
+        if (lastSeen != null && lastSeen < seenBefore) {
+            entry.setValue(null);
+            return Boolean.TRUE;
+        }
+        return Boolean.FALSE;
+    }
+}
@@ -0,0 +1,51 @@
+package com.devicehive.service.history;
+
+import com.devicehive.model.response.HistoryGridPoint;
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Aggregates history of a device into time grid on the owning member, so only one entity or
+ * {@link HistoryGridPoint} per interval is sent back, together with the time since which the history is complete.
+ * Does not modify the history.
+ */
+public class AggregateHistoryProcessor implements EntryProcessor<String, DeviceHistory>, Serializable {
+    private static final long serialVersionUID = 2391637254431780263L;
+
+    private final HistoryFilter filter;
+    private final long until;
+    private final long retainSince;
+    private final long interval;
+    private final GridAggregate aggregate;
+    private final String parameterPath;
+
+    public AggregateHistoryProcessor(HistoryFilter filter, long until, long retainSince, long interval,
+                                     GridAggregate aggregate, String parameterPath) {
+        this.filter = filter;
+        this.until = until;
+        this.retainSince = retainSince;
+        this.interval = interval;
+        this.aggregate = aggregate;
+        this.parameterPath = parameterPath;
+    }
+
+    @Override
+    public Object process(Map.Entry<String, DeviceHistory> entry) {
+        DeviceHistory history = entry.getValue();
+        if (history == null) {
+            return new HistoryGridResult(Collections.emptyList(), Long.MIN_VALUE);
+        }
+        HistoryGrid grid = new HistoryGrid(interval, aggregate, parameterPath);
+        history.scan(filter, until, retainSince, grid);
+        return new HistoryGridResult(grid.getResult(), history.droppedUntil());
+    }
+
+    @Override
+    public EntryBackupProcessor<String, DeviceHistory> getBackupProcessor() {
+        return null;
+    }
+}
@@ -0,0 +1,43 @@
+package com.devicehive.service.history;
+
+import com.devicehive.model.HazelcastEntity;
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adds entities to the history of one device on the owning member. Entities must not be modified after they were
+ * added, since histories are stored in object format.
+ */
+public class AppendHistoryProcessor extends AbstractEntryProcessor<String, DeviceHistory> {
+    private static final long serialVersionUID = 2191263040311632618L;
+
+    private final List<HazelcastEntity> entities;
+    private final int capacity;
+    private final long retainSince;
+
+    public AppendHistoryProcessor(List<HazelcastEntity> entities, int capacity, long retainSince) {
+        this.entities = entities;
+        this.capacity = capacity;
+        this.retainSince = retainSince;
+    }
+
+    @Override
+    public Object process(Map.Entry<String, DeviceHistory> entry) {
+        DeviceHistory history = entry.getValue();
+        if (history == null) {
+            history = new DeviceHistory(capacity);
+        } else {
+            history.resize(capacity);
+        }
+        history.removeOlderThan(retainSince);
+        for (HazelcastEntity entity : entities) {
+            if (entity.getTimestamp().getTime() >= retainSince) {
+                history.put(entity);
+            }
+        }
+        entry.setValue(history);
+        return null;
+    }
+}
@@ -0,0 +1,199 @@
+package com.devicehive.service.history;
+
+import com.devicehive.model.HazelcastEntity;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Ring buffer of the most recent notifications or commands of one device, ordered by timestamp and id. Entities are almost
+ * always added in timestamp order, so adding is constant time; reads "since timestamp" find the start position with
+ * binary search and read the buffer sequentially. Not thread safe: instances are accessed by entry processors only,
+ * on the partition thread of the owning member.
+ */
+public class DeviceHistory implements Serializable {
+    private static final long serialVersionUID = -6467306212717364498L;
+
+    private HazelcastEntity[] entries;
+    private int head;
+    private int size;
+    private long droppedUntil = Long.MIN_VALUE;
+
+    public DeviceHistory(int capacity) {
+        this.entries = new HazelcastEntity[capacity];
+    }
+
+    /**
+     * Adds entity to the history or replaces entity with the same id, e.g. updated command. Oldest entities are
+     * dropped when the buffer is full.
+     */
+    public void put(HazelcastEntity entity) {
+        long timestamp = entity.getTimestamp().getTime();
+        int position = size;
+        while (position > 0) {
+            HazelcastEntity current = get(position - 1);
+            long currentTimestamp = current.getTimestamp().getTime();
+            if (currentTimestamp == timestamp && current.getId().equals(entity.getId())) {
+                set(position - 1, entity);
+                return;
+            }
+            if (currentTimestamp < timestamp || currentTimestamp == timestamp && current.getId() < entity.getId()) {
+                break;
+            }
+            position--;
+        }
+        if (size == entries.length) {
+            if (position == 0) {
+                // older than everything in the full buffer
+                droppedUntil = Math.max(droppedUntil, timestamp);
+                return;
+            }
+            removeOldest();
+            position--;
+        }
+        for (int i = size; i > position; i--) {
+            set(i, get(i - 1));
+        }
+        set(position, entity);
+        size++;
+    }
+
+    /**
+     * Drops entities with timestamp before given time
+     */
+    public void removeOlderThan(long timestamp) {
+        while (size > 0 && get(0).getTimestamp().getTime() < timestamp) {
+            removeOldest();
+        }
+    }
+
+    /**
+     * Changes capacity of the buffer keeping the most recent entities
+     */
+    public void resize(int capacity) {
+        if (capacity == entries.length) {
+            return;
+        }
+        while (size > capacity) {
+            removeOldest();
+        }
+        HazelcastEntity[] resized = new HazelcastEntity[capacity];
+        for (int i = 0; i < size; i++) {
+            resized[i] = get(i);
+        }
+        entries = resized;
+        head = 0;
+    }
+
+    /**
+     * @return entities matching the filter, newest first, at most {@code take} entities if take is positive
+     */
+    public List<HazelcastEntity> find(HistoryFilter filter, int take, long retainSince) {
+        int from = start(filter, retainSince);
+        int to = filter.getCursor() != null ? firstNotPreceding(filter.getCursor()) : size;
+        List<HazelcastEntity> result = new ArrayList<>();
+        for (int i = to - 1; i >= from && (take <= 0 || result.size() < take); i--) {
+            HazelcastEntity entity = get(i);
+            if (filter.test(entity)) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Passes entities matching the filter with timestamp up to {@code until} inclusive to the consumer, oldest first
+     */
+    public void scan(HistoryFilter filter, long until, long retainSince, Consumer<HazelcastEntity> consumer) {
+        for (int i = start(filter, retainSince); i < size; i++) {
+            HazelcastEntity entity = get(i);
+            if (entity.getTimestamp().getTime() > until) {
+                break;
+            }
+            if (filter.test(entity)) {
+                consumer.accept(entity);
+            }
+        }
+    }
+
+    /**
+     * @return position of the oldest entity or null, if the history is empty
+     */
+    public HistoryCursor oldest() {
+        return size == 0 ? null : HistoryCursor.after(get(0));
+    }
+
+    /**
+     * @return timestamp of the newest entity dropped from the history, the history keeps all entities after it
+     */
+    public long droppedUntil() {
+        return droppedUntil;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    private int start(HistoryFilter filter, long retainSince) {
+        int from = retainSince > Long.MIN_VALUE ? firstAfter(retainSince - 1) : 0;
+        if (filter.getTimestamp() != null) {
+            from = Math.max(from, firstAfter(filter.getTimestamp().getTime()));
+        }
+        return from;
+    }
+
+    /**
+     * @return position of the first entity with timestamp after given time
+     */
+    private int firstAfter(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid).getTimestamp().getTime() <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return position of the first entity which does not come after the cursor
+     */
+    private int firstNotPreceding(HistoryCursor cursor) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cursor.precedes(get(mid))) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void removeOldest() {
+        droppedUntil = Math.max(droppedUntil, entries[head].getTimestamp().getTime());
+        entries[head] = null;
+        head = (head + 1) % entries.length;
+        size--;
+    }
+
+    private HazelcastEntity get(int position) {
+        return entries[(head + position) % entries.length];
+    }
+
+    private void set(int position, HazelcastEntity entity) {
+        entries[(head + position) % entries.length] = entity;
+    }
+}
@@ -0,0 +1,34 @@
+package com.devicehive.service.history;
+
+/**
+ * How entities falling into one grid interval are reduced: to the first or the last entity of the interval, or to
+ * count, minimum, maximum or average of a numeric parameter.
+ */
+public enum GridAggregate {
+    FIRST(false), LAST(false), COUNT(true), MIN(true), MAX(true), AVG(true);
+
+    private final boolean numeric;
+
+    GridAggregate(boolean numeric) {
+        this.numeric = numeric;
+    }
+
+    /**
+     * @return true if intervals are reduced to {@link com.devicehive.model.response.HistoryGridPoint} rather than to one of their entities
+     */
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    /**
+     * @return aggregate by case insensitive name or null, if there is no such aggregate
+     */
+    public static GridAggregate forName(String name) {
+        for (GridAggregate aggregate : values()) {
+            if (aggregate.name().equalsIgnoreCase(name)) {
+                return aggregate;
+            }
+        }
+        return null;
+    }
+}
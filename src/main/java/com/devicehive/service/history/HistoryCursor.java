@@ -0,0 +1,60 @@
+package com.devicehive.service.history;
+
+import com.devicehive.model.HazelcastEntity;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in history ordered by timestamp and id, newest first. Next page of a query starts right after the last
+ * entity of the previous page, so reading a deep page costs the same as reading the first one. Clients receive
+ * cursors as opaque tokens.
+ */
+public class HistoryCursor implements Serializable {
+    private static final long serialVersionUID = -3183462452806367142L;
+
+    private final long timestamp;
+    private final long id;
+
+    public HistoryCursor(long timestamp, long id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    public static HistoryCursor after(HazelcastEntity entity) {
+        return new HistoryCursor(entity.getTimestamp().getTime(), entity.getId());
+    }
+
+    /**
+     * @throws IllegalArgumentException if token was not created by {@link #toToken()}
+     */
+    public static HistoryCursor fromToken(String token) {
+        String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Malformed cursor " + token);
+        }
+        return new HistoryCursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+    }
+
+    public String toToken() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((timestamp + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return true if entity comes after the cursor, i.e. it is older or has the same timestamp and smaller id
+     */
+    public boolean precedes(HazelcastEntity entity) {
+        long entityTimestamp = entity.getTimestamp().getTime();
+        return entityTimestamp < timestamp || entityTimestamp == timestamp && entity.getId() < id;
+    }
+}
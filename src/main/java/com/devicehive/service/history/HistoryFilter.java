@@ -0,0 +1,84 @@
+package com.devicehive.service.history;
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Conditions on notifications or commands of one device. Timestamp is exclusive; with cursor only entities after
+ * the cursor match.
+ */
+public class HistoryFilter implements Serializable {
+    private static final long serialVersionUID = 3982715440158731592L;
+
+    private final Long id;
+    private final Set<String> names;
+    private final Date timestamp;
+    private final String status;
+    private final Boolean hasResponse;
+    private final HistoryCursor cursor;
+
+    public HistoryFilter(Long id, Collection<String> names, Date timestamp, String status, Boolean hasResponse) {
+        this(id, names, timestamp, status, hasResponse, null);
+    }
+
+    public HistoryFilter(Long id, Collection<String> names, Date timestamp, String status, Boolean hasResponse,
+                         HistoryCursor cursor) {
+        this.id = id;
+        this.names = names == null || names.isEmpty() ? null : new HashSet<>(names);
+        this.timestamp = timestamp;
+        this.status = StringUtils.isNotEmpty(status) ? status : null;
+        this.hasResponse = hasResponse;
+        this.cursor = cursor;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Set<String> getNames() {
+        return names;
+    }
+
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Boolean getHasResponse() {
+        return hasResponse;
+    }
+
+    public HistoryCursor getCursor() {
+        return cursor;
+    }
+
+    public boolean test(HazelcastEntity entity) {
+        if (id != null && !id.equals(entity.getId())) {
+            return false;
+        }
+        if (timestamp != null && !entity.getTimestamp().after(timestamp)) {
+            return false;
+        }
+        if (cursor != null && !cursor.precedes(entity)) {
+            return false;
+        }
+        if (entity instanceof DeviceNotification) {
+            return names == null || names.contains(((DeviceNotification) entity).getNotification());
+        }
+        DeviceCommand command = (DeviceCommand) entity;
+        return (names == null || names.contains(command.getCommand()))
+                && (status == null || status.equals(command.getStatus()))
+                && (hasResponse == null || hasResponse.equals(command.getIsUpdated()));
+    }
+}
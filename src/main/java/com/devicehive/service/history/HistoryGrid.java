@@ -0,0 +1,144 @@
+package com.devicehive.service.history;
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.model.response.HistoryGridPoint;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Splits entities into intervals of fixed length aligned to epoch and reduces every interval with
+ * {@link GridAggregate}. Entities must be passed in timestamp order, so only the current interval is kept in memory.
+ * Numeric aggregates read the value at dot separated path in entity parameters, e.g. {@code sensor.temperature};
+ * entities without a number at that path are skipped.
+ */
+public class HistoryGrid implements Consumer<HazelcastEntity> {
+    private final long interval;
+    private final GridAggregate aggregate;
+    private final String[] path;
+    private final JsonParser parser = new JsonParser();
+    private final List<Object> result = new ArrayList<>();
+
+    private boolean open;
+    private long start;
+    private HazelcastEntity selected;
+    private long count;
+    private double min;
+    private double max;
+    private double sum;
+
+    public HistoryGrid(long interval, GridAggregate aggregate, String parameterPath) {
+        this.interval = interval;
+        this.aggregate = aggregate;
+        this.path = parameterPath == null || parameterPath.isEmpty() ? null : parameterPath.split("\\.");
+    }
+
+    @Override
+    public void accept(HazelcastEntity entity) {
+        long intervalStart = Math.floorDiv(entity.getTimestamp().getTime(), interval) * interval;
+        if (!open || intervalStart != start) {
+            complete();
+            open = true;
+            start = intervalStart;
+        }
+        switch (aggregate) {
+            case FIRST:
+                if (selected == null) {
+                    selected = entity;
+                }
+                break;
+            case LAST:
+                selected = entity;
+                break;
+            default:
+                Double value = path == null ? null : numericValue(entity);
+                if (value == null) {
+                    if (aggregate == GridAggregate.COUNT && path == null) {
+                        count++;
+                    }
+                } else {
+                    min = count == 0 ? value : Math.min(min, value);
+                    max = count == 0 ? value : Math.max(max, value);
+                    sum += value;
+                    count++;
+                }
+        }
+    }
+
+    /**
+     * @return entities or {@link HistoryGridPoint}s, one per non-empty interval, oldest first
+     */
+    public List<Object> getResult() {
+        complete();
+        return result;
+    }
+
+    /**
+     * @return start of the interval of grid entity or {@link HistoryGridPoint}
+     */
+    public static long intervalStart(Object point, long interval) {
+        return point instanceof HistoryGridPoint
+                ? ((HistoryGridPoint) point).getTimestamp().getTime()
+                : Math.floorDiv(((HazelcastEntity) point).getTimestamp().getTime(), interval) * interval;
+    }
+
+    private void complete() {
+        if (!open) {
+            return;
+        }
+        if (selected != null) {
+            result.add(selected);
+        } else if (count > 0) {
+            result.add(new HistoryGridPoint(new Date(start), count, value()));
+        }
+        open = false;
+        selected = null;
+        count = 0;
+        sum = 0;
+    }
+
+    private Double value() {
+        switch (aggregate) {
+            case MIN:
+                return min;
+            case MAX:
+                return max;
+            case AVG:
+                return sum / count;
+            default:
+                return null;
+        }
+    }
+
+    private Double numericValue(HazelcastEntity entity) {
+        JsonStringWrapper parameters = entity instanceof DeviceNotification
+                ? ((DeviceNotification) entity).getParameters()
+                : ((DeviceCommand) entity).getParameters();
+        if (parameters == null || parameters.getJsonString() == null) {
+            return null;
+        }
+        JsonElement element;
+        try {
+            element = parser.parse(parameters.getJsonString());
+        } catch (JsonParseException e) {
+            return null;
+        }
+        for (String name : path) {
+            if (element == null || !element.isJsonObject()) {
+                return null;
+            }
+            element = element.getAsJsonObject().get(name);
+        }
+        return element != null && element.isJsonPrimitive() && element.getAsJsonPrimitive().isNumber()
+                ? element.getAsDouble()
+                : null;
+    }
+}
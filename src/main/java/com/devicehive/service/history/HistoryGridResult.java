@@ -0,0 +1,34 @@
+package com.devicehive.service.history;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Time grid of the history of one device and the time since which the history keeps all entities. Intervals before
+ * that time could miss entities dropped from memory.
+ */
+public class HistoryGridResult implements Serializable {
+    private static final long serialVersionUID = -3109364562716322417L;
+
+    private final List<Object> points;
+    private final long completeSince;
+
+    public HistoryGridResult(List<Object> points, long completeSince) {
+        this.points = points;
+        this.completeSince = completeSince;
+    }
+
+    /**
+     * @return one entity or {@link com.devicehive.model.response.HistoryGridPoint} per interval, oldest first
+     */
+    public List<Object> getPoints() {
+        return points;
+    }
+
+    /**
+     * @return time after which the history keeps all entities
+     */
+    public long getCompleteSince() {
+        return completeSince;
+    }
+}
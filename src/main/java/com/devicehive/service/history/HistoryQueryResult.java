@@ -0,0 +1,34 @@
+package com.devicehive.service.history;
+
+import com.devicehive.model.HazelcastEntity;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Entities found in the history of one device and position of the oldest entity the history still keeps. Entities
+ * older than that position were dropped from memory and can only be found in {@link HistoryStore}. Result of
+ * several histories holds the newest of their oldest positions, all the histories are complete since it.
+ */
+public class HistoryQueryResult implements Serializable {
+    private static final long serialVersionUID = 4937455150311950164L;
+
+    private final List<HazelcastEntity> entities;
+    private final HistoryCursor oldest;
+
+    public HistoryQueryResult(List<HazelcastEntity> entities, HistoryCursor oldest) {
+        this.entities = entities;
+        this.oldest = oldest;
+    }
+
+    public List<HazelcastEntity> getEntities() {
+        return entities;
+    }
+
+    /**
+     * @return position of the oldest kept entity or null, if the history is empty
+     */
+    public HistoryCursor getOldest() {
+        return oldest;
+    }
+}
@@ -0,0 +1,53 @@
+package com.devicehive.service.history;
+
+import com.devicehive.model.HazelcastEntity;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durable store of notifications and commands, which keeps history after it leaves in-memory device histories.
+ * Entities are written in batches by {@link HistoryStoreWriter}; queries for ranges older than in-memory window
+ * are answered by the store.
+ */
+public interface HistoryStore {
+
+    /**
+     * Saves new notifications and commands and updates stored commands. Entities are given in the order they were
+     * saved to the cluster, later versions of a command follow earlier ones.
+     */
+    void storeAll(List<HazelcastEntity> entities);
+
+    /**
+     * Entities newer than the bound of their device are kept in memory, only entities preceding the bound are read.
+     *
+     * @param devices     devices to search in, all devices if empty
+     * @param filter      conditions on entities
+     * @param bounds      bounds of devices, which have history in memory
+     * @param otherBound  bound of other devices, null if they are not bounded
+     * @param take        max number of entities to return
+     * @param entityClass notification or command class
+     * @return entities matching the filter, newest first
+     */
+    <T extends HazelcastEntity> List<T> find(Collection<String> devices, HistoryFilter filter,
+                                             Map<String, HistoryCursor> bounds, HistoryCursor otherBound, int take,
+                                             Class<T> entityClass);
+
+    /**
+     * Aggregates stored history of the device into time grid the same way {@link HistoryGrid} does.
+     *
+     * @param device        device to aggregate history of
+     * @param filter        conditions on entities
+     * @param until         entities newer than this time are not aggregated
+     * @param interval      length of grid interval in milliseconds
+     * @param aggregate     how entities of one interval are reduced
+     * @param parameterPath dot separated path of numeric parameter, null if not set
+     * @param entityClass   notification or command class
+     * @return entities or {@link com.devicehive.model.response.HistoryGridPoint}s, one per non-empty interval,
+     * oldest first
+     */
+    <T extends HazelcastEntity> List<Object> aggregate(String device, HistoryFilter filter, long until, long interval,
+                                                       GridAggregate aggregate, String parameterPath,
+                                                       Class<T> entityClass);
+}
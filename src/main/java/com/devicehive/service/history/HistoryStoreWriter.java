@@ -0,0 +1,156 @@
+package com.devicehive.service.history;
+
+import com.devicehive.model.HazelcastEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind of notifications and commands to {@link HistoryStore}. Entities saved by this node are queued and
+ * written in batches, so saving to the cluster never waits for the store. When the queue is full, entities are
+ * dropped and counted; they remain available in memory until they expire. Does nothing if there is no store.
+ * <p>
+ * A batch which can't be written because the store is unavailable stays at the head of the queue and is retried
+ * with exponential backoff. A batch rejected by the store is written entity by entity, so only the entities the
+ * store rejects are dropped.
+ */
+@Component
+public class HistoryStoreWriter {
+    private static final Logger logger = LoggerFactory.getLogger(HistoryStoreWriter.class);
+
+    @Autowired(required = false)
+    private HistoryStore historyStore;
+
+    @Value("${history.store.queue.size:100000}")
+    private int queueSize;
+
+    @Value("${history.store.batch.size:1000}")
+    private int batchSize;
+
+    @Value("${history.store.flush.ms:1000}")
+    private long flushMillis;
+
+    @Value("${history.store.retry.max.ms:60000}")
+    private long maxRetryMillis;
+
+    private BlockingQueue<HazelcastEntity> queue;
+
+    // batch taken from the queue and not written yet
+    private final List<HazelcastEntity> batch = new ArrayList<>();
+    private long retryDelay;
+    private long retryAt;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+    }
+
+    public void enqueue(Collection<? extends HazelcastEntity> entities) {
+        if (historyStore == null) {
+            return;
+        }
+        for (HazelcastEntity entity : entities) {
+            if (!queue.offer(entity) && dropped.getAndIncrement() % 1000 == 0) {
+                logger.warn("History store queue is full, {} entities were not stored so far", dropped.get());
+            }
+        }
+    }
+
+    /**
+     * Writes queued entities batch by batch. Stops at the first batch the store can't take and retries it after the
+     * backoff delay.
+     */
+    @Scheduled(fixedDelayString = "${history.store.flush.ms:1000}")
+    public synchronized void flush() {
+        if (historyStore == null || System.currentTimeMillis() < retryAt) {
+            return;
+        }
+        while (!batch.isEmpty() || queue.drainTo(batch, Math.max(1, batchSize)) > 0) {
+            int size = batch.size();
+            if (!store()) {
+                retryDelay = retryDelay == 0 ? Math.max(1, flushMillis) : Math.min(retryDelay * 2, maxRetryMillis);
+                retryAt = System.currentTimeMillis() + retryDelay;
+                logger.warn("History store is unavailable, {} entities are retried in {} ms", batch.size(), retryDelay);
+                return;
+            }
+            retryDelay = 0;
+            logger.debug("Stored {} entities to history store", size);
+        }
+    }
+
+    /**
+     * @return number of entities rejected by the store and dropped
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        // the last attempt does not wait for the backoff
+        retryAt = 0;
+        flush();
+        if (!batch.isEmpty() || !queue.isEmpty()) {
+            logger.warn("{} entities were not stored to history store on shutdown", batch.size() + queue.size());
+        }
+    }
+
+    /**
+     * @return false if the store is unavailable, entities which were not written are left in the batch
+     */
+    private boolean store() {
+        try {
+            historyStore.storeAll(batch);
+            batch.clear();
+            return true;
+        } catch (RuntimeException e) {
+            if (!isRejection(e)) {
+                logger.debug("Unable to store {} entities to history store", batch.size(), e);
+                return false;
+            }
+            logger.warn("History store rejected batch of {} entities, storing them one by one", batch.size(), e);
+        }
+        Iterator<HazelcastEntity> iterator = batch.iterator();
+        while (iterator.hasNext()) {
+            HazelcastEntity entity = iterator.next();
+            try {
+                historyStore.storeAll(Collections.singletonList(entity));
+            } catch (RuntimeException e) {
+                if (!isRejection(e)) {
+                    return false;
+                }
+                rejected.incrementAndGet();
+                logger.warn("History store rejected {} {} of device {}, it is dropped",
+                        entity.getClass().getSimpleName(), entity.getId(), entity.getDeviceGuid(), e);
+            }
+            iterator.remove();
+        }
+        return true;
+    }
+
+    /**
+     * Invalid data fails again on retry, other data access errors are taken as unavailability of the store
+     */
+    private static boolean isRejection(RuntimeException e) {
+        return e instanceof DataIntegrityViolationException || !(e instanceof DataAccessException);
+    }
+}
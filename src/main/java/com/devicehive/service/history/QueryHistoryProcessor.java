@@ -0,0 +1,42 @@
+package com.devicehive.service.history;
+
+import com.devicehive.model.HazelcastEntity;
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads entities matching the filter from the history of a device on the owning member, newest first, together with
+ * position of the oldest entity kept in the history. Does not modify the history.
+ */
+public class QueryHistoryProcessor implements EntryProcessor<String, DeviceHistory>, Serializable {
+    private static final long serialVersionUID = -8013522870931394751L;
+
+    private final HistoryFilter filter;
+    private final int take;
+    private final long retainSince;
+
+    public QueryHistoryProcessor(HistoryFilter filter, int take, long retainSince) {
+        this.filter = filter;
+        this.take = take;
+        this.retainSince = retainSince;
+    }
+
+    @Override
+    public Object process(Map.Entry<String, DeviceHistory> entry) {
+        DeviceHistory history = entry.getValue();
+        if (history == null) {
+            return null;
+        }
+        List<HazelcastEntity> result = history.find(filter, take, retainSince);
+        return new HistoryQueryResult(result, history.oldest());
+    }
+
+    @Override
+    public EntryBackupProcessor<String, DeviceHistory> getBackupProcessor() {
+        return null;
+    }
+}
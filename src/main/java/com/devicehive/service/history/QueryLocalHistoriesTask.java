@@ -0,0 +1,67 @@
+package com.devicehive.service.history;
+
+import com.devicehive.model.HazelcastEntity;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+import com.hazelcast.core.IMap;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Queries histories of all devices owned by the member it runs on and reduces them to one page, so a query of all
+ * devices transfers at most {@code take} entities per member instead of a page per device. While partitions
+ * migrate, a history can be read by two members; callers drop duplicates by id.
+ */
+public class QueryLocalHistoriesTask implements Callable<HistoryQueryResult>, HazelcastInstanceAware, Serializable {
+    private static final long serialVersionUID = 2213837105327618093L;
+    private static final Comparator<HazelcastEntity> NEWEST_FIRST =
+            Comparator.comparing(HazelcastEntity::getTimestamp).thenComparing(HazelcastEntity::getId).reversed();
+
+    private final String historyMap;
+    private final QueryHistoryProcessor processor;
+    private final int take;
+    private transient HazelcastInstance hazelcastInstance;
+
+    public QueryLocalHistoriesTask(String historyMap, QueryHistoryProcessor processor, int take) {
+        this.historyMap = historyMap;
+        this.processor = processor;
+        this.take = take;
+    }
+
+    @Override
+    public void setHazelcastInstance(HazelcastInstance hazelcastInstance) {
+        this.hazelcastInstance = hazelcastInstance;
+    }
+
+    /**
+     * @return newest entities of local histories and the newest of positions of their oldest kept entities
+     */
+    @Override
+    public HistoryQueryResult call() {
+        final IMap<String, DeviceHistory> histories = hazelcastInstance.getMap(historyMap);
+        final Set<String> localKeys = histories.localKeySet();
+        final List<HazelcastEntity> entities = new ArrayList<>();
+        HistoryCursor oldest = null;
+        if (!localKeys.isEmpty()) {
+            for (Object value : histories.executeOnKeys(localKeys, processor).values()) {
+                if (value == null) {
+                    continue;
+                }
+                final HistoryQueryResult deviceResult = (HistoryQueryResult) value;
+                entities.addAll(deviceResult.getEntities());
+                final HistoryCursor deviceOldest = deviceResult.getOldest();
+                if (deviceOldest != null && (oldest == null || deviceOldest.getTimestamp() > oldest.getTimestamp()
+                        || deviceOldest.getTimestamp() == oldest.getTimestamp() && deviceOldest.getId() > oldest.getId())) {
+                    oldest = deviceOldest;
+                }
+            }
+        }
+        entities.sort(NEWEST_FIRST);
+        if (take > 0 && entities.size() > take) {
+            return new HistoryQueryResult(new ArrayList<>(entities.subList(0, take)), oldest);
+        }
+        return new HistoryQueryResult(entities, oldest);
+    }
+}
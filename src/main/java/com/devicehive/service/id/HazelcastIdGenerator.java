@@ -0,0 +1,121 @@
+package com.devicehive.service.id;
+
+import com.hazelcast.core.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Snowflake-style generator: 40 bits of milliseconds since {@link #EPOCH}, 6 bits of node id and 7 bits of
+ * per-millisecond sequence. Ids fit into 53 bits, so they are represented exactly by JSON numbers on the client
+ * side. After a node id is taken ids are generated locally without any coordination, they are roughly time-ordered
+ * across the cluster.
+ * <p>
+ * Node ids are held in cluster-wide map by uuid of the hazelcast member that took them. A node id is released when
+ * the generator is destroyed or its member leaves the cluster, so ids of live members are never reused.
+ */
+@Component
+public class HazelcastIdGenerator implements IdGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(HazelcastIdGenerator.class);
+
+    private static final String NODE_IDS_MAP = "ID-GENERATOR-NODE-IDS";
+
+    static final long EPOCH = 1420070400000L; // 2015-01-01T00:00:00Z
+    static final int TIMESTAMP_BITS = 40;
+    static final int NODE_BITS = 6;
+    static final int SEQUENCE_BITS = 7;
+    static final long MAX_TIMESTAMP = (1L << TIMESTAMP_BITS) - 1;
+    static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    private IMap<Long, String> nodeIds;
+    private String memberUuid;
+    private String membershipListenerId;
+    private long nodeId;
+    private long lastTimestamp = -1L;
+    private long sequence;
+
+    @PostConstruct
+    public void init() {
+        nodeIds = hazelcastInstance.getMap(NODE_IDS_MAP);
+        memberUuid = hazelcastInstance.getCluster().getLocalMember().getUuid();
+        membershipListenerId = hazelcastInstance.getCluster().addMembershipListener(new MembershipAdapter() {
+            @Override
+            public void memberRemoved(MembershipEvent event) {
+                releaseNodeIds(event.getMember().getUuid());
+            }
+        });
+        // members which left before the listener was added
+        final Set<String> members = hazelcastInstance.getCluster().getMembers().stream()
+                .map(Member::getUuid).collect(Collectors.toSet());
+        nodeIds.entrySet().stream().filter(entry -> !members.contains(entry.getValue()))
+                .forEach(entry -> nodeIds.remove(entry.getKey(), entry.getValue()));
+
+        nodeId = takeNodeId();
+        logger.info("Id generator node id is {}", nodeId);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        hazelcastInstance.getCluster().removeMembershipListener(membershipListenerId);
+        nodeIds.remove(nodeId, memberUuid);
+    }
+
+    private long takeNodeId() {
+        for (long id = 0; id <= MAX_NODE; id++) {
+            if (nodeIds.putIfAbsent(id, memberUuid) == null) {
+                return id;
+            }
+        }
+        throw new IllegalStateException("All " + (MAX_NODE + 1) + " id generator node ids are taken");
+    }
+
+    private void releaseNodeIds(String uuid) {
+        for (Map.Entry<Long, String> entry : nodeIds.entrySet()) {
+            if (uuid.equals(entry.getValue())) {
+                nodeIds.remove(entry.getKey(), uuid);
+            }
+        }
+    }
+
+    @Override
+    public synchronized long nextId() {
+        long timestamp = System.currentTimeMillis();
+        if (timestamp < lastTimestamp) {
+            // clock moved backwards, keep generating ids in the last known millisecond
+            timestamp = lastTimestamp;
+        }
+        if (timestamp == lastTimestamp) {
+            sequence = (sequence + 1) & MAX_SEQUENCE;
+            if (sequence == 0) {
+                timestamp = waitNextMillis(lastTimestamp);
+            }
+        } else {
+            sequence = 0;
+        }
+        lastTimestamp = timestamp;
+        if (timestamp - EPOCH > MAX_TIMESTAMP) {
+            throw new IllegalStateException("Id generator timestamp is out of " + TIMESTAMP_BITS + " bits");
+        }
+        return ((timestamp - EPOCH) << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    private static long waitNextMillis(long lastTimestamp) {
+        long timestamp = System.currentTimeMillis();
+        while (timestamp <= lastTimestamp) {
+            Thread.yield();
+            timestamp = System.currentTimeMillis();
+        }
+        return timestamp;
+    }
+}
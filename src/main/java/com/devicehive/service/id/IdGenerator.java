@@ -0,0 +1,11 @@
+package com.devicehive.service.id;
+
+
+public interface IdGenerator {
+
+    /**
+     * @return cluster-unique positive id, ids generated on the same node are strictly increasing
+     */
+    long nextId();
+
+}
@@ -0,0 +1,147 @@
+package com.devicehive.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lightweight timer wheel for large amounts of short living timeouts (long polling, waits).
+ * Scheduling and cancellation are O(1) and do not occupy any thread while timeout is pending,
+ * a single worker thread advances the wheel every tick and fires expired timeouts.
+ * Timeouts are fired with tick precision, which is more than enough for request timeouts.
+ */
+public class HashedWheelTimer {
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    private final long tickMillis;
+    private final Queue<Timeout>[] wheel;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean stopped;
+    private long startTime;
+    private long tick;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick duration and wheel size must be positive");
+        }
+        this.tickMillis = Math.max(1, unit.toMillis(tickDuration));
+        this.wheel = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            startTime = System.currentTimeMillis();
+            worker.start();
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    /**
+     * Schedules task to be executed once after specified delay. Task is executed in the timer thread,
+     * so it should be short and must not block.
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        start();
+        Timeout timeout = new Timeout(task, System.currentTimeMillis() + unit.toMillis(delay));
+        pending.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (!stopped) {
+            long deadline = startTime + (tick + 1) * tickMillis;
+            long sleep = deadline - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (stopped) {
+                        break;
+                    }
+                }
+                continue;
+            }
+            transferPending();
+            expire(wheel[(int) (tick % wheel.length)], deadline);
+            tick++;
+        }
+        logger.debug("Timer {} stopped", worker.getName());
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            long ticks = Math.max(tick, (timeout.deadline - startTime) / tickMillis);
+            timeout.rounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks % wheel.length)].add(timeout);
+        }
+    }
+
+    private void expire(Queue<Timeout> bucket, long deadline) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.isCancelled()) {
+                iterator.remove();
+            } else if (timeout.rounds <= 0 && timeout.deadline <= deadline) {
+                iterator.remove();
+                timeout.expire();
+            } else {
+                timeout.rounds--;
+            }
+        }
+    }
+
+    public static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private long rounds;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return true if timeout was cancelled by this call, false if it has been already fired or cancelled
+         */
+        public boolean cancel() {
+            return done.compareAndSet(false, true);
+        }
+
+        public boolean isCancelled() {
+            return done.get();
+        }
+
+        private void expire() {
+            if (done.compareAndSet(false, true)) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Timeout task failed", e);
+                }
+            }
+        }
+    }
+}
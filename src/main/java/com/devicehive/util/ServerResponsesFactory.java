@@ -74,6 +74,19 @@ public class ServerResponsesFactory {
         return notification;
     }
 
+    /**
+     * Server-originated notification about device status change, same as sent by devices themselves
+     */
+    public static DeviceNotification createDeviceStatusNotification(String deviceGuid, String status) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setNotification(SpecialNotifications.DEVICE_STATUS);
+        notification.setDeviceGuid(deviceGuid);
+        JsonObject parameters = new JsonObject();
+        parameters.addProperty(Constants.STATUS, status);
+        notification.setParameters(new JsonStringWrapper(parameters.toString()));
+        return notification;
+    }
+
     public static DeviceEquipment parseDeviceEquipmentNotification(DeviceNotification notification, Device device) {
         final String notificationParameters = notification.getParameters().getJsonString();
         if (notificationParameters == null) {
@@ -8,7 +8,9 @@ import com.devicehive.messages.subscriptions.SubscriptionManager;
 import com.devicehive.websockets.converters.JsonMessageBuilder;
 import com.devicehive.websockets.handlers.WebsocketExecutor;
 import com.devicehive.websockets.util.AsyncMessageSupplier;
+import com.devicehive.websockets.util.OutgoingMessage;
 import com.devicehive.websockets.util.SessionMonitor;
+import com.devicehive.websockets.util.SessionOutboundQueue;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
@@ -16,6 +18,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
@@ -43,6 +46,12 @@ abstract class AbstractWebSocketHandler extends TextWebSocketHandler {
     @Autowired
     private AsyncMessageSupplier asyncMessageSupplier;
 
+    @Value("${websocket.outbound.queue.capacity:" + HiveWebsocketSessionState.DEFAULT_QUEUE_CAPACITY + "}")
+    private int outboundQueueCapacity;
+
+    @Value("${websocket.outbound.queue.policy:DROP_OLDEST}")
+    private SessionOutboundQueue.OverflowPolicy outboundQueuePolicy;
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         logger.debug("Opening session id {} ", session.getId());
@@ -50,7 +59,7 @@ abstract class AbstractWebSocketHandler extends TextWebSocketHandler {
         session.setBinaryMessageSizeLimit(Constants.WEBSOCKET_MAX_BUFFER_SIZE);
         session.setTextMessageSizeLimit(Constants.WEBSOCKET_MAX_BUFFER_SIZE);
 
-        HiveWebsocketSessionState state = new HiveWebsocketSessionState();
+        HiveWebsocketSessionState state = new HiveWebsocketSessionState(outboundQueueCapacity, outboundQueuePolicy);
         session.getAttributes().put(HiveWebsocketSessionState.KEY, state);
         sessionMonitor.registerSession(session);
     }
@@ -66,7 +75,7 @@ abstract class AbstractWebSocketHandler extends TextWebSocketHandler {
             throw new JsonParseException(ex);
         }
         JsonObject response = executor.execute(request, session);
-        HiveWebsocketSessionState.get(session).getQueue().add(response);
+        HiveWebsocketSessionState.get(session).getQueue().offer(OutgoingMessage.reply(response));
         asyncMessageSupplier.deliverMessages(session);
     }
 
@@ -102,6 +111,6 @@ abstract class AbstractWebSocketHandler extends TextWebSocketHandler {
                     .createErrorResponseBuilder(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Internal server error");
         }
         session.sendMessage(
-                new TextMessage(GsonFactory.createGson().toJson(builder.build())));
+                new TextMessage(GsonFactory.createCompactGson().toJson(builder.build())));
     }
 }
@@ -4,9 +4,9 @@ package com.devicehive.websockets;
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.configuration.Constants;
 import com.devicehive.websockets.util.HiveEndpoint;
+import com.devicehive.websockets.util.SessionOutboundQueue;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.google.gson.JsonElement;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.util.Collections;
@@ -14,16 +14,18 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class HiveWebsocketSessionState {
 
     public static final String KEY = HiveWebsocketSessionState.class.getName();
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
     private final Lock queueLock = new ReentrantLock(true);
-    private final ConcurrentLinkedQueue<JsonElement> queue = new ConcurrentLinkedQueue<>();
+    private final SessionOutboundQueue queue;
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
     private final Set<UUID> commandSubscriptions = Collections.newSetFromMap(new ConcurrentHashMap<>());
     private final Set<UUID> commandUpdateSubscriptions = Collections.newSetFromMap(new ConcurrentHashMap<>());
     private final Lock commandSubscriptionsLock = new ReentrantLock(true);
@@ -35,6 +37,14 @@ public class HiveWebsocketSessionState {
     private HiveEndpoint endpoint;
     private HivePrincipal hivePrincipal;
 
+    public HiveWebsocketSessionState() {
+        this(DEFAULT_QUEUE_CAPACITY, SessionOutboundQueue.OverflowPolicy.DROP_OLDEST);
+    }
+
+    public HiveWebsocketSessionState(int queueCapacity, SessionOutboundQueue.OverflowPolicy overflowPolicy) {
+        this.queue = new SessionOutboundQueue(queueCapacity, overflowPolicy);
+    }
+
     public static HiveWebsocketSessionState get(WebSocketSession session) {
         return (HiveWebsocketSessionState) session.getAttributes().get(HiveWebsocketSessionState.KEY);
     }
@@ -51,10 +61,17 @@ public class HiveWebsocketSessionState {
         return queueLock;
     }
 
-    public ConcurrentLinkedQueue<JsonElement> getQueue() {
+    public SessionOutboundQueue getQueue() {
         return queue;
     }
 
+    /**
+     * Set while drain task of the session queue is submitted or running
+     */
+    public AtomicBoolean getWriteScheduled() {
+        return writeScheduled;
+    }
+
     public Set<UUID> getCommandSubscriptions() {
         return commandSubscriptions;
     }
@@ -0,0 +1,132 @@
+package com.devicehive.websockets.converters;
+
+import com.devicehive.json.adapters.TimestampAdapter;
+import com.devicehive.model.JsonStringWrapper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import kafka.serializer.Decoder;
+import kafka.serializer.Encoder;
+import kafka.utils.VerifiableProperties;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Base kafka converter writing messages in compact binary format: version byte, bitmask of present fields and
+ * the present fields themselves (strings and json parameters as length-prefixed UTF-8 bytes, timestamps as epoch
+ * millis). Messages written in JSON format by previous versions start with '{' and are still readable, so nodes can be
+ * upgraded one by one. Format of written messages is selected by {@link #FORMAT_PROPERTY} producer property, JSON is
+ * written by default and binary format is opt-in.
+ */
+public abstract class AbstractBinaryConverter<T> implements Encoder<T>, Decoder<T> {
+    public static final String FORMAT_PROPERTY = "devicehive.message.format";
+    public static final String BINARY_FORMAT = "binary";
+    public static final String JSON_FORMAT = "json";
+
+    static final byte BINARY_V1 = 1;
+    private static final byte JSON_START = '{';
+
+    private final Class<T> messageClass;
+    private final Gson gson;
+    private final boolean writeBinary;
+
+    protected AbstractBinaryConverter(VerifiableProperties verifiableProperties, Class<T> messageClass) {
+        this.messageClass = messageClass;
+        this.gson = new GsonBuilder().disableHtmlEscaping().registerTypeAdapter(Date.class, new TimestampAdapter()).create();
+        String format = verifiableProperties != null && verifiableProperties.containsKey(FORMAT_PROPERTY)
+                ? verifiableProperties.getString(FORMAT_PROPERTY)
+                : JSON_FORMAT;
+        this.writeBinary = BINARY_FORMAT.equalsIgnoreCase(format);
+    }
+
+    @Override
+    public byte[] toBytes(T message) {
+        if (!writeBinary) {
+            return toJsonString(message).getBytes(StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(BINARY_V1);
+            writeBinary(message, out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode " + messageClass.getSimpleName(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public T fromBytes(byte[] bytes) {
+        if (bytes.length > 0 && bytes[0] == JSON_START) {
+            return gson.fromJson(new String(bytes, StandardCharsets.UTF_8), messageClass);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte version = in.readByte();
+            if (version != BINARY_V1) {
+                throw new IllegalArgumentException("Unsupported message format version " + version);
+            }
+            return readBinary(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to decode " + messageClass.getSimpleName(), e);
+        }
+    }
+
+    public String toJsonString(T message) {
+        return gson.toJson(message);
+    }
+
+    public T fromString(String string) {
+        return gson.fromJson(string, messageClass);
+    }
+
+    protected abstract void writeBinary(T message, DataOutput out) throws IOException;
+
+    protected abstract T readBinary(DataInput in) throws IOException;
+
+    protected static int presence(Object... fields) {
+        int mask = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    protected static boolean isPresent(int mask, int field) {
+        return (mask & (1 << field)) != 0;
+    }
+
+    protected static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    protected static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Json parameters are written as is, without parsing
+     */
+    protected static void writeJson(DataOutput out, JsonStringWrapper value) throws IOException {
+        if (value.getJsonString() == null) {
+            out.writeInt(-1);
+        } else {
+            writeString(out, value.getJsonString());
+        }
+    }
+
+    protected static JsonStringWrapper readJson(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return new JsonStringWrapper();
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new JsonStringWrapper(new String(bytes, StandardCharsets.UTF_8));
+    }
+}
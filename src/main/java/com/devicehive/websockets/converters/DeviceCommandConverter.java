@@ -1,45 +1,104 @@
 package com.devicehive.websockets.converters;
 
-import com.devicehive.json.adapters.TimestampAdapter;
 import com.devicehive.model.DeviceCommand;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import kafka.serializer.Decoder;
-import kafka.serializer.Encoder;
 import kafka.utils.VerifiableProperties;
 
-import java.io.UnsupportedEncodingException;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Date;
 
 /**
  * Created by tmatvienko on 12/24/14.
  */
-public class DeviceCommandConverter implements Encoder<DeviceCommand>, Decoder<DeviceCommand>{
-    private Gson gson;
+public class DeviceCommandConverter extends AbstractBinaryConverter<DeviceCommand> {
+    private static final int ID = 0;
+    private static final int COMMAND = 1;
+    private static final int TIMESTAMP = 2;
+    private static final int USER_ID = 3;
+    private static final int DEVICE_GUID = 4;
+    private static final int PARAMETERS = 5;
+    private static final int LIFETIME = 6;
+    private static final int STATUS = 7;
+    private static final int RESULT = 8;
+    private static final int IS_UPDATED = 9;
+
     public DeviceCommandConverter(VerifiableProperties verifiableProperties) {
-        gson = new GsonBuilder().disableHtmlEscaping().registerTypeAdapter(Date.class, new TimestampAdapter()).create();
+        super(verifiableProperties, DeviceCommand.class);
     }
 
     @Override
-    public byte[] toBytes(DeviceCommand deviceCommand) {
-        return toJsonString(deviceCommand).getBytes();
-    }
-
-    public String toJsonString(DeviceCommand deviceCommand) {
-        return gson.toJson(deviceCommand);
+    protected void writeBinary(DeviceCommand command, DataOutput out) throws IOException {
+        int mask = presence(command.getId(), command.getCommand(), command.getTimestamp(), command.getUserId(),
+                command.getDeviceGuid(), command.getParameters(), command.getLifetime(), command.getStatus(),
+                command.getResult(), command.getIsUpdated());
+        out.writeInt(mask);
+        if (isPresent(mask, ID)) {
+            out.writeLong(command.getId());
+        }
+        if (isPresent(mask, COMMAND)) {
+            writeString(out, command.getCommand());
+        }
+        if (isPresent(mask, TIMESTAMP)) {
+            out.writeLong(command.getTimestamp().getTime());
+        }
+        if (isPresent(mask, USER_ID)) {
+            out.writeLong(command.getUserId());
+        }
+        if (isPresent(mask, DEVICE_GUID)) {
+            writeString(out, command.getDeviceGuid());
+        }
+        if (isPresent(mask, PARAMETERS)) {
+            writeJson(out, command.getParameters());
+        }
+        if (isPresent(mask, LIFETIME)) {
+            out.writeInt(command.getLifetime());
+        }
+        if (isPresent(mask, STATUS)) {
+            writeString(out, command.getStatus());
+        }
+        if (isPresent(mask, RESULT)) {
+            writeJson(out, command.getResult());
+        }
+        if (isPresent(mask, IS_UPDATED)) {
+            out.writeBoolean(command.getIsUpdated());
+        }
     }
 
     @Override
-    public DeviceCommand fromBytes(byte[] bytes) {
-        try {
-            return gson.fromJson(new String(bytes, "UTF-8"), DeviceCommand.class);
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
+    protected DeviceCommand readBinary(DataInput in) throws IOException {
+        DeviceCommand command = new DeviceCommand();
+        int mask = in.readInt();
+        if (isPresent(mask, ID)) {
+            command.setId(in.readLong());
         }
-        return null;
-    }
-
-    public DeviceCommand fromString(String string) {
-        return gson.fromJson(string, DeviceCommand.class);
+        if (isPresent(mask, COMMAND)) {
+            command.setCommand(readString(in));
+        }
+        if (isPresent(mask, TIMESTAMP)) {
+            command.setTimestamp(new Date(in.readLong()));
+        }
+        if (isPresent(mask, USER_ID)) {
+            command.setUserId(in.readLong());
+        }
+        if (isPresent(mask, DEVICE_GUID)) {
+            command.setDeviceGuid(readString(in));
+        }
+        if (isPresent(mask, PARAMETERS)) {
+            command.setParameters(readJson(in));
+        }
+        if (isPresent(mask, LIFETIME)) {
+            command.setLifetime(in.readInt());
+        }
+        if (isPresent(mask, STATUS)) {
+            command.setStatus(readString(in));
+        }
+        if (isPresent(mask, RESULT)) {
+            command.setResult(readJson(in));
+        }
+        if (isPresent(mask, IS_UPDATED)) {
+            command.setIsUpdated(in.readBoolean());
+        }
+        return command;
     }
 }
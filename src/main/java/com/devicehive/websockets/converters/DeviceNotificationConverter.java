@@ -1,45 +1,68 @@
 package com.devicehive.websockets.converters;
 
-import com.devicehive.json.adapters.TimestampAdapter;
 import com.devicehive.model.DeviceNotification;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import kafka.serializer.Decoder;
-import kafka.serializer.Encoder;
 import kafka.utils.VerifiableProperties;
 
-import java.io.UnsupportedEncodingException;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Date;
 
 /**
  * Created by tmatvienko on 12/24/14.
  */
-public class DeviceNotificationConverter implements Encoder<DeviceNotification>, Decoder<DeviceNotification> {
-    private Gson gson;
+public class DeviceNotificationConverter extends AbstractBinaryConverter<DeviceNotification> {
+    private static final int ID = 0;
+    private static final int NOTIFICATION = 1;
+    private static final int DEVICE_GUID = 2;
+    private static final int TIMESTAMP = 3;
+    private static final int PARAMETERS = 4;
+
     public DeviceNotificationConverter(VerifiableProperties verifiableProperties) {
-        gson = new GsonBuilder().disableHtmlEscaping().registerTypeAdapter(Date.class, new TimestampAdapter()).create();
+        super(verifiableProperties, DeviceNotification.class);
     }
 
     @Override
-    public byte[] toBytes(DeviceNotification deviceNotification) {
-        return toJsonString(deviceNotification).getBytes();
-    }
-
-    public String toJsonString(DeviceNotification deviceNotification) {
-        return gson.toJson(deviceNotification);
+    protected void writeBinary(DeviceNotification notification, DataOutput out) throws IOException {
+        int mask = presence(notification.getId(), notification.getNotification(), notification.getDeviceGuid(),
+                notification.getTimestamp(), notification.getParameters());
+        out.writeInt(mask);
+        if (isPresent(mask, ID)) {
+            out.writeLong(notification.getId());
+        }
+        if (isPresent(mask, NOTIFICATION)) {
+            writeString(out, notification.getNotification());
+        }
+        if (isPresent(mask, DEVICE_GUID)) {
+            writeString(out, notification.getDeviceGuid());
+        }
+        if (isPresent(mask, TIMESTAMP)) {
+            out.writeLong(notification.getTimestamp().getTime());
+        }
+        if (isPresent(mask, PARAMETERS)) {
+            writeJson(out, notification.getParameters());
+        }
     }
 
     @Override
-    public DeviceNotification fromBytes(byte[] bytes) {
-        try {
-            return gson.fromJson(new String(bytes, "UTF-8"), DeviceNotification.class);
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
+    protected DeviceNotification readBinary(DataInput in) throws IOException {
+        DeviceNotification notification = new DeviceNotification();
+        int mask = in.readInt();
+        if (isPresent(mask, ID)) {
+            notification.setId(in.readLong());
         }
-        return null;
-    }
-
-    public DeviceNotification fromString(String string) {
-        return gson.fromJson(string, DeviceNotification.class);
+        if (isPresent(mask, NOTIFICATION)) {
+            notification.setNotification(readString(in));
+        }
+        if (isPresent(mask, DEVICE_GUID)) {
+            notification.setDeviceGuid(readString(in));
+        }
+        if (isPresent(mask, TIMESTAMP)) {
+            notification.setTimestamp(new Date(in.readLong()));
+        }
+        if (isPresent(mask, PARAMETERS)) {
+            notification.setParameters(readJson(in));
+        }
+        return notification;
     }
 }
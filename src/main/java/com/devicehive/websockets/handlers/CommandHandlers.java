@@ -16,13 +16,14 @@ import com.devicehive.model.User;
 import com.devicehive.model.wrappers.DeviceCommandWrapper;
 import com.devicehive.service.DeviceCommandService;
 import com.devicehive.service.DeviceService;
-import com.devicehive.util.ServerResponsesFactory;
 import com.devicehive.websockets.HiveWebsocketSessionState;
 import com.devicehive.websockets.InsertCommand;
 import com.devicehive.websockets.converters.WebSocketResponse;
 import com.devicehive.websockets.handlers.annotations.Action;
 import com.devicehive.websockets.handlers.annotations.WsParam;
 import com.devicehive.websockets.util.AsyncMessageSupplier;
+import com.devicehive.websockets.util.FanOutMessageSerializer;
+import com.devicehive.websockets.util.OutgoingMessage;
 import com.devicehive.websockets.util.SubscriptionSessionMap;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -153,7 +154,7 @@ public class CommandHandlers extends WebsocketHandlers {
                         Constants.DEFAULT_TAKE, false, principal);
                 if (!commands.isEmpty()) {
                     for (DeviceCommand deviceCommand : commands) {
-                        state.getQueue().add(ServerResponsesFactory.createCommandInsertMessage(deviceCommand, reqId));
+                        state.getQueue().offer(OutgoingMessage.of(FanOutMessageSerializer.commandInsert(deviceCommand, reqId)));
                     }
                 }
             }
@@ -283,7 +284,9 @@ public class CommandHandlers extends WebsocketHandlers {
         if (commandUpdate == null || device == null) {
             throw new HiveException(String.format(Messages.COMMAND_NOT_FOUND, id), SC_NOT_FOUND);
         }
-        commandService.update(id, guid, commandUpdate);
+        if (commandService.update(id, guid, commandUpdate) == null) {
+            throw new HiveException(String.format(Messages.COMMAND_NOT_FOUND, id), SC_NOT_FOUND);
+        }
 
         logger.debug("command/update proceed successfully for session: {}. Device guid: {}. Command id: {}", session,
                 guid, id);
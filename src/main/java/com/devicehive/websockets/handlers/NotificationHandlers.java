@@ -11,16 +11,18 @@ import com.devicehive.messages.subscriptions.NotificationSubscription;
 import com.devicehive.messages.subscriptions.SubscriptionManager;
 import com.devicehive.model.Device;
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.response.NotificationInsertResult;
 import com.devicehive.model.wrappers.DeviceNotificationWrapper;
 import com.devicehive.service.DeviceNotificationService;
 import com.devicehive.service.DeviceService;
-import com.devicehive.util.ServerResponsesFactory;
 import com.devicehive.websockets.HiveWebsocketSessionState;
 import com.devicehive.websockets.InsertNotification;
 import com.devicehive.websockets.converters.WebSocketResponse;
 import com.devicehive.websockets.handlers.annotations.Action;
 import com.devicehive.websockets.handlers.annotations.WsParam;
 import com.devicehive.websockets.util.AsyncMessageSupplier;
+import com.devicehive.websockets.util.FanOutMessageSerializer;
+import com.devicehive.websockets.util.OutgoingMessage;
 import com.devicehive.websockets.util.SubscriptionSessionMap;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -135,7 +137,7 @@ public class NotificationHandlers extends WebsocketHandlers {
                         devices, names, timestamp, Constants.DEFAULT_TAKE, principal);
                 if (!notifications.isEmpty()) {
                     for (DeviceNotification deviceNotification : notifications) {
-                        state.getQueue().add(ServerResponsesFactory.createNotificationInsertMessage(deviceNotification, reqId));
+                        state.getQueue().offer(OutgoingMessage.of(FanOutMessageSerializer.notificationInsert(deviceNotification, reqId)));
                     }
                 }
             }
@@ -234,4 +236,42 @@ public class NotificationHandlers extends WebsocketHandlers {
         response.addValue(NOTIFICATION, new InsertNotification(message.getId(), message.getTimestamp()), NOTIFICATION_TO_DEVICE);
         return response;
     }
+
+    @Action("notification/insert/batch")
+    @PreAuthorize("hasAnyRole('ADMIN', 'CLIENT', 'KEY') and hasPermission(null, 'CREATE_DEVICE_NOTIFICATION')")
+    public WebSocketResponse processNotificationInsertBatch(@WsParam(DEVICE_GUID) String deviceGuid,
+                                                            @WsParam(NOTIFICATIONS)
+                                                            @JsonPolicyDef(NOTIFICATION_FROM_DEVICE)
+                                                            List<DeviceNotificationWrapper> notificationSubmits,
+                                                            WebSocketSession session) {
+        logger.debug("notification/insert/batch requested. Session {}. Guid {}", session, deviceGuid);
+        HivePrincipal principal = (HivePrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        if (notificationSubmits == null || notificationSubmits.isEmpty()
+                || notificationSubmits.size() > MAX_NOTIFICATION_BATCH_SIZE) {
+            logger.debug("notification/insert/batch proceed with error. Invalid batch size.");
+            throw new HiveException(String.format(Messages.INVALID_NOTIFICATION_BATCH_SIZE, MAX_NOTIFICATION_BATCH_SIZE),
+                    SC_BAD_REQUEST);
+        }
+
+        Device device;
+        if (deviceGuid == null) {
+            device = principal.getDevice();
+        } else {
+            device = deviceService.findByGuidWithPermissionsCheck(deviceGuid, principal);
+        }
+        if (device == null) {
+            logger.debug("notification/insert/batch canceled for session: {}. Guid is not provided", session);
+            throw new HiveException(Messages.DEVICE_GUID_REQUIRED, SC_FORBIDDEN);
+        }
+        if (device.getNetwork() == null) {
+            logger.debug("notification/insert/batch. No network specified for device with guid = {}", deviceGuid);
+            throw new HiveException(String.format(Messages.DEVICE_IS_NOT_CONNECTED_TO_NETWORK, deviceGuid), SC_FORBIDDEN);
+        }
+        List<NotificationInsertResult> results = notificationService.submitDeviceNotifications(notificationSubmits, device);
+        logger.debug("notification/insert/batch proceed successfully. Session {}. Guid {}", session, deviceGuid);
+
+        WebSocketResponse response = new WebSocketResponse();
+        response.addValue(NOTIFICATIONS, results, NOTIFICATION_TO_DEVICE);
+        return response;
+    }
 }
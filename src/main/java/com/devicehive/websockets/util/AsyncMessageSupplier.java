@@ -1,70 +1,96 @@
 package com.devicehive.websockets.util;
 
 import com.devicehive.application.DeviceHiveApplication;
-import com.devicehive.configuration.Constants;
-import com.devicehive.json.GsonFactory;
 import com.devicehive.websockets.HiveWebsocketSessionState;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.web.socket.*;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
 
 import java.io.IOException;
-import java.util.concurrent.ConcurrentLinkedQueue;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Schedules delivery of queued messages to websocket sessions. Each session has at most one drain task at a time,
+ * guarded by {@link HiveWebsocketSessionState#getWriteScheduled()} flag, so bursts of messages to the same session
+ * result in single task instead of a task per message. Drain tasks run on dedicated writer pool and write at most
+ * {@code websocket.writer.drain.bytes} per run, then reschedule themselves, so one busy session does not hold a writer
+ * thread forever.
+ */
 @Component
 public class AsyncMessageSupplier {
 
     private static final Logger logger = LoggerFactory.getLogger(AsyncMessageSupplier.class);
 
-    public static final JsonElement PING_JSON_MSG = new JsonArray();
+    @Autowired
+    @Qualifier(DeviceHiveApplication.WEBSOCKET_WRITER_EXECUTOR)
+    private ExecutorService writerExecutor;
+
+    @Value("${websocket.writer.drain.bytes:65536}")
+    private int drainBytes = 65536;
 
-    @Async(DeviceHiveApplication.MESSAGE_EXECUTOR)
     public void deliverMessages(WebSocketSession session) {
-        ConcurrentLinkedQueue<JsonElement> queue = HiveWebsocketSessionState.get(session).getQueue();
-        boolean acquired = false;
-        try {
-            acquired = HiveWebsocketSessionState.get(session).getQueueLock().tryLock();
-            if (acquired) {
-                while (!queue.isEmpty()) {
-                    JsonElement jsonElement = queue.peek();
-                    if (jsonElement == null) {
-                        queue.poll();
-                        continue;
-                    }
-                    if (session.isOpen()) {
-                        WebSocketMessage<?> webSocketMessage = null;
-                        if (jsonElement == PING_JSON_MSG) {
-                            webSocketMessage = new PingMessage(Constants.PING);
-                        } else {
-                            String data = GsonFactory.createGson().toJson(jsonElement);
-                            webSocketMessage = new TextMessage(data);
-                        }
-                        session.sendMessage(webSocketMessage);
-                        queue.poll();
-                    } else {
-                        logger.error("Session is closed. Unable to deliver message");
-                        queue.clear();
-                        return;
-                    }
-                    logger.debug("Session {}: {} messages left", session.getId(), queue.size());
-                }
+        HiveWebsocketSessionState state = HiveWebsocketSessionState.get(session);
+        AtomicBoolean scheduled = state.getWriteScheduled();
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                writerExecutor.execute(() -> drain(session, state));
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                logger.warn("Unable to schedule delivery of messages to session {}", session.getId());
             }
+        }
+    }
+
+    private void drain(WebSocketSession session, HiveWebsocketSessionState state) {
+        SessionOutboundQueue queue = state.getQueue();
+        // whoever holds the queue lock owns the queue for now, delivery is resumed by the next scheduled drain
+        if (!state.getQueueLock().tryLock()) {
+            state.getWriteScheduled().set(false);
+            return;
+        }
+        try {
+            write(session, queue);
         } catch (IOException e) {
-            logger.error("Unexpected exception", e);
-            throw new RuntimeException(e);
+            logger.error("Unable to deliver messages to session {}", session.getId(), e);
         } finally {
-            if (acquired) {
-                HiveWebsocketSessionState.get(session).getQueueLock().unlock();
+            state.getQueueLock().unlock();
+            state.getWriteScheduled().set(false);
+        }
+        // messages queued after the last poll but before the flag was reset did not schedule a drain themselves,
+        // as well as messages left over the byte budget
+        if (!queue.isEmpty() && session.isOpen()) {
+            deliverMessages(session);
+        }
+    }
+
+    private void write(WebSocketSession session, SessionOutboundQueue queue) throws IOException {
+        if (queue.isOverflowed()) {
+            logger.warn("Session {} is too slow to receive messages, closing it", session.getId());
+            queue.clear();
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("Outbound queue overflow"));
+            return;
+        }
+        long written = 0;
+        OutgoingMessage message;
+        // message is taken from the queue before sending: queued messages may be dropped or coalesced
+        // concurrently, so head of the queue may change while it is being sent
+        while (written < drainBytes && (message = queue.poll()) != null) {
+            if (!session.isOpen()) {
+                logger.error("Session is closed. Unable to deliver message");
+                queue.clear();
+                return;
             }
+            session.sendMessage(message.toWebSocketMessage());
+            written += message.isPing() ? 0 : message.getPayload().length();
         }
+        logger.debug("Session {}: {} messages left", session.getId(), queue.size());
     }
 
 }
-
-
-
@@ -0,0 +1,81 @@
+package com.devicehive.websockets.util;
+
+import com.devicehive.configuration.Constants;
+import com.devicehive.json.GsonFactory;
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gson.Gson;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.devicehive.json.strategies.JsonPolicyDef.Policy.*;
+
+/**
+ * Builds websocket payloads of messages delivered to subscribers. Message is serialized once, the result is shared
+ * by all its recipients, each recipient only gets subscription id spliced into the envelope. Serialized messages are
+ * cached by message instance identity (weak keys), so cache entries go away together with the message; messages are
+ * not modified after they are published.
+ * Produced json is equal to one built by {@link com.devicehive.util.ServerResponsesFactory}.
+ */
+public class FanOutMessageSerializer {
+
+    private static final Cache<DeviceNotification, String> NOTIFICATION_INSERT = createCache();
+    private static final Cache<DeviceCommand, String> COMMAND_INSERT = createCache();
+    private static final Cache<DeviceCommand, String> COMMAND_UPDATE = createCache();
+
+    private static final String SUBSCRIPTION_ID_SUFFIX_START = ",\"" + Constants.SUBSCRIPTION_ID + "\":\"";
+    private static final String SUBSCRIPTION_ID_SUFFIX_END = "\"}";
+
+    public static String notificationInsert(DeviceNotification notification, UUID subId) {
+        String prefix = get(NOTIFICATION_INSERT, notification, n -> envelopePrefix("notification/insert",
+                n.getDeviceGuid(), Constants.NOTIFICATION, GsonFactory.createCompactGson(NOTIFICATION_TO_CLIENT).toJson(n)));
+        return withSubscriptionId(prefix, subId);
+    }
+
+    public static String commandInsert(DeviceCommand command, UUID subId) {
+        String prefix = get(COMMAND_INSERT, command, c -> envelopePrefix("command/insert", c.getDeviceGuid(),
+                Constants.COMMAND, GsonFactory.createCompactGson(COMMAND_TO_DEVICE).toJson(c, DeviceCommand.class)));
+        return withSubscriptionId(prefix, subId);
+    }
+
+    public static String commandUpdate(DeviceCommand command) {
+        return get(COMMAND_UPDATE, command, c -> "{\"action\":\"command/update\",\"" + Constants.COMMAND + "\":"
+                + GsonFactory.createCompactGson(COMMAND_UPDATE_TO_CLIENT).toJson(c) + "}");
+    }
+
+    private static String envelopePrefix(String action, String deviceGuid, String bodyName, String body) {
+        Gson gson = GsonFactory.createCompactGson();
+        return "{\"action\":" + gson.toJson(action)
+                + ",\"" + Constants.DEVICE_GUID + "\":" + gson.toJson(deviceGuid)
+                + ",\"" + bodyName + "\":" + body;
+    }
+
+    private static String withSubscriptionId(String prefix, UUID subId) {
+        return new StringBuilder(prefix.length() + 64)
+                .append(prefix)
+                .append(SUBSCRIPTION_ID_SUFFIX_START)
+                .append(subId)
+                .append(SUBSCRIPTION_ID_SUFFIX_END)
+                .toString();
+    }
+
+    private static <T> String get(Cache<T, String> cache, T message, Function<T, String> serializer) {
+        try {
+            return cache.get(message, () -> serializer.apply(message));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static <T> Cache<T, String> createCache() {
+        return CacheBuilder.newBuilder()
+                .weakKeys()
+                .expireAfterWrite(10, TimeUnit.SECONDS)
+                .build();
+    }
+}
@@ -0,0 +1,69 @@
+package com.devicehive.websockets.util;
+
+import com.devicehive.configuration.Constants;
+import com.devicehive.json.GsonFactory;
+import com.google.gson.JsonElement;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+/**
+ * Message queued for delivery to websocket session. Payload is serialized before the message is queued, so that
+ * messages fanned out to many sessions can share one serialized body.
+ */
+public class OutgoingMessage {
+
+    public static final OutgoingMessage PING = new OutgoingMessage(null, null, false);
+
+    private final String payload;
+    private final String coalesceKey;
+    private final boolean reply;
+
+    private OutgoingMessage(String payload, String coalesceKey, boolean reply) {
+        this.payload = payload;
+        this.coalesceKey = coalesceKey;
+        this.reply = reply;
+    }
+
+    public static OutgoingMessage of(String payload) {
+        return new OutgoingMessage(payload, null, false);
+    }
+
+    public static OutgoingMessage of(String payload, String coalesceKey) {
+        return new OutgoingMessage(payload, coalesceKey, false);
+    }
+
+    /**
+     * @return response to a request of the client, which is never dropped or coalesced
+     */
+    public static OutgoingMessage reply(JsonElement json) {
+        return new OutgoingMessage(GsonFactory.createCompactGson().toJson(json), null, true);
+    }
+
+    /**
+     * @return serialized json, or null for ping
+     */
+    public String getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return key of status-like message which may be replaced by newer message with the same key if client is too
+     * slow to receive both, or null
+     */
+    public String getCoalesceKey() {
+        return coalesceKey;
+    }
+
+    public boolean isReply() {
+        return reply;
+    }
+
+    public boolean isPing() {
+        return this == PING;
+    }
+
+    public WebSocketMessage<?> toWebSocketMessage() {
+        return isPing() ? new PingMessage(Constants.PING) : new TextMessage(payload);
+    }
+}
@@ -11,6 +11,8 @@ import com.devicehive.websockets.HiveWebsocketSessionState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
@@ -20,6 +22,9 @@ import org.springframework.web.socket.WebSocketSession;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -27,7 +32,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
 
 @Component
-public class SessionMonitor {
+public class SessionMonitor implements PublicMetrics {
     private static final Logger logger = LoggerFactory.getLogger(SessionMonitor.class);
 
     private ConcurrentMap<String, WebSocketSession> sessionMap;
@@ -64,12 +69,44 @@ public class SessionMonitor {
         }
     }
 
+    /**
+     * Outbound queues of open sessions: total and max depth, dropped and coalesced messages
+     */
+    @Override
+    public Collection<Metric<?>> metrics() {
+        int sessions = 0;
+        long depth = 0;
+        int maxDepth = 0;
+        long dropped = 0;
+        long coalesced = 0;
+        for (WebSocketSession session : sessionMap.values()) {
+            HiveWebsocketSessionState state = HiveWebsocketSessionState.get(session);
+            if (state == null) {
+                continue;
+            }
+            SessionOutboundQueue queue = state.getQueue();
+            int size = queue.size();
+            sessions++;
+            depth += size;
+            maxDepth = Math.max(maxDepth, size);
+            dropped += queue.getDropped();
+            coalesced += queue.getCoalesced();
+        }
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("websocket.sessions", sessions));
+        metrics.add(new Metric<>("websocket.outbound.depth", depth));
+        metrics.add(new Metric<>("websocket.outbound.depth.max", maxDepth));
+        metrics.add(new Metric<>("websocket.outbound.dropped", dropped));
+        metrics.add(new Metric<>("websocket.outbound.coalesced", coalesced));
+        return metrics;
+    }
+
     @Scheduled(cron = "0/30 * * * * *")
     public synchronized void ping() {
         for (WebSocketSession session : sessionMap.values()) {
             if (session.isOpen()) {
                 logger.debug("Pinging session {}", session.getId());
-                HiveWebsocketSessionState.get(session).getQueue().offer(AsyncMessageSupplier.PING_JSON_MSG);
+                HiveWebsocketSessionState.get(session).getQueue().offer(OutgoingMessage.PING);
                 asyncMessageSupplier.deliverMessages(session);
             } else {
                 logger.debug("Session {} is closed.", session.getId());
@@ -0,0 +1,192 @@
+package com.devicehive.websockets.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue of messages waiting for delivery to websocket session. When queue is full, behaviour is defined by
+ * {@link OverflowPolicy}; pings and replies to requests of the client (see {@link OutgoingMessage#isReply()}) are
+ * never dropped or coalesced and do not count towards the capacity of other messages. They have the same capacity
+ * of their own: client which keeps sending requests without reading replies overflows the queue and has to be
+ * disconnected whatever the policy. All operations are O(1) except coalescing and removal of dropped entry.
+ */
+public class SessionOutboundQueue {
+
+    public enum OverflowPolicy {
+        /**
+         * Oldest queued message is dropped to free space for the new one
+         */
+        DROP_OLDEST,
+        /**
+         * New message is dropped
+         */
+        DROP_NEWEST,
+        /**
+         * Session is marked as overflowed and has to be closed
+         */
+        DISCONNECT,
+        /**
+         * When queue is full, status-like messages (see {@link OutgoingMessage#getCoalesceKey()}) replace not yet
+         * delivered message with the same key, so slow client receives only the latest state. Other messages are
+         * handled as in DROP_OLDEST.
+         */
+        COALESCE_BY_DEVICE
+    }
+
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private final Deque<OutgoingMessage> messages = new ArrayDeque<>();
+    private final Map<String, OutgoingMessage> coalescible = new HashMap<>();
+    private int dataMessages;
+    private int exemptMessages;
+    private volatile boolean overflowed;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public SessionOutboundQueue(int capacity, OverflowPolicy policy) {
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    /**
+     * @return false if message was not queued
+     */
+    public synchronized boolean offer(OutgoingMessage message) {
+        if (!isCounted(message)) {
+            if (exemptMessages >= capacity) {
+                overflowed = true;
+                dropped.incrementAndGet();
+                return false;
+            }
+            messages.addLast(message);
+            exemptMessages++;
+            return true;
+        }
+        String coalesceKey = policy == OverflowPolicy.COALESCE_BY_DEVICE ? message.getCoalesceKey() : null;
+        // client which keeps up receives every status, pending one is replaced only under pressure
+        if (coalesceKey != null && dataMessages >= capacity) {
+            OutgoingMessage pending = coalescible.get(coalesceKey);
+            if (pending != null && replace(pending, message)) {
+                coalescible.put(coalesceKey, message);
+                coalesced.incrementAndGet();
+                return true;
+            }
+        }
+        if (dataMessages >= capacity) {
+            switch (policy) {
+                case DROP_NEWEST:
+                    dropped.incrementAndGet();
+                    return false;
+                case DISCONNECT:
+                    overflowed = true;
+                    dropped.incrementAndGet();
+                    return false;
+                default:
+                    dropOldest();
+            }
+        }
+        messages.addLast(message);
+        dataMessages++;
+        if (coalesceKey != null) {
+            coalescible.put(coalesceKey, message);
+        }
+        return true;
+    }
+
+    public synchronized OutgoingMessage peek() {
+        return messages.peekFirst();
+    }
+
+    public synchronized OutgoingMessage poll() {
+        OutgoingMessage message = messages.pollFirst();
+        if (message != null) {
+            onRemoved(message);
+        }
+        return message;
+    }
+
+    public synchronized boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    /**
+     * @return number of queued messages including pings and replies
+     */
+    public synchronized int size() {
+        return messages.size();
+    }
+
+    public synchronized void clear() {
+        messages.clear();
+        coalescible.clear();
+        dataMessages = 0;
+        exemptMessages = 0;
+    }
+
+    /**
+     * @return true if message was rejected with {@link OverflowPolicy#DISCONNECT} policy, or ping or reply was
+     * rejected with any policy
+     */
+    public boolean isOverflowed() {
+        return overflowed;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private boolean replace(OutgoingMessage pending, OutgoingMessage message) {
+        Iterator<OutgoingMessage> iterator = messages.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == pending) {
+                iterator.remove();
+                messages.addLast(message);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void dropOldest() {
+        Iterator<OutgoingMessage> iterator = messages.iterator();
+        while (iterator.hasNext()) {
+            OutgoingMessage message = iterator.next();
+            if (isCounted(message)) {
+                iterator.remove();
+                onRemoved(message);
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void onRemoved(OutgoingMessage message) {
+        if (!isCounted(message)) {
+            exemptMessages--;
+        } else {
+            dataMessages--;
+            String coalesceKey = message.getCoalesceKey();
+            if (coalesceKey != null && coalescible.get(coalesceKey) == message) {
+                coalescible.remove(coalesceKey);
+            }
+        }
+    }
+
+    private static boolean isCounted(OutgoingMessage message) {
+        return !message.isPing() && !message.isReply();
+    }
+}
@@ -0,0 +1,38 @@
+-- Durable history of notifications and commands. Rows are stored in day partitions inheriting these tables,
+-- partitions are created on demand by create_history_partition.
+CREATE TABLE notification_history (
+    id BIGINT NOT NULL,
+    device_guid VARCHAR(48) NOT NULL,
+    notification VARCHAR(128) NOT NULL,
+    timestamp TIMESTAMP WITH TIME ZONE NOT NULL,
+    parameters TEXT NULL
+);
+
+CREATE TABLE command_history (
+    id BIGINT NOT NULL,
+    device_guid VARCHAR(48) NOT NULL,
+    command VARCHAR(128) NOT NULL,
+    timestamp TIMESTAMP WITH TIME ZONE NOT NULL,
+    parameters TEXT NULL,
+    user_id BIGINT NULL,
+    lifetime INTEGER NULL,
+    status VARCHAR(128) NULL,
+    result TEXT NULL,
+    is_updated BOOLEAN NOT NULL DEFAULT FALSE
+);
+
+CREATE OR REPLACE FUNCTION create_history_partition(parent TEXT, day DATE) RETURNS VOID AS $$
+DECLARE
+    partition TEXT := parent || '_' || to_char(day, 'YYYYMMDD');
+BEGIN
+    IF to_regclass(partition) IS NULL THEN
+        EXECUTE format('CREATE TABLE %I (CHECK (timestamp >= %L AND timestamp < %L)) INHERITS (%I)',
+                       partition, day::TIMESTAMP AT TIME ZONE 'UTC', (day + 1)::TIMESTAMP AT TIME ZONE 'UTC', parent);
+        EXECUTE format('CREATE INDEX %I ON %I (device_guid, timestamp)', partition || '_device_timestamp_idx', partition);
+        EXECUTE format('CREATE INDEX %I ON %I (timestamp)', partition || '_timestamp_idx', partition);
+    END IF;
+EXCEPTION
+    -- partition was created concurrently by another node
+    WHEN duplicate_table THEN NULL;
+END;
+$$ LANGUAGE plpgsql;
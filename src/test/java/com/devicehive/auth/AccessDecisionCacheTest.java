@@ -0,0 +1,202 @@
+package com.devicehive.auth;
+
+import com.devicehive.model.AccessKey;
+import com.devicehive.model.AccessKeyPermission;
+import com.devicehive.model.User;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IAtomicLong;
+import com.hazelcast.core.IMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AccessDecisionCacheTest {
+    private static final String DEVICE_GUID = "E50D6085-2ABA-48E9-B1C3-73C673E414BE";
+    private static final String OTHER_DEVICE_GUID = "4F0F0B2B-6B1E-4E3A-9B6B-2E5C0C0E7E2A";
+
+    @Mock
+    private HazelcastInstance hazelcastInstance;
+
+    @Mock
+    private IMap<String, HashMap<String, Boolean>> decisions;
+
+    @Mock
+    private IAtomicLong generation;
+
+    @InjectMocks
+    private AccessDecisionCache cache;
+
+    private final Map<String, HashMap<String, Boolean>> decisionsProxy = new HashMap<>();
+    private final AtomicLong generationProxy = new AtomicLong();
+    private final AtomicInteger resolutions = new AtomicInteger();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        when(hazelcastInstance.<String, HashMap<String, Boolean>>getMap(anyString())).thenReturn(decisions);
+        when(hazelcastInstance.getAtomicLong(anyString())).thenReturn(generation);
+        when(generation.get()).thenAnswer(invocation -> generationProxy.get());
+        when(generation.incrementAndGet()).thenAnswer(invocation -> generationProxy.incrementAndGet());
+        when(decisions.get(anyString())).thenAnswer(invocation -> {
+            HashMap<String, Boolean> deviceDecisions = decisionsProxy.get(invocation.getArguments()[0]);
+            return deviceDecisions != null ? new HashMap<>(deviceDecisions) : null;
+        });
+        when(decisions.executeOnKey(anyString(), any(AccessDecisionCache.DecisionProcessor.class))).thenAnswer(this::execute);
+        doAnswer(invocation -> decisionsProxy.remove(invocation.getArguments()[0])).when(decisions).delete(anyString());
+        doAnswer(invocation -> {
+            decisionsProxy.clear();
+            return null;
+        }).when(decisions).clear();
+        cache.init();
+    }
+
+    @Test
+    public void testDecisionIsResolvedOnceAndServedFromCache() {
+        HivePrincipal principal = new HivePrincipal(createUser(1L));
+
+        assertThat(cache.hasAccess(principal, DEVICE_GUID, resolver(true)), is(true));
+        assertThat(cache.hasAccess(principal, DEVICE_GUID, resolver(true)), is(true));
+        assertThat(resolutions.get(), is(1));
+        // denial is cached as well
+        assertThat(cache.hasAccess(principal, OTHER_DEVICE_GUID, resolver(false)), is(false));
+        assertThat(cache.hasAccess(principal, OTHER_DEVICE_GUID, resolver(true)), is(false));
+        assertThat(resolutions.get(), is(2));
+    }
+
+    @Test
+    public void testDecisionsAreCachedPerPrincipal() {
+        cache.hasAccess(new HivePrincipal(createUser(1L)), DEVICE_GUID, resolver(true));
+        assertThat(cache.hasAccess(new HivePrincipal(createUser(2L)), DEVICE_GUID, resolver(false)), is(false));
+        assertThat(cache.hasAccess(new HivePrincipal(createKey(10L, 1L)), DEVICE_GUID, resolver(true)), is(true));
+        // permissions left after filtering are a part of the key
+        assertThat(cache.hasAccess(new HivePrincipal(createKey(10L, 2L)), DEVICE_GUID, resolver(false)), is(false));
+        assertThat(resolutions.get(), is(4));
+    }
+
+    @Test
+    public void testDecisionOfPrincipalWithoutIdIsNotCached() {
+        HivePrincipal principal = new HivePrincipal(createUser(null));
+        cache.hasAccess(principal, DEVICE_GUID, resolver(true));
+        cache.hasAccess(principal, DEVICE_GUID, resolver(true));
+        assertThat(resolutions.get(), is(2));
+        verify(decisions, never()).executeOnKey(anyString(), any(AccessDecisionCache.DecisionProcessor.class));
+    }
+
+    @Test
+    public void testAccessChangeClearsCache() {
+        HivePrincipal principal = new HivePrincipal(createUser(1L));
+        cache.hasAccess(principal, DEVICE_GUID, resolver(true));
+
+        cache.onAccessChange("network deleted");
+
+        assertThat(cache.hasAccess(principal, DEVICE_GUID, resolver(false)), is(false));
+        assertThat(resolutions.get(), is(2));
+    }
+
+    @Test
+    public void testDecisionResolvedDuringAccessChangeIsNotCached() {
+        HivePrincipal principal = new HivePrincipal(createUser(1L));
+        Supplier<Boolean> racing = () -> {
+            resolutions.incrementAndGet();
+            // permissions change while the decision is resolved from the old data
+            cache.onAccessChange("user updated");
+            return true;
+        };
+
+        assertThat(cache.hasAccess(principal, DEVICE_GUID, racing), is(true));
+
+        assertThat(decisionsProxy.isEmpty(), is(true));
+        assertThat(cache.hasAccess(principal, DEVICE_GUID, resolver(false)), is(false));
+    }
+
+    @Test
+    public void testDecisionResolvedDuringDeviceEvictionOnAnotherNodeIsNotCached() {
+        HivePrincipal principal = new HivePrincipal(createUser(1L));
+        Supplier<Boolean> racing = () -> {
+            resolutions.incrementAndGet();
+            // another node registers the device while the denial is resolved from the old data
+            generationProxy.incrementAndGet();
+            decisionsProxy.remove(DEVICE_GUID);
+            return false;
+        };
+
+        assertThat(cache.hasAccess(principal, DEVICE_GUID, racing), is(false));
+
+        assertThat(decisionsProxy.containsKey(DEVICE_GUID), is(false));
+        assertThat(cache.hasAccess(principal, DEVICE_GUID, resolver(true)), is(true));
+    }
+
+    @Test
+    public void testDeviceEvictionKeepsDecisionsAboutOtherDevices() {
+        HivePrincipal user = new HivePrincipal(createUser(1L));
+        HivePrincipal key = new HivePrincipal(createKey(10L, 1L));
+        cache.hasAccess(user, DEVICE_GUID, resolver(false));
+        cache.hasAccess(key, DEVICE_GUID, resolver(false));
+        cache.hasAccess(user, OTHER_DEVICE_GUID, resolver(true));
+
+        cache.evictDevice(DEVICE_GUID);
+
+        verify(decisions, never()).clear();
+        verify(decisions).delete(DEVICE_GUID);
+        assertThat(decisionsProxy.keySet(), is(Collections.singleton(OTHER_DEVICE_GUID)));
+        assertThat(cache.hasAccess(user, DEVICE_GUID, resolver(true)), is(true));
+        assertThat(cache.hasAccess(user, OTHER_DEVICE_GUID, resolver(false)), is(true));
+        assertThat(resolutions.get(), is(4));
+    }
+
+    private Supplier<Boolean> resolver(boolean decision) {
+        return () -> {
+            resolutions.incrementAndGet();
+            return decision;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object execute(InvocationOnMock invocation) {
+        String deviceGuid = (String) invocation.getArguments()[0];
+        AccessDecisionCache.DecisionProcessor processor = (AccessDecisionCache.DecisionProcessor) invocation.getArguments()[1];
+        Map.Entry<String, HashMap<String, Boolean>> entry = new AbstractMap.SimpleEntry<String, HashMap<String, Boolean>>(
+                deviceGuid, decisionsProxy.get(deviceGuid)) {
+            @Override
+            public HashMap<String, Boolean> setValue(HashMap<String, Boolean> value) {
+                if (value == null) {
+                    decisionsProxy.remove(deviceGuid);
+                } else {
+                    decisionsProxy.put(deviceGuid, value);
+                }
+                return super.setValue(value);
+            }
+        };
+        return processor.process(entry);
+    }
+
+    private static User createUser(Long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+
+    private static AccessKey createKey(Long id, Long permissionId) {
+        AccessKeyPermission permission = new AccessKeyPermission();
+        permission.setId(permissionId);
+        AccessKey key = new AccessKey();
+        key.setId(id);
+        key.setPermissions(new HashSet<>(Collections.singleton(permission)));
+        return key;
+    }
+}
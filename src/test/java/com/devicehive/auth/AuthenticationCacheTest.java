@@ -0,0 +1,148 @@
+package com.devicehive.auth;
+
+import com.devicehive.configuration.ConfigurationService;
+import com.devicehive.configuration.Constants;
+import com.devicehive.model.AccessKey;
+import com.devicehive.model.AccessKeyPermission;
+import com.devicehive.model.enums.AccessKeyType;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AuthenticationCacheTest {
+
+    private static final long SESSION_TIMEOUT = 60000;
+
+    @Mock
+    private ConfigurationService configurationService;
+
+    @Mock
+    private ExecutorService executorService;
+
+    @InjectMocks
+    private AuthenticationCache cache;
+
+    private final AtomicInteger authentications = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 30L);
+        ReflectionTestUtils.setField(cache, "maxSize", 100L);
+        cache.init();
+        when(configurationService.getLong(eq(Constants.SESSION_TIMEOUT), anyLong())).thenReturn(SESSION_TIMEOUT);
+    }
+
+    @Test
+    public void testAuthenticationIsCachedAndCopiedPerRequest() {
+        AccessKey key = createKey(AccessKeyType.DEFAULT, null);
+        Supplier<HiveAuthentication> authenticator = authenticator(key);
+
+        HiveAuthentication first = cache.authenticate("Bearer token", authenticator);
+        HiveAuthentication second = cache.authenticate("Bearer token", authenticator);
+        assertThat(authentications.get(), is(1));
+
+        AccessKey firstKey = ((HivePrincipal) first.getPrincipal()).getKey();
+        AccessKey secondKey = ((HivePrincipal) second.getPrincipal()).getKey();
+        assertThat(secondKey, not(sameInstance(firstKey)));
+        assertThat(secondKey.getId(), is(key.getId()));
+
+        // permission check narrows down permissions of the request, it must not affect next requests
+        secondKey.setPermissions(Collections.emptySet());
+        AccessKey thirdKey = ((HivePrincipal) cache.authenticate("Bearer token", authenticator).getPrincipal()).getKey();
+        assertThat(thirdKey.getPermissions().size(), is(1));
+        assertThat(authentications.get(), is(1));
+    }
+
+    @Test
+    public void testFailedAuthenticationIsNotCached() {
+        Supplier<HiveAuthentication> failing = () -> {
+            authentications.incrementAndGet();
+            throw new BadCredentialsException("Unauthorized");
+        };
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.authenticate("Bearer wrong", failing);
+                fail();
+            } catch (BadCredentialsException e) {
+                // expected
+            }
+        }
+        assertThat(authentications.get(), is(2));
+    }
+
+    @Test
+    public void testAccessChangeClearsCache() {
+        Supplier<HiveAuthentication> authenticator = authenticator(createKey(AccessKeyType.DEFAULT, null));
+        cache.authenticate("Bearer token", authenticator);
+        cache.onAccessChange("access key updated");
+        cache.authenticate("Bearer token", authenticator);
+        assertThat(authentications.get(), is(2));
+    }
+
+    @Test
+    public void testExpiredKeyIsNotServedFromCache() {
+        Supplier<HiveAuthentication> authenticator = authenticator(createKey(AccessKeyType.DEFAULT,
+                new Date(System.currentTimeMillis() - 1)));
+        cache.authenticate("Bearer token", authenticator);
+        cache.authenticate("Bearer token", authenticator);
+        assertThat(authentications.get(), is(2));
+    }
+
+    @Test
+    public void testSessionKeyIsRefreshedInBackground() {
+        // less than half of session timeout left
+        Supplier<HiveAuthentication> authenticator = authenticator(createKey(AccessKeyType.SESSION,
+                new Date(System.currentTimeMillis() + SESSION_TIMEOUT / 4)));
+        cache.authenticate("Bearer token", authenticator);
+        cache.authenticate("Bearer token", authenticator);
+        cache.authenticate("Bearer token", authenticator);
+        assertThat(authentications.get(), is(1));
+
+        ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService, times(1)).execute(refresh.capture());
+        refresh.getValue().run();
+        assertThat(authentications.get(), is(2));
+    }
+
+    private Supplier<HiveAuthentication> authenticator(AccessKey key) {
+        return () -> {
+            authentications.incrementAndGet();
+            return new HiveAuthentication(new HivePrincipal(key), AuthorityUtils.createAuthorityList(HiveRoles.KEY));
+        };
+    }
+
+    private static AccessKey createKey(AccessKeyType type, Date expirationDate) {
+        AccessKeyPermission permission = new AccessKeyPermission();
+        permission.setId(1L);
+        AccessKey key = new AccessKey();
+        key.setId(10L);
+        key.setKey("token");
+        key.setType(type);
+        key.setExpirationDate(expirationDate);
+        key.setPermissions(new HashSet<>(Collections.singleton(permission)));
+        return key;
+    }
+}
@@ -0,0 +1,119 @@
+package com.devicehive.auth;
+
+import com.devicehive.model.AccessKey;
+import com.devicehive.model.AccessKeyPermission;
+import com.devicehive.model.AvailableActions;
+import com.devicehive.model.Device;
+import com.devicehive.model.Network;
+import com.devicehive.model.Subnet;
+import com.devicehive.model.User;
+import com.devicehive.model.enums.UserRole;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class CheckPermissionsHelperTest {
+
+    @Test
+    public void testIPv4Subnets() throws Exception {
+        Subnet subnet = new Subnet("192.168.1.0/24");
+        assertTrue(subnet.isAddressFromSubnet(InetAddress.getByName("192.168.1.200")));
+        assertFalse(subnet.isAddressFromSubnet(InetAddress.getByName("192.168.2.1")));
+        assertFalse(subnet.isAddressFromSubnet(InetAddress.getByName("::1")));
+
+        assertTrue(new Subnet("10.0.0.0/0").isAddressFromSubnet(InetAddress.getByName("172.16.5.4")));
+        assertTrue(new Subnet("172.16.0.0/12").isAddressFromSubnet(InetAddress.getByName("172.31.255.255")));
+        assertFalse(new Subnet("172.16.0.0/12").isAddressFromSubnet(InetAddress.getByName("172.32.0.0")));
+
+        Subnet host = new Subnet("127.0.0.1");
+        assertThat(host.getSubnet(), is("127.0.0.1/32"));
+        assertTrue(host.isAddressFromSubnet(InetAddress.getByName("127.0.0.1")));
+        assertFalse(host.isAddressFromSubnet(InetAddress.getByName("127.0.0.2")));
+    }
+
+    @Test
+    public void testIPv6Subnets() throws Exception {
+        Subnet subnet = new Subnet("2001:db8::/33");
+        assertTrue(subnet.isAddressFromSubnet(InetAddress.getByName("2001:db8:7fff::1")));
+        assertFalse(subnet.isAddressFromSubnet(InetAddress.getByName("2001:db8:8000::1")));
+        assertFalse(subnet.isAddressFromSubnet(InetAddress.getByName("10.0.0.1")));
+
+        Subnet host = new Subnet("::1");
+        assertThat(host.getSubnet(), is("::1/128"));
+        assertTrue(host.isAddressFromSubnet(InetAddress.getByName("::1")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMask() {
+        new Subnet("10.0.0.0/33");
+    }
+
+    @Test
+    public void testFilterPermissions() throws Exception {
+        AccessKeyPermission allowed = createPermission(UserRole.CLIENT);
+        allowed.setActionsArray(AvailableActions.GET_DEVICE, AvailableActions.MANAGE_NETWORK);
+        allowed.setSubnetsArray("10.0.0.0/8");
+        allowed.setDomainArray(".example.com");
+
+        AccessKeyPermission wrongSubnet = createPermission(UserRole.CLIENT);
+        wrongSubnet.setSubnetsArray("192.168.0.0/16");
+
+        AccessKeyPermission noDevices = createPermission(UserRole.CLIENT);
+        noDevices.setDeviceGuidsCollection(Collections.emptySet());
+
+        Set<AccessKeyPermission> permissions = new HashSet<>(Arrays.asList(allowed, wrongSubnet, noDevices));
+        InetAddress ip = InetAddress.getByName("10.1.2.3");
+
+        assertThat(CheckPermissionsHelper.filterPermissions(permissions, AccessKeyAction.GET_DEVICE, ip, "www.example.com"),
+                contains(allowed));
+        assertThat(CheckPermissionsHelper.filterPermissions(permissions, AccessKeyAction.GET_DEVICE, ip, "example.org"),
+                empty());
+        // admin actions are never allowed for keys of non-admin users
+        assertThat(CheckPermissionsHelper.filterPermissions(permissions, AccessKeyAction.MANAGE_NETWORK, ip, null),
+                empty());
+        assertThat(allowed.getActionsAsSet().size(), is(2));
+
+        allowed.getAccessKey().getUser().setRole(UserRole.ADMIN);
+        assertThat(CheckPermissionsHelper.filterPermissions(permissions, AccessKeyAction.MANAGE_NETWORK, ip, null),
+                contains(allowed));
+    }
+
+    @Test
+    public void testCompiledPermissionIsResetOnChange() {
+        AccessKeyPermission permission = createPermission(UserRole.CLIENT);
+        permission.setDeviceGuidsCollection(Arrays.asList("a", "b"));
+        permission.setNetworkIdsCollection(Collections.singleton(1L));
+        assertThat(permission.getCompiled(), is(permission.getCompiled()));
+
+        Device device = new Device();
+        device.setGuid("b");
+        Network network = new Network();
+        network.setId(1L);
+        device.setNetwork(network);
+        assertTrue(CheckPermissionsHelper.checkFilteredPermissions(Collections.singleton(permission), device));
+
+        permission.setDeviceGuidsCollection(Collections.singleton("a"));
+        assertFalse(CheckPermissionsHelper.checkFilteredPermissions(Collections.singleton(permission), device));
+    }
+
+    private static AccessKeyPermission createPermission(UserRole role) {
+        User user = new User();
+        user.setRole(role);
+        AccessKey key = new AccessKey();
+        key.setUser(user);
+        AccessKeyPermission permission = new AccessKeyPermission();
+        permission.setAccessKey(key);
+        return permission;
+    }
+}
@@ -6,6 +6,7 @@ import com.devicehive.json.GsonFactory;
 import com.devicehive.resource.converters.CollectionProvider;
 import com.devicehive.resource.converters.HiveEntityProvider;
 import com.devicehive.service.AbstractHazelcastEntityService;
+import com.devicehive.service.history.HistoryStoreWriter;
 import com.google.gson.Gson;
 import com.hazelcast.core.HazelcastInstance;
 import org.apache.commons.lang3.StringUtils;
@@ -17,12 +18,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.IntegrationTest;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.util.CollectionUtils;
 
+import javax.sql.DataSource;
 import javax.ws.rs.client.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -49,6 +52,12 @@ public abstract class AbstractResourceTest {
     @Autowired
     private HazelcastInstance hzInstance;
 
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private HistoryStoreWriter historyStoreWriter;
+
     @ClassRule
     public static EmbeddedKafkaRule kafkaRule = new EmbeddedKafkaRule();
 
@@ -75,6 +84,17 @@ public abstract class AbstractResourceTest {
     public void clearHZ() {
         hzInstance.getMap(AbstractHazelcastEntityService.COMMANDS_MAP).clear();
         hzInstance.getMap(AbstractHazelcastEntityService.NOTIFICATIONS_MAP).clear();
+        hzInstance.getMap(AbstractHazelcastEntityService.COMMANDS_HISTORY_MAP).clear();
+        hzInstance.getMap(AbstractHazelcastEntityService.NOTIFICATIONS_HISTORY_MAP).clear();
+    }
+
+    @After
+    public void clearHistoryStore() {
+        // entities queued by the test must not be written after the cleanup
+        historyStoreWriter.flush();
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("DELETE FROM command_history");
+        jdbcTemplate.update("DELETE FROM notification_history");
     }
 
     protected WebTarget target() {
@@ -10,6 +10,7 @@ import com.devicehive.model.DeviceNotification;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 
 public class TestKafkaProducer implements KafkaProducer {
@@ -32,6 +33,11 @@ public class TestKafkaProducer implements KafkaProducer {
         executorService.submit(() -> notificationConsumer.submitMessage(message));
     }
 
+    @Override
+    public void produceDeviceNotificationMsgs(List<DeviceNotification> messages, String topicName) {
+        executorService.submit(() -> messages.forEach(notificationConsumer::submitMessage));
+    }
+
     @Override
     public void produceDeviceCommandMsg(DeviceCommand message, String topicName) {
         executorService.submit(() -> commandConsumer.submitMessage(message));
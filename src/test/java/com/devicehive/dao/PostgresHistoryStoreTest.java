@@ -0,0 +1,141 @@
+package com.devicehive.dao;
+
+import com.devicehive.base.AbstractResourceTest;
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.service.history.HistoryCursor;
+import com.devicehive.service.history.HistoryFilter;
+import com.devicehive.service.history.HistoryStore;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class PostgresHistoryStoreTest extends AbstractResourceTest {
+    private static final HistoryFilter ALL = new HistoryFilter(null, null, null, null, null);
+    private static final Map<String, HistoryCursor> NO_BOUNDS = Collections.emptyMap();
+
+    @Autowired
+    private HistoryStore historyStore;
+
+    @Test
+    public void testStoreAndFindNotifications() {
+        final String guid = UUID.randomUUID().toString();
+        final List<HazelcastEntity> notifications = new ArrayList<>();
+        for (long i = 1; i <= 5; i++) {
+            notifications.add(notification(i, guid, i * 1000, i % 2 == 0 ? "even" : "odd"));
+        }
+        historyStore.storeAll(notifications);
+
+        final List<DeviceNotification> all = historyStore.find(Collections.singleton(guid), ALL, NO_BOUNDS, null, 0,
+                DeviceNotification.class);
+        assertEquals(Arrays.asList(5L, 4L, 3L, 2L, 1L), ids(all));
+        assertEquals("{\"value\":5}", all.get(0).getParameters().getJsonString());
+        assertEquals(5000, all.get(0).getTimestamp().getTime());
+
+        final HistoryFilter odd = new HistoryFilter(null, Collections.singleton("odd"), new Date(1000), null, null);
+        assertEquals(Arrays.asList(3L), ids(historyStore.find(Collections.singleton(guid), odd, NO_BOUNDS,
+                new HistoryCursor(5000, Long.MIN_VALUE), 0, DeviceNotification.class)));
+        assertEquals(Arrays.asList(5L, 4L), ids(historyStore.find(Collections.singleton(guid), ALL, NO_BOUNDS, null, 2,
+                DeviceNotification.class)));
+        assertTrue(historyStore.find(Collections.singleton(UUID.randomUUID().toString()), ALL, NO_BOUNDS, null, 0,
+                DeviceNotification.class).isEmpty());
+        assertEquals(Arrays.asList(2L, 1L), ids(historyStore.find(Collections.singleton(guid), ALL, NO_BOUNDS,
+                new HistoryCursor(3000, Long.MIN_VALUE), 0, DeviceNotification.class)));
+    }
+
+    @Test
+    public void testStoreAndUpdateCommands() {
+        final String guid = UUID.randomUUID().toString();
+        final DeviceCommand first = command(1, guid, 1000, false);
+        final DeviceCommand firstUpdated = command(1, guid, 1000, true);
+        firstUpdated.setStatus("done");
+        firstUpdated.setResult(new JsonStringWrapper("{\"ok\":true}"));
+        historyStore.storeAll(Arrays.asList(first, command(2, guid, 2000, false), firstUpdated));
+
+        // update of a command stored by another node before the command itself
+        final DeviceCommand thirdUpdated = command(3, guid, 3000, true);
+        historyStore.storeAll(Collections.singletonList(thirdUpdated));
+        historyStore.storeAll(Collections.singletonList(command(3, guid, 3000, false)));
+
+        final List<DeviceCommand> all = historyStore.find(Collections.singleton(guid), ALL, NO_BOUNDS, null, 0,
+                DeviceCommand.class);
+        assertEquals(Arrays.asList(3L, 2L, 1L), ids(all));
+        assertTrue(all.get(0).getIsUpdated());
+        assertEquals("done", all.get(2).getStatus());
+        assertEquals("{\"ok\":true}", all.get(2).getResult().getJsonString());
+        // duplicated command takes one row of a page
+        assertEquals(Arrays.asList(3L, 2L), ids(historyStore.find(Collections.singleton(guid), ALL, NO_BOUNDS, null, 2,
+                DeviceCommand.class)));
+
+        final HistoryFilter done = new HistoryFilter(null, null, null, "done", true);
+        assertEquals(Arrays.asList(1L), ids(historyStore.find(Collections.singleton(guid), done, NO_BOUNDS, null, 0,
+                DeviceCommand.class)));
+    }
+
+    @Test
+    public void testFindNotificationsAfterCursor() {
+        final String guid = UUID.randomUUID().toString();
+        historyStore.storeAll(Arrays.asList(notification(1, guid, 1000, "a"), notification(2, guid, 2000, "a"),
+                notification(3, guid, 2000, "a"), notification(4, guid, 3000, "a")));
+
+        final HistoryFilter afterThird = new HistoryFilter(null, null, null, null, null, new HistoryCursor(2000, 3));
+        assertEquals(Arrays.asList(2L, 1L), ids(historyStore.find(Collections.singleton(guid), afterThird, NO_BOUNDS,
+                null, 0, DeviceNotification.class)));
+        final HistoryFilter afterSecond = new HistoryFilter(null, null, null, null, null, new HistoryCursor(2000, 2));
+        assertEquals(Arrays.asList(1L), ids(historyStore.find(Collections.singleton(guid), afterSecond, NO_BOUNDS,
+                null, 0, DeviceNotification.class)));
+    }
+
+    @Test
+    public void testFindPrecedingBoundsOfDevices() {
+        final String bounded = UUID.randomUUID().toString();
+        final String other = UUID.randomUUID().toString();
+        historyStore.storeAll(Arrays.asList(notification(1, bounded, 1000, "a"), notification(2, bounded, 2000, "a"),
+                notification(3, other, 1000, "a"), notification(4, other, 3000, "a")));
+
+        final Map<String, HistoryCursor> bounds = Collections.singletonMap(bounded, new HistoryCursor(2000, 2));
+        assertEquals(Arrays.asList(4L, 3L, 1L), ids(historyStore.find(Collections.emptyList(), ALL, bounds, null, 0,
+                DeviceNotification.class)));
+        assertEquals(Arrays.asList(3L, 1L), ids(historyStore.find(Arrays.asList(bounded, other), ALL, bounds,
+                new HistoryCursor(3000, 4), 0, DeviceNotification.class)));
+    }
+
+    @Test
+    public void testCopyRowFormat() {
+        final StringBuilder copy = new StringBuilder();
+        PostgresHistoryStore.appendCopyRow(copy, new Object[]{1L, "a\tb\\c\nd", null, new Timestamp(0), true});
+        assertEquals("1\ta\\tb\\\\c\\nd\t\\N\t1970-01-01 00:00:00.000+00\ttrue\n", copy.toString());
+    }
+
+    private static DeviceNotification notification(long id, String guid, long timestamp, String name) {
+        final DeviceNotification notification = new DeviceNotification();
+        notification.setId(id);
+        notification.setDeviceGuid(guid);
+        notification.setTimestamp(new Date(timestamp));
+        notification.setNotification(name);
+        notification.setParameters(new JsonStringWrapper("{\"value\":" + id + "}"));
+        return notification;
+    }
+
+    private static DeviceCommand command(long id, String guid, long timestamp, boolean updated) {
+        final DeviceCommand command = new DeviceCommand();
+        command.setId(id);
+        command.setDeviceGuid(guid);
+        command.setTimestamp(new Date(timestamp));
+        command.setCommand("command");
+        command.setUserId(1L);
+        command.setIsUpdated(updated);
+        return command;
+    }
+
+    private static List<Long> ids(List<? extends HazelcastEntity> entities) {
+        return entities.stream().map(HazelcastEntity::getId).collect(Collectors.toList());
+    }
+}
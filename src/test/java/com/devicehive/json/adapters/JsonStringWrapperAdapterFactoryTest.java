@@ -0,0 +1,99 @@
+package com.devicehive.json.adapters;
+
+import com.devicehive.json.GsonFactory;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class JsonStringWrapperAdapterFactoryTest {
+
+    private static final String PARAMETERS = "{ \"a\" : [1, 2.50, -3e2, true, null], \"b\": {\"c\": \"\\u00e9\\\"x\"}, \"d\": {} }";
+    private static final String COMPACT_PARAMETERS = "{\"a\":[1,2.50,-3e2,true,null],\"b\":{\"c\":\"é\\\"x\"},\"d\":{}}";
+
+    private final Gson gson = GsonFactory.createCompactGson();
+
+    @Test
+    public void testParametersAreValidatedAndCompactedOnRead() {
+        JsonStringWrapper wrapper = gson.fromJson(PARAMETERS, JsonStringWrapper.class);
+        assertThat(wrapper.getJsonString(), is(COMPACT_PARAMETERS));
+        assertThat(gson.fromJson("\"text\"", JsonStringWrapper.class).getJsonString(), is("\"text\""));
+        assertThat(gson.fromJson("42", JsonStringWrapper.class).getJsonString(), is("42"));
+    }
+
+    @Test
+    public void testParametersAreReadFromJsonTree() {
+        JsonElement tree = new JsonParser().parse("{\"notification\":\"n\",\"parameters\":" + PARAMETERS + "}");
+        DeviceNotification notification = gson.fromJson(tree, DeviceNotification.class);
+        assertThat(notification.getParameters().getJsonString(), is(COMPACT_PARAMETERS));
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void testMalformedParametersAreRejected() {
+        gson.fromJson("{\"notification\":\"n\",\"parameters\":{\"a\":}}", DeviceNotification.class);
+    }
+
+    @Test
+    public void testParametersAreWrittenAsIs() {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setNotification("n");
+        notification.setParameters(new JsonStringWrapper(COMPACT_PARAMETERS));
+
+        String json = gson.toJson(notification);
+        assertTrue(json.contains("\"parameters\":" + COMPACT_PARAMETERS));
+        assertThat(new JsonParser().parse(json).getAsJsonObject().get("parameters"),
+                is(new JsonParser().parse(COMPACT_PARAMETERS)));
+
+        String pretty = GsonFactory.createGson().toJson(notification);
+        assertThat(new JsonParser().parse(pretty), is(new JsonParser().parse(json)));
+    }
+
+    @Test
+    public void testParametersAreParsedIntoJsonTree() {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setParameters(new JsonStringWrapper(COMPACT_PARAMETERS));
+
+        JsonElement parameters = gson.toJsonTree(notification).getAsJsonObject().get("parameters");
+        assertTrue(parameters.isJsonObject());
+        assertThat(parameters, is(new JsonParser().parse(COMPACT_PARAMETERS)));
+    }
+
+    @Test
+    public void testEmptyParametersAreWrittenAsNull() {
+        assertThat(gson.toJson(new JsonStringWrapper()), is("null"));
+        assertThat(gson.toJson(new JsonStringWrapper("")), is("null"));
+    }
+
+    @Test
+    public void testValidatedParametersAreMarkedInWrapper() {
+        JsonStringWrapper wrapper = gson.fromJson(PARAMETERS, JsonStringWrapper.class);
+        assertTrue(wrapper.isValidJson());
+
+        wrapper.setJsonString("{ }");
+        assertFalse(wrapper.isValidJson());
+        assertThat(gson.toJson(wrapper), is("{}"));
+        assertTrue(wrapper.isValidJson());
+
+        wrapper.setJsonString("{\"a\":");
+        assertThat(gson.toJson(wrapper), is("\"{\\\"a\\\":\""));
+        assertFalse(wrapper.isValidJson());
+    }
+
+    @Test
+    public void testMalformedStoredParametersAreWrittenAsString() {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setParameters(new JsonStringWrapper("{\"a\":"));
+
+        JsonElement parameters = new JsonParser().parse(gson.toJson(notification)).getAsJsonObject().get("parameters");
+        assertThat(parameters.getAsString(), is("{\"a\":"));
+        assertThat(gson.toJsonTree(notification).getAsJsonObject().get("parameters"), is(parameters));
+    }
+}
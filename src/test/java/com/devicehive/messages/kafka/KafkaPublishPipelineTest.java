@@ -0,0 +1,130 @@
+package com.devicehive.messages.kafka;
+
+import com.devicehive.exceptions.HiveException;
+import kafka.javaapi.producer.Producer;
+import kafka.producer.KeyedMessage;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("unchecked")
+public class KafkaPublishPipelineTest {
+
+    private final Producer<String, String> producer = mock(Producer.class);
+    private KafkaPublishPipeline<String> pipeline;
+
+    @After
+    public void tearDown() {
+        pipeline.stop();
+    }
+
+    @Test
+    public void testMessagesAreSentInBatches() throws Exception {
+        pipeline = new KafkaPublishPipeline<>("test", producer, 100, 10, 50, 100);
+        pipeline.start();
+        for (int i = 0; i < 25; i++) {
+            pipeline.publish("topic", "key", "message-" + i);
+        }
+        pipeline.stop();
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(producer, atLeast(3)).send(captor.capture());
+        int total = 0;
+        for (List<KeyedMessage<String, String>> batch : captor.getAllValues()) {
+            assertTrue(batch.size() <= 10);
+            total += batch.size();
+        }
+        assertThat(total, is(25));
+        assertThat(pipeline.getPublished(), is(25L));
+        assertThat(pipeline.getQueueDepth(), is(0));
+    }
+
+    @Test
+    public void testPublishIsRejectedWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(producer).send(anyList());
+        pipeline = new KafkaPublishPipeline<>("test", producer, 2, 1, 1, 10);
+        pipeline.start();
+        try {
+            for (int i = 0; i < 10; i++) {
+                pipeline.publish("topic", "key", "message-" + i);
+            }
+            fail("Publishing must be rejected when queue is full");
+        } catch (HiveException e) {
+            assertThat(e.getCode(), is(503));
+        } finally {
+            release.countDown();
+        }
+        assertThat(pipeline.getRejected(), is(1L));
+    }
+
+    @Test
+    public void testListIsEnqueuedAsWhole() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(producer).send(anyList());
+        pipeline = new KafkaPublishPipeline<>("test", producer, 3, 10, 1, 10);
+        pipeline.start();
+        pipeline.publishAll(Arrays.asList(new KeyedMessage<>("topic", "key", "message-0"),
+                new KeyedMessage<>("topic", "key", "message-1")));
+        try {
+            pipeline.publishAll(Arrays.asList(new KeyedMessage<>("topic", "key", "message-2"),
+                    new KeyedMessage<>("topic", "key", "message-3")));
+            fail("List must be rejected when there is no room for all of its messages");
+        } catch (HiveException e) {
+            assertThat(e.getCode(), is(503));
+        } finally {
+            release.countDown();
+        }
+        pipeline.stop();
+
+        assertThat(pipeline.getRejected(), is(2L));
+        assertThat(pipeline.getPublished(), is(2L));
+        assertThat(pipeline.getQueueDepth(), is(0));
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedWithBackoff() throws Exception {
+        doThrow(new RuntimeException("broker is down")).doNothing().when(producer).send(anyList());
+        pipeline = new KafkaPublishPipeline<>("test", producer, 100, 10, 1, 100, 2, 1);
+        pipeline.start();
+        pipeline.publish("topic", "key", "message");
+        pipeline.stop();
+
+        verify(producer, times(2)).send(anyList());
+        assertThat(pipeline.getPublished(), is(1L));
+        assertThat(pipeline.getRetried(), is(1L));
+        assertThat(pipeline.getFailed(), is(0L));
+    }
+
+    @Test
+    public void testBatchIsDroppedWhenRetriesAreExhausted() throws Exception {
+        doThrow(new RuntimeException("broker is down")).when(producer).send(anyList());
+        pipeline = new KafkaPublishPipeline<>("test", producer, 100, 10, 1, 100, 2, 1);
+        pipeline.start();
+        pipeline.publish("topic", "key", "message");
+        pipeline.stop();
+
+        verify(producer, times(3)).send(anyList());
+        assertThat(pipeline.getPublished(), is(0L));
+        assertThat(pipeline.getRetried(), is(2L));
+        assertThat(pipeline.getFailed(), is(1L));
+    }
+}
@@ -0,0 +1,73 @@
+package com.devicehive.messages.subscriptions;
+
+import com.devicehive.auth.HivePrincipal;
+import com.devicehive.configuration.Constants;
+import com.devicehive.model.AccessKey;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.*;
+
+public class DeviceSubscriptionStorageTest {
+    private static final String DEVICE_GUID = "device-1";
+    private static final String OTHER_DEVICE_GUID = "device-2";
+
+    private NotificationSubscriptionStorage storage;
+    private HivePrincipal principal;
+
+    @Before
+    public void setUp() {
+        storage = new NotificationSubscriptionStorage();
+        principal = new HivePrincipal(new AccessKey());
+    }
+
+    @Test
+    public void should_match_subscriptions_by_device_and_name() {
+        NotificationSubscription byName = subscription(DEVICE_GUID, "temperature,humidity");
+        NotificationSubscription allNames = subscription(DEVICE_GUID, null);
+        NotificationSubscription otherName = subscription(DEVICE_GUID, "pressure");
+        NotificationSubscription otherDevice = subscription(OTHER_DEVICE_GUID, null);
+        NotificationSubscription allDevices = subscription(Constants.NULL_SUBSTITUTE, "humidity");
+        storage.insertAll(Arrays.asList(byName, allNames, otherName, otherDevice, allDevices));
+
+        assertThat(storage.getMatching(DEVICE_GUID, "humidity"), containsInAnyOrder(byName, allNames, allDevices));
+        assertThat(storage.getMatching(DEVICE_GUID, "temp"), containsInAnyOrder(allNames));
+        assertThat(storage.getMatching(OTHER_DEVICE_GUID, "pressure"), containsInAnyOrder(otherDevice));
+    }
+
+    @Test
+    public void should_not_match_removed_subscriptions() {
+        NotificationSubscription sub = subscription(DEVICE_GUID, "temperature");
+        storage.insert(sub);
+        storage.removeBySubscriptionId(sub.getSubscriptionId());
+
+        Collection<NotificationSubscription> matching = storage.getMatching(DEVICE_GUID, "temperature");
+        assertThat(matching, empty());
+    }
+
+    @Test
+    public void should_resolve_access_once_until_invalidated() {
+        NotificationSubscription sub = subscription(Constants.NULL_SUBSTITUTE, null);
+        storage.insert(sub);
+        AtomicInteger resolved = new AtomicInteger();
+
+        assertTrue(sub.hasAccessTo(DEVICE_GUID, (p, guid) -> resolved.incrementAndGet() > 0));
+        assertTrue(sub.hasAccessTo(DEVICE_GUID, (p, guid) -> resolved.incrementAndGet() > 0));
+        assertEquals(1, resolved.get());
+
+        storage.invalidateAccessDecisions();
+        assertFalse(sub.hasAccessTo(DEVICE_GUID, (p, guid) -> resolved.incrementAndGet() < 0));
+        assertEquals(2, resolved.get());
+    }
+
+    private NotificationSubscription subscription(String guid, String names) {
+        return new NotificationSubscription(principal, guid, UUID.randomUUID(), names, (message, subId) -> () -> {});
+    }
+}
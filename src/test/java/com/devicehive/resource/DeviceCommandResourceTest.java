@@ -2,16 +2,19 @@ package com.devicehive.resource;
 
 import com.devicehive.base.AbstractResourceTest;
 import com.devicehive.base.fixture.DeviceFixture;
+import com.devicehive.configuration.Constants;
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.Equipment;
 import com.devicehive.model.Network;
 import com.devicehive.model.updates.DeviceClassUpdate;
 import com.devicehive.model.updates.DeviceUpdate;
+import com.devicehive.resource.util.HistoryStreamingOutput;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Test;
 
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.util.*;
 
@@ -113,4 +116,116 @@ public class DeviceCommandResourceTest extends AbstractResourceTest {
         assertEquals(1, updatedCommands.size());
 
     }
+
+    @Test
+    public void should_get_expired_command_when_command_lifetime_ends_without_response() {
+        Equipment equipment = DeviceFixture.createEquipment();
+        DeviceClassUpdate deviceClass = DeviceFixture.createDeviceClass();
+        deviceClass.setEquipment(Optional.of(Collections.singleton(equipment)));
+        Network network = DeviceFixture.createNetwork();
+        String guid = UUID.randomUUID().toString();
+        DeviceUpdate deviceUpdate = DeviceFixture.createDevice(guid);
+        deviceUpdate.setDeviceClass(Optional.of(deviceClass));
+        deviceUpdate.setNetwork(Optional.of(network));
+
+        // register device
+        Response response = performRequest("/device/" + guid, "PUT", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), deviceUpdate, NO_CONTENT, null);
+        assertNotNull(response);
+
+        // create command with lifetime of 1 second
+        DeviceCommand command = DeviceFixture.createDeviceCommand();
+        command.setLifetime(1);
+        command = performRequest("/device/" + guid + "/command", "POST", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), command, CREATED, DeviceCommand.class);
+        assertNotNull(command.getId());
+
+        // wait for command update, which is sent on expiration
+        Map<String, Object> params = new HashMap<>();
+        params.put("waitTimeout", 30);
+        DeviceCommand expiredCommand = performRequest("/device/" + guid + "/command/" + command.getId() + "/poll", "GET", params, singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), command, OK, DeviceCommand.class);
+        assertNotNull(expiredCommand);
+        assertEquals(Constants.COMMAND_EXPIRED_STATUS, expiredCommand.getStatus());
+    }
+
+    @Test
+    public void should_page_commands_with_next_cursor() {
+        Equipment equipment = DeviceFixture.createEquipment();
+        DeviceClassUpdate deviceClass = DeviceFixture.createDeviceClass();
+        deviceClass.setEquipment(Optional.of(Collections.singleton(equipment)));
+        Network network = DeviceFixture.createNetwork();
+        String guid = UUID.randomUUID().toString();
+        DeviceUpdate deviceUpdate = DeviceFixture.createDevice(guid);
+        deviceUpdate.setDeviceClass(Optional.of(deviceClass));
+        deviceUpdate.setNetwork(Optional.of(network));
+
+        // register device
+        Response response = performRequest("/device/" + guid, "PUT", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), deviceUpdate, NO_CONTENT, null);
+        assertNotNull(response);
+
+        // create commands
+        Set<Long> created = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            DeviceCommand command = performRequest("/device/" + guid + "/command", "POST", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), DeviceFixture.createDeviceCommand(), CREATED, DeviceCommand.class);
+            created.add(command.getId());
+        }
+
+        // read all commands by pages of 2
+        Set<Long> read = new HashSet<>();
+        Map<String, Object> params = new HashMap<>();
+        params.put("take", 2);
+        int pages = 0;
+        String cursor;
+        do {
+            response = performRequest("/device/" + guid + "/command", "GET", params, singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), null, OK, Response.class);
+            DeviceCommand[] page = gson.fromJson(response.readEntity(String.class), DeviceCommand[].class);
+            for (DeviceCommand command : page) {
+                assertTrue(read.add(command.getId()));
+            }
+            pages++;
+            cursor = response.getHeaderString(Constants.NEXT_CURSOR_HEADER);
+            params.put("cursor", cursor);
+        } while (cursor != null);
+        assertEquals(created, read);
+        assertEquals(3, pages);
+
+        // cursor can't be combined with skip
+        params.put("cursor", "AAAA");
+        params.put("skip", 1);
+        performRequest("/device/" + guid + "/command", "GET", params, singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), null, BAD_REQUEST, null);
+        params.remove("skip");
+        performRequest("/device/" + guid + "/command", "GET", params, singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), null, BAD_REQUEST, null);
+    }
+
+    @Test
+    public void should_export_commands_as_newline_delimited_json() {
+        Equipment equipment = DeviceFixture.createEquipment();
+        DeviceClassUpdate deviceClass = DeviceFixture.createDeviceClass();
+        deviceClass.setEquipment(Optional.of(Collections.singleton(equipment)));
+        Network network = DeviceFixture.createNetwork();
+        String guid = UUID.randomUUID().toString();
+        DeviceUpdate deviceUpdate = DeviceFixture.createDevice(guid);
+        deviceUpdate.setDeviceClass(Optional.of(deviceClass));
+        deviceUpdate.setNetwork(Optional.of(network));
+
+        // register device
+        Response response = performRequest("/device/" + guid, "PUT", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), deviceUpdate, NO_CONTENT, null);
+        assertNotNull(response);
+
+        // create commands
+        List<Long> created = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            DeviceCommand command = performRequest("/device/" + guid + "/command", "POST", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), DeviceFixture.createDeviceCommand(), CREATED, DeviceCommand.class);
+            created.add(command.getId());
+        }
+
+        // export, newest first
+        response = performRequest("/device/" + guid + "/command/export", "GET", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), null, OK, Response.class);
+        assertTrue(response.getMediaType().isCompatible(MediaType.valueOf(HistoryStreamingOutput.NDJSON)));
+        String[] lines = response.readEntity(String.class).split("\n");
+        List<Long> exported = new ArrayList<>();
+        for (String line : lines) {
+            exported.add(gson.fromJson(line, DeviceCommand.class).getId());
+        }
+        Collections.reverse(created);
+        assertEquals(created, exported);
+    }
 }
@@ -2,12 +2,17 @@ package com.devicehive.resource;
 
 import com.devicehive.base.AbstractResourceTest;
 import com.devicehive.base.fixture.DeviceFixture;
+import com.devicehive.configuration.Constants;
+import com.devicehive.configuration.Messages;
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.DeviceNotification;
 import com.devicehive.model.Equipment;
 import com.devicehive.model.Network;
 import com.devicehive.model.updates.DeviceClassUpdate;
 import com.devicehive.model.updates.DeviceUpdate;
+import com.devicehive.model.wrappers.DeviceNotificationWrapper;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Test;
@@ -19,8 +24,7 @@ import java.util.*;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonMap;
 import static javax.ws.rs.core.Response.Status.*;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.*;
 
 public class DeviceNotificationResourceTest extends AbstractResourceTest {
 
@@ -53,4 +57,75 @@ public class DeviceNotificationResourceTest extends AbstractResourceTest {
 
 
     }
+
+    @Test
+    public void should_insert_notification_batch_and_return_result_per_item() {
+        DateTime timeStamp = new DateTime(DateTimeZone.UTC);
+        String guid = registerDevice();
+        DeviceNotificationWrapper invalid = new DeviceNotificationWrapper();
+        List<DeviceNotificationWrapper> batch = Arrays.asList(createNotification("first"), invalid,
+                createNotification("second"));
+
+        String response = performRequest("/device/" + guid + "/notification/batch", "POST", emptyMap(),
+                singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), batch, OK, String.class);
+        JsonArray results = gson.fromJson(response, JsonArray.class);
+
+        assertEquals(3, results.size());
+        for (int i : new int[]{0, 2}) {
+            JsonObject created = results.get(i).getAsJsonObject();
+            assertFalse(created.get("id").isJsonNull());
+            assertFalse(created.get("timestamp").isJsonNull());
+            assertTrue(!created.has("error") || created.get("error").isJsonNull());
+        }
+        JsonObject rejected = results.get(1).getAsJsonObject();
+        assertEquals(BAD_REQUEST.getStatusCode(), rejected.get("error").getAsInt());
+        assertEquals(Messages.NOTIFICATION_REQUIRED, rejected.get("message").getAsString());
+        assertTrue(!rejected.has("id") || rejected.get("id").isJsonNull());
+
+        // device registration notification and two notifications of the batch
+        Map<String, Object> params = new HashMap<>();
+        params.put("waitTimeout", 0);
+        params.put("timestamp", timeStamp);
+        ArrayList notifications = performRequest("/device/" + guid + "/notification/poll", "GET", params,
+                singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), null, OK, ArrayList.class);
+        assertEquals(3, notifications.size());
+    }
+
+    @Test
+    public void should_reject_notification_batch_of_invalid_size() {
+        String guid = registerDevice();
+        String message = String.format(Messages.INVALID_NOTIFICATION_BATCH_SIZE, Constants.MAX_NOTIFICATION_BATCH_SIZE);
+
+        JsonObject error = gson.fromJson(performRequest("/device/" + guid + "/notification/batch", "POST", emptyMap(),
+                singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), Collections.emptyList(),
+                BAD_REQUEST, String.class), JsonObject.class);
+        assertEquals(message, error.get("message").getAsString());
+
+        List<DeviceNotificationWrapper> batch = new ArrayList<>();
+        for (int i = 0; i <= Constants.MAX_NOTIFICATION_BATCH_SIZE; i++) {
+            batch.add(createNotification("notification-" + i));
+        }
+        error = gson.fromJson(performRequest("/device/" + guid + "/notification/batch", "POST", emptyMap(),
+                singletonMap(HttpHeaders.AUTHORIZATION, tokenAuthHeader(ACCESS_KEY)), batch, BAD_REQUEST,
+                String.class), JsonObject.class);
+        assertEquals(message, error.get("message").getAsString());
+    }
+
+    private String registerDevice() {
+        DeviceClassUpdate deviceClass = DeviceFixture.createDeviceClass();
+        deviceClass.setEquipment(Optional.of(Collections.singleton(DeviceFixture.createEquipment())));
+        String guid = UUID.randomUUID().toString();
+        DeviceUpdate deviceUpdate = DeviceFixture.createDevice(guid);
+        deviceUpdate.setDeviceClass(Optional.of(deviceClass));
+        deviceUpdate.setNetwork(Optional.of(DeviceFixture.createNetwork()));
+        performRequest("/device/" + guid, "PUT", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION,
+                tokenAuthHeader(ACCESS_KEY)), deviceUpdate, NO_CONTENT, null);
+        return guid;
+    }
+
+    private static DeviceNotificationWrapper createNotification(String name) {
+        DeviceNotificationWrapper notification = new DeviceNotificationWrapper();
+        notification.setNotification(name);
+        return notification;
+    }
 }
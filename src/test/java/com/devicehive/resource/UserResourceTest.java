@@ -56,4 +56,37 @@ public class UserResourceTest extends AbstractResourceTest {
         performRequest("/user/current", "PUT", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION, basicAuthHeader(login, password)), testUser, UNAUTHORIZED, Response.class);
     }
 
+    @Test
+    public void should_return_unauthorized_for_old_password_after_password_change() throws Exception {
+        String login = RandomStringUtils.randomAlphabetic(10);
+        String password = RandomStringUtils.randomAlphabetic(10);
+        String newPassword = RandomStringUtils.randomAlphabetic(10);
+
+        UserUpdate testUser = new UserUpdate();
+        testUser.setLogin(Optional.ofNullable(login));
+        testUser.setRole(Optional.ofNullable(UserRole.CLIENT.getValue()));
+        testUser.setPassword(Optional.ofNullable(password));
+        testUser.setStatus(Optional.ofNullable(UserStatus.ACTIVE.getValue()));
+        User user = performRequest("/user", "POST", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION, basicAuthHeader(ADMIN_LOGIN, ADMIN_PASS)), testUser, CREATED, User.class);
+
+        // authentication with the old password is cached now
+        performRequest("/user/current", "GET", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION, basicAuthHeader(login, password)), null, OK, User.class);
+
+        testUser = new UserUpdate();
+        testUser.setStatus(Optional.ofNullable(UserStatus.ACTIVE.getValue()));
+        testUser.setLogin(Optional.ofNullable(login));
+        testUser.setPassword(Optional.ofNullable(newPassword));
+        performRequest("/user/" + user.getId(), "PUT", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION, basicAuthHeader(ADMIN_LOGIN, ADMIN_PASS)), testUser, NO_CONTENT, Response.class);
+
+        // access change reaches the cache through hazelcast topic asynchronously
+        long deadline = System.currentTimeMillis() + 5000;
+        Response response = performRequest("/user/current", "GET", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION, basicAuthHeader(login, password)), null, null, Response.class);
+        while (response.getStatus() != UNAUTHORIZED.getStatusCode() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            response = performRequest("/user/current", "GET", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION, basicAuthHeader(login, password)), null, null, Response.class);
+        }
+        assertThat(response.getStatus(), equalTo(UNAUTHORIZED.getStatusCode()));
+        performRequest("/user/current", "GET", emptyMap(), singletonMap(HttpHeaders.AUTHORIZATION, basicAuthHeader(login, newPassword)), null, OK, User.class);
+    }
+
 }
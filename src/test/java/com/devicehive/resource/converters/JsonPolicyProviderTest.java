@@ -0,0 +1,75 @@
+package com.devicehive.resource.converters;
+
+import com.devicehive.json.GsonFactory;
+import com.devicehive.json.strategies.JsonPolicyApply;
+import com.devicehive.json.strategies.JsonPolicyDef;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HiveEntity;
+import com.devicehive.model.JsonStringWrapper;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class JsonPolicyProviderTest {
+
+    @JsonPolicyApply(JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT)
+    private static Collection<DeviceNotification> annotated;
+
+    @Test
+    public void testCompactGsonWritesSameJsonAsPretty() {
+        DeviceNotification notification = createNotification(1L);
+        String pretty = GsonFactory.createGson(JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT).toJson(notification);
+        String compact = GsonFactory.createCompactGson(JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT).toJson(notification);
+
+        assertTrue(pretty.contains("\n"));
+        assertFalse(compact.contains("\n"));
+        assertTrue(compact.length() < pretty.length());
+        assertThat(new JsonParser().parse(compact), is(new JsonParser().parse(pretty)));
+    }
+
+    @Test
+    public void testCollectionIsStreamedWithPolicy() throws Exception {
+        Collection<DeviceNotification> notifications = Arrays.asList(createNotification(1L), createNotification(2L));
+        Annotation[] annotations = JsonPolicyProviderTest.class.getDeclaredField("annotated").getAnnotations();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new CollectionProvider().writeTo(notifications, notifications.getClass(), Collection.class, annotations,
+                MediaType.APPLICATION_JSON_TYPE, null, out);
+
+        String written = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertFalse(written.contains("\n"));
+        JsonElement expected = GsonFactory.createGson(JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT).toJsonTree(notifications);
+        assertThat(new JsonParser().parse(written), is(expected));
+    }
+
+    @Test
+    public void testNullEntityIsWrittenAsJsonNull() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new HiveEntityProvider().writeTo(null, HiveEntity.class, HiveEntity.class, new Annotation[0],
+                MediaType.APPLICATION_JSON_TYPE, null, out);
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8), is("null"));
+    }
+
+    private static DeviceNotification createNotification(long id) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(id);
+        notification.setTimestamp(new Date());
+        notification.setNotification("temperature");
+        notification.setDeviceGuid("device-" + id);
+        notification.setParameters(new JsonStringWrapper("{\"value\": 36.6}"));
+        return notification;
+    }
+}
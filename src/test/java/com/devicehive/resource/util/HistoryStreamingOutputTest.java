@@ -0,0 +1,62 @@
+package com.devicehive.resource.util;
+
+import com.devicehive.json.GsonFactory;
+import com.devicehive.json.strategies.JsonPolicyDef;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.service.history.HistoryCursor;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class HistoryStreamingOutputTest {
+
+    @Test
+    public void testWritesOneLinePerEntityReadingPagesAfterCursor() throws Exception {
+        List<DeviceNotification> history = new ArrayList<>();
+        for (long i = 6; i >= 1; i--) {
+            history.add(createNotification(i, i * 1000));
+        }
+        List<HistoryCursor> cursors = new ArrayList<>();
+        HistoryStreamingOutput<DeviceNotification> output = new HistoryStreamingOutput<>(new Date(5000), cursor -> {
+            cursors.add(cursor);
+            return history.stream().filter(n -> cursor.precedes(n)).limit(2).collect(Collectors.toList());
+        }, 2, GsonFactory.createCompactGson(JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        output.write(bytes);
+        String[] lines = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n");
+
+        assertThat(lines.length, is(5));
+        List<Long> ids = new ArrayList<>();
+        for (String line : lines) {
+            ids.add(new JsonParser().parse(line).getAsJsonObject().get("id").getAsLong());
+        }
+        assertThat(ids, contains(5L, 4L, 3L, 2L, 1L));
+        // the last page is not full, so there is no read after it
+        assertThat(cursors.size(), is(3));
+        assertThat(cursors.get(1).getId(), is(4L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsUnboundedPages() {
+        new HistoryStreamingOutput<DeviceNotification>(null, cursor -> Collections.emptyList(), 0,
+                GsonFactory.createCompactGson());
+    }
+
+    private static DeviceNotification createNotification(long id, long timestamp) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(id);
+        notification.setTimestamp(new Date(timestamp));
+        notification.setNotification("temperature");
+        notification.setParameters(new JsonStringWrapper("{\"value\":" + id + "}"));
+        return notification;
+    }
+}
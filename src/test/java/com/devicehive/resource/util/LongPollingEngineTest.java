@@ -0,0 +1,129 @@
+package com.devicehive.resource.util;
+
+import com.devicehive.messages.subscriptions.AbstractStorage;
+import com.devicehive.messages.subscriptions.NotificationSubscription;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LongPollingEngineTest {
+
+    @Mock
+    private ExecutorService mes;
+
+    @Mock
+    private AbstractStorage<String, NotificationSubscription> storage;
+
+    @Mock
+    private AsyncResponse asyncResponse;
+
+    @Mock
+    private Runnable onTimeout;
+
+    @InjectMocks
+    private LongPollingEngine engine;
+
+    private Collection<NotificationSubscription> subs;
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(engine, "tickMillis", 10L);
+        ReflectionTestUtils.setField(engine, "wheelSize", 16);
+        engine.init();
+        subs = Collections.singleton(mock(NotificationSubscription.class));
+        when(mes.submit(any(Runnable.class))).thenAnswer(invocation -> {
+            ((Runnable) invocation.getArguments()[0]).run();
+            return null;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    public void testTimeoutRemovesSubscriptionsAndRunsCallback() {
+        when(asyncResponse.isSuspended()).thenReturn(true);
+
+        engine.subscribe(storage, subs, asyncResponse, 1, onTimeout);
+
+        verify(storage, times(1)).insertAll(subs);
+        verify(onTimeout, timeout(5000)).run();
+        verify(storage, times(1)).removeAll(subs);
+    }
+
+    @Test
+    public void testResumeBeforeTimeoutRemovesSubscriptionsOnce() throws Exception {
+        when(asyncResponse.isSuspended()).thenReturn(true);
+
+        engine.subscribe(storage, subs, asyncResponse, 1, onTimeout);
+        ArgumentCaptor<Object> callback = ArgumentCaptor.forClass(Object.class);
+        verify(asyncResponse).register(callback.capture());
+        when(asyncResponse.isSuspended()).thenReturn(false);
+        ((CompletionCallback) callback.getValue()).onComplete(null);
+
+        verify(storage, times(1)).removeAll(subs);
+        // timeout was cancelled, so it neither removes subscriptions again nor resumes the response
+        Thread.sleep(1500);
+        verify(storage, times(1)).removeAll(subs);
+        verify(onTimeout, never()).run();
+    }
+
+    @Test
+    public void testResponseResumedBeforeCallbackRegisteredDoesNotLeakSubscriptions() throws Exception {
+        // subscription handler resumed the response while subscriptions were inserted, callback is never called
+        when(asyncResponse.isSuspended()).thenReturn(false);
+
+        engine.subscribe(storage, subs, asyncResponse, 1, onTimeout);
+
+        InOrder inOrder = inOrder(storage);
+        inOrder.verify(storage, times(1)).insertAll(subs);
+        inOrder.verify(storage, times(1)).removeAll(subs);
+        Thread.sleep(1500);
+        verify(storage, times(1)).removeAll(subs);
+        verify(onTimeout, never()).run();
+    }
+
+    @Test
+    public void testResponseCompletedWhileCallbackRegisteredRemovesSubscriptionsOnce() {
+        when(asyncResponse.isSuspended()).thenReturn(false);
+        // response completes concurrently with registration, container calls the callback right away
+        when(asyncResponse.register(any(Object.class))).thenAnswer(invocation -> {
+            ((CompletionCallback) invocation.getArguments()[0]).onComplete(null);
+            return Collections.singleton(CompletionCallback.class);
+        });
+
+        engine.subscribe(storage, subs, asyncResponse, 1, onTimeout);
+
+        // subscriptions are inserted before the callback can remove them
+        InOrder inOrder = inOrder(storage);
+        inOrder.verify(storage, times(1)).insertAll(subs);
+        inOrder.verify(storage, times(1)).removeAll(subs);
+    }
+
+    @Test
+    public void testZeroTimeoutRespondsImmediately() {
+        engine.subscribe(storage, subs, asyncResponse, 0, onTimeout);
+
+        verify(onTimeout, times(1)).run();
+        verify(storage, never()).insertAll(anyCollection());
+    }
+}
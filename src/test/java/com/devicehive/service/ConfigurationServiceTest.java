@@ -2,9 +2,17 @@ package com.devicehive.service;
 
 import com.devicehive.base.AbstractResourceTest;
 import com.devicehive.configuration.ConfigurationService;
+import com.devicehive.dao.CacheConfig;
+import com.devicehive.dao.GenericDAO;
+import com.devicehive.model.Configuration;
+import com.hazelcast.core.HazelcastInstance;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Optional;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.nullValue;
@@ -15,6 +23,15 @@ public class ConfigurationServiceTest extends AbstractResourceTest {
     @Autowired
     private ConfigurationService configurationService;
 
+    @Autowired
+    private GenericDAO genericDAO;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
     @Test
     public void should_save_configuration_property_and_return_by_name() throws Exception {
         String key = RandomStringUtils.randomAlphabetic(10);
@@ -55,4 +72,28 @@ public class ConfigurationServiceTest extends AbstractResourceTest {
         savedVal = configurationService.get(key);
         assertThat(savedVal, nullValue());
     }
+
+    @Test
+    public void should_reload_property_changed_by_other_node() throws Exception {
+        String key = RandomStringUtils.randomAlphabetic(10);
+        String val = RandomStringUtils.randomAlphabetic(10);
+        configurationService.save(key, val);
+
+        // other node changes the value in the database and notifies the cluster
+        String newVal = RandomStringUtils.randomAlphabetic(10);
+        new TransactionTemplate(transactionManager).execute(status -> {
+            Configuration configuration = genericDAO.createNamedQuery(Configuration.class, "Configuration.getByName",
+                    Optional.<CacheConfig>empty()).setParameter("name", key).getSingleResult();
+            configuration.setValue(newVal);
+            return genericDAO.merge(configuration);
+        });
+        assertThat(configurationService.get(key), equalTo(val));
+        hazelcastInstance.getTopic("CONFIGURATION-CHANGE-TOPIC").publish(key);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!newVal.equals(configurationService.get(key)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(configurationService.get(key), equalTo(newVal));
+    }
 }
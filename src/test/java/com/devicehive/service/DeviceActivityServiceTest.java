@@ -2,26 +2,38 @@ package com.devicehive.service;
 
 import com.devicehive.configuration.Constants;
 import com.devicehive.dao.DeviceDAO;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.SpecialNotifications;
+import com.devicehive.service.activity.LastSeenProcessor;
+import com.devicehive.service.activity.MergeLastSeenProcessor;
+import com.devicehive.service.activity.RemoveIdleDeviceProcessor;
+import com.devicehive.service.id.IdGenerator;
+import com.devicehive.service.time.TimestampService;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IMap;
+import com.hazelcast.core.Partition;
+import com.hazelcast.core.PartitionService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.TreeMap;
+import java.util.*;
 
-import static org.mockito.Matchers.anyString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public class DeviceActivityServiceTest {
     private static final String DEFAULT_DEVICE_GUID = "Test_device_guid";
+    private static final Long DEVICE_CLASS_ID = 1L;
     private static final Integer OFFLINE_TIME = 50;
     private static final Integer OFFLINE_TIME_ZERO = 0;
     private static final Integer OFFLINE_TIME_NULL = null;
@@ -37,238 +49,338 @@ public class DeviceActivityServiceTest {
     @Mock
     private IMap imap;
 
+    @Mock
+    private PartitionService partitionService;
+
+    @Mock
+    private DeviceNotificationService deviceNotificationService;
+
+    @Mock
+    private IdGenerator idGenerator;
+
+    @Mock
+    private TimestampService timestampService;
+
     @InjectMocks
     private DeviceActivityService activityService;
 
-    private TreeMap<String, Integer> offlineTimeMap;
-    private List<String> guids;
-    private TreeMap<String, Long> imapProxy;
+    private Map<String, Long> imapProxy;
+    private Map<String, Integer> partitions;
     private Long inputTime;
 
-    private class CustomComparartor implements Comparator<String> {
-
-        @Override
-        public int compare(String o1, String o2) {
-            return Integer.parseInt(o1.replace(DEFAULT_DEVICE_GUID, "")) - Integer.parseInt(o2.replace(DEFAULT_DEVICE_GUID, ""));
-        }
-    }
-
     @Before
     public void setUp() {
-        offlineTimeMap = new TreeMap<>();
-        imapProxy = new TreeMap<>();
-        guids = new ArrayList<>();
+        imapProxy = new LinkedHashMap<>();
+        partitions = new HashMap<>();
         inputTime = System.currentTimeMillis();
+        ReflectionTestUtils.setField(activityService, "offlineTimeoutCacheSeconds", 60L);
+        when(hzInstance.getMap(anyString())).thenReturn(imap);
+        when(hzInstance.getPartitionService()).thenReturn(partitionService);
+        when(partitionService.getPartition(anyObject())).thenAnswer(this::partition);
+        when(imap.localKeySet()).thenAnswer(invocation -> imapProxy.keySet());
+        when(imap.executeOnKeys(anySet(), isA(LastSeenProcessor.class))).thenAnswer(this::lastSeen);
+        when(imap.executeOnKeys(anySet(), isA(RemoveIdleDeviceProcessor.class))).thenAnswer(this::removeAll);
+        when(deviceDAO.getDeviceClassesForDevices(anyCollection())).thenAnswer(this::deviceClasses);
+        activityService.postConstruct();
     }
 
     @Test
     public void testStatusChangedWhileProcessOfflineDevicesWithOfflineTimeZero() {
         //Given
-        inputTime -= 1L;
-        imapProxy.put(DEFAULT_DEVICE_GUID, inputTime);
-        offlineTimeMap.put(DEFAULT_DEVICE_GUID, OFFLINE_TIME_ZERO);
-        when(imap.get(DEFAULT_DEVICE_GUID)).thenReturn(inputTime);
-        when(imap.keySet()).thenReturn(imapProxy.keySet());
-        when(imap.remove(DEFAULT_DEVICE_GUID, inputTime)).thenReturn(true);
-        guids.addAll(imapProxy.keySet());
-        when(deviceDAO.getOfflineTimeForDevices(guids)).thenReturn(offlineTimeMap);
-        when(hzInstance.getMap(anyString())).thenReturn(imap);
-        activityService.postConstruct();
+        imapProxy.put(DEFAULT_DEVICE_GUID, inputTime - 1L);
+        givenOfflineTime(OFFLINE_TIME_ZERO);
 
         //When
         activityService.processOfflineDevices();
 
         //Then
-        verify(imap, times(1)).remove(DEFAULT_DEVICE_GUID, inputTime);
-        verify(deviceDAO, times(1)).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS, guids);
+        verify(imap, times(1)).executeOnKeys(eq(Collections.singleton(DEFAULT_DEVICE_GUID)), isA(RemoveIdleDeviceProcessor.class));
+        verify(deviceDAO, times(1)).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS, Collections.singletonList(DEFAULT_DEVICE_GUID));
     }
 
     @Test
     public void testStatusChangedWhileProcessOfflineDevicesWithOfflineTime() {
         //Given
-        inputTime -= OFFLINE_TIME * 1000 + 1;
-        imapProxy.put(DEFAULT_DEVICE_GUID, inputTime);
-        offlineTimeMap.put(DEFAULT_DEVICE_GUID, OFFLINE_TIME);
-        when(imap.get(DEFAULT_DEVICE_GUID)).thenReturn(inputTime);
-        when(imap.keySet()).thenReturn(imapProxy.keySet());
-        when(imap.remove(DEFAULT_DEVICE_GUID, inputTime)).thenReturn(true);
-        guids.addAll(imapProxy.keySet());
-        when(deviceDAO.getOfflineTimeForDevices(guids)).thenReturn(offlineTimeMap);
-        when(hzInstance.getMap(anyString())).thenReturn(imap);
-        activityService.postConstruct();
+        imapProxy.put(DEFAULT_DEVICE_GUID, inputTime - OFFLINE_TIME * 1000 - 1);
+        givenOfflineTime(OFFLINE_TIME);
 
         //When
         activityService.processOfflineDevices();
 
         //Then
-        verify(imap, times(1)).remove(DEFAULT_DEVICE_GUID, inputTime);
-        verify(deviceDAO, times(1)).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS, guids);
+        verify(imap, times(1)).executeOnKeys(eq(Collections.singleton(DEFAULT_DEVICE_GUID)), isA(RemoveIdleDeviceProcessor.class));
+        verify(deviceDAO, times(1)).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS, Collections.singletonList(DEFAULT_DEVICE_GUID));
+    }
+
+    @Test
+    public void testStatusNotificationPublishedForOfflineDevices() {
+        //Given
+        imapProxy.put(DEFAULT_DEVICE_GUID, inputTime - OFFLINE_TIME * 1000 - 1);
+        givenOfflineTime(OFFLINE_TIME);
+        when(idGenerator.nextId()).thenReturn(42L);
+
+        //When
+        activityService.processOfflineDevices();
+
+        //Then
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(deviceNotificationService, times(1)).submitServerNotifications(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        DeviceNotification notification = (DeviceNotification) captor.getValue().get(0);
+        assertEquals(DEFAULT_DEVICE_GUID, notification.getDeviceGuid());
+        assertEquals(SpecialNotifications.DEVICE_STATUS, notification.getNotification());
+        assertEquals("{\"status\":\"Offline\"}", notification.getParameters().getJsonString());
+        assertEquals(Long.valueOf(42L), notification.getId());
     }
 
     @Test
     public void testStatusChangedWhileProcessOfflineDevicesWithOfflineTimeNull() {
         //Given
         imapProxy.put(DEFAULT_DEVICE_GUID, inputTime);
-        offlineTimeMap.put(DEFAULT_DEVICE_GUID, OFFLINE_TIME_NULL);
-        when(imap.get(DEFAULT_DEVICE_GUID)).thenReturn(inputTime);
-        when(imap.keySet()).thenReturn(imapProxy.keySet());
-        when(imap.remove(DEFAULT_DEVICE_GUID, inputTime)).thenReturn(true);
-        when(imap.remove(DEFAULT_DEVICE_GUID)).thenReturn(true);
-        guids.addAll(imapProxy.keySet());
-        when(deviceDAO.getOfflineTimeForDevices(guids)).thenReturn(offlineTimeMap);
-        when(hzInstance.getMap(anyString())).thenReturn(imap);
-        activityService.postConstruct();
+        givenOfflineTime(OFFLINE_TIME_NULL);
 
         //When
         activityService.processOfflineDevices();
 
         //Then
         verify(imap, never()).remove(DEFAULT_DEVICE_GUID);
-        verify(imap, never()).remove(DEFAULT_DEVICE_GUID, inputTime);
-        verify(deviceDAO, never()).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS, guids);
+        verify(imap, never()).executeOnKeys(anySet(), isA(RemoveIdleDeviceProcessor.class));
+        verify(deviceDAO, never()).changeStatusForDevices(anyString(), anyList());
+        verify(deviceNotificationService, never()).submitServerNotifications(anyList());
     }
 
     @Test
     public void testStatusNotChangedWhileProcessOfflineDevicesWithOfflineTime() {
         //Given
-        inputTime += OFFLINE_TIME;
-        imapProxy.put(DEFAULT_DEVICE_GUID, inputTime);
-        offlineTimeMap.put(DEFAULT_DEVICE_GUID, OFFLINE_TIME);
-        when(imap.get(DEFAULT_DEVICE_GUID)).thenReturn(inputTime);
-        when(imap.keySet()).thenReturn(imapProxy.keySet());
-        when(imap.remove(DEFAULT_DEVICE_GUID, inputTime)).thenReturn(true);
-        when(imap.remove(DEFAULT_DEVICE_GUID)).thenReturn(true);
-        guids.addAll(imapProxy.keySet());
-        when(deviceDAO.getOfflineTimeForDevices(guids)).thenReturn(offlineTimeMap);
-        when(hzInstance.getMap(anyString())).thenReturn(imap);
-        activityService.postConstruct();
+        imapProxy.put(DEFAULT_DEVICE_GUID, inputTime + OFFLINE_TIME);
+        givenOfflineTime(OFFLINE_TIME);
 
         //When
         activityService.processOfflineDevices();
 
         //Then
         verify(imap, never()).remove(DEFAULT_DEVICE_GUID);
-        verify(imap, never()).remove(DEFAULT_DEVICE_GUID, inputTime);
-        verify(deviceDAO, never()).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS, guids);
+        verify(imap, never()).executeOnKeys(anySet(), isA(RemoveIdleDeviceProcessor.class));
+        verify(deviceDAO, never()).changeStatusForDevices(anyString(), anyList());
     }
 
     @Test
     public void testStatusChangedWhileProcessOfflineDevicesWhenNoDeviceInDB() {
         //Given
         imapProxy.put(DEFAULT_DEVICE_GUID, inputTime);
-        when(imap.get(DEFAULT_DEVICE_GUID)).thenReturn(inputTime);
-        when(imap.keySet()).thenReturn(imapProxy.keySet());
-        when(imap.remove(DEFAULT_DEVICE_GUID, inputTime)).thenReturn(true);
-        when(imap.remove(DEFAULT_DEVICE_GUID)).thenReturn(true);
-        guids.addAll(imapProxy.keySet());
-        when(deviceDAO.getOfflineTimeForDevices(guids)).thenReturn(offlineTimeMap);
-        when(hzInstance.getMap(anyString())).thenReturn(imap);
-        activityService.postConstruct();
+        when(deviceDAO.getDeviceClassesForDevices(anyCollection())).thenReturn(Collections.emptyMap());
 
         //When
         activityService.processOfflineDevices();
 
         //Then
         verify(imap, times(1)).remove(DEFAULT_DEVICE_GUID);
-        verify(imap, never()).remove(DEFAULT_DEVICE_GUID, inputTime);
-        verify(deviceDAO, never()).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS, guids);
+        verify(imap, never()).executeOnKeys(anySet(), isA(RemoveIdleDeviceProcessor.class));
+        verify(deviceDAO, never()).changeStatusForDevices(anyString(), anyList());
+    }
+
+    @Test
+    public void testStatusNotChangedWhenDeviceSeenAfterActivityRead() {
+        //Given
+        imapProxy.put(DEFAULT_DEVICE_GUID, inputTime - OFFLINE_TIME * 1000 - 1);
+        givenOfflineTime(OFFLINE_TIME);
+        when(imap.executeOnKeys(anySet(), isA(RemoveIdleDeviceProcessor.class)))
+                .thenReturn(Collections.singletonMap(DEFAULT_DEVICE_GUID, false));
+
+        //When
+        activityService.processOfflineDevices();
+
+        //Then
+        verify(deviceDAO, never()).changeStatusForDevices(anyString(), anyList());
+        verify(deviceNotificationService, never()).submitServerNotifications(anyList());
     }
 
     @Test
     public void testStatusChangedWhileProcessOfflineDevicesWithOfflineTimeForProcessBufferQuantity() {
         //Given
-        inputTime -= OFFLINE_TIME * 1000 + 1;
-        for (int i = 0; i < PROCESS_DEVICES_BUFFER_SIZE; i++) {
-            String deviceGuid = DEFAULT_DEVICE_GUID + i;
-            imapProxy.put(deviceGuid, inputTime);
-            offlineTimeMap.put(deviceGuid, OFFLINE_TIME);
-            when(imap.get(deviceGuid)).thenReturn(inputTime);
-            when(imap.remove(deviceGuid, inputTime)).thenReturn(true);
-        }
-        when(imap.keySet()).thenReturn(imapProxy.keySet());
-        guids.addAll(imapProxy.keySet());
-        when(deviceDAO.getOfflineTimeForDevices(guids)).thenReturn(offlineTimeMap);
-        when(hzInstance.getMap(anyString())).thenReturn(imap);
-        activityService.postConstruct();
+        List<String> guids = givenIdleDevices(PROCESS_DEVICES_BUFFER_SIZE, 0);
 
         //When
         activityService.processOfflineDevices();
 
         //Then
-        verify(imap, times(PROCESS_DEVICES_BUFFER_SIZE)).remove(anyObject(), anyObject());
+        verify(imap, times(1)).executeOnKeys(eq(new HashSet<>(guids)), isA(RemoveIdleDeviceProcessor.class));
         verify(deviceDAO, times(1)).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS, guids);
     }
 
     @Test
     public void testStatusChangedWhileProcessOfflineDevicesWithOfflineTimeForProcessBufferQuantityPlusOne() {
         //Given
-        Comparator customComparator = new CustomComparartor();
-        offlineTimeMap = new TreeMap<>(customComparator);
-        imapProxy = new TreeMap<>(customComparator);
-        inputTime -= OFFLINE_TIME * 1000 + 1;
-        int buffer = PROCESS_DEVICES_BUFFER_SIZE + 1;
-        for (int i = 0; i < buffer; i++) {
-            String deviceGuid = DEFAULT_DEVICE_GUID + i;
-            imapProxy.put(deviceGuid, inputTime);
-            offlineTimeMap.put(deviceGuid, OFFLINE_TIME);
-            when(imap.get(deviceGuid)).thenReturn(inputTime);
-            when(imap.remove(deviceGuid, inputTime)).thenReturn(true);
-        }
-        when(imap.keySet()).thenReturn(imapProxy.keySet());
-        guids.addAll(imapProxy.keySet());
+        List<String> guids = givenIdleDevices(PROCESS_DEVICES_BUFFER_SIZE + 1, 0);
 
-        String keyFrom = DEFAULT_DEVICE_GUID + 0;
-        String keyTo = DEFAULT_DEVICE_GUID + PROCESS_DEVICES_BUFFER_SIZE;
-        int indexFrom = 0;
-        int indexTo = PROCESS_DEVICES_BUFFER_SIZE;
-        when(deviceDAO.getOfflineTimeForDevices(guids.subList(indexFrom, indexTo))).thenReturn(offlineTimeMap.subMap(keyFrom, keyTo));
+        //When
+        activityService.processOfflineDevices();
 
-        keyFrom = keyTo;
-        keyTo = DEFAULT_DEVICE_GUID + buffer;
-        indexFrom = indexTo;
-        indexTo = guids.size();
-        when(deviceDAO.getOfflineTimeForDevices(guids.subList(indexFrom, indexTo))).thenReturn(offlineTimeMap.subMap(keyFrom, keyTo));
+        //Then
+        verify(imap, times(2)).executeOnKeys(anySet(), isA(RemoveIdleDeviceProcessor.class));
+        verify(deviceDAO, times(1)).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS,
+                guids.subList(0, PROCESS_DEVICES_BUFFER_SIZE));
+        verify(deviceDAO, times(1)).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS,
+                guids.subList(PROCESS_DEVICES_BUFFER_SIZE, guids.size()));
+    }
 
-        when(hzInstance.getMap(anyString())).thenReturn(imap);
-        activityService.postConstruct();
+    @Test
+    public void testStatusChangedWhileProcessOfflineDevicesWithOfflineTimeForProcessBufferQuantityMinusOne() {
+        //Given
+        List<String> guids = givenIdleDevices(PROCESS_DEVICES_BUFFER_SIZE - 1, 0);
 
         //When
         activityService.processOfflineDevices();
 
         //Then
-        verify(imap, times(buffer)).remove(anyObject(), anyObject());
-        indexFrom = 0;
-        indexTo = PROCESS_DEVICES_BUFFER_SIZE;
-        verify(deviceDAO, times(1)).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS, guids.subList(indexFrom, indexTo));
-        indexFrom = indexTo;
-        indexTo = guids.size();
-        verify(deviceDAO, times(1)).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS, guids.subList(indexFrom, indexTo));
+        verify(imap, times(1)).executeOnKeys(eq(new HashSet<>(guids)), isA(RemoveIdleDeviceProcessor.class));
+        verify(deviceDAO, times(1)).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS, guids);
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(deviceNotificationService, times(1)).submitServerNotifications(captor.capture());
+        assertEquals(guids.size(), captor.getValue().size());
     }
 
     @Test
-    public void testStatusChangedWhileProcessOfflineDevicesWithOfflineTimeForProcessBufferQuantityMinusOne() {
+    public void testStatusChangedOncePerPartition() {
         //Given
-        inputTime -= OFFLINE_TIME * 1000 + 1;
-        int buffer = PROCESS_DEVICES_BUFFER_SIZE - 1;
-        for (int i = 0; i < buffer; i++) {
-            String deviceGuid = DEFAULT_DEVICE_GUID + i;
-            imapProxy.put(deviceGuid, inputTime);
-            offlineTimeMap.put(deviceGuid, OFFLINE_TIME);
-            when(imap.get(deviceGuid)).thenReturn(inputTime);
-            when(imap.remove(deviceGuid, inputTime)).thenReturn(true);
-        }
-        when(imap.keySet()).thenReturn(imapProxy.keySet());
-        guids.addAll(imapProxy.keySet());
-        when(deviceDAO.getOfflineTimeForDevices(guids)).thenReturn(offlineTimeMap);
-        when(hzInstance.getMap(anyString())).thenReturn(imap);
-        activityService.postConstruct();
+        List<String> first = givenIdleDevices(3, 1);
+        List<String> second = givenIdleDevices(2, 2);
 
         //When
         activityService.processOfflineDevices();
 
         //Then
-        verify(imap, times(buffer)).remove(anyObject(), anyObject());
-        verify(deviceDAO, times(1)).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS, guids);
+        verify(deviceDAO, times(1)).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS, first);
+        verify(deviceDAO, times(1)).changeStatusForDevices(Constants.DEVICE_OFFLINE_STATUS, second);
+        verify(deviceNotificationService, times(2)).submitServerNotifications(anyList());
+    }
+
+    @Test
+    public void testOfflineTimeoutCachedPerDeviceClass() {
+        //Given
+        imapProxy.put(DEFAULT_DEVICE_GUID, inputTime);
+        givenOfflineTime(OFFLINE_TIME);
+
+        //When
+        activityService.processOfflineDevices();
+        activityService.processOfflineDevices();
+
+        //Then
+        verify(deviceDAO, times(2)).getDeviceClassesForDevices(anyCollection());
+        verify(deviceDAO, times(1)).getOfflineTimeForDeviceClasses(Collections.singleton(DEVICE_CLASS_ID));
+    }
+
+    @Test
+    public void testActivityFlushedToClusterInBatch() {
+        //Given
+        activityService.update(DEFAULT_DEVICE_GUID + 1);
+        activityService.update(DEFAULT_DEVICE_GUID + 2);
+        activityService.update(DEFAULT_DEVICE_GUID + 1);
+
+        //When
+        activityService.flush();
+        activityService.flush();
+
+        //Then
+        ArgumentCaptor<Set> captor = ArgumentCaptor.forClass(Set.class);
+        verify(imap, times(1)).executeOnKeys(captor.capture(), isA(MergeLastSeenProcessor.class));
+        assertEquals(new HashSet<>(Arrays.asList(DEFAULT_DEVICE_GUID + 1, DEFAULT_DEVICE_GUID + 2)), captor.getValue());
+        verify(imap, never()).putAll(anyMap());
+        verify(imap, never()).set(anyObject(), anyObject());
+    }
+
+    @Test
+    public void testActivityFlushedWithSlicePerPartition() {
+        //Given
+        partitions.put(DEFAULT_DEVICE_GUID + 1, 1);
+        partitions.put(DEFAULT_DEVICE_GUID + 2, 2);
+        partitions.put(DEFAULT_DEVICE_GUID + 3, 2);
+        activityService.update(DEFAULT_DEVICE_GUID + 1);
+        activityService.update(DEFAULT_DEVICE_GUID + 2);
+        activityService.update(DEFAULT_DEVICE_GUID + 3);
+
+        //When
+        activityService.flush();
+
+        //Then
+        ArgumentCaptor<Set> keys = ArgumentCaptor.forClass(Set.class);
+        ArgumentCaptor<MergeLastSeenProcessor> processors = ArgumentCaptor.forClass(MergeLastSeenProcessor.class);
+        verify(imap, times(2)).executeOnKeys(keys.capture(), processors.capture());
+        Set<Set> slices = new HashSet<>(keys.getAllValues());
+        assertEquals(new HashSet<>(Arrays.asList(Collections.singleton(DEFAULT_DEVICE_GUID + 1),
+                new HashSet<>(Arrays.asList(DEFAULT_DEVICE_GUID + 2, DEFAULT_DEVICE_GUID + 3)))), slices);
+        // processor of a partition does not carry times of other partitions
+        for (int i = 0; i < 2; i++) {
+            Map.Entry<String, Long> other = new AbstractMap.SimpleEntry<>(DEFAULT_DEVICE_GUID + 1, 0L);
+            processors.getAllValues().get(i).process(other);
+            assertEquals(keys.getAllValues().get(i).contains(DEFAULT_DEVICE_GUID + 1), other.getValue() > 0);
+        }
+    }
+
+    @Test
+    public void testFlushedActivityDoesNotOverrideNewerOne() {
+        //Given
+        activityService.update(DEFAULT_DEVICE_GUID);
+        Map.Entry<String, Long> newer = new AbstractMap.SimpleEntry<>(DEFAULT_DEVICE_GUID, inputTime + 60000);
+        Map.Entry<String, Long> older = new AbstractMap.SimpleEntry<>(DEFAULT_DEVICE_GUID, inputTime - 60000);
+
+        //When
+        activityService.flush();
+
+        //Then
+        ArgumentCaptor<MergeLastSeenProcessor> captor = ArgumentCaptor.forClass(MergeLastSeenProcessor.class);
+        verify(imap, times(1)).executeOnKeys(anySet(), captor.capture());
+        captor.getValue().process(newer);
+        captor.getValue().process(older);
+        assertEquals(Long.valueOf(inputTime + 60000), newer.getValue());
+        assertTrue(older.getValue() >= inputTime);
+    }
+
+    private void givenOfflineTime(Integer offlineTime) {
+        when(deviceDAO.getOfflineTimeForDeviceClasses(anyCollection()))
+                .thenReturn(Collections.singletonMap(DEVICE_CLASS_ID, offlineTime));
+    }
+
+    private List<String> givenIdleDevices(int count, int partitionId) {
+        List<String> guids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String deviceGuid = DEFAULT_DEVICE_GUID + partitionId + "-" + i;
+            imapProxy.put(deviceGuid, inputTime - OFFLINE_TIME * 1000 - 1);
+            partitions.put(deviceGuid, partitionId);
+            guids.add(deviceGuid);
+        }
+        givenOfflineTime(OFFLINE_TIME);
+        return guids;
+    }
+
+    private Partition partition(InvocationOnMock invocation) {
+        Partition partition = mock(Partition.class);
+        when(partition.getPartitionId()).thenReturn(partitions.getOrDefault(invocation.getArguments()[0], 0));
+        return partition;
+    }
+
+    private Map<String, Long> deviceClasses(InvocationOnMock invocation) {
+        Map<String, Long> result = new HashMap<>();
+        for (Object guid : (Collection<?>) invocation.getArguments()[0]) {
+            result.put((String) guid, DEVICE_CLASS_ID);
+        }
+        return result;
+    }
+
+    private Map<Object, Object> lastSeen(InvocationOnMock invocation) {
+        Map<Object, Object> result = new HashMap<>();
+        for (Object key : (Set<?>) invocation.getArguments()[0]) {
+            result.put(key, imapProxy.get(key));
+        }
+        return result;
+    }
+
+    private Map<Object, Object> removeAll(InvocationOnMock invocation) {
+        Map<Object, Object> result = new HashMap<>();
+        for (Object key : (Set<?>) invocation.getArguments()[0]) {
+            result.put(key, true);
+        }
+        return result;
     }
 
 }
@@ -5,12 +5,20 @@ import com.devicehive.model.Device;
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.JsonStringWrapper;
 import com.devicehive.model.User;
+import com.devicehive.model.response.HistoryGridPoint;
 import com.devicehive.model.wrappers.DeviceCommandWrapper;
+import com.devicehive.service.history.DeviceHistory;
+import com.devicehive.service.history.GridAggregate;
+import com.devicehive.service.history.HistoryStore;
+import com.devicehive.service.history.HistoryStoreWriter;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
 import org.junit.After;
 import org.junit.Test;
+import org.springframework.aop.framework.Advised;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.sql.Timestamp;
 import java.util.*;
@@ -24,6 +32,15 @@ public class DeviceCommandServiceTest extends AbstractResourceTest {
     @Autowired
     private DeviceCommandService deviceCommandService;
 
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private HistoryStoreWriter historyStoreWriter;
+
+    @Autowired
+    private HistoryStore historyStore;
+
     @Test
     public void testFindAllCommands(){
         final int NUMBER_OF_COMMANDS = 99;
@@ -36,6 +53,22 @@ public class DeviceCommandServiceTest extends AbstractResourceTest {
                 null, Collections.<String>emptyList(), null, DEFAULT_STATUS, 100, null, null).size());
     }
 
+    @Test
+    public void testFindNewestCommandsOfAllDevices() {
+        final long now = System.currentTimeMillis();
+        for (int device = 0; device < 5; device++) {
+            final String guid = UUID.randomUUID().toString();
+            for (int i = 0; i < 3; i++) {
+                final long id = device * 3 + i;
+                deviceCommandService.store(createCommand(id, guid, now + i * 10 + device));
+            }
+        }
+
+        // without principal histories of all devices are read
+        assertEquals(Arrays.asList(14L, 11L, 8L, 5L), ids(deviceCommandService.find(null, null, null, null, 4, null,
+                null)));
+    }
+
     @Test
     public void testFindCommandsWithResponse(){
         final int NUMBER_OF_COMMANDS = 99;
@@ -158,6 +191,236 @@ public class DeviceCommandServiceTest extends AbstractResourceTest {
         assertEquals(3, commands.size());
     }
 
+    @Test
+    public void testFindCommandByIdAndDevice() {
+        final DeviceCommand deviceCommand = new DeviceCommand();
+        deviceCommand.setId(Math.abs(new Random().nextLong()));
+        deviceCommand.setTimestamp(new Date());
+        deviceCommand.setDeviceGuid(UUID.randomUUID().toString());
+        deviceCommand.setCommand("command");
+        deviceCommand.setIsUpdated(false);
+        deviceCommandService.store(deviceCommand);
+
+        final DeviceCommand found = deviceCommandService.find(deviceCommand.getId(), deviceCommand.getDeviceGuid());
+        assertEquals(deviceCommand.getCommand(), found.getCommand());
+        assertNull(deviceCommandService.find(deviceCommand.getId(), UUID.randomUUID().toString()));
+
+        // entity is stored in the same partition as the device history
+        assertEquals(hazelcastInstance.getPartitionService().getPartition(deviceCommand.getDeviceGuid()),
+                hazelcastInstance.getPartitionService().getPartition(deviceCommand.getHazelcastKey()));
+    }
+
+    @Test
+    public void testFindExpiredCommandByIdAndDevice() {
+        final String guid = UUID.randomUUID().toString();
+        // expired from the flat map, kept in memory history
+        final DeviceCommand inMemory = createCommand(1, guid, System.currentTimeMillis() - 700 * 1000);
+        deviceCommandService.store(inMemory);
+        // expired from memory history, kept in the store only
+        historyStore.storeAll(Collections.singletonList(createCommand(2, guid, System.currentTimeMillis() - 7200 * 1000)));
+
+        assertNull(hazelcastInstance.getMap(AbstractHazelcastEntityService.COMMANDS_MAP).get(inMemory.getHazelcastKey()));
+        assertEquals(Long.valueOf(1), deviceCommandService.find(1L, guid).getId());
+        assertEquals(Long.valueOf(2), deviceCommandService.find(2L, guid).getId());
+        assertNull(deviceCommandService.find(3L, guid));
+    }
+
+    @Test
+    public void testUpdateCommand() {
+        final DeviceCommand deviceCommand = new DeviceCommand();
+        deviceCommand.setId(Math.abs(new Random().nextLong()));
+        deviceCommand.setTimestamp(new Date());
+        deviceCommand.setDeviceGuid(UUID.randomUUID().toString());
+        deviceCommand.setCommand("command");
+        deviceCommand.setIsUpdated(false);
+        deviceCommandService.store(deviceCommand);
+
+        final DeviceCommandWrapper update = new DeviceCommandWrapper();
+        update.setStatus(Optional.of("done"));
+        final DeviceCommand updated = deviceCommandService.update(deviceCommand.getId(), deviceCommand.getDeviceGuid(), update);
+        assertEquals("done", updated.getStatus());
+        assertTrue(updated.getIsUpdated());
+        assertEquals("done", deviceCommandService.find(deviceCommand.getId(), deviceCommand.getDeviceGuid()).getStatus());
+        assertEquals(1, deviceCommandService.find(Collections.singletonList(deviceCommand.getDeviceGuid()), null, null,
+                "done", 0, true, null).size());
+
+        assertNull(deviceCommandService.update(deviceCommand.getId(), UUID.randomUUID().toString(), update));
+    }
+
+    @Test
+    public void testExpiredCommandReplacesHistoryEntry() throws Exception {
+        final DeviceCommand deviceCommand = createCommand(Math.abs(new Random().nextLong()),
+                UUID.randomUUID().toString(), System.currentTimeMillis());
+        deviceCommand.setLifetime(1);
+        deviceCommandService.store(deviceCommand);
+
+        final List<String> devices = Collections.singletonList(deviceCommand.getDeviceGuid());
+        Collection<DeviceCommand> expired = Collections.emptyList();
+        final long deadline = System.currentTimeMillis() + 15000;
+        while (expired.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            expired = deviceCommandService.find(devices, null, null, "Expired", 0, true, null);
+        }
+        assertEquals(1, expired.size());
+        assertEquals(deviceCommand.getId(), expired.iterator().next().getId());
+        // the original entry is replaced, not duplicated
+        assertEquals(1, deviceCommandService.find(devices, null, null, null, 0, null, null).size());
+    }
+
+    @Test
+    public void testAggregateCommands() {
+        final String guid = UUID.randomUUID().toString();
+        // the next minute, so the grid starts after in-memory history has started
+        final long start = (System.currentTimeMillis() / 60000 + 1) * 60000;
+        for (int i = 0; i < 6; i++) {
+            final DeviceCommand deviceCommand = new DeviceCommand();
+            deviceCommand.setId((long) i);
+            deviceCommand.setTimestamp(new Date(start + i * 20000));
+            deviceCommand.setDeviceGuid(guid);
+            deviceCommand.setCommand("speed");
+            deviceCommand.setParameters(new JsonStringWrapper("{\"speed\":" + i + "}"));
+            deviceCommand.setIsUpdated(false);
+            deviceCommandService.store(deviceCommand);
+        }
+
+        final List<Object> last = deviceCommandService.aggregate(guid, null, new Date(start - 1), null, null, 60000,
+                GridAggregate.LAST, null);
+        assertEquals(2, last.size());
+        assertEquals(Long.valueOf(2), ((DeviceCommand) last.get(0)).getId());
+        assertEquals(Long.valueOf(5), ((DeviceCommand) last.get(1)).getId());
+
+        final List<Object> avg = deviceCommandService.aggregate(guid, null, new Date(start - 1), new Date(start + 60000),
+                null, 60000, GridAggregate.AVG, "speed");
+        assertEquals(2, avg.size());
+        assertEquals(1.0, ((HistoryGridPoint) avg.get(0)).getValue(), 0);
+        assertEquals(3.0, ((HistoryGridPoint) avg.get(1)).getValue(), 0);
+        assertEquals(new Date(start + 60000), ((HistoryGridPoint) avg.get(1)).getTimestamp());
+    }
+
+    @Test
+    public void testAggregateRangeStartingBeforeMemoryHistory() throws Exception {
+        final String guid = UUID.randomUUID().toString();
+        final long now = System.currentTimeMillis();
+        // history of three keeps the last three commands only
+        setHistorySize(3);
+        try {
+            for (int i = 0; i < 5; i++) {
+                deviceCommandService.store(createCommand(i, guid, now + i * 1000));
+            }
+        } finally {
+            setHistorySize(1000);
+        }
+        historyStoreWriter.flush();
+
+        // dropped commands are aggregated by the store, every command falls into its own second
+        final List<Object> all = deviceCommandService.aggregate(guid, null, null, null, null, 1000,
+                GridAggregate.COUNT, null);
+        assertEquals(5, all.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(new Date((now + i * 1000) / 1000 * 1000), ((HistoryGridPoint) all.get(i)).getTimestamp());
+            assertEquals(1, ((HistoryGridPoint) all.get(i)).getCount());
+        }
+        final List<Object> last = deviceCommandService.aggregate(guid, null, new Date(now + 500), new Date(now + 3000),
+                null, 1000, GridAggregate.LAST, null);
+        assertEquals(3, last.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Long.valueOf(i + 1), ((DeviceCommand) last.get(i)).getId());
+        }
+        // the last dropped command has timestamp now + 1000, the rest of the range is in memory
+        assertEquals(3, deviceCommandService.aggregate(guid, null, new Date(now + 1000), null, null, 1000,
+                GridAggregate.COUNT, null).size());
+    }
+
+    @Test
+    public void testFindCommandsOlderThanMemoryWindow() {
+        final String guid = UUID.randomUUID().toString();
+        final long hourAgo = System.currentTimeMillis() - 3600 * 1000;
+        for (int i = 0; i < 3; i++) {
+            final DeviceCommand deviceCommand = new DeviceCommand();
+            deviceCommand.setId((long) i);
+            // the first command is older than history.device.retention.sec
+            deviceCommand.setTimestamp(new Date(i == 0 ? hourAgo - 60000 : System.currentTimeMillis() + i));
+            deviceCommand.setDeviceGuid(guid);
+            deviceCommand.setCommand("archived");
+            deviceCommand.setIsUpdated(false);
+            deviceCommandService.store(deviceCommand);
+        }
+        historyStoreWriter.flush();
+
+        final List<DeviceCommand> commands = new ArrayList<>(deviceCommandService.find(Collections.singletonList(guid),
+                null, null, null, 10, null, null));
+        assertEquals(3, commands.size());
+        assertEquals(Long.valueOf(2), commands.get(0).getId());
+        assertEquals(Long.valueOf(0), commands.get(2).getId());
+
+        // page filled from memory does not read the store
+        assertEquals(2, deviceCommandService.find(Collections.singletonList(guid), null, null, null, 2, null, null).size());
+        assertTrue(deviceCommandService.find(Collections.singletonList(guid), null, new Date(hourAgo), null, 10, null,
+                null).stream().allMatch(command -> command.getId() > 0));
+    }
+
+    @Test
+    public void testFindCommandsDroppedFromFullMemoryHistory() throws Exception {
+        final String guid = UUID.randomUUID().toString();
+        setHistorySize(3);
+        try {
+            for (int i = 0; i < 5; i++) {
+                deviceCommandService.store(createCommand(i, guid, System.currentTimeMillis() + i));
+            }
+        } finally {
+            setHistorySize(1000);
+        }
+        historyStoreWriter.flush();
+        final IMap<String, DeviceHistory> histories =
+                hazelcastInstance.getMap(AbstractHazelcastEntityService.COMMANDS_HISTORY_MAP);
+        assertEquals(3, histories.get(guid).size());
+
+        final List<DeviceCommand> commands = new ArrayList<>(deviceCommandService.find(Collections.singletonList(guid),
+                null, null, null, 10, null, null));
+        assertEquals(Arrays.asList(4L, 3L, 2L, 1L, 0L), ids(commands));
+    }
+
+    @Test
+    public void testFindCommandsStoredBeforeMemoryHistoryStarted() {
+        final String restarted = UUID.randomUUID().toString();
+        final String idle = UUID.randomUUID().toString();
+        // commands saved within retention window, before the cluster was restarted
+        final long beforeRestart = System.currentTimeMillis() - 600 * 1000;
+        historyStore.storeAll(Arrays.asList(createCommand(0, restarted, beforeRestart),
+                createCommand(1, idle, beforeRestart + 1)));
+        deviceCommandService.store(createCommand(2, restarted, System.currentTimeMillis()));
+
+        // without principal histories of all devices are read
+        assertEquals(Arrays.asList(2L, 1L, 0L), ids(deviceCommandService.find(Collections.singletonList(restarted), null,
+                null, null, 10, null, null)));
+        assertEquals(Arrays.asList(2L, 1L), ids(deviceCommandService.find(Collections.singletonList(restarted), null,
+                null, null, 2, null, null)));
+    }
+
+    /**
+     * Service is proxied by spring, the field is set on the target
+     */
+    private void setHistorySize(int historySize) throws Exception {
+        ReflectionTestUtils.setField(((Advised) deviceCommandService).getTargetSource().getTarget(), "historySize",
+                historySize);
+    }
+
+    private static DeviceCommand createCommand(long id, String guid, long timestamp) {
+        final DeviceCommand deviceCommand = new DeviceCommand();
+        deviceCommand.setId(id);
+        deviceCommand.setTimestamp(new Date(timestamp));
+        deviceCommand.setDeviceGuid(guid);
+        deviceCommand.setCommand("command");
+        deviceCommand.setIsUpdated(false);
+        return deviceCommand;
+    }
+
+    private static List<Long> ids(Collection<DeviceCommand> commands) {
+        final List<Long> ids = new ArrayList<>();
+        commands.forEach(command -> ids.add(command.getId()));
+        return ids;
+    }
+
     private void sendNCommands(int n, String status, boolean isUpdated) {
         for (int i = 0; i < n; i++) {
             //Need this hack to have different timestamp for each command
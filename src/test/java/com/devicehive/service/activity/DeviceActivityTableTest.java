@@ -0,0 +1,46 @@
+package com.devicehive.service.activity;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class DeviceActivityTableTest {
+
+    @Test
+    public void should_keep_latest_activity() {
+        DeviceActivityTable table = new DeviceActivityTable();
+        table.touch("device", 20);
+        table.touch("device", 10);
+        assertThat(table.getLastSeen("device"), equalTo(20L));
+        assertThat(table.getLastSeen("unknown"), equalTo(0L));
+    }
+
+    @Test
+    public void should_drain_only_changed_devices() {
+        DeviceActivityTable table = new DeviceActivityTable();
+        table.touch("first", 10);
+        table.touch("second", 10);
+        assertThat(table.drainChanges().size(), equalTo(2));
+        assertThat(table.drainChanges().isEmpty(), is(true));
+
+        table.touch("second", 30);
+        assertThat(table.drainChanges(), equalTo(Collections.singletonMap("second", 30L)));
+    }
+
+    @Test
+    public void should_grow_beyond_one_chunk() {
+        DeviceActivityTable table = new DeviceActivityTable();
+        int devices = 10000;
+        for (int i = 0; i < devices; i++) {
+            table.touch("device" + i, i + 1);
+        }
+        Map<String, Long> changes = table.drainChanges();
+        assertThat(table.size(), equalTo(devices));
+        assertThat(changes.size(), equalTo(devices));
+        assertThat(changes.get("device9999"), equalTo(10000L));
+    }
+}
@@ -0,0 +1,134 @@
+package com.devicehive.service.history;
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class DeviceHistoryTest {
+    private static final HistoryFilter ALL = new HistoryFilter(null, null, null, null, null);
+
+    @Test
+    public void should_return_newest_first_and_drop_oldest_when_full() {
+        DeviceHistory history = new DeviceHistory(3);
+        for (long i = 1; i <= 5; i++) {
+            history.put(notification(i, i * 10, "temperature"));
+        }
+        assertThat(history.size(), equalTo(3));
+        assertThat(ids(history.find(ALL, 0, Long.MIN_VALUE)), contains(5L, 4L, 3L));
+        assertThat(ids(history.find(ALL, 2, Long.MIN_VALUE)), contains(5L, 4L));
+        assertThat(history.droppedUntil(), equalTo(20L));
+    }
+
+    @Test
+    public void should_track_entities_not_taken_by_full_history() {
+        DeviceHistory history = new DeviceHistory(2);
+        assertThat(history.droppedUntil(), equalTo(Long.MIN_VALUE));
+        history.put(notification(2, 20, "a"));
+        history.put(notification(3, 30, "a"));
+        history.put(notification(1, 10, "a"));
+        assertThat(ids(history.find(ALL, 0, Long.MIN_VALUE)), contains(3L, 2L));
+        assertThat(history.droppedUntil(), equalTo(10L));
+    }
+
+    @Test
+    public void should_keep_timestamp_order_for_late_entities() {
+        DeviceHistory history = new DeviceHistory(10);
+        history.put(notification(1, 10, "a"));
+        history.put(notification(2, 30, "a"));
+        history.put(notification(3, 20, "a"));
+        assertThat(ids(history.find(ALL, 0, Long.MIN_VALUE)), contains(2L, 3L, 1L));
+    }
+
+    @Test
+    public void should_find_since_timestamp_and_filter_names() {
+        DeviceHistory history = new DeviceHistory(10);
+        history.put(notification(1, 10, "a"));
+        history.put(notification(2, 20, "b"));
+        history.put(notification(3, 30, "a"));
+        history.put(notification(4, 40, "b"));
+        HistoryFilter filter = new HistoryFilter(null, Collections.singleton("a"), new Date(10), null, null);
+        assertThat(ids(history.find(filter, 0, Long.MIN_VALUE)), contains(3L));
+        assertThat(ids(history.find(ALL, 0, 30)), contains(4L, 3L));
+    }
+
+    @Test
+    public void should_replace_updated_command() {
+        DeviceHistory history = new DeviceHistory(10);
+        history.put(command(1, 10, false));
+        history.put(command(2, 20, false));
+        history.put(command(1, 10, true));
+        assertThat(history.size(), equalTo(2));
+        assertThat(ids(history.find(new HistoryFilter(null, null, null, null, true), 0, Long.MIN_VALUE)), contains(1L));
+        assertThat(ids(history.find(new HistoryFilter(null, null, null, null, false), 0, Long.MIN_VALUE)), contains(2L));
+    }
+
+    @Test
+    public void should_remove_expired_and_resize() {
+        DeviceHistory history = new DeviceHistory(10);
+        for (long i = 1; i <= 10; i++) {
+            history.put(notification(i, i * 10, "a"));
+        }
+        history.removeOlderThan(35);
+        assertThat(history.size(), equalTo(7));
+        history.resize(3);
+        assertThat(history.capacity(), equalTo(3));
+        assertThat(ids(history.find(ALL, 0, Long.MIN_VALUE)), contains(10L, 9L, 8L));
+        history.put(notification(11, 110, "a"));
+        assertThat(ids(history.find(ALL, 0, Long.MIN_VALUE)), contains(11L, 10L, 9L));
+    }
+
+    @Test
+    public void should_page_with_cursor_through_equal_timestamps() {
+        DeviceHistory history = new DeviceHistory(10);
+        history.put(notification(1, 10, "a"));
+        history.put(notification(3, 20, "a"));
+        history.put(notification(2, 20, "a"));
+        history.put(notification(4, 20, "a"));
+        history.put(notification(5, 30, "a"));
+        List<HazelcastEntity> first = history.find(ALL, 2, Long.MIN_VALUE);
+        assertThat(ids(first), contains(5L, 4L));
+        HistoryCursor cursor = HistoryCursor.fromToken(HistoryCursor.after(first.get(1)).toToken());
+        HistoryFilter next = new HistoryFilter(null, null, null, null, null, cursor);
+        List<HazelcastEntity> second = history.find(next, 2, Long.MIN_VALUE);
+        assertThat(ids(second), contains(3L, 2L));
+        HistoryFilter last = new HistoryFilter(null, null, null, null, null, HistoryCursor.after(second.get(1)));
+        assertThat(ids(history.find(last, 2, Long.MIN_VALUE)), contains(1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_malformed_cursor() {
+        HistoryCursor.fromToken("not a cursor");
+    }
+
+    private static DeviceNotification notification(long id, long timestamp, String name) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(id);
+        notification.setTimestamp(new Date(timestamp));
+        notification.setNotification(name);
+        notification.setDeviceGuid("device");
+        return notification;
+    }
+
+    private static DeviceCommand command(long id, long timestamp, boolean updated) {
+        DeviceCommand command = new DeviceCommand();
+        command.setId(id);
+        command.setTimestamp(new Date(timestamp));
+        command.setCommand("command");
+        command.setDeviceGuid("device");
+        command.setIsUpdated(updated);
+        return command;
+    }
+
+    private static List<Long> ids(List<HazelcastEntity> entities) {
+        return entities.stream().map(HazelcastEntity::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,87 @@
+package com.devicehive.service.history;
+
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.model.response.HistoryGridPoint;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class HistoryGridTest {
+    private static final HistoryFilter ALL = new HistoryFilter(null, null, null, null, null);
+
+    @Test
+    public void should_select_last_and_first_entity_of_interval() {
+        DeviceHistory history = history();
+        assertThat(ids(aggregate(history, GridAggregate.LAST, null, Long.MAX_VALUE)), contains(3L, 5L, 6L));
+        assertThat(ids(aggregate(history, GridAggregate.FIRST, null, Long.MAX_VALUE)), contains(1L, 4L, 6L));
+    }
+
+    @Test
+    public void should_aggregate_numeric_parameter() {
+        DeviceHistory history = history();
+        List<HistoryGridPoint> avg = points(aggregate(history, GridAggregate.AVG, "sensor.temperature", Long.MAX_VALUE));
+        assertThat(avg.stream().map(p -> p.getTimestamp().getTime()).collect(Collectors.toList()),
+                contains(0L, 100L, 200L));
+        assertThat(avg.stream().map(HistoryGridPoint::getValue).collect(Collectors.toList()),
+                contains(2.0, 4.0, 6.0));
+        assertThat(avg.get(0).getCount(), equalTo(2L));
+
+        List<HistoryGridPoint> max = points(aggregate(history, GridAggregate.MAX, "sensor.temperature", Long.MAX_VALUE));
+        assertThat(max.stream().map(HistoryGridPoint::getValue).collect(Collectors.toList()), contains(3.0, 5.0, 6.0));
+        List<HistoryGridPoint> min = points(aggregate(history, GridAggregate.MIN, "sensor.temperature", Long.MAX_VALUE));
+        assertThat(min.stream().map(HistoryGridPoint::getValue).collect(Collectors.toList()), contains(1.0, 3.0, 6.0));
+    }
+
+    @Test
+    public void should_count_entities_of_interval() {
+        DeviceHistory history = history();
+        List<HistoryGridPoint> all = points(aggregate(history, GridAggregate.COUNT, null, Long.MAX_VALUE));
+        assertThat(all.stream().map(HistoryGridPoint::getCount).collect(Collectors.toList()), contains(3L, 3L, 1L));
+        assertThat(all.get(0).getValue(), nullValue());
+        List<HistoryGridPoint> numeric = points(aggregate(history, GridAggregate.COUNT, "sensor.temperature", 150));
+        assertThat(numeric.stream().map(HistoryGridPoint::getCount).collect(Collectors.toList()), contains(2L, 2L));
+    }
+
+    private static DeviceHistory history() {
+        DeviceHistory history = new DeviceHistory(10);
+        history.put(notification(1, 10, "{\"sensor\":{\"temperature\":1}}"));
+        history.put(notification(2, 50, "{\"sensor\":{\"humidity\":50}}"));
+        history.put(notification(3, 90, "{\"sensor\":{\"temperature\":3}}"));
+        history.put(notification(4, 110, "{\"sensor\":{\"temperature\":\"5\"}}"));
+        history.put(notification(5, 150, "{\"sensor\":{\"temperature\":3},\"x\":5}"));
+        history.put(notification(6, 200, "{\"sensor\":{\"temperature\":6.0}}"));
+        history.put(notification(7, 140, "{\"sensor\":{\"temperature\":5}}"));
+        return history;
+    }
+
+    private static List<Object> aggregate(DeviceHistory history, GridAggregate aggregate, String path, long until) {
+        HistoryGrid grid = new HistoryGrid(100, aggregate, path);
+        history.scan(ALL, until, Long.MIN_VALUE, grid);
+        return grid.getResult();
+    }
+
+    private static DeviceNotification notification(long id, long timestamp, String parameters) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(id);
+        notification.setTimestamp(new Date(timestamp));
+        notification.setNotification("measurement");
+        notification.setDeviceGuid("device");
+        notification.setParameters(new JsonStringWrapper(parameters));
+        return notification;
+    }
+
+    private static List<Long> ids(List<Object> entities) {
+        return entities.stream().map(e -> ((HazelcastEntity) e).getId()).collect(Collectors.toList());
+    }
+
+    private static List<HistoryGridPoint> points(List<Object> points) {
+        return points.stream().map(HistoryGridPoint.class::cast).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,111 @@
+package com.devicehive.service.history;
+
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HistoryStoreWriterTest {
+
+    @Mock
+    private HistoryStore historyStore;
+
+    @InjectMocks
+    private HistoryStoreWriter writer;
+
+    private final List<Long> stored = new ArrayList<>();
+    private final Set<Long> poisoned = new HashSet<>();
+    private boolean available = true;
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(writer, "queueSize", 100);
+        ReflectionTestUtils.setField(writer, "batchSize", 3);
+        ReflectionTestUtils.setField(writer, "flushMillis", 1000L);
+        ReflectionTestUtils.setField(writer, "maxRetryMillis", 60000L);
+        writer.init();
+        doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            List<HazelcastEntity> entities = (List<HazelcastEntity>) invocation.getArguments()[0];
+            if (!available) {
+                throw new DataAccessResourceFailureException("connection refused");
+            }
+            for (HazelcastEntity entity : entities) {
+                if (poisoned.contains(entity.getId())) {
+                    throw new DataIntegrityViolationException("invalid row");
+                }
+            }
+            entities.forEach(entity -> stored.add(entity.getId()));
+            return null;
+        }).when(historyStore).storeAll(anyListOf(HazelcastEntity.class));
+    }
+
+    @Test
+    public void testBatchIsKeptAndRetriedWhenStoreIsUnavailable() {
+        writer.enqueue(notifications(1, 2, 3, 4));
+        available = false;
+        writer.flush();
+        assertThat(stored.isEmpty(), is(true));
+
+        // retry waits for the backoff
+        available = true;
+        writer.flush();
+        assertThat(stored.isEmpty(), is(true));
+
+        ReflectionTestUtils.setField(writer, "retryAt", 0L);
+        writer.flush();
+        assertThat(stored, contains(1L, 2L, 3L, 4L));
+    }
+
+    @Test
+    public void testBackoffGrowsUpToLimit() {
+        writer.enqueue(notifications(1));
+        available = false;
+        List<Long> delays = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            ReflectionTestUtils.setField(writer, "retryAt", 0L);
+            writer.flush();
+            delays.add((Long) ReflectionTestUtils.getField(writer, "retryDelay"));
+        }
+        assertThat(delays, contains(1000L, 2000L, 4000L, 8000L, 16000L, 32000L, 60000L, 60000L));
+    }
+
+    @Test
+    public void testOnlyRejectedEntitiesAreDropped() {
+        writer.enqueue(notifications(1, 2, 3, 4, 5));
+        poisoned.add(2L);
+        writer.flush();
+
+        assertThat(stored, contains(1L, 3L, 4L, 5L));
+        assertThat(writer.getRejected(), is(1L));
+    }
+
+    private static List<DeviceNotification> notifications(long... ids) {
+        List<DeviceNotification> notifications = new ArrayList<>();
+        for (long id : ids) {
+            DeviceNotification notification = new DeviceNotification();
+            notification.setId(id);
+            notification.setDeviceGuid("device");
+            notification.setTimestamp(new Date(id));
+            notification.setNotification("notification");
+            notifications.add(notification);
+        }
+        return notifications;
+    }
+}
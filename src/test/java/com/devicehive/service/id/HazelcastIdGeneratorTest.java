@@ -0,0 +1,127 @@
+package com.devicehive.service.id;
+
+import com.hazelcast.core.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HazelcastIdGeneratorTest {
+    private static final String MEMBER_UUID = "local";
+    private static final String OTHER_MEMBER_UUID = "other";
+
+    @Mock
+    private HazelcastInstance hazelcastInstance;
+
+    @Mock
+    private Cluster cluster;
+
+    @Mock
+    private IMap<Long, String> nodeIds;
+
+    @InjectMocks
+    private HazelcastIdGenerator idGenerator;
+
+    private final Map<Long, String> nodeIdsProxy = new ConcurrentHashMap<>();
+    private final Set<Member> members = new HashSet<>();
+
+    @Before
+    public void setUp() {
+        final Member localMember = member(MEMBER_UUID);
+        when(hazelcastInstance.<Long, String>getMap(anyString())).thenReturn(nodeIds);
+        when(hazelcastInstance.getCluster()).thenReturn(cluster);
+        when(cluster.getLocalMember()).thenReturn(localMember);
+        when(cluster.getMembers()).thenReturn(members);
+        when(cluster.addMembershipListener(any(MembershipListener.class))).thenReturn("listener");
+        when(nodeIds.putIfAbsent(any(Long.class), anyString())).thenAnswer(invocation ->
+                nodeIdsProxy.putIfAbsent((Long) invocation.getArguments()[0], (String) invocation.getArguments()[1]));
+        when(nodeIds.remove(any(), any())).thenAnswer(invocation ->
+                nodeIdsProxy.remove(invocation.getArguments()[0], invocation.getArguments()[1]));
+        when(nodeIds.entrySet()).thenAnswer(invocation -> new HashMap<>(nodeIdsProxy).entrySet());
+        members.add(localMember);
+    }
+
+    @Test
+    public void testIdsAreUniqueAndIncreasing() {
+        idGenerator.init();
+        Set<Long> ids = new HashSet<>();
+        long previous = -1;
+        for (int i = 0; i < 100000; i++) {
+            long id = idGenerator.nextId();
+            assertTrue(id > previous);
+            assertTrue(ids.add(id));
+            previous = id;
+        }
+    }
+
+    @Test
+    public void testIdContainsNodeIdAndTimestamp() {
+        nodeIdsProxy.put(0L, OTHER_MEMBER_UUID);
+        members.add(member(OTHER_MEMBER_UUID));
+        idGenerator.init();
+
+        long before = System.currentTimeMillis();
+        long id = idGenerator.nextId();
+        long after = System.currentTimeMillis();
+
+        assertEquals(1L, (id >> HazelcastIdGenerator.SEQUENCE_BITS) & HazelcastIdGenerator.MAX_NODE);
+        long timestamp = (id >> (HazelcastIdGenerator.NODE_BITS + HazelcastIdGenerator.SEQUENCE_BITS))
+                + HazelcastIdGenerator.EPOCH;
+        assertTrue(timestamp >= before && timestamp <= after);
+    }
+
+    @Test
+    public void testIdsFitIntoJsonSafeInteger() {
+        idGenerator.init();
+        assertEquals(53, HazelcastIdGenerator.TIMESTAMP_BITS + HazelcastIdGenerator.NODE_BITS
+                + HazelcastIdGenerator.SEQUENCE_BITS);
+        assertTrue(idGenerator.nextId() < (1L << 53));
+    }
+
+    @Test
+    public void testNodeIdsOfRemovedMembersAreReleased() {
+        // member left before this generator started
+        nodeIdsProxy.put(0L, "gone");
+        members.add(member(OTHER_MEMBER_UUID));
+        nodeIdsProxy.put(1L, OTHER_MEMBER_UUID);
+        idGenerator.init();
+        assertEquals(MEMBER_UUID, nodeIdsProxy.get(0L));
+
+        ArgumentCaptor<MembershipListener> listener = ArgumentCaptor.forClass(MembershipListener.class);
+        verify(cluster).addMembershipListener(listener.capture());
+        listener.getValue().memberRemoved(new MembershipEvent(cluster, member(OTHER_MEMBER_UUID),
+                MembershipEvent.MEMBER_REMOVED, Collections.emptySet()));
+        assertFalse(nodeIdsProxy.containsKey(1L));
+
+        idGenerator.destroy();
+        assertTrue(nodeIdsProxy.isEmpty());
+        verify(cluster).removeMembershipListener("listener");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailsWhenAllNodeIdsAreTaken() {
+        members.add(member(OTHER_MEMBER_UUID));
+        for (long id = 0; id <= HazelcastIdGenerator.MAX_NODE; id++) {
+            nodeIdsProxy.put(id, OTHER_MEMBER_UUID);
+        }
+        idGenerator.init();
+    }
+
+    private static Member member(String uuid) {
+        Member member = mock(Member.class);
+        when(member.getUuid()).thenReturn(uuid);
+        return member;
+    }
+}
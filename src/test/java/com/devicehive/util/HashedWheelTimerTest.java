@@ -0,0 +1,76 @@
+package com.devicehive.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class HashedWheelTimerTest {
+
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        // small wheel, so timeouts longer than one rotation are tested too
+        timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 4);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void testTimeoutFiresOnceAfterDelay() throws Exception {
+        CountDownLatch fired = new CountDownLatch(1);
+        AtomicLong firedAt = new AtomicLong();
+        long start = System.currentTimeMillis();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(() -> {
+            firedAt.set(System.currentTimeMillis());
+            fired.countDown();
+        }, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertThat(firedAt.get() - start, greaterThanOrEqualTo(100L));
+        // fired timeout can't be cancelled anymore
+        assertThat(timeout.cancel(), is(false));
+    }
+
+    @Test
+    public void testCancelledTimeoutDoesNotFire() throws Exception {
+        AtomicInteger fired = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(fired::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        CountDownLatch later = new CountDownLatch(1);
+        timer.newTimeout(later::countDown, 150, TimeUnit.MILLISECONDS);
+
+        assertThat(timeout.cancel(), is(true));
+        assertThat(timeout.cancel(), is(false));
+        assertThat(timeout.isCancelled(), is(true));
+        assertTrue(later.await(5, TimeUnit.SECONDS));
+        assertThat(fired.get(), is(0));
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopTimer() throws Exception {
+        timer.newTimeout(() -> {
+            throw new IllegalStateException("expected");
+        }, 10, TimeUnit.MILLISECONDS);
+        CountDownLatch fired = new CountDownLatch(1);
+        timer.newTimeout(fired::countDown, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEmptyWheel() {
+        new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 0);
+    }
+}
@@ -4,6 +4,7 @@ import com.devicehive.base.AbstractWebSocketMethodTest;
 import com.devicehive.base.fixture.JsonFixture;
 import com.devicehive.model.*;
 import com.devicehive.model.wrappers.DeviceNotificationWrapper;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
@@ -11,6 +12,7 @@ import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Test;
 
 import javax.ws.rs.core.Response;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.UUID;
@@ -50,6 +52,34 @@ public class NotificationHandlersTest extends AbstractWebSocketMethodTest {
         assertTrue(notificationResp.getTimestamp().getTime() > time);
     }
 
+    @Test
+    public void should_insert_notification_batch_with_per_item_results() throws Exception {
+        DeviceNotificationWrapper first = new DeviceNotificationWrapper();
+        first.setNotification("reading");
+        first.setParameters(new JsonStringWrapper("{\"value\": 1}"));
+        DeviceNotificationWrapper invalid = new DeviceNotificationWrapper();
+        DeviceNotificationWrapper second = new DeviceNotificationWrapper();
+        second.setNotification("reading");
+        second.setParameters(new JsonStringWrapper("{\"value\": 2}"));
+        JsonObject notificationInsert = JsonFixture.createWsCommand("notification/insert/batch", "1", new HashMap<String, JsonElement>() {{
+            put("deviceGuid", new JsonPrimitive(DEVICE_ID));
+            put("notifications", gson.toJsonTree(Arrays.asList(first, invalid, second)));
+        }});
+
+        String payload = runMethod(notificationInsert, auth(ADMIN_LOGIN, ADMIN_PASS));
+        JsonObject jsonResp = gson.fromJson(payload, JsonObject.class);
+
+        assertThat(jsonResp.get("action").getAsString(), is("notification/insert/batch"));
+        assertThat(jsonResp.get("status").getAsString(), is("success"));
+        JsonArray results = jsonResp.getAsJsonArray("notifications");
+        assertThat(results.size(), is(3));
+        assertTrue(results.get(0).getAsJsonObject().get("id").isJsonPrimitive());
+        assertThat(results.get(1).getAsJsonObject().get("error").getAsInt(), is(400));
+        assertTrue(results.get(1).getAsJsonObject().get("id").isJsonNull());
+        assertTrue(results.get(2).getAsJsonObject().get("id").getAsLong()
+                > results.get(0).getAsJsonObject().get("id").getAsLong());
+    }
+
     @Test
     public void should_insert_notification_signed_in_as_key() throws Exception {
         DeviceNotificationWrapper notification = new DeviceNotificationWrapper();
@@ -208,7 +238,7 @@ public class NotificationHandlersTest extends AbstractWebSocketMethodTest {
         }
 
         assertThat(storedState.getQueue().peek(), notNullValue());
-        jsonResp = gson.fromJson(storedState.getQueue().poll(), JsonObject.class);
+        jsonResp = gson.fromJson(storedState.getQueue().poll().getPayload(), JsonObject.class);
         assertThat(jsonResp.get("action").getAsString(), is("notification/insert"));
         assertThat(jsonResp.get("deviceGuid").getAsString(), is(DEVICE_ID));
         assertThat(jsonResp.get("subscriptionId").getAsString(), is(subscriptionId));
@@ -0,0 +1,80 @@
+package com.devicehive.websockets.converters;
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
+import kafka.utils.VerifiableProperties;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.Properties;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class DeviceMessageConverterTest {
+
+    private final DeviceNotificationConverter notificationConverter = new DeviceNotificationConverter(binaryFormat());
+    private final DeviceCommandConverter commandConverter = new DeviceCommandConverter(binaryFormat());
+
+    @Test
+    public void testNotificationBinaryRoundTrip() {
+        DeviceNotification notification = notification();
+        byte[] bytes = notificationConverter.toBytes(notification);
+
+        assertThat(bytes[0], is(AbstractBinaryConverter.BINARY_V1));
+        DeviceNotification decoded = notificationConverter.fromBytes(bytes);
+        assertThat(decoded, is(notification));
+        assertThat(decoded.getParameters(), is(notification.getParameters()));
+    }
+
+    @Test
+    public void testCommandBinaryRoundTripWithNullFields() {
+        DeviceCommand command = new DeviceCommand();
+        command.setId(42L);
+        command.setCommand("switch");
+        command.setDeviceGuid("guid");
+        command.setTimestamp(new Date());
+        command.setParameters(new JsonStringWrapper("{\"on\":true}"));
+        command.setIsUpdated(true);
+
+        DeviceCommand decoded = commandConverter.fromBytes(commandConverter.toBytes(command));
+
+        assertThat(decoded, is(command));
+        assertThat(decoded.getParameters(), is(command.getParameters()));
+        assertThat(decoded.getIsUpdated(), is(true));
+        assertThat(decoded.getUserId(), nullValue());
+        assertThat(decoded.getResult(), nullValue());
+        assertThat(decoded.getLifetime(), nullValue());
+    }
+
+    @Test
+    public void testJsonMessagesAreStillReadable() {
+        // json is written unless binary format is configured
+        DeviceNotificationConverter jsonConverter = new DeviceNotificationConverter(new VerifiableProperties());
+        DeviceNotification notification = notification();
+        byte[] bytes = jsonConverter.toBytes(notification);
+
+        assertThat(bytes[0], is((byte) '{'));
+        DeviceNotification decoded = notificationConverter.fromBytes(bytes);
+        assertThat(decoded, is(notification));
+        assertThat(decoded.getParameters(), is(notification.getParameters()));
+    }
+
+    private static VerifiableProperties binaryFormat() {
+        Properties properties = new Properties();
+        properties.put(AbstractBinaryConverter.FORMAT_PROPERTY, AbstractBinaryConverter.BINARY_FORMAT);
+        return new VerifiableProperties(properties);
+    }
+
+    private static DeviceNotification notification() {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(1234567890123L);
+        notification.setNotification("temperature");
+        notification.setDeviceGuid("E50D6085-2ABA-48E9-B1C3-73C673E414BE");
+        notification.setTimestamp(new Date());
+        notification.setParameters(new JsonStringWrapper("{\"value\":36.6,\"unit\":\"°C\"}"));
+        return notification;
+    }
+}
@@ -0,0 +1,131 @@
+package com.devicehive.websockets.util;
+
+import com.devicehive.websockets.HiveWebsocketSessionState;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncMessageSupplierTest {
+
+    @Mock
+    private ExecutorService writerExecutor;
+
+    @Mock
+    private WebSocketSession session;
+
+    @InjectMocks
+    private AsyncMessageSupplier supplier;
+
+    private HiveWebsocketSessionState state;
+
+    @Before
+    public void setUp() {
+        state = new HiveWebsocketSessionState();
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(HiveWebsocketSessionState.KEY, state);
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.isOpen()).thenReturn(true);
+    }
+
+    @Test
+    public void testSingleDrainTaskPerSession() throws Exception {
+        state.getQueue().offer(OutgoingMessage.of("1"));
+        supplier.deliverMessages(session);
+        state.getQueue().offer(OutgoingMessage.of("2"));
+        supplier.deliverMessages(session);
+
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(writerExecutor, times(1)).execute(task.capture());
+        assertTrue(state.getWriteScheduled().get());
+
+        task.getValue().run();
+        verify(session, times(2)).sendMessage(any(WebSocketMessage.class));
+        assertFalse(state.getWriteScheduled().get());
+        assertTrue(state.getQueue().isEmpty());
+        verifyNoMoreInteractions(writerExecutor);
+    }
+
+    @Test
+    public void testDrainIsRescheduledWhenByteBudgetIsExceeded() throws Exception {
+        ReflectionTestUtils.setField(supplier, "drainBytes", 5);
+        state.getQueue().offer(OutgoingMessage.of("abc"));
+        state.getQueue().offer(OutgoingMessage.of("def"));
+        state.getQueue().offer(OutgoingMessage.of("ghi"));
+        supplier.deliverMessages(session);
+
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(writerExecutor).execute(task.capture());
+        task.getValue().run();
+
+        ArgumentCaptor<WebSocketMessage> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(session, times(2)).sendMessage(sent.capture());
+        assertThat(state.getQueue().size(), is(1));
+        // remaining message scheduled new drain
+        verify(writerExecutor, times(2)).execute(task.capture());
+        assertTrue(state.getWriteScheduled().get());
+
+        task.getValue().run();
+        verify(session, times(3)).sendMessage(sent.capture());
+        List<WebSocketMessage> messages = sent.getAllValues();
+        assertThat(((TextMessage) messages.get(messages.size() - 1)).getPayload(), is("ghi"));
+        assertTrue(state.getQueue().isEmpty());
+        assertFalse(state.getWriteScheduled().get());
+    }
+
+    @Test
+    public void testQueueIsClearedWhenSessionIsClosed() throws Exception {
+        when(session.isOpen()).thenReturn(false);
+        state.getQueue().offer(OutgoingMessage.of("1"));
+        supplier.deliverMessages(session);
+
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(writerExecutor).execute(task.capture());
+        task.getValue().run();
+
+        verify(session, never()).sendMessage(any(WebSocketMessage.class));
+        assertTrue(state.getQueue().isEmpty());
+        assertFalse(state.getWriteScheduled().get());
+    }
+
+    @Test
+    public void testDrainIsSkippedWhileQueueIsLocked() throws Exception {
+        state.getQueue().offer(OutgoingMessage.of("1"));
+        supplier.deliverMessages(session);
+
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(writerExecutor).execute(task.capture());
+        state.getQueueLock().lock();
+        try {
+            Thread drainer = new Thread(task.getValue());
+            drainer.start();
+            drainer.join();
+        } finally {
+            state.getQueueLock().unlock();
+        }
+
+        verify(session, never()).sendMessage(any(WebSocketMessage.class));
+        assertThat(state.getQueue().size(), is(1));
+        assertFalse(state.getWriteScheduled().get());
+    }
+}
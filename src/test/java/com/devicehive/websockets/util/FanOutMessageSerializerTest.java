@@ -0,0 +1,55 @@
+package com.devicehive.websockets.util;
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.util.ServerResponsesFactory;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class FanOutMessageSerializerTest {
+    private final JsonParser parser = new JsonParser();
+
+    @Test
+    public void testNotificationInsertEqualsTreeBuiltMessage() {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(1L);
+        notification.setNotification("temperature");
+        notification.setDeviceGuid("guid-\"quoted\"");
+        notification.setTimestamp(new Date());
+        notification.setParameters(new JsonStringWrapper("{\"value\": 36.6}"));
+
+        for (int i = 0; i < 3; i++) {
+            UUID subId = UUID.randomUUID();
+            assertThat(parser.parse(FanOutMessageSerializer.notificationInsert(notification, subId)),
+                    is(parser.parse(ServerResponsesFactory.createNotificationInsertMessage(notification, subId).toString())));
+        }
+    }
+
+    @Test
+    public void testCommandMessagesEqualTreeBuiltMessages() {
+        DeviceCommand command = new DeviceCommand();
+        command.setId(2L);
+        command.setCommand("switch");
+        command.setDeviceGuid("guid");
+        command.setTimestamp(new Date());
+        command.setUserId(3L);
+        command.setParameters(new JsonStringWrapper("{\"on\": true}"));
+        command.setStatus("done");
+        command.setIsUpdated(true);
+        UUID subId = UUID.randomUUID();
+
+        assertThat(parser.parse(FanOutMessageSerializer.commandInsert(command, subId)),
+                is(parser.parse(ServerResponsesFactory.createCommandInsertMessage(command, subId).toString())));
+        assertThat(parser.parse(FanOutMessageSerializer.commandUpdate(command)),
+                is(parser.parse(ServerResponsesFactory.createCommandUpdateMessage(command).toString())));
+        assertThat(FanOutMessageSerializer.commandUpdate(command), sameInstance(FanOutMessageSerializer.commandUpdate(command)));
+    }
+}
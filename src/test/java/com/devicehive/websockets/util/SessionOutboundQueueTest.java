@@ -0,0 +1,116 @@
+package com.devicehive.websockets.util;
+
+import com.google.gson.JsonPrimitive;
+import org.junit.Test;
+
+import static com.devicehive.websockets.util.SessionOutboundQueue.OverflowPolicy.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class SessionOutboundQueueTest {
+
+    @Test
+    public void testDropOldest() {
+        SessionOutboundQueue queue = new SessionOutboundQueue(2, DROP_OLDEST);
+        assertTrue(queue.offer(OutgoingMessage.of("1")));
+        assertTrue(queue.offer(OutgoingMessage.PING));
+        assertTrue(queue.offer(OutgoingMessage.of("2")));
+        assertTrue(queue.offer(OutgoingMessage.of("3")));
+
+        assertThat(queue.getDropped(), is(1L));
+        assertThat(queue.poll(), sameInstance(OutgoingMessage.PING));
+        assertThat(queue.poll().getPayload(), is("2"));
+        assertThat(queue.poll().getPayload(), is("3"));
+        assertThat(queue.poll(), nullValue());
+    }
+
+    @Test
+    public void testDropNewest() {
+        SessionOutboundQueue queue = new SessionOutboundQueue(1, DROP_NEWEST);
+        assertTrue(queue.offer(OutgoingMessage.of("1")));
+        assertFalse(queue.offer(OutgoingMessage.of("2")));
+
+        assertThat(queue.getDropped(), is(1L));
+        assertThat(queue.poll().getPayload(), is("1"));
+        assertTrue(queue.offer(OutgoingMessage.of("3")));
+    }
+
+    @Test
+    public void testDisconnect() {
+        SessionOutboundQueue queue = new SessionOutboundQueue(1, DISCONNECT);
+        assertTrue(queue.offer(OutgoingMessage.of("1")));
+        assertFalse(queue.isOverflowed());
+        assertFalse(queue.offer(OutgoingMessage.of("2")));
+        assertTrue(queue.isOverflowed());
+    }
+
+    @Test
+    public void testCoalesceByDevice() {
+        SessionOutboundQueue queue = new SessionOutboundQueue(2, COALESCE_BY_DEVICE);
+        assertTrue(queue.offer(OutgoingMessage.of("status-1", "device-a")));
+        assertTrue(queue.offer(OutgoingMessage.of("other")));
+        assertTrue(queue.offer(OutgoingMessage.of("status-2", "device-a")));
+
+        assertThat(queue.size(), is(2));
+        assertThat(queue.getCoalesced(), is(1L));
+        assertThat(queue.getDropped(), is(0L));
+        assertThat(queue.poll().getPayload(), is("other"));
+        assertThat(queue.poll().getPayload(), is("status-2"));
+
+        assertTrue(queue.offer(OutgoingMessage.of("status-3", "device-a")));
+        assertThat(queue.getCoalesced(), is(1L));
+        assertThat(queue.poll().getPayload(), is("status-3"));
+    }
+
+    @Test
+    public void testCoalesceByDeviceKeepsEveryStatusWhenNotFull() {
+        SessionOutboundQueue queue = new SessionOutboundQueue(3, COALESCE_BY_DEVICE);
+        assertTrue(queue.offer(OutgoingMessage.of("status-1", "device-a")));
+        assertTrue(queue.offer(OutgoingMessage.of("status-2", "device-a")));
+
+        assertThat(queue.size(), is(2));
+        assertThat(queue.getCoalesced(), is(0L));
+        assertThat(queue.poll().getPayload(), is("status-1"));
+        assertThat(queue.poll().getPayload(), is("status-2"));
+    }
+
+    @Test
+    public void testRepliesAreNeverDroppedOrCoalesced() {
+        SessionOutboundQueue queue = new SessionOutboundQueue(1, DROP_OLDEST);
+        assertTrue(queue.offer(OutgoingMessage.reply(new JsonPrimitive("reply"))));
+        assertTrue(queue.offer(OutgoingMessage.of("1")));
+        assertTrue(queue.offer(OutgoingMessage.of("2")));
+
+        assertThat(queue.getDropped(), is(1L));
+        assertThat(queue.poll().getPayload(), is("\"reply\""));
+        assertThat(queue.poll().getPayload(), is("2"));
+
+        queue = new SessionOutboundQueue(1, DISCONNECT);
+        assertTrue(queue.offer(OutgoingMessage.of("1")));
+        assertTrue(queue.offer(OutgoingMessage.reply(new JsonPrimitive("reply"))));
+        assertFalse(queue.isOverflowed());
+        assertThat(queue.size(), is(2));
+    }
+
+    @Test
+    public void testUnreadRepliesOverflowQueueWithAnyPolicy() {
+        SessionOutboundQueue queue = new SessionOutboundQueue(2, DROP_OLDEST);
+        assertTrue(queue.offer(OutgoingMessage.reply(new JsonPrimitive("1"))));
+        assertTrue(queue.offer(OutgoingMessage.PING));
+        assertFalse(queue.offer(OutgoingMessage.reply(new JsonPrimitive("2"))));
+
+        assertTrue(queue.isOverflowed());
+        assertThat(queue.getDropped(), is(1L));
+        assertThat(queue.size(), is(2));
+
+        queue = new SessionOutboundQueue(1, DROP_OLDEST);
+        assertTrue(queue.offer(OutgoingMessage.reply(new JsonPrimitive("1"))));
+        assertThat(queue.poll().getPayload(), is("\"1\""));
+        assertTrue(queue.offer(OutgoingMessage.reply(new JsonPrimitive("2"))));
+        assertFalse(queue.isOverflowed());
+    }
+}
@@ -21,4 +21,7 @@ INSERT INTO device_class (name, version, is_permanent, offline_timeout) VALUES (
 INSERT INTO network (name, description) VALUES ('VirtualLed Sample Network', 'A DeviceHive network for VirtualLed sample');
 
 -- 4. Default devices
-INSERT INTO device (guid, name, status, network_id, device_class_id, entity_version) VALUES ('E50D6085-2ABA-48E9-B1C3-73C673E414BE', 'Sample VirtualLed Device', 'Offline', 1, 1, 1);
\ No newline at end of file
+INSERT INTO device (guid, name, status, network_id, device_class_id, entity_version) VALUES ('E50D6085-2ABA-48E9-B1C3-73C673E414BE', 'Sample VirtualLed Device', 'Offline', 1, 1, 1);
+-- 5. History store tables, without partitioning
+CREATE TABLE notification_history (id BIGINT NOT NULL, device_guid VARCHAR(48) NOT NULL, notification VARCHAR(128) NOT NULL, timestamp TIMESTAMP NOT NULL, parameters LONGVARCHAR NULL);
+CREATE TABLE command_history (id BIGINT NOT NULL, device_guid VARCHAR(48) NOT NULL, command VARCHAR(128) NOT NULL, timestamp TIMESTAMP NOT NULL, parameters LONGVARCHAR NULL, user_id BIGINT NULL, lifetime INTEGER NULL, status VARCHAR(128) NULL, result LONGVARCHAR NULL, is_updated BOOLEAN DEFAULT FALSE NOT NULL);